@@ -0,0 +1,162 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+package se.uu.ub.cora.basicstorage;
+
+import static se.uu.ub.cora.storage.RelationalOperator.EQUAL_TO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import se.uu.ub.cora.data.DataProvider;
+import se.uu.ub.cora.data.collected.StorageTerm;
+import se.uu.ub.cora.data.copier.DataCopierProvider;
+import se.uu.ub.cora.data.spies.DataFactorySpy;
+import se.uu.ub.cora.storage.Condition;
+import se.uu.ub.cora.storage.Filter;
+import se.uu.ub.cora.storage.Part;
+
+/**
+ * RecordStorageInMemoryMultipleTypesReadBenchmark measures the throughput of filtered reads and
+ * counts over many recordTypes, as for an abstract type, first with the types read one after
+ * another and then with pools of an increasing number of cores set with
+ * {@link RecordStorageInMemory#setForkJoinPoolForMultipleTypes(ForkJoinPool)}, and prints the
+ * throughput for each.
+ * </p>
+ * Each measurement is one wall clock interval taken with {@link System#nanoTime()} in a single
+ * JVM, without warmup rounds or forks, so the numbers are indicative and should only be compared
+ * between runs on the same machine.
+ * </p>
+ * It is kept outside the test sources and is not compiled or run with the build. Compile it
+ * against the main and test classes and run it with its main method. The optional
+ * arguments are the number of records, the number of recordTypes and the number of reads to
+ * measure.
+ */
+public class RecordStorageInMemoryMultipleTypesReadBenchmark {
+	private static final int DEFAULT_NUMBER_OF_RECORDS = 200_000;
+	private static final int DEFAULT_NUMBER_OF_RECORD_TYPES = 16;
+	private static final int DEFAULT_NUMBER_OF_READS = 20_000;
+	private static final int NUMBER_OF_NAMES = 1_000;
+	private static final String DATA_DIVIDER = "cora";
+
+	public static void main(String[] args) {
+		int numberOfRecords = args.length > 0 ? Integer.parseInt(args[0])
+				: DEFAULT_NUMBER_OF_RECORDS;
+		int numberOfRecordTypes = args.length > 1 ? Integer.parseInt(args[1])
+				: DEFAULT_NUMBER_OF_RECORD_TYPES;
+		int numberOfReads = args.length > 2 ? Integer.parseInt(args[2])
+				: DEFAULT_NUMBER_OF_READS;
+		DataProvider.onlyForTestSetDataFactory(new DataFactorySpy());
+		DataCopierProvider.setDataCopierFactory(dataElement -> () -> dataElement);
+		RecordStorageInMemory recordStorage = new RecordStorageInMemory();
+		recordStorage.createAll(createRecords(numberOfRecords, numberOfRecordTypes));
+		List<String> recordTypes = createRecordTypes(numberOfRecordTypes);
+
+		measureReads(recordStorage, recordTypes, numberOfReads, "sequential");
+		measureReadsForIncreasingNumberOfCores(recordStorage, recordTypes, numberOfReads);
+	}
+
+	private static List<RecordToCreate> createRecords(int numberOfRecords,
+			int numberOfRecordTypes) {
+		List<RecordToCreate> records = new ArrayList<>(numberOfRecords);
+		for (int i = 0; i < numberOfRecords; i++) {
+			String recordType = "type" + (i % numberOfRecordTypes);
+			records.add(new RecordToCreate(recordType, "id" + i, new DataGroupOldSpy(recordType),
+					createStorageTerms(i), Set.of(), DATA_DIVIDER));
+		}
+		return records;
+	}
+
+	private static Set<StorageTerm> createStorageTerms(int number) {
+		return Set.of(
+				new StorageTerm("nameStorageTerm", "name", "name" + number % NUMBER_OF_NAMES));
+	}
+
+	private static List<String> createRecordTypes(int numberOfRecordTypes) {
+		List<String> recordTypes = new ArrayList<>(numberOfRecordTypes);
+		for (int i = 0; i < numberOfRecordTypes; i++) {
+			recordTypes.add("type" + i);
+		}
+		return recordTypes;
+	}
+
+	private static void measureReadsForIncreasingNumberOfCores(
+			RecordStorageInMemory recordStorage, List<String> recordTypes, int numberOfReads) {
+		int availableCores = Runtime.getRuntime().availableProcessors();
+		for (int cores = 1; cores < availableCores; cores *= 2) {
+			measureReadsInPool(recordStorage, recordTypes, numberOfReads, cores);
+		}
+		measureReadsInPool(recordStorage, recordTypes, numberOfReads, availableCores);
+	}
+
+	private static void measureReadsInPool(RecordStorageInMemory recordStorage,
+			List<String> recordTypes, int numberOfReads, int cores) {
+		ForkJoinPool pool = new ForkJoinPool(cores);
+		try {
+			recordStorage.setForkJoinPoolForMultipleTypes(pool);
+			measureReads(recordStorage, recordTypes, numberOfReads, "cores: " + cores);
+		} finally {
+			recordStorage.setForkJoinPoolForMultipleTypes(null);
+			pool.shutdown();
+		}
+	}
+
+	private static void measureReads(RecordStorageInMemory recordStorage,
+			List<String> recordTypes, int numberOfReads, String measured) {
+		readFiltered(recordStorage, recordTypes, numberOfReads);
+		printThroughput(measured + ", filtered reads", numberOfReads,
+				readFiltered(recordStorage, recordTypes, numberOfReads));
+		countFiltered(recordStorage, recordTypes, numberOfReads);
+		printThroughput(measured + ", filtered counts", numberOfReads,
+				countFiltered(recordStorage, recordTypes, numberOfReads));
+	}
+
+	private static long readFiltered(RecordStorageInMemory recordStorage,
+			List<String> recordTypes, int numberOfReads) {
+		long start = System.nanoTime();
+		for (int i = 0; i < numberOfReads; i++) {
+			recordStorage.readList(recordTypes, createFilterForName("name" + i % NUMBER_OF_NAMES));
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long countFiltered(RecordStorageInMemory recordStorage,
+			List<String> recordTypes, int numberOfReads) {
+		long start = System.nanoTime();
+		for (int i = 0; i < numberOfReads; i++) {
+			recordStorage.getTotalNumberOfRecordsForTypes(recordTypes,
+					createFilterForName("name" + i % NUMBER_OF_NAMES));
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static Filter createFilterForName(String name) {
+		Part part = new Part();
+		part.conditions.add(new Condition("name", EQUAL_TO, name));
+		Filter filter = new Filter();
+		filter.include.add(part);
+		return filter;
+	}
+
+	private static void printThroughput(String measured, int numberOfReads, long elapsedNanos) {
+		double seconds = elapsedNanos / 1_000_000_000.0;
+		System.out.printf("%-28s time: %8.1f ms, throughput: %,12.0f reads/s%n", measured + ":",
+				seconds * 1000, numberOfReads / seconds);
+	}
+}
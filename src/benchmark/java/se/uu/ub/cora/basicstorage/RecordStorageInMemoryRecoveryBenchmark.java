@@ -0,0 +1,143 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import se.uu.ub.cora.data.DataProvider;
+import se.uu.ub.cora.data.collected.Link;
+import se.uu.ub.cora.data.collected.StorageTerm;
+import se.uu.ub.cora.data.copier.DataCopierProvider;
+import se.uu.ub.cora.data.spies.DataFactorySpy;
+
+/**
+ * RecordStorageInMemoryRecoveryBenchmark measures how fast a {@link RecordStorageInMemory} is
+ * restored from its snapshot and record log, using recovery pools of an increasing number of
+ * cores, and prints the throughput for each number of cores.
+ * </p>
+ * Each measurement is one wall clock interval taken with {@link System#nanoTime()} in a single
+ * JVM, without warmup rounds or forks, so the numbers are indicative and should only be compared
+ * between runs on the same machine.
+ * </p>
+ * It is kept outside the test sources and is not compiled or run with the build. Compile it
+ * against the main and test classes and run it with its main method. The optional
+ * arguments are the number of records in the snapshot and the number of recordTypes.
+ */
+public class RecordStorageInMemoryRecoveryBenchmark {
+	private static final int DEFAULT_NUMBER_OF_RECORDS = 200_000;
+	private static final int DEFAULT_NUMBER_OF_RECORD_TYPES = 16;
+	private static final int PERCENT_OF_RECORDS_IN_LOG = 10;
+	private static final String DATA_DIVIDER = "cora";
+
+	public static void main(String[] args) throws IOException {
+		int numberOfRecords = args.length > 0 ? Integer.parseInt(args[0])
+				: DEFAULT_NUMBER_OF_RECORDS;
+		int numberOfRecordTypes = args.length > 1 ? Integer.parseInt(args[1])
+				: DEFAULT_NUMBER_OF_RECORD_TYPES;
+		DataProvider.onlyForTestSetDataFactory(new DataFactorySpy());
+		DataCopierProvider.setDataCopierFactory(dataElement -> () -> dataElement);
+		Path directory = Files.createTempDirectory("recoveryBenchmark");
+		try {
+			writeSnapshotAndLog(directory, numberOfRecords, numberOfRecordTypes);
+			measureRecoveryForIncreasingNumberOfCores(directory, numberOfRecords);
+		} finally {
+			deleteDirectory(directory);
+		}
+	}
+
+	private static void writeSnapshotAndLog(Path directory, int numberOfRecords,
+			int numberOfRecordTypes) {
+		RecordStorageInMemory recordStorage = RecordStorageInMemory
+				.usingRecordLogInDirectoryAndSync(directory, RecordLogSync.osManaged());
+		int numberOfRecordsInLog = numberOfRecords * PERCENT_OF_RECORDS_IN_LOG / 100;
+		recordStorage.createAll(createRecords(0, numberOfRecords - numberOfRecordsInLog,
+				numberOfRecordTypes));
+		recordStorage.writeSnapshot();
+		recordStorage.createAll(createRecords(numberOfRecords - numberOfRecordsInLog,
+				numberOfRecords, numberOfRecordTypes));
+		recordStorage.closeRecordLog();
+	}
+
+	private static List<RecordToCreate> createRecords(int from, int to,
+			int numberOfRecordTypes) {
+		List<RecordToCreate> records = new ArrayList<>(to - from);
+		for (int i = from; i < to; i++) {
+			records.add(createRecord(i, "type" + (i % numberOfRecordTypes)));
+		}
+		return records;
+	}
+
+	private static RecordToCreate createRecord(int number, String recordType) {
+		DataGroupOldSpy record = new DataGroupOldSpy(recordType);
+		record.addChild(new DataAtomicSpy("name", "name" + number));
+		Set<StorageTerm> storageTerms = Set
+				.of(new StorageTerm("nameStorageTerm", "name", "name" + number));
+		Set<Link> links = Set.of(new Link("system", DATA_DIVIDER),
+				new Link(recordType, "id" + (number / 2)));
+		return new RecordToCreate(recordType, "id" + number, record, storageTerms, links,
+				DATA_DIVIDER);
+	}
+
+	private static void measureRecoveryForIncreasingNumberOfCores(Path directory,
+			int numberOfRecords) {
+		int availableCores = Runtime.getRuntime().availableProcessors();
+		recover(directory, availableCores);
+		for (int cores = 1; cores < availableCores; cores *= 2) {
+			printThroughput(cores, numberOfRecords, recover(directory, cores));
+		}
+		printThroughput(availableCores, numberOfRecords, recover(directory, availableCores));
+	}
+
+	private static long recover(Path directory, int cores) {
+		ForkJoinPool recoveryPool = new ForkJoinPool(cores);
+		try {
+			long start = System.nanoTime();
+			RecordStorageInMemory recordStorage = RecordStorageInMemory
+					.usingRecordLogInDirectoryAndSyncAndRecoveryPool(directory,
+							RecordLogSync.osManaged(), recoveryPool);
+			long elapsed = System.nanoTime() - start;
+			recordStorage.closeRecordLog();
+			return elapsed;
+		} finally {
+			recoveryPool.shutdown();
+		}
+	}
+
+	private static void printThroughput(int cores, int numberOfRecords, long elapsedNanos) {
+		double seconds = elapsedNanos / 1_000_000_000.0;
+		System.out.printf("cores: %3d, time: %8.1f ms, throughput: %,12.0f records/s%n", cores,
+				seconds * 1000, numberOfRecords / seconds);
+	}
+
+	private static void deleteDirectory(Path directory) throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+				Files.delete(path);
+			}
+		}
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import static se.uu.ub.cora.storage.RelationalOperator.EQUAL_TO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import se.uu.ub.cora.data.DataProvider;
+import se.uu.ub.cora.data.collected.Link;
+import se.uu.ub.cora.data.collected.StorageTerm;
+import se.uu.ub.cora.data.copier.DataCopierProvider;
+import se.uu.ub.cora.data.spies.DataFactorySpy;
+import se.uu.ub.cora.storage.Condition;
+import se.uu.ub.cora.storage.Filter;
+import se.uu.ub.cora.storage.Part;
+
+/**
+ * RecordStorageInMemoryWriteBenchmark measures the throughput of uncontended updates, and of
+ * filtered reads with and without a concurrent writer updating the same records, and prints the
+ * throughput for each.
+ * </p>
+ * Each measurement is one wall clock interval taken with {@link System#nanoTime()} in a single
+ * JVM, without warmup rounds or forks, so the numbers are indicative and should only be compared
+ * between runs on the same machine.
+ * </p>
+ * It is kept outside the test sources and is not compiled or run with the build. Compile it
+ * against the main and test classes and run it with its main method. The optional
+ * arguments are the number of records and the number of operations to measure.
+ */
+public class RecordStorageInMemoryWriteBenchmark {
+	private static final int DEFAULT_NUMBER_OF_RECORDS = 100_000;
+	private static final int DEFAULT_NUMBER_OF_OPERATIONS = 200_000;
+	private static final int NUMBER_OF_NAMES = 1_000;
+	private static final String RECORD_TYPE = "place";
+	private static final String DATA_DIVIDER = "cora";
+
+	public static void main(String[] args) throws InterruptedException {
+		int numberOfRecords = args.length > 0 ? Integer.parseInt(args[0])
+				: DEFAULT_NUMBER_OF_RECORDS;
+		int numberOfOperations = args.length > 1 ? Integer.parseInt(args[1])
+				: DEFAULT_NUMBER_OF_OPERATIONS;
+		DataProvider.onlyForTestSetDataFactory(new DataFactorySpy());
+		DataCopierProvider.setDataCopierFactory(dataElement -> () -> dataElement);
+		RecordStorageInMemory recordStorage = new RecordStorageInMemory();
+		recordStorage.createAll(createRecords(numberOfRecords));
+
+		updateRecords(recordStorage, numberOfRecords, numberOfOperations);
+		printThroughput("uncontended updates", numberOfOperations,
+				updateRecords(recordStorage, numberOfRecords, numberOfOperations));
+		readFiltered(recordStorage, numberOfOperations);
+		printThroughput("filtered reads", numberOfOperations,
+				readFiltered(recordStorage, numberOfOperations));
+		printThroughput("filtered reads with writer", numberOfOperations,
+				readFilteredWithConcurrentWriter(recordStorage, numberOfRecords,
+						numberOfOperations));
+	}
+
+	private static List<RecordToCreate> createRecords(int numberOfRecords) {
+		List<RecordToCreate> records = new ArrayList<>(numberOfRecords);
+		for (int i = 0; i < numberOfRecords; i++) {
+			DataGroupOldSpy record = new DataGroupOldSpy(RECORD_TYPE);
+			records.add(new RecordToCreate(RECORD_TYPE, "id" + i, record, createStorageTerms(i),
+					createLinks(i), DATA_DIVIDER));
+		}
+		return records;
+	}
+
+	private static Set<StorageTerm> createStorageTerms(int number) {
+		return Set.of(new StorageTerm("nameStorageTerm", "name", "name" + number % NUMBER_OF_NAMES),
+				new StorageTerm("numberStorageTerm", "number", String.valueOf(number)));
+	}
+
+	private static Set<Link> createLinks(int number) {
+		return Set.of(new Link("system", DATA_DIVIDER), new Link(RECORD_TYPE, "id" + number / 2));
+	}
+
+	private static long updateRecords(RecordStorageInMemory recordStorage, int numberOfRecords,
+			int numberOfOperations) {
+		long start = System.nanoTime();
+		for (int i = 0; i < numberOfOperations; i++) {
+			updateRecord(recordStorage, i % numberOfRecords);
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static void updateRecord(RecordStorageInMemory recordStorage, int number) {
+		recordStorage.update(RECORD_TYPE, "id" + number, new DataGroupOldSpy(RECORD_TYPE),
+				createStorageTerms(number), createLinks(number), DATA_DIVIDER);
+	}
+
+	private static long readFiltered(RecordStorageInMemory recordStorage,
+			int numberOfOperations) {
+		long start = System.nanoTime();
+		for (int i = 0; i < numberOfOperations; i++) {
+			recordStorage.readList(List.of(RECORD_TYPE),
+					createFilterForName("name" + i % NUMBER_OF_NAMES));
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static Filter createFilterForName(String name) {
+		Part part = new Part();
+		part.conditions.add(new Condition("name", EQUAL_TO, name));
+		Filter filter = new Filter();
+		filter.include.add(part);
+		return filter;
+	}
+
+	private static long readFilteredWithConcurrentWriter(RecordStorageInMemory recordStorage,
+			int numberOfRecords, int numberOfOperations) throws InterruptedException {
+		AtomicBoolean reading = new AtomicBoolean(true);
+		Thread writer = Thread.ofPlatform().start(() -> {
+			for (int i = 0; reading.get(); i++) {
+				updateRecord(recordStorage, i % numberOfRecords);
+			}
+		});
+		long elapsed = readFiltered(recordStorage, numberOfOperations);
+		reading.set(false);
+		writer.join();
+		return elapsed;
+	}
+
+	private static void printThroughput(String measured, int numberOfOperations,
+			long elapsedNanos) {
+		double seconds = elapsedNanos / 1_000_000_000.0;
+		System.out.printf("%-28s time: %8.1f ms, throughput: %,12.0f operations/s%n",
+				measured + ":", seconds * 1000, numberOfOperations / seconds);
+	}
+}
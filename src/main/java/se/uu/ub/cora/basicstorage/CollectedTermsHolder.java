@@ -18,8 +18,10 @@
  */
 package se.uu.ub.cora.basicstorage;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.SortedSet;
 
 import se.uu.ub.cora.data.collected.StorageTerm;
 import se.uu.ub.cora.storage.Filter;
@@ -47,6 +49,23 @@ public interface CollectedTermsHolder {
 	void storeCollectedTerms(String recordType, String recordId, Set<StorageTerm> storageTerms,
 			String dataDivider);
 
+	/**
+	 * storeCollectedTermsForNewRecords method should store the storageTerms of each of the
+	 * records in the same way as
+	 * {@link CollectedTermsHolder#storeCollectedTerms(String, String, Set, String)}, for records
+	 * that have no previously stored storageTerms. Implementations can store the storageTerms of
+	 * all records together, which is faster than storing them one record at a time.
+	 * 
+	 * @param recordsToCreate
+	 *            A List of {@link RecordToCreate} with the records to store storageTerms for
+	 */
+	default void storeCollectedTermsForNewRecords(List<RecordToCreate> recordsToCreate) {
+		for (RecordToCreate toCreate : recordsToCreate) {
+			storeCollectedTerms(toCreate.recordType(), toCreate.recordId(),
+					toCreate.storageTerms(), toCreate.dataDivider());
+		}
+	}
+
 	/**
 	 * getCollectTerms method should return a set of storage terms for the given recordType and
 	 * recordId, with the same data that previously has been stored using the
@@ -79,7 +98,17 @@ public interface CollectedTermsHolder {
 	/**
 	 * findRecordIdsForFilter method should return a list of recordIds for the provided type and
 	 * filter. The recordIds should be found by matching the existing stored storageTerms and
-	 * {@link Filter} for the provided recordType.
+	 * {@link Filter} for the provided recordType. The recordIds should be returned in a stable
+	 * order, sorted by recordId, so that paging through the result gives the same records for the
+	 * same page as long as the stored data is unchanged.
+	 * </p>
+	 * A recordId matches a {@link Part} if its storageTerms match all conditions in the part. The
+	 * returned recordIds should be those that match any of the include parts and none of the
+	 * exclude parts of the filter.
+	 * </p>
+	 * A condition should match its value exactly, a value such as "Upp*" or "1900..2000" only
+	 * matches storageTerms with that value. Values starting with a prefix or in a range are found
+	 * with {@link #findRecordIdsForFilterAndConditions(String, Filter, List)}.
 	 * </p>
 	 * If no recordIds are found for the provided type and filter, should an empty list be returned.
 	 * 
@@ -90,4 +119,109 @@ public interface CollectedTermsHolder {
 	 * @return a list of recordIds for the provided type and filter
 	 */
 	List<String> findRecordIdsForFilter(String recordType, Filter filter);
+
+	/**
+	 * findRecordIdsForFilterAndConditions method should return the recordIds for the provided type
+	 * that match both the filter, as
+	 * {@link CollectedTermsHolder#findRecordIdsForFilter(String, Filter)}, and all the provided
+	 * {@link StorageTermCondition}s, sorted by recordId.
+	 * </p>
+	 * If the filter has no include parts, should the recordIds matching all the conditions and none
+	 * of the exclude parts be returned.
+	 * 
+	 * @param recordType
+	 *            A String with the type
+	 * @param filter
+	 *            A {@link Filter} with the filter
+	 * @param conditions
+	 *            A List with the StorageTermConditions that the recordIds must match
+	 * @return a list of recordIds for the provided type, filter and conditions
+	 */
+	List<String> findRecordIdsForFilterAndConditions(String recordType, Filter filter,
+			List<StorageTermCondition> conditions);
+
+	/**
+	 * recordMatches method should return true if the storageTerms currently stored for the
+	 * provided recordType and recordId match the filter and all the provided
+	 * {@link StorageTermCondition}s, in the same way as
+	 * {@link CollectedTermsHolder#findRecordIdsForFilterAndConditions(String, Filter, List)}.
+	 * </p>
+	 * It is used to check a record found earlier again, when it is read while locked together
+	 * with its storageTerms, so that a record changed in between to no longer match is not
+	 * returned.
+	 * 
+	 * @param recordType
+	 *            A String with the type
+	 * @param recordId
+	 *            A String with the recordId
+	 * @param filter
+	 *            A {@link Filter} with the filter
+	 * @param conditions
+	 *            A List with the StorageTermConditions that the record must match
+	 * @return a boolean, true if the stored storageTerms of the record match
+	 */
+	boolean recordMatches(String recordType, String recordId, Filter filter,
+			List<StorageTermCondition> conditions);
+
+	/**
+	 * countRecordIdsForFilter method should return the number of recordIds that
+	 * {@link CollectedTermsHolder#findRecordIdsForFilter(String, Filter)} would return for the
+	 * provided type and filter, without creating the list of recordIds when it can be avoided.
+	 * </p>
+	 * If no recordIds are found for the provided type and filter, should 0 be returned.
+	 * 
+	 * @param recordType
+	 *            A String with the type
+	 * @param filter
+	 *            A {@link Filter} with the filter
+	 * @return a long with the number of recordIds for the provided type and filter
+	 */
+	long countRecordIdsForFilter(String recordType, Filter filter);
+
+	/**
+	 * sortRecordIdsByStorageTerm method should return the provided recordIds for the provided type
+	 * sorted as described by the provided {@link StorageTermSort}, using the stored storageTerms
+	 * with the storageKey of the sort.
+	 * </p>
+	 * At most maxNumberOfRecordIds recordIds should be returned, the first ones in the sorted
+	 * order. Implementations should use this to avoid sorting all recordIds when only the first
+	 * page is read.
+	 * 
+	 * @param recordType
+	 *            A String with the type
+	 * @param recordIds
+	 *            A Collection with the recordIds to sort
+	 * @param sort
+	 *            A {@link StorageTermSort} with the storageKey and direction to sort by
+	 * @param maxNumberOfRecordIds
+	 *            An int with the maximum number of recordIds to return
+	 * @return a list with the first maxNumberOfRecordIds of the recordIds in sorted order
+	 */
+	List<String> sortRecordIdsByStorageTerm(String recordType, Collection<String> recordIds,
+			StorageTermSort sort, int maxNumberOfRecordIds);
+
+	/**
+	 * sortAllRecordIdsByStorageTerm method should return the first maxNumberOfRecordIds of all
+	 * recordIds for the provided type sorted as described by the provided {@link StorageTermSort},
+	 * in the same way as
+	 * {@link #sortRecordIdsByStorageTerm(String, Collection, StorageTermSort, int)}.
+	 * </p>
+	 * As all recordIds of the type are sorted, implementations should avoid looking at each of
+	 * them, and only walk the stored storageTerms until maxNumberOfRecordIds recordIds are found.
+	 * The default implementation sorts the recordIds as any other collection of recordIds.
+	 * 
+	 * @param recordType
+	 *            A String with the type
+	 * @param allRecordIds
+	 *            A SortedSet with all recordIds of the type, ordered by recordId
+	 * @param sort
+	 *            A {@link StorageTermSort} with the storageKey and direction to sort by
+	 * @param maxNumberOfRecordIds
+	 *            An int with the maximum number of recordIds to return
+	 * @return a list with the first maxNumberOfRecordIds of the recordIds in sorted order
+	 */
+	default List<String> sortAllRecordIdsByStorageTerm(String recordType,
+			SortedSet<String> allRecordIds, StorageTermSort sort, int maxNumberOfRecordIds) {
+		return sortRecordIdsByStorageTerm(recordType, allRecordIds, sort, maxNumberOfRecordIds);
+	}
 }
@@ -19,13 +19,21 @@
 package se.uu.ub.cora.basicstorage;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.SortedSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 import se.uu.ub.cora.data.collected.StorageTerm;
 import se.uu.ub.cora.storage.Condition;
@@ -33,201 +41,565 @@ import se.uu.ub.cora.storage.Filter;
 import se.uu.ub.cora.storage.Part;
 
 class CollectedTermsInMemoryStorage implements CollectedTermsHolder {
-	private Map<String, Map<String, Map<String, List<StorageTermData>>>> terms = new ConcurrentHashMap<>();
+	private static final int OPTIMISTIC_READS = 2;
+	/**
+	 * originalStoredStorageTerms holds the storage terms stored for each record. Apart from being
+	 * returned by {@link #getCollectTerms(String, String)} it is the reverse index used to find the
+	 * keys and values a record has in the other maps, so that removing a record only touches the
+	 * entries it owns.
+	 */
 	private Map<TypeAndId, Set<StorageTerm>> originalStoredStorageTerms = new ConcurrentHashMap<>();
+	/**
+	 * recordIdsForValues is an inverted index from recordType, storageKey and value to the records
+	 * that have a storage term with that value, used to find records matching a condition without
+	 * looking at the storage terms of each record. The records are held as their numbers from the
+	 * {@link RecordIdDictionary} of the recordType, in an {@link IdBitmap}, so that conditions and
+	 * parts are combined with bit operations.
+	 * </p>
+	 * The values for a storageKey are held in a {@link ValueIndex} that keeps them sorted, so that
+	 * prefix and range conditions are answered with one range scan.
+	 */
+	private Map<String, Map<String, ValueIndex>> recordIdsForValues = new ConcurrentHashMap<>();
+	private Map<String, RecordIdDictionary> recordIdDictionaries = new ConcurrentHashMap<>();
 
 	@Override
 	public void removePreviousCollectedStorageTerms(String recordType, String recordId) {
-		if (termsExistForRecordType(recordType)) {
-			Map<String, Map<String, List<StorageTermData>>> termsForRecordType = terms
-					.get(recordType);
-			removePreviousCollectedStorageTermsForRecordType(recordId, termsForRecordType);
+		TypeAndId typeAndId = new TypeAndId(recordType, recordId);
+		Set<StorageTerm> previousStorageTerms = originalStoredStorageTerms.remove(typeAndId);
+		if (null != previousStorageTerms) {
+			removeRecordIdFromValueIndex(recordType, recordId, previousStorageTerms);
+			recordIdDictionaries.get(recordType).release(recordId);
+		}
+	}
+
+	private void removeRecordIdFromValueIndex(String recordType, String recordId,
+			Set<StorageTerm> previousStorageTerms) {
+		int recordNumber = recordIdDictionaries.get(recordType).numberFor(recordId);
+		Map<String, ValueIndex> valueIndexForType = recordIdsForValues.get(recordType);
+		for (StorageTerm storageTerm : previousStorageTerms) {
+			ValueIndex valueIndexForKey = valueIndexForType.get(storageTerm.storageKey());
+			valueIndexForKey.remove(storageTerm.value(), recordNumber);
 		}
-		removeOriginalStoredStorageTerms(recordType, recordId);
 	}
 
-	private void removeOriginalStoredStorageTerms(String recordType, String recordId) {
+	/**
+	 * storeCollectedTerms applies the change from the previously stored storage terms of the
+	 * record to the new ones as a difference. Values only in the new terms are added to the
+	 * index before values only in the previous terms are removed, and values in both are not
+	 * touched, so a concurrent filtered read never misses a record on a value it has both before
+	 * and after the change. A record left without storage terms has its number released, see
+	 * {@link RecordIdDictionary#release(String)}.
+	 */
+	@Override
+	public void storeCollectedTerms(String recordType, String recordId,
+			Set<StorageTerm> storageTerms, String dataDivider) {
 		TypeAndId typeAndId = new TypeAndId(recordType, recordId);
-		originalStoredStorageTerms.remove(typeAndId);
+		Set<KeyAndValue> previousValues = toKeysAndValues(
+				originalStoredStorageTerms.getOrDefault(typeAndId, Collections.emptySet()));
+		Set<KeyAndValue> newValues = toKeysAndValues(storageTerms);
+		for (KeyAndValue keyAndValue : newValues) {
+			if (!previousValues.contains(keyAndValue)) {
+				addRecordIdToValueIndex(recordType, recordId, keyAndValue.storageKey(),
+						keyAndValue.value());
+			}
+		}
+		removeValuesOnlyInPrevious(recordType, recordId, previousValues, newValues);
+		storeOriginalStorageTerms(typeAndId, storageTerms);
+		if (storageTerms.isEmpty() && !previousValues.isEmpty()) {
+			recordIdDictionaries.get(recordType).release(recordId);
+		}
+	}
+
+	/**
+	 * storeCollectedTermsForNewRecords gathers the record numbers for each storageKey and value of
+	 * all records of a recordType first, and adds them to the index as one {@link IdBitmap} per
+	 * value, instead of replacing the IdBitmap of a value once for each record with the value.
+	 * The recordTypes are stored in parallel.
+	 */
+	@Override
+	public void storeCollectedTermsForNewRecords(List<RecordToCreate> recordsToCreate) {
+		Map<String, List<RecordToCreate>> recordsPerType = new HashMap<>();
+		for (RecordToCreate toCreate : recordsToCreate) {
+			recordsPerType.computeIfAbsent(toCreate.recordType(), _ -> new ArrayList<>())
+					.add(toCreate);
+		}
+		recordsPerType.entrySet().parallelStream().forEach(
+				entry -> storeCollectedTermsForNewRecordsOfType(entry.getKey(), entry.getValue()));
 	}
 
-	private boolean termsExistForRecordType(String recordType) {
-		return terms.containsKey(recordType);
+	private void storeCollectedTermsForNewRecordsOfType(String recordType,
+			List<RecordToCreate> recordsToCreate) {
+		Map<KeyAndValue, IntStream.Builder> recordNumbersForValues = new HashMap<>();
+		for (RecordToCreate toCreate : recordsToCreate) {
+			if (!toCreate.storageTerms().isEmpty()) {
+				gatherRecordNumberForValues(recordNumbersForValues, toCreate);
+			}
+		}
+		if (!recordNumbersForValues.isEmpty()) {
+			addAllToValueIndex(recordType, recordNumbersForValues);
+		}
 	}
 
-	private void removePreviousCollectedStorageTermsForRecordType(String recordId,
-			Map<String, Map<String, List<StorageTermData>>> termsForRecordType) {
-		for (Entry<String, Map<String, List<StorageTermData>>> keyEntry : termsForRecordType
-				.entrySet()) {
-			Map<String, List<StorageTermData>> termsForRecordId = keyEntry.getValue();
-			removePreviousCollectedStorageTermsForRecordId(recordId, termsForRecordId);
+	private void gatherRecordNumberForValues(
+			Map<KeyAndValue, IntStream.Builder> recordNumbersForValues, RecordToCreate toCreate) {
+		int recordNumber = recordIdDictionaries
+				.computeIfAbsent(toCreate.recordType(), _ -> new RecordIdDictionary())
+				.numberFor(toCreate.recordId());
+		for (KeyAndValue keyAndValue : toKeysAndValues(toCreate.storageTerms())) {
+			recordNumbersForValues.computeIfAbsent(keyAndValue, _ -> IntStream.builder())
+					.add(recordNumber);
 		}
+		storeOriginalStorageTerms(new TypeAndId(toCreate.recordType(), toCreate.recordId()),
+				toCreate.storageTerms());
 	}
 
-	private void removePreviousCollectedStorageTermsForRecordId(String recordId,
-			Map<String, List<StorageTermData>> termsForRecordId) {
-		List<String> idsToRemove = new ArrayList<>();
-		findIdsToRemove(recordId, termsForRecordId, idsToRemove);
-		removeStorageTermsForIds(termsForRecordId, idsToRemove);
+	private void addAllToValueIndex(String recordType,
+			Map<KeyAndValue, IntStream.Builder> recordNumbersForValues) {
+		Map<String, ValueIndex> valueIndexForType = recordIdsForValues
+				.computeIfAbsent(recordType, _ -> new ConcurrentHashMap<>());
+		recordNumbersForValues.forEach((keyAndValue, recordNumbers) -> valueIndexForType
+				.computeIfAbsent(keyAndValue.storageKey(), _ -> new ValueIndex())
+				.addAll(keyAndValue.value(), IdBitmap.ofIds(recordNumbers.build().toArray())));
+	}
+
+	private Set<KeyAndValue> toKeysAndValues(Set<StorageTerm> storageTerms) {
+		Set<KeyAndValue> keysAndValues = new HashSet<>(storageTerms.size());
+		for (StorageTerm storageTerm : storageTerms) {
+			keysAndValues.add(new KeyAndValue(storageTerm.storageKey(), storageTerm.value()));
+		}
+		return keysAndValues;
 	}
 
-	private void findIdsToRemove(String recordId,
-			Map<String, List<StorageTermData>> termsForRecordId, List<String> idsToRemove) {
-		for (Entry<String, List<StorageTermData>> recordIdEntry : termsForRecordId.entrySet()) {
-			if (termsExistForRecordId(recordId, recordIdEntry)) {
-				idsToRemove.add(recordIdEntry.getKey());
+	private void removeValuesOnlyInPrevious(String recordType, String recordId,
+			Set<KeyAndValue> previousValues, Set<KeyAndValue> newValues) {
+		for (KeyAndValue keyAndValue : previousValues) {
+			if (!newValues.contains(keyAndValue)) {
+				int recordNumber = recordIdDictionaries.get(recordType).numberFor(recordId);
+				recordIdsForValues.get(recordType).get(keyAndValue.storageKey())
+						.remove(keyAndValue.value(), recordNumber);
 			}
 		}
 	}
 
-	private void removeStorageTermsForIds(Map<String, List<StorageTermData>> termsForRecordId,
-			List<String> idsToRemove) {
-		for (String key : idsToRemove) {
-			termsForRecordId.remove(key);
+	private void storeOriginalStorageTerms(TypeAndId typeAndId, Set<StorageTerm> storageTerms) {
+		if (storageTerms.isEmpty()) {
+			originalStoredStorageTerms.remove(typeAndId);
+		} else {
+			originalStoredStorageTerms.put(typeAndId, Set.copyOf(storageTerms));
 		}
 	}
 
-	private boolean termsExistForRecordId(String recordId,
-			Entry<String, List<StorageTermData>> recordIdEntry) {
-		return recordIdEntry.getKey().equals(recordId);
+	private void addRecordIdToValueIndex(String recordType, String recordId, String storageKey,
+			String termValue) {
+		int recordNumber = recordIdDictionaries
+				.computeIfAbsent(recordType, _ -> new RecordIdDictionary()).numberFor(recordId);
+		ValueIndex valueIndexForKey = recordIdsForValues
+				.computeIfAbsent(recordType, _ -> new ConcurrentHashMap<>())
+				.computeIfAbsent(storageKey, _ -> new ValueIndex());
+		valueIndexForKey.add(termValue, recordNumber);
 	}
 
 	@Override
-	public void storeCollectedTerms(String recordType, String recordId,
-			Set<StorageTerm> storageTerms, String dataDivider) {
-		removePreviousCollectedStorageTerms(recordType, recordId);
-		for (StorageTerm storageTerm : storageTerms) {
-			storeCollectedStorageTerm(recordType, recordId, dataDivider, storageTerm);
+	public List<String> findRecordIdsForFilter(String type, Filter filter) {
+		if (noStorageTermsExistForRecordType(type)) {
+			return Collections.emptyList();
 		}
-		storeOriginalStorageTerms(recordType, recordId, storageTerms);
+		return readWithoutReusedNumbers(type, () -> convertToSortedRecordIds(type,
+				getRecordNumbersForTypeAndFilter(type, filter)));
 	}
 
-	private void storeOriginalStorageTerms(String recordType, String recordId,
-			Set<StorageTerm> storageTerms) {
-		TypeAndId typeAndId = new TypeAndId(recordType, recordId);
-		originalStoredStorageTerms.remove(typeAndId);
-		if (!storageTerms.isEmpty()) {
-			originalStoredStorageTerms.put(typeAndId, storageTerms);
+	/**
+	 * readWithoutReusedNumbers runs the read again if a number of a removed record was released or
+	 * reused while it ran, as the read could then have turned a number it found for the removed
+	 * record into no recordId or the recordId of the record given the number, see
+	 * {@link RecordIdDictionary}. After {@value #OPTIMISTIC_READS} failed reads the read is run
+	 * while numbers are kept from being released or reused, so that a reader is not starved by
+	 * frequent removes.
+	 */
+	private <T> T readWithoutReusedNumbers(String type, Supplier<T> read) {
+		RecordIdDictionary recordIdDictionary = recordIdDictionaries.get(type);
+		if (null == recordIdDictionary) {
+			return read.get();
+		}
+		for (int i = 0; i < OPTIMISTIC_READS; i++) {
+			long stamp = recordIdDictionary.startReading();
+			T result = read.get();
+			if (recordIdDictionary.noNumberChangedSince(stamp)) {
+				return result;
+			}
+		}
+		return readWhileNumbersAreLocked(recordIdDictionary, read);
+	}
+
+	private <T> T readWhileNumbersAreLocked(RecordIdDictionary recordIdDictionary,
+			Supplier<T> read) {
+		long stamp = recordIdDictionary.lockForReading();
+		try {
+			return read.get();
+		} finally {
+			recordIdDictionary.unlockForReading(stamp);
 		}
 	}
 
-	private void storeCollectedStorageTerm(String recordType, String recordId, String dataDivider,
-			StorageTerm storageTerm) {
-		String storageKey = storageTerm.storageKey();
-		String termValue = storageTerm.value();
+	@Override
+	public long countRecordIdsForFilter(String type, Filter filter) {
+		if (noStorageTermsExistForRecordType(type)) {
+			return 0;
+		}
+		return getRecordNumbersForTypeAndFilter(type, filter).cardinality();
+	}
 
-		List<StorageTermData> listOfStorageTermData = ensureStorageListExistsForTermForTypeAndKeyAndId(
-				recordType, storageKey, recordId);
+	@Override
+	public List<String> findRecordIdsForFilterAndConditions(String type, Filter filter,
+			List<StorageTermCondition> conditions) {
+		if (noStorageTermsExistForRecordType(type)) {
+			return Collections.emptyList();
+		}
+		return readWithoutReusedNumbers(type,
+				() -> findRecordIdsMatchingFilterAndConditions(type, filter, conditions));
+	}
 
-		listOfStorageTermData.add(StorageTermData.withValueAndDataDivider(termValue, dataDivider));
+	private List<String> findRecordIdsMatchingFilterAndConditions(String type, Filter filter,
+			List<StorageTermCondition> conditions) {
+		IdBitmap foundRecordNumbers = null;
+		if (!filter.include.isEmpty()) {
+			foundRecordNumbers = getRecordNumbersMatchingAnyIncludedPart(type, filter.include);
+		}
+		for (StorageTermCondition condition : conditions) {
+			foundRecordNumbers = intersect(foundRecordNumbers,
+					findRecordNumbersMatchingStorageTermCondition(type, condition));
+			if (foundRecordNumbers.isEmpty()) {
+				return Collections.emptyList();
+			}
+		}
+		IdBitmap recordNumbersNotExcluded = removeExcludedRecordNumbers(type, filter,
+				null == foundRecordNumbers ? IdBitmap.EMPTY : foundRecordNumbers);
+		return convertToSortedRecordIds(type, recordNumbersNotExcluded);
 	}
 
-	private List<StorageTermData> ensureStorageListExistsForTermForTypeAndKeyAndId(
-			String recordType, String storageKey, String recordId) {
-		ensureStorageMapExistsForRecordType(recordType);
-		Map<String, Map<String, List<StorageTermData>>> storageKeysForType = terms.get(recordType);
-		ensureStorageListExistsForTermKey(storageKey, storageKeysForType);
-		ensureStorageListExistsForId(storageKey, recordId, storageKeysForType);
-		return storageKeysForType.get(storageKey).get(recordId);
+	/**
+	 * recordMatches checks the storage terms stored for the record directly, without the value
+	 * index, as it is called for each record on a page.
+	 */
+	@Override
+	public boolean recordMatches(String type, String recordId, Filter filter,
+			List<StorageTermCondition> conditions) {
+		Set<StorageTerm> storageTerms = getCollectTerms(type, recordId);
+		Set<KeyAndValue> keysAndValues = toKeysAndValues(storageTerms);
+		return (filter.include.isEmpty() || anyPartMatches(keysAndValues, filter.include))
+				&& !anyPartMatches(keysAndValues, filter.exclude)
+				&& allStorageTermConditionsMatch(storageTerms, conditions);
 	}
 
-	private void ensureStorageMapExistsForRecordType(String recordType) {
-		if (storageTermExistsForRecordType(recordType)) {
-			terms.put(recordType, new ConcurrentHashMap<>());
+	private boolean anyPartMatches(Set<KeyAndValue> keysAndValues, List<Part> parts) {
+		for (Part part : parts) {
+			if (allConditionsInPartMatch(keysAndValues, part.conditions)) {
+				return true;
+			}
 		}
+		return false;
 	}
 
-	private void ensureStorageListExistsForTermKey(String storageKey,
-			Map<String, Map<String, List<StorageTermData>>> storageKeysForType) {
-		if (!storageKeysForType.containsKey(storageKey)) {
-			ConcurrentHashMap<String, List<StorageTermData>> mapOfIds = new ConcurrentHashMap<>();
-			storageKeysForType.put(storageKey, mapOfIds);
+	private boolean allConditionsInPartMatch(Set<KeyAndValue> keysAndValues,
+			List<Condition> conditionsInPart) {
+		for (Condition condition : conditionsInPart) {
+			if (!keysAndValues.contains(new KeyAndValue(condition.key(), condition.value()))) {
+				return false;
+			}
 		}
+		return true;
 	}
 
-	private void ensureStorageListExistsForId(String storageKey, String recordId,
-			Map<String, Map<String, List<StorageTermData>>> storageKeysForType) {
-		if (!storageKeysForType.get(storageKey).containsKey(recordId)) {
-			storageKeysForType.get(storageKey).put(recordId, new ArrayList<>());
+	private boolean allStorageTermConditionsMatch(Set<StorageTerm> storageTerms,
+			List<StorageTermCondition> conditions) {
+		for (StorageTermCondition condition : conditions) {
+			if (!anyStorageTermMatches(storageTerms, condition)) {
+				return false;
+			}
 		}
+		return true;
 	}
 
-	@Override
-	public List<String> findRecordIdsForFilter(String type, Filter filter) {
-		if (storageTermExistsForRecordType(type)) {
-			return Collections.emptyList();
+	private boolean anyStorageTermMatches(Set<StorageTerm> storageTerms,
+			StorageTermCondition condition) {
+		for (StorageTerm storageTerm : storageTerms) {
+			if (storageTerm.storageKey().equals(condition.storageKey())
+					&& valueMatches(storageTerm.value(), condition)) {
+				return true;
+			}
 		}
-		return getRecordIdsForTypeAndFilter(type, filter);
+		return false;
 	}
 
-	private List<String> getRecordIdsForTypeAndFilter(String type, Filter filter) {
-		Part firstPart = filter.include.get(0);
-		List<Condition> conditionsInPart = firstPart.conditions;
+	private boolean valueMatches(String value, StorageTermCondition condition) {
+		return switch (condition.operator()) {
+			case STARTING_WITH -> value.startsWith(condition.value());
+			case BETWEEN -> ValueIndex.valueIsInRange(value, condition.value(),
+					condition.toValue());
+		};
+	}
 
-		return getRecordIdsForConditionsInPart(type, conditionsInPart);
+	private IdBitmap findRecordNumbersMatchingStorageTermCondition(String type,
+			StorageTermCondition condition) {
+		ValueIndex valueIndexForKey = recordIdsForValues.get(type).get(condition.storageKey());
+		if (null == valueIndexForKey) {
+			return IdBitmap.EMPTY;
+		}
+		return switch (condition.operator()) {
+			case STARTING_WITH ->
+				valueIndexForKey.findRecordNumbersWithValueStartingWith(condition.value());
+			case BETWEEN ->
+				valueIndexForKey.findRecordNumbersInRange(condition.value(), condition.toValue());
+		};
 	}
 
-	private List<String> getRecordIdsForConditionsInPart(String type,
-			List<Condition> conditionsInPart) {
-		Set<String> foundRecordIds = new HashSet<>();
+	private IdBitmap getRecordNumbersForTypeAndFilter(String type, Filter filter) {
+		IdBitmap foundRecordNumbers = getRecordNumbersMatchingAnyIncludedPart(type,
+				filter.include);
+		return removeExcludedRecordNumbers(type, filter, foundRecordNumbers);
+	}
+
+	private IdBitmap removeExcludedRecordNumbers(String type, Filter filter,
+			IdBitmap foundRecordNumbers) {
+		IdBitmap recordNumbersNotExcluded = foundRecordNumbers;
+		for (Part excludedPart : filter.exclude) {
+			if (recordNumbersNotExcluded.isEmpty()) {
+				return recordNumbersNotExcluded;
+			}
+			recordNumbersNotExcluded = recordNumbersNotExcluded
+					.andNot(getRecordNumbersForConditionsInPart(type, excludedPart.conditions));
+		}
+		return recordNumbersNotExcluded;
+	}
+
+	private IdBitmap getRecordNumbersMatchingAnyIncludedPart(String type,
+			List<Part> includedParts) {
+		IdBitmap foundRecordNumbers = IdBitmap.EMPTY;
+		for (Part includedPart : includedParts) {
+			foundRecordNumbers = foundRecordNumbers
+					.or(getRecordNumbersForConditionsInPart(type, includedPart.conditions));
+		}
+		return foundRecordNumbers;
+	}
 
+	/**
+	 * getRecordNumbersForConditionsInPart plans the evaluation of the conditions in a part, using
+	 * the number of records for each value as statistics. The values are looked up first and then
+	 * intersected starting with the one matching fewest records, and the evaluation stops as soon
+	 * as a condition matches no records.
+	 */
+	private IdBitmap getRecordNumbersForConditionsInPart(String type,
+			List<Condition> conditionsInPart) {
+		List<IdBitmap> recordNumbersForValues = new ArrayList<>(conditionsInPart.size());
 		for (Condition condition : conditionsInPart) {
-			List<String> foundForThisContidition = findRecordIdsMatchingFilterCondition(type,
-					condition);
-			if (isFirstCondition(condition, conditionsInPart)) {
-				foundRecordIds.addAll(foundForThisContidition);
-			} else {
-				foundRecordIds.retainAll(foundForThisContidition);
+			ValueIndex valueIndexForKey = recordIdsForValues.get(type).get(condition.key());
+			if (null == valueIndexForKey) {
+				return IdBitmap.EMPTY;
+			}
+			IdBitmap recordNumbers = valueIndexForKey.findRecordNumbersWithValue(condition.value());
+			if (recordNumbers.isEmpty()) {
+				return IdBitmap.EMPTY;
+			}
+			recordNumbersForValues.add(recordNumbers);
+		}
+		recordNumbersForValues.sort(Comparator.comparingInt(IdBitmap::cardinality));
+		return intersectStartingWithMostSelective(recordNumbersForValues);
+	}
+
+	private IdBitmap intersectStartingWithMostSelective(List<IdBitmap> recordNumbersForValues) {
+		IdBitmap foundRecordNumbers = null;
+		for (IdBitmap recordNumbers : recordNumbersForValues) {
+			foundRecordNumbers = intersect(foundRecordNumbers, recordNumbers);
+			if (foundRecordNumbers.isEmpty()) {
+				return foundRecordNumbers;
 			}
 		}
-		return convertSetToList(foundRecordIds);
+		return null == foundRecordNumbers ? IdBitmap.EMPTY : foundRecordNumbers;
 	}
 
-	private ArrayList<String> convertSetToList(Set<String> foundRecordIds) {
-		return new ArrayList<>(foundRecordIds);
+	private IdBitmap intersect(IdBitmap foundRecordNumbers, IdBitmap recordNumbers) {
+		if (null == foundRecordNumbers) {
+			return recordNumbers;
+		}
+		return foundRecordNumbers.and(recordNumbers);
+	}
+
+	private List<String> convertToSortedRecordIds(String type, IdBitmap recordNumbers) {
+		RecordIdDictionary recordIdDictionary = recordIdDictionaries.get(type);
+		List<String> sortedRecordIds = new ArrayList<>(recordNumbers.cardinality());
+		recordNumbers.forEach(recordNumber -> addIfNotReleased(sortedRecordIds,
+				recordIdDictionary.recordIdFor(recordNumber)));
+		Collections.sort(sortedRecordIds);
+		return sortedRecordIds;
+	}
+
+	/**
+	 * addIfNotReleased skips numbers released while they were read, they give no recordId and the
+	 * read is run again by {@link #readWithoutReusedNumbers(String, Supplier)}.
+	 */
+	private void addIfNotReleased(List<String> recordIds, String recordId) {
+		if (null != recordId) {
+			recordIds.add(recordId);
+		}
+	}
+
+	private boolean noStorageTermsExistForRecordType(String type) {
+		return !recordIdsForValues.containsKey(type);
+	}
+
+	@Override
+	public List<String> sortRecordIdsByStorageTerm(String type, Collection<String> recordIds,
+			StorageTermSort sort, int maxNumberOfRecordIds) {
+		return readWithoutReusedNumbers(type,
+				() -> sortRecordIdsByValue(type, recordIds, sort, maxNumberOfRecordIds));
+	}
+
+	private List<String> sortRecordIdsByValue(String type, Collection<String> recordIds,
+			StorageTermSort sort, int maxNumberOfRecordIds) {
+		List<String> sortedRecordIds = new ArrayList<>(
+				Math.min(recordIds.size(), maxNumberOfRecordIds));
+		ValueIndex valueIndexForKey = getValueIndexForKey(type, sort.storageKey());
+		BitSet sortedRecordNumbers = new BitSet();
+		if (null != valueIndexForKey) {
+			BitSet recordNumbersToSort = convertToRecordNumbers(type, recordIds);
+			addRecordIdsInValueOrder(type, valueIndexForKey, sort, maxNumberOfRecordIds,
+					recordNumbersToSort, sortedRecordNumbers, sortedRecordIds);
+		}
+		addRecordIdsWithoutValue(type, recordIds, maxNumberOfRecordIds, sortedRecordNumbers,
+				sortedRecordIds);
+		return limitToMaxNumber(sortedRecordIds, maxNumberOfRecordIds);
 	}
 
-	private boolean isFirstCondition(Condition condition, List<Condition> conditionsInPart) {
-		return condition == conditionsInPart.get(0);
+	/**
+	 * The value index of the storageKey is walked in value order until maxNumberOfRecordIds
+	 * recordIds are found, so the time taken depends on the size of the page and not on the number
+	 * of records of the type. Only when all records with a value are sorted are the records
+	 * without a value added, in recordId order, again stopping when the page is full.
+	 */
+	@Override
+	public List<String> sortAllRecordIdsByStorageTerm(String type,
+			SortedSet<String> allRecordIds, StorageTermSort sort, int maxNumberOfRecordIds) {
+		return readWithoutReusedNumbers(type,
+				() -> sortFirstRecordIdsByValue(type, allRecordIds, sort, maxNumberOfRecordIds));
 	}
 
-	private boolean storageTermExistsForRecordType(String type) {
-		return !terms.containsKey(type);
+	private List<String> sortFirstRecordIdsByValue(String type, SortedSet<String> allRecordIds,
+			StorageTermSort sort, int maxNumberOfRecordIds) {
+		List<String> sortedRecordIds = new ArrayList<>();
+		Set<String> recordIdsInPage = new HashSet<>();
+		ValueIndex valueIndexForKey = getValueIndexForKey(type, sort.storageKey());
+		if (null != valueIndexForKey) {
+			addFirstRecordIdsInValueOrder(type, valueIndexForKey, sort, maxNumberOfRecordIds,
+					allRecordIds, recordIdsInPage, sortedRecordIds);
+		}
+		addFirstRecordIdsWithoutValue(allRecordIds, maxNumberOfRecordIds, recordIdsInPage,
+				sortedRecordIds);
+		return limitToMaxNumber(sortedRecordIds, maxNumberOfRecordIds);
 	}
 
-	private List<String> findRecordIdsMatchingFilterCondition(String type, Condition condition) {
-		String key = condition.key();
-		String value = condition.value();
-		Map<String, Map<String, List<StorageTermData>>> storageTermsForRecordType = terms.get(type);
+	private void addFirstRecordIdsInValueOrder(String type, ValueIndex valueIndexForKey,
+			StorageTermSort sort, int maxNumberOfRecordIds, Set<String> allRecordIds,
+			Set<String> recordIdsInPage, List<String> sortedRecordIds) {
+		RecordIdDictionary recordIdDictionary = recordIdDictionaries.get(type);
+		Iterator<IdBitmap> recordNumbersInValueOrder = valueIndexForKey
+				.recordNumbersInValueOrder(sort.descending()).iterator();
+		while (sortedRecordIds.size() < maxNumberOfRecordIds
+				&& recordNumbersInValueOrder.hasNext()) {
+			FirstRecordIds recordIdsWithSameValue = new FirstRecordIds(
+					maxNumberOfRecordIds - sortedRecordIds.size());
+			recordNumbersInValueOrder.next().forEach(recordNumber -> {
+				String recordId = recordIdDictionary.recordIdFor(recordNumber);
+				if (null != recordId && allRecordIds.contains(recordId)
+						&& recordIdsInPage.add(recordId)) {
+					recordIdsWithSameValue.offer(recordId);
+				}
+			});
+			sortedRecordIds.addAll(recordIdsWithSameValue.inRecordIdOrder());
+		}
+	}
 
-		Map<String, List<StorageTermData>> mapOfIdsAndStorageTermForTypeAndKey = storageTermsForRecordType
-				.get(key);
-		if (null != mapOfIdsAndStorageTermForTypeAndKey) {
-			return findRecordIdsMatchingValueForKey(value, mapOfIdsAndStorageTermForTypeAndKey);
+	private void addFirstRecordIdsWithoutValue(SortedSet<String> allRecordIds,
+			int maxNumberOfRecordIds, Set<String> recordIdsInPage, List<String> sortedRecordIds) {
+		Iterator<String> recordIdsInOrder = allRecordIds.iterator();
+		while (sortedRecordIds.size() < maxNumberOfRecordIds && recordIdsInOrder.hasNext()) {
+			String recordId = recordIdsInOrder.next();
+			if (!recordIdsInPage.contains(recordId)) {
+				sortedRecordIds.add(recordId);
+			}
 		}
-		return Collections.emptyList();
 	}
 
-	private List<String> findRecordIdsMatchingValueForKey(String value,
-			Map<String, List<StorageTermData>> mapOfIdsAndStorageTermForTypeAndKey) {
-		List<String> foundRecordIdsForKey = new ArrayList<>();
+	private ValueIndex getValueIndexForKey(String type, String storageKey) {
+		Map<String, ValueIndex> valueIndexForType = recordIdsForValues.get(type);
+		if (null == valueIndexForType) {
+			return null;
+		}
+		return valueIndexForType.get(storageKey);
+	}
 
-		for (Entry<String, List<StorageTermData>> entry : mapOfIdsAndStorageTermForTypeAndKey
-				.entrySet()) {
-			findRecordIdsMatchingValueForId(value, foundRecordIdsForKey, entry);
+	private BitSet convertToRecordNumbers(String type, Collection<String> recordIds) {
+		RecordIdDictionary recordIdDictionary = recordIdDictionaries.get(type);
+		BitSet recordNumbers = new BitSet();
+		for (String recordId : recordIds) {
+			int recordNumber = recordIdDictionary.existingNumberFor(recordId);
+			if (recordNumber != RecordIdDictionary.NO_NUMBER) {
+				recordNumbers.set(recordNumber);
+			}
 		}
+		return recordNumbers;
+	}
 
-		return foundRecordIdsForKey;
+	private void addRecordIdsInValueOrder(String type, ValueIndex valueIndexForKey,
+			StorageTermSort sort, int maxNumberOfRecordIds, BitSet recordNumbersToSort,
+			BitSet sortedRecordNumbers, List<String> sortedRecordIds) {
+		RecordIdDictionary recordIdDictionary = recordIdDictionaries.get(type);
+		Iterator<IdBitmap> recordNumbersInValueOrder = valueIndexForKey
+				.recordNumbersInValueOrder(sort.descending()).iterator();
+		while (sortedRecordIds.size() < maxNumberOfRecordIds
+				&& recordNumbersInValueOrder.hasNext()) {
+			FirstRecordIds recordIdsWithSameValue = new FirstRecordIds(
+					maxNumberOfRecordIds - sortedRecordIds.size());
+			recordNumbersInValueOrder.next().forEach(recordNumber -> {
+				if (recordNumbersToSort.get(recordNumber)
+						&& !sortedRecordNumbers.get(recordNumber)) {
+					sortedRecordNumbers.set(recordNumber);
+					recordIdsWithSameValue.offer(recordIdDictionary.recordIdFor(recordNumber));
+				}
+			});
+			sortedRecordIds.addAll(recordIdsWithSameValue.inRecordIdOrder());
+		}
 	}
 
-	private void findRecordIdsMatchingValueForId(String value, List<String> foundRecordIdsForKey,
-			Entry<String, List<StorageTermData>> entry) {
-		String key = entry.getKey();
-		for (StorageTermData storageTermData : entry.getValue()) {
-			if (storageTermData.value.equals(value)) {
-				foundRecordIdsForKey.add(key);
+	private void addRecordIdsWithoutValue(String type, Collection<String> recordIds,
+			int maxNumberOfRecordIds, BitSet sortedRecordNumbers, List<String> sortedRecordIds) {
+		if (sortedRecordIds.size() >= maxNumberOfRecordIds) {
+			return;
+		}
+		List<String> recordIdsWithoutValue = new ArrayList<>();
+		for (String recordId : recordIds) {
+			if (!isSorted(type, recordId, sortedRecordNumbers)) {
+				recordIdsWithoutValue.add(recordId);
 			}
 		}
+		Collections.sort(recordIdsWithoutValue);
+		sortedRecordIds.addAll(recordIdsWithoutValue);
+	}
+
+	private boolean isSorted(String type, String recordId, BitSet sortedRecordNumbers) {
+		RecordIdDictionary recordIdDictionary = recordIdDictionaries.get(type);
+		if (null == recordIdDictionary) {
+			return false;
+		}
+		int recordNumber = recordIdDictionary.existingNumberFor(recordId);
+		return recordNumber != RecordIdDictionary.NO_NUMBER
+				&& sortedRecordNumbers.get(recordNumber);
+	}
+
+	private List<String> limitToMaxNumber(List<String> sortedRecordIds, int maxNumberOfRecordIds) {
+		if (sortedRecordIds.size() > maxNumberOfRecordIds) {
+			return sortedRecordIds.subList(0, maxNumberOfRecordIds);
+		}
+		return sortedRecordIds;
 	}
 
 	@Override
@@ -240,7 +612,45 @@ class CollectedTermsInMemoryStorage implements CollectedTermsHolder {
 		return originalStoredStorageTerms;
 	}
 
+	/**
+	 * FirstRecordIds keeps the first recordIds, in recordId order, of the recordIds offered to it,
+	 * in a heap bounded by the number of recordIds to keep, so that only the recordIds that fit on
+	 * the page are sorted when many records have the same value. The recordIds that are not kept
+	 * are still marked as found by the callers, which is harmless as the page is full once any
+	 * recordId has been dropped.
+	 */
+	private static final class FirstRecordIds {
+		private final int numberToKeep;
+		private final PriorityQueue<String> keptWithLastFirst = new PriorityQueue<>(
+				Comparator.reverseOrder());
+
+		FirstRecordIds(int numberToKeep) {
+			this.numberToKeep = numberToKeep;
+		}
+
+		void offer(String recordId) {
+			if (null == recordId) {
+				return;
+			}
+			if (keptWithLastFirst.size() < numberToKeep) {
+				keptWithLastFirst.add(recordId);
+			} else if (recordId.compareTo(keptWithLastFirst.peek()) < 0) {
+				keptWithLastFirst.poll();
+				keptWithLastFirst.add(recordId);
+			}
+		}
+
+		List<String> inRecordIdOrder() {
+			List<String> recordIds = new ArrayList<>(keptWithLastFirst);
+			Collections.sort(recordIds);
+			return recordIds;
+		}
+	}
+
 }
 
 record TypeAndId(String type, String id) {
+}
+
+record KeyAndValue(String storageKey, String value) {
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * DataDividerIndex holds the recordIds of the records in each dataDivider, per recordType, so that
+ * the records of a recordType in one dataDivider can be listed without looking at all records of
+ * the type.
+ * </p>
+ * The recordIds are kept sorted, in the same order as records are listed by
+ * {@link RecordStorageInMemory}. Sets for a dataDivider and recordType are kept also when their
+ * last recordId is removed, so that a concurrent add never adds to a set that is no longer in the
+ * index.
+ */
+final class DataDividerIndex {
+	private final Map<String, Map<String, NavigableSet<String>>> recordIdsForDataDividers = new ConcurrentHashMap<>();
+
+	void add(String dataDivider, String recordType, String recordId) {
+		recordIdsForDataDividers.computeIfAbsent(dataDivider, _ -> new ConcurrentHashMap<>())
+				.computeIfAbsent(recordType, _ -> new ConcurrentSkipListSet<>()).add(recordId);
+	}
+
+	void remove(String dataDivider, String recordType, String recordId) {
+		recordIdsFor(dataDivider, recordType).remove(recordId);
+	}
+
+	void move(String recordType, String recordId, String fromDataDivider, String toDataDivider) {
+		if (!fromDataDivider.equals(toDataDivider)) {
+			add(toDataDivider, recordType, recordId);
+			remove(fromDataDivider, recordType, recordId);
+		}
+	}
+
+	NavigableSet<String> recordIdsFor(String dataDivider, String recordType) {
+		Map<String, NavigableSet<String>> recordTypesForDataDivider = recordIdsForDataDividers
+				.get(dataDivider);
+		if (null == recordTypesForDataDivider) {
+			return Collections.emptyNavigableSet();
+		}
+		return recordTypesForDataDivider.getOrDefault(recordType,
+				Collections.emptyNavigableSet());
+	}
+}
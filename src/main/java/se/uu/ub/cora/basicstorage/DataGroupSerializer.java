@@ -0,0 +1,259 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import se.uu.ub.cora.data.DataAtomic;
+import se.uu.ub.cora.data.DataAttribute;
+import se.uu.ub.cora.data.DataChild;
+import se.uu.ub.cora.data.DataGroup;
+import se.uu.ub.cora.data.DataProvider;
+import se.uu.ub.cora.data.DataRecordLink;
+import se.uu.ub.cora.data.DataResourceLink;
+import se.uu.ub.cora.data.collected.Link;
+import se.uu.ub.cora.data.collected.StorageTerm;
+
+/**
+ * DataGroupSerializer writes DataGroups to a compact binary form and reads them back, used to
+ * persist records stored in {@link RecordStorageInMemory}.
+ * </p>
+ * Each data element is written as a one byte tag, followed by its nameInData, its values, its
+ * attributes and its repeatId. Groups are followed by their children. Strings are written as their
+ * length followed by their UTF-8 bytes, so values of any length can be written. Read elements are
+ * created using {@link DataProvider}.
+ * </p>
+ * The storage terms and links collected for a record are written as their number followed by the
+ * strings of each term or link.
+ */
+final class DataGroupSerializer {
+	private static final byte GROUP = 1;
+	private static final byte ATOMIC = 2;
+	private static final byte RECORD_LINK = 3;
+	private static final byte RESOURCE_LINK = 4;
+	private static final int NO_STRING = -1;
+
+	void writeDataGroup(DataOutput out, DataGroup dataGroup) throws IOException {
+		writeChild(out, dataGroup);
+	}
+
+	private void writeChild(DataOutput out, DataChild dataChild) throws IOException {
+		if (dataChild instanceof DataRecordLink recordLink) {
+			writeRecordLink(out, recordLink);
+		} else if (dataChild instanceof DataResourceLink resourceLink) {
+			writeResourceLink(out, resourceLink);
+		} else if (dataChild instanceof DataGroup dataGroup) {
+			writeGroup(out, dataGroup);
+		} else if (dataChild instanceof DataAtomic dataAtomic) {
+			writeAtomic(out, dataAtomic);
+		} else {
+			throw DataStorageException.withMessage(
+					"Could not serialize data child of type: " + dataChild.getClass().getName());
+		}
+	}
+
+	private void writeRecordLink(DataOutput out, DataRecordLink recordLink) throws IOException {
+		out.writeByte(RECORD_LINK);
+		writeString(out, recordLink.getNameInData());
+		writeString(out, recordLink.getLinkedRecordType());
+		writeString(out, recordLink.getLinkedRecordId());
+		writeAttributesAndRepeatId(out, recordLink);
+	}
+
+	private void writeResourceLink(DataOutput out, DataResourceLink resourceLink)
+			throws IOException {
+		out.writeByte(RESOURCE_LINK);
+		writeString(out, resourceLink.getNameInData());
+		writeString(out, resourceLink.getType());
+		writeString(out, resourceLink.getId());
+		writeString(out, resourceLink.getMimeType());
+		writeAttributesAndRepeatId(out, resourceLink);
+	}
+
+	private void writeGroup(DataOutput out, DataGroup dataGroup) throws IOException {
+		out.writeByte(GROUP);
+		writeString(out, dataGroup.getNameInData());
+		writeAttributesAndRepeatId(out, dataGroup);
+		Collection<DataChild> children = dataGroup.getChildren();
+		out.writeInt(children.size());
+		for (DataChild child : children) {
+			writeChild(out, child);
+		}
+	}
+
+	private void writeAtomic(DataOutput out, DataAtomic dataAtomic) throws IOException {
+		out.writeByte(ATOMIC);
+		writeString(out, dataAtomic.getNameInData());
+		writeString(out, dataAtomic.getValue());
+		writeAttributesAndRepeatId(out, dataAtomic);
+	}
+
+	private void writeAttributesAndRepeatId(DataOutput out, DataChild dataChild)
+			throws IOException {
+		writeAttributes(out, dataChild);
+		writeString(out, dataChild.hasRepeatId() ? dataChild.getRepeatId() : null);
+	}
+
+	private void writeAttributes(DataOutput out, DataChild dataChild) throws IOException {
+		if (!dataChild.hasAttributes()) {
+			out.writeInt(0);
+			return;
+		}
+		Collection<DataAttribute> attributes = dataChild.getAttributes();
+		out.writeInt(attributes.size());
+		for (DataAttribute attribute : attributes) {
+			writeString(out, attribute.getNameInData());
+			writeString(out, attribute.getValue());
+		}
+	}
+
+	void writeString(DataOutput out, String value) throws IOException {
+		if (null == value) {
+			out.writeInt(NO_STRING);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	DataGroup readDataGroup(DataInput in) throws IOException {
+		DataChild dataChild = readChild(in);
+		if (dataChild instanceof DataGroup dataGroup) {
+			return dataGroup;
+		}
+		throw DataStorageException.withMessage("Serialized data does not start with a group");
+	}
+
+	private DataChild readChild(DataInput in) throws IOException {
+		byte tag = in.readByte();
+		return switch (tag) {
+			case GROUP -> readGroup(in);
+			case ATOMIC -> readAtomic(in);
+			case RECORD_LINK -> readRecordLink(in);
+			case RESOURCE_LINK -> readResourceLink(in);
+			default -> throw DataStorageException
+					.withMessage("Could not deserialize data child with tag: " + tag);
+		};
+	}
+
+	private DataGroup readGroup(DataInput in) throws IOException {
+		DataGroup dataGroup = DataProvider.createGroupUsingNameInData(readString(in));
+		readAttributesAndRepeatId(in, dataGroup);
+		int numberOfChildren = in.readInt();
+		for (int i = 0; i < numberOfChildren; i++) {
+			dataGroup.addChild(readChild(in));
+		}
+		return dataGroup;
+	}
+
+	private DataAtomic readAtomic(DataInput in) throws IOException {
+		String nameInData = readString(in);
+		String value = readString(in);
+		DataAtomic dataAtomic = DataProvider.createAtomicUsingNameInDataAndValue(nameInData,
+				value);
+		readAttributesAndRepeatId(in, dataAtomic);
+		return dataAtomic;
+	}
+
+	private DataRecordLink readRecordLink(DataInput in) throws IOException {
+		String nameInData = readString(in);
+		String linkedRecordType = readString(in);
+		String linkedRecordId = readString(in);
+		DataRecordLink recordLink = DataProvider.createRecordLinkUsingNameInDataAndTypeAndId(
+				nameInData, linkedRecordType, linkedRecordId);
+		readAttributesAndRepeatId(in, recordLink);
+		return recordLink;
+	}
+
+	private DataResourceLink readResourceLink(DataInput in) throws IOException {
+		String nameInData = readString(in);
+		String type = readString(in);
+		String id = readString(in);
+		String mimeType = readString(in);
+		DataResourceLink resourceLink = DataProvider
+				.createResourceLinkUsingNameInDataAndTypeAndIdAndMimeType(nameInData, type, id,
+						mimeType);
+		readAttributesAndRepeatId(in, resourceLink);
+		return resourceLink;
+	}
+
+	private void readAttributesAndRepeatId(DataInput in, DataChild dataChild) throws IOException {
+		int numberOfAttributes = in.readInt();
+		for (int i = 0; i < numberOfAttributes; i++) {
+			String nameInData = readString(in);
+			dataChild.addAttributeByIdWithValue(nameInData, readString(in));
+		}
+		String repeatId = readString(in);
+		if (null != repeatId) {
+			dataChild.setRepeatId(repeatId);
+		}
+	}
+
+	String readString(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length == NO_STRING) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	void writeStorageTerms(DataOutput out, Set<StorageTerm> storageTerms) throws IOException {
+		out.writeInt(storageTerms.size());
+		for (StorageTerm storageTerm : storageTerms) {
+			writeString(out, storageTerm.id());
+			writeString(out, storageTerm.storageKey());
+			writeString(out, storageTerm.value());
+		}
+	}
+
+	Set<StorageTerm> readStorageTerms(DataInput in) throws IOException {
+		int numberOfStorageTerms = in.readInt();
+		Set<StorageTerm> storageTerms = new HashSet<>(numberOfStorageTerms);
+		for (int i = 0; i < numberOfStorageTerms; i++) {
+			storageTerms.add(new StorageTerm(readString(in), readString(in), readString(in)));
+		}
+		return storageTerms;
+	}
+
+	void writeLinks(DataOutput out, Set<Link> links) throws IOException {
+		out.writeInt(links.size());
+		for (Link link : links) {
+			writeString(out, link.type());
+			writeString(out, link.id());
+		}
+	}
+
+	Set<Link> readLinks(DataInput in) throws IOException {
+		int numberOfLinks = in.readInt();
+		Set<Link> links = new HashSet<>(numberOfLinks);
+		for (int i = 0; i < numberOfLinks; i++) {
+			links.add(new Link(readString(in), readString(in)));
+		}
+		return links;
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 Uppsala University Library
+ * Copyright 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -16,23 +16,80 @@
  *     You should have received a copy of the GNU General Public License
  *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
  */
-
 package se.uu.ub.cora.basicstorage;
 
 import se.uu.ub.cora.data.DataGroup;
 
+/**
+ * DividerGroup is a stored record in {@link RecordStorageInMemory}, with its dataDivider and
+ * version.
+ * </p>
+ * Records restored from a {@link RecordSnapshot} are held as an {@link EncodedDataGroup} until they
+ * are read the first time, when they are decoded once and the encoded form is released.
+ */
 final class DividerGroup {
+	static final long FIRST_VERSION = 1;
 
 	static DividerGroup withDataDividerAndDataGroup(String dataDivider, DataGroup dataGroup) {
-		return new DividerGroup(dataDivider, dataGroup);
+		return new DividerGroup(dataDivider, dataGroup, null, FIRST_VERSION);
+	}
+
+	static DividerGroup withDataDividerAndDataGroupAndVersion(String dataDivider,
+			DataGroup dataGroup, long version) {
+		return new DividerGroup(dataDivider, dataGroup, null, version);
 	}
 
-	String dataDivider;
-	DataGroup dataGroup;
+	static DividerGroup withDataDividerAndEncodedDataGroupAndVersion(String dataDivider,
+			EncodedDataGroup encodedDataGroup, long version) {
+		return new DividerGroup(dataDivider, null, encodedDataGroup, version);
+	}
+
+	final String dataDivider;
+	final long version;
+	private volatile DataGroup dataGroup;
+	private EncodedDataGroup encodedDataGroup;
 
-	private DividerGroup(String dataDivider, DataGroup dataGroup) {
+	private DividerGroup(String dataDivider, DataGroup dataGroup,
+			EncodedDataGroup encodedDataGroup, long version) {
 		this.dataDivider = dataDivider;
 		this.dataGroup = dataGroup;
+		this.encodedDataGroup = encodedDataGroup;
+		this.version = version;
+	}
+
+	DataGroup dataGroup() {
+		DataGroup decoded = dataGroup;
+		if (null == decoded) {
+			return decodeOnce();
+		}
+		return decoded;
+	}
+
+	private synchronized DataGroup decodeOnce() {
+		if (null == dataGroup) {
+			dataGroup = encodedDataGroup.decode();
+			encodedDataGroup = null;
+		}
+		return dataGroup;
+	}
+
+	/**
+	 * encodedDataGroup returns the encoded form of the record, or null if the record is decoded,
+	 * so that a record that has not been read can be written to a new snapshot without decoding
+	 * it.
+	 * 
+	 * @return An EncodedDataGroup, or null if the record is decoded
+	 */
+	synchronized EncodedDataGroup encodedDataGroup() {
+		return encodedDataGroup;
+	}
+
+	DividerGroup withVersionFollowing(DividerGroup previous) {
+		return withVersionFollowing(previous.version);
+	}
+
+	DividerGroup withVersionFollowing(long previousVersion) {
+		return new DividerGroup(dataDivider, dataGroup(), null, previousVersion + 1);
 	}
 
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.zip.CRC32;
+
+import se.uu.ub.cora.data.DataGroup;
+
+/**
+ * EncodedDataGroup is a record as written by {@link DataGroupSerializer}, held in a memory-mapped
+ * {@link RecordSnapshot} until it is decoded. The mapped file is unmapped when no EncodedDataGroup
+ * from it is left.
+ */
+final class EncodedDataGroup {
+	private final MemorySegment bytes;
+	private final long checksum;
+
+	EncodedDataGroup(MemorySegment bytes, long checksum) {
+		this.bytes = bytes;
+		this.checksum = checksum;
+	}
+
+	/**
+	 * decode creates the DataGroup from the encoded bytes, after checking that they match the
+	 * checksum written with them.
+	 * 
+	 * @return A DataGroup
+	 */
+	DataGroup decode() {
+		byte[] encoded = toByteArray();
+		throwErrorIfChecksumDoesNotMatch(encoded);
+		try {
+			return new DataGroupSerializer()
+					.readDataGroup(new DataInputStream(new ByteArrayInputStream(encoded)));
+		} catch (IOException e) {
+			throw DataStorageException.withMessageAndException("Could not decode record", e);
+		}
+	}
+
+	private void throwErrorIfChecksumDoesNotMatch(byte[] encoded) {
+		CRC32 crc = new CRC32();
+		crc.update(encoded);
+		if (crc.getValue() != checksum) {
+			throw DataStorageException
+					.withMessage("Could not decode record, checksum does not match");
+		}
+	}
+
+	byte[] toByteArray() {
+		return bytes.toArray(ValueLayout.JAVA_BYTE);
+	}
+
+	long checksum() {
+		return checksum;
+	}
+}
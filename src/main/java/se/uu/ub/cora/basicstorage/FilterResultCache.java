@@ -0,0 +1,115 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import se.uu.ub.cora.storage.Condition;
+import se.uu.ub.cora.storage.Filter;
+import se.uu.ub.cora.storage.Part;
+
+/**
+ * FilterResultCache holds the recordIds found for recordTypes and filters, so that the same filter
+ * read many times between writes is only evaluated once.
+ * </p>
+ * Each recordType has a write epoch that is increased by {@link #recordWriteForType(String)} after
+ * each change to records of the type. A cached result is only used if the epoch of its type is the
+ * same as when the result was found, so a result found while a write was ongoing is never used
+ * after the write. The cache is keyed on the parts of the filter only, fromNo and toNo are applied
+ * to the cached result, so all pages of a result share one entry.
+ * </p>
+ * The cache holds at most maxEntries results and removes the least recently used result when it is
+ * full. A maxEntries of 0 turns caching off, while write epochs are still kept.
+ */
+final class FilterResultCache {
+	private final Map<String, AtomicLong> writeEpochs = new ConcurrentHashMap<>();
+	private final Map<FilterKey, CachedRecordIds> cachedResults;
+	private final int maxEntries;
+
+	FilterResultCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+		cachedResults = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Entry<FilterKey, CachedRecordIds> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	void recordWriteForType(String type) {
+		writeEpochs.computeIfAbsent(type, _ -> new AtomicLong()).incrementAndGet();
+	}
+
+	List<String> findRecordIds(String type, Filter filter, Supplier<List<String>> recordIdFinder) {
+		if (maxEntries == 0) {
+			return recordIdFinder.get();
+		}
+		long epochBeforeFind = getWriteEpoch(type);
+		FilterKey filterKey = FilterKey.fromTypeAndFilter(type, filter);
+		CachedRecordIds cached = getCached(filterKey);
+		if (null != cached && cached.epoch() == epochBeforeFind) {
+			return cached.recordIds();
+		}
+		List<String> recordIds = Collections.unmodifiableList(recordIdFinder.get());
+		putCached(filterKey, new CachedRecordIds(epochBeforeFind, recordIds));
+		return recordIds;
+	}
+
+	private long getWriteEpoch(String type) {
+		AtomicLong writeEpoch = writeEpochs.get(type);
+		return null == writeEpoch ? 0 : writeEpoch.get();
+	}
+
+	private synchronized CachedRecordIds getCached(FilterKey filterKey) {
+		return cachedResults.get(filterKey);
+	}
+
+	private synchronized void putCached(FilterKey filterKey, CachedRecordIds cachedRecordIds) {
+		cachedResults.put(filterKey, cachedRecordIds);
+	}
+
+	synchronized int onlyForTestGetNumberOfCachedResults() {
+		return cachedResults.size();
+	}
+
+	private record FilterKey(String type, List<List<Condition>> include,
+			List<List<Condition>> exclude) {
+
+		static FilterKey fromTypeAndFilter(String type, Filter filter) {
+			return new FilterKey(type, conditionsForParts(filter.include),
+					conditionsForParts(filter.exclude));
+		}
+
+		private static List<List<Condition>> conditionsForParts(List<Part> parts) {
+			return parts.stream().map(part -> List.copyOf(part.conditions)).toList();
+		}
+	}
+
+	private record CachedRecordIds(long epoch, List<String> recordIds) {
+	}
+}
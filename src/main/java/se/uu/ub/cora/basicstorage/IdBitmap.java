@@ -0,0 +1,635 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * IdBitmap is an immutable compressed set of non negative int ids. As in a roaring bitmap are the
+ * ids split into containers, each holding the ids that share the same upper 16 bits.
+ * </p>
+ * A container with at most 4096 ids holds the lower 16 bits of its ids in a sorted array, a
+ * container with more ids holds them in a bitmap of 1024 longs. Set operations between two
+ * IdBitmaps are done container by container, as word by word bit operations when both containers
+ * are bitmaps.
+ * </p>
+ * Adding or removing an id returns a new IdBitmap that shares all unchanged containers with the
+ * previous one, so an IdBitmap can safely be read by many threads while writers replace it.
+ */
+final class IdBitmap {
+	static final IdBitmap EMPTY = new IdBitmap(new char[0], new Container[0]);
+	private static final int MAX_ARRAY_CONTAINER_SIZE = 4096;
+	private static final int WORDS_IN_BITMAP_CONTAINER = 1024;
+
+	private final char[] keys;
+	private final Container[] containers;
+	private final int cardinality;
+
+	private IdBitmap(char[] keys, Container[] containers) {
+		this.keys = keys;
+		this.containers = containers;
+		this.cardinality = sumCardinality(containers);
+	}
+
+	private static int sumCardinality(Container[] containers) {
+		int sum = 0;
+		for (Container container : containers) {
+			sum += container.cardinality();
+		}
+		return sum;
+	}
+
+	/**
+	 * ofIds returns an IdBitmap with the ids, built container by container in one pass over the
+	 * sorted ids, which is much faster than adding the ids one by one. Ids occurring more than
+	 * once are added once.
+	 * 
+	 * @param ids
+	 *            An int array with the ids, in any order
+	 * @return An IdBitmap with the ids
+	 */
+	static IdBitmap ofIds(int[] ids) {
+		int[] sortedIds = ids.clone();
+		Arrays.sort(sortedIds);
+		Builder result = new Builder(Math.min(sortedIds.length, Character.MAX_VALUE + 1));
+		int start = 0;
+		while (start < sortedIds.length) {
+			char key = highBits(sortedIds[start]);
+			int end = start + 1;
+			while (end < sortedIds.length && highBits(sortedIds[end]) == key) {
+				end++;
+			}
+			result.addIfNotEmpty(key, containerForSortedIds(sortedIds, start, end));
+			start = end;
+		}
+		return result.build();
+	}
+
+	private static Container containerForSortedIds(int[] sortedIds, int from, int to) {
+		if (to - from <= MAX_ARRAY_CONTAINER_SIZE) {
+			return ArrayContainer.fromSortedIds(sortedIds, from, to);
+		}
+		long[] words = new long[WORDS_IN_BITMAP_CONTAINER];
+		for (int i = from; i < to; i++) {
+			char value = lowBits(sortedIds[i]);
+			words[value >>> 6] |= 1L << value;
+		}
+		return BitmapContainer.fromWords(words);
+	}
+
+	int cardinality() {
+		return cardinality;
+	}
+
+	boolean isEmpty() {
+		return cardinality == 0;
+	}
+
+	boolean contains(int id) {
+		int index = Arrays.binarySearch(keys, highBits(id));
+		return index >= 0 && containers[index].contains(lowBits(id));
+	}
+
+	private static char highBits(int id) {
+		return (char) (id >>> 16);
+	}
+
+	private static char lowBits(int id) {
+		return (char) id;
+	}
+
+	IdBitmap with(int id) {
+		char key = highBits(id);
+		int index = Arrays.binarySearch(keys, key);
+		if (index < 0) {
+			return insertContainer(-index - 1, key, ArrayContainer.withOneValue(lowBits(id)));
+		}
+		Container container = containers[index];
+		Container containerWithId = container.with(lowBits(id));
+		if (containerWithId == container) {
+			return this;
+		}
+		return replaceContainer(index, containerWithId);
+	}
+
+	IdBitmap without(int id) {
+		int index = Arrays.binarySearch(keys, highBits(id));
+		if (index < 0) {
+			return this;
+		}
+		Container container = containers[index];
+		Container containerWithoutId = container.without(lowBits(id));
+		if (containerWithoutId == container) {
+			return this;
+		}
+		if (containerWithoutId.cardinality() == 0) {
+			return removeContainer(index);
+		}
+		return replaceContainer(index, containerWithoutId);
+	}
+
+	/**
+	 * withChanges returns an IdBitmap with the added ids and without the removed ids, copying each
+	 * changed container once for all its changes, instead of once for each change as
+	 * {@link #with(int)} and {@link #without(int)} do.
+	 *
+	 * @param addedIds
+	 *            An int array with the ids to add, in any order
+	 * @param removedIds
+	 *            An int array with the ids to remove, in any order, none of them also in addedIds
+	 * @return An IdBitmap with the changes applied
+	 */
+	IdBitmap withChanges(int[] addedIds, int[] removedIds) {
+		ContainerCursor current = new ContainerCursor(this);
+		ContainerCursor added = new ContainerCursor(ofIds(addedIds));
+		ContainerCursor removed = new ContainerCursor(ofIds(removedIds));
+		Builder result = new Builder(
+				keys.length + added.numberOfContainers() + removed.numberOfContainers());
+		while (current.hasNext() || added.hasNext() || removed.hasNext()) {
+			char key = lowestKey(current, added, removed);
+			result.addIfNotEmpty(key, applyChanges(current.takeIfAt(key), added.takeIfAt(key),
+					removed.takeIfAt(key)));
+		}
+		return result.build();
+	}
+
+	private static char lowestKey(ContainerCursor... cursors) {
+		char lowestKey = Character.MAX_VALUE;
+		for (ContainerCursor cursor : cursors) {
+			if (cursor.hasNext() && cursor.key() < lowestKey) {
+				lowestKey = cursor.key();
+			}
+		}
+		return lowestKey;
+	}
+
+	private static Container applyChanges(Container container, Container added,
+			Container removed) {
+		if (null == added && null == removed) {
+			return container;
+		}
+		Container changed = null == container ? ArrayContainer.EMPTY : container;
+		int addedCardinality = null == added ? 0 : added.cardinality();
+		if (changed instanceof BitmapContainer
+				|| changed.cardinality() + addedCardinality > MAX_ARRAY_CONTAINER_SIZE) {
+			return applyChangesToWords(changed, added, removed);
+		}
+		if (null != added) {
+			changed = ((ArrayContainer) changed).union((ArrayContainer) added);
+		}
+		if (null != removed) {
+			changed = ((ArrayContainer) changed).keepValuesContainedIn(removed, false);
+		}
+		return changed;
+	}
+
+	private static Container applyChangesToWords(Container container, Container added,
+			Container removed) {
+		long[] words = container instanceof BitmapContainer ? container.toWords().clone()
+				: container.toWords();
+		if (null != added) {
+			added.forEach(0, value -> words[value >>> 6] |= 1L << value);
+		}
+		if (null != removed) {
+			removed.forEach(0, value -> words[value >>> 6] &= ~(1L << value));
+		}
+		return BitmapContainer.fromWords(words);
+	}
+
+	private IdBitmap insertContainer(int index, char key, Container container) {
+		char[] newKeys = new char[keys.length + 1];
+		Container[] newContainers = new Container[containers.length + 1];
+		System.arraycopy(keys, 0, newKeys, 0, index);
+		System.arraycopy(containers, 0, newContainers, 0, index);
+		newKeys[index] = key;
+		newContainers[index] = container;
+		System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+		System.arraycopy(containers, index, newContainers, index + 1, containers.length - index);
+		return new IdBitmap(newKeys, newContainers);
+	}
+
+	private IdBitmap replaceContainer(int index, Container container) {
+		Container[] newContainers = containers.clone();
+		newContainers[index] = container;
+		return new IdBitmap(keys, newContainers);
+	}
+
+	private IdBitmap removeContainer(int index) {
+		int numberAfterIndex = keys.length - index - 1;
+		char[] newKeys = new char[keys.length - 1];
+		Container[] newContainers = new Container[containers.length - 1];
+		System.arraycopy(keys, 0, newKeys, 0, index);
+		System.arraycopy(containers, 0, newContainers, 0, index);
+		System.arraycopy(keys, index + 1, newKeys, index, numberAfterIndex);
+		System.arraycopy(containers, index + 1, newContainers, index, numberAfterIndex);
+		return new IdBitmap(newKeys, newContainers);
+	}
+
+	IdBitmap and(IdBitmap other) {
+		Builder result = new Builder(Math.min(keys.length, other.keys.length));
+		int index = 0;
+		int otherIndex = 0;
+		while (index < keys.length && otherIndex < other.keys.length) {
+			if (keys[index] < other.keys[otherIndex]) {
+				index++;
+			} else if (keys[index] > other.keys[otherIndex]) {
+				otherIndex++;
+			} else {
+				result.addIfNotEmpty(keys[index],
+						and(containers[index], other.containers[otherIndex]));
+				index++;
+				otherIndex++;
+			}
+		}
+		return result.build();
+	}
+
+	IdBitmap or(IdBitmap other) {
+		Builder result = new Builder(keys.length + other.keys.length);
+		int index = 0;
+		int otherIndex = 0;
+		while (index < keys.length || otherIndex < other.keys.length) {
+			if (otherIndex == other.keys.length
+					|| (index < keys.length && keys[index] < other.keys[otherIndex])) {
+				result.addIfNotEmpty(keys[index], containers[index]);
+				index++;
+			} else if (index == keys.length || keys[index] > other.keys[otherIndex]) {
+				result.addIfNotEmpty(other.keys[otherIndex], other.containers[otherIndex]);
+				otherIndex++;
+			} else {
+				result.addIfNotEmpty(keys[index],
+						or(containers[index], other.containers[otherIndex]));
+				index++;
+				otherIndex++;
+			}
+		}
+		return result.build();
+	}
+
+	IdBitmap andNot(IdBitmap other) {
+		Builder result = new Builder(keys.length);
+		int otherIndex = 0;
+		for (int index = 0; index < keys.length; index++) {
+			while (otherIndex < other.keys.length && other.keys[otherIndex] < keys[index]) {
+				otherIndex++;
+			}
+			if (otherIndex < other.keys.length && other.keys[otherIndex] == keys[index]) {
+				result.addIfNotEmpty(keys[index],
+						andNot(containers[index], other.containers[otherIndex]));
+			} else {
+				result.addIfNotEmpty(keys[index], containers[index]);
+			}
+		}
+		return result.build();
+	}
+
+	/**
+	 * forEach calls the consumer with each id in the bitmap, in ascending order.
+	 */
+	void forEach(IntConsumer consumer) {
+		for (int index = 0; index < keys.length; index++) {
+			containers[index].forEach(keys[index] << 16, consumer);
+		}
+	}
+
+	private static Container and(Container first, Container second) {
+		if (first instanceof ArrayContainer array) {
+			return array.keepValuesContainedIn(second, true);
+		}
+		if (second instanceof ArrayContainer array) {
+			return array.keepValuesContainedIn(first, true);
+		}
+		long[] firstWords = first.toWords();
+		long[] secondWords = second.toWords();
+		long[] result = new long[WORDS_IN_BITMAP_CONTAINER];
+		for (int i = 0; i < WORDS_IN_BITMAP_CONTAINER; i++) {
+			result[i] = firstWords[i] & secondWords[i];
+		}
+		return BitmapContainer.fromWords(result);
+	}
+
+	private static Container or(Container first, Container second) {
+		if (first instanceof ArrayContainer firstArray
+				&& second instanceof ArrayContainer secondArray) {
+			return firstArray.union(secondArray);
+		}
+		long[] firstWords = first.toWords();
+		long[] secondWords = second.toWords();
+		long[] result = new long[WORDS_IN_BITMAP_CONTAINER];
+		for (int i = 0; i < WORDS_IN_BITMAP_CONTAINER; i++) {
+			result[i] = firstWords[i] | secondWords[i];
+		}
+		return BitmapContainer.fromWords(result);
+	}
+
+	private static Container andNot(Container first, Container second) {
+		if (first instanceof ArrayContainer array) {
+			return array.keepValuesContainedIn(second, false);
+		}
+		long[] firstWords = first.toWords();
+		long[] secondWords = second.toWords();
+		long[] result = new long[WORDS_IN_BITMAP_CONTAINER];
+		for (int i = 0; i < WORDS_IN_BITMAP_CONTAINER; i++) {
+			result[i] = firstWords[i] & ~secondWords[i];
+		}
+		return BitmapContainer.fromWords(result);
+	}
+
+	private static final class Builder {
+		private final char[] keys;
+		private final Container[] containers;
+		private int size = 0;
+
+		Builder(int capacity) {
+			keys = new char[capacity];
+			containers = new Container[capacity];
+		}
+
+		void addIfNotEmpty(char key, Container container) {
+			if (container.cardinality() > 0) {
+				keys[size] = key;
+				containers[size] = container;
+				size++;
+			}
+		}
+
+		IdBitmap build() {
+			return new IdBitmap(Arrays.copyOf(keys, size), Arrays.copyOf(containers, size));
+		}
+	}
+
+	private static final class ContainerCursor {
+		private final IdBitmap bitmap;
+		private int index = 0;
+
+		ContainerCursor(IdBitmap bitmap) {
+			this.bitmap = bitmap;
+		}
+
+		int numberOfContainers() {
+			return bitmap.keys.length;
+		}
+
+		boolean hasNext() {
+			return index < bitmap.keys.length;
+		}
+
+		char key() {
+			return bitmap.keys[index];
+		}
+
+		Container takeIfAt(char key) {
+			if (hasNext() && key() == key) {
+				Container container = bitmap.containers[index];
+				index++;
+				return container;
+			}
+			return null;
+		}
+	}
+
+	private interface Container {
+		int cardinality();
+
+		boolean contains(char value);
+
+		Container with(char value);
+
+		Container without(char value);
+
+		/**
+		 * toWords returns the values as a bitmap of 1024 longs, the returned array must not be
+		 * changed.
+		 */
+		long[] toWords();
+
+		void forEach(int highBits, IntConsumer consumer);
+	}
+
+	private static final class ArrayContainer implements Container {
+		static final ArrayContainer EMPTY = new ArrayContainer(new char[0]);
+		private final char[] values;
+
+		private ArrayContainer(char[] values) {
+			this.values = values;
+		}
+
+		static ArrayContainer withOneValue(char value) {
+			return new ArrayContainer(new char[] { value });
+		}
+
+		static ArrayContainer fromSortedIds(int[] sortedIds, int from, int to) {
+			char[] values = new char[to - from];
+			int size = 0;
+			for (int i = from; i < to; i++) {
+				char value = lowBits(sortedIds[i]);
+				if (size == 0 || values[size - 1] != value) {
+					values[size] = value;
+					size++;
+				}
+			}
+			return new ArrayContainer(Arrays.copyOf(values, size));
+		}
+
+		static ArrayContainer fromWords(long[] words, int cardinality) {
+			char[] values = new char[cardinality];
+			int size = 0;
+			for (int i = 0; i < WORDS_IN_BITMAP_CONTAINER; i++) {
+				long word = words[i];
+				while (word != 0) {
+					values[size] = (char) (i * 64 + Long.numberOfTrailingZeros(word));
+					size++;
+					word &= word - 1;
+				}
+			}
+			return new ArrayContainer(values);
+		}
+
+		@Override
+		public int cardinality() {
+			return values.length;
+		}
+
+		@Override
+		public boolean contains(char value) {
+			return Arrays.binarySearch(values, value) >= 0;
+		}
+
+		@Override
+		public Container with(char value) {
+			int index = Arrays.binarySearch(values, value);
+			if (index >= 0) {
+				return this;
+			}
+			if (values.length == MAX_ARRAY_CONTAINER_SIZE) {
+				return new BitmapContainer(toWords(), values.length).with(value);
+			}
+			int insertAt = -index - 1;
+			char[] newValues = new char[values.length + 1];
+			System.arraycopy(values, 0, newValues, 0, insertAt);
+			newValues[insertAt] = value;
+			System.arraycopy(values, insertAt, newValues, insertAt + 1, values.length - insertAt);
+			return new ArrayContainer(newValues);
+		}
+
+		@Override
+		public Container without(char value) {
+			int index = Arrays.binarySearch(values, value);
+			if (index < 0) {
+				return this;
+			}
+			char[] newValues = new char[values.length - 1];
+			System.arraycopy(values, 0, newValues, 0, index);
+			System.arraycopy(values, index + 1, newValues, index, values.length - index - 1);
+			return new ArrayContainer(newValues);
+		}
+
+		@Override
+		public long[] toWords() {
+			long[] words = new long[WORDS_IN_BITMAP_CONTAINER];
+			for (char value : values) {
+				words[value >>> 6] |= 1L << value;
+			}
+			return words;
+		}
+
+		@Override
+		public void forEach(int highBits, IntConsumer consumer) {
+			for (char value : values) {
+				consumer.accept(highBits | value);
+			}
+		}
+
+		Container keepValuesContainedIn(Container other, boolean contained) {
+			char[] keptValues = new char[values.length];
+			int size = 0;
+			for (char value : values) {
+				if (other.contains(value) == contained) {
+					keptValues[size] = value;
+					size++;
+				}
+			}
+			return new ArrayContainer(Arrays.copyOf(keptValues, size));
+		}
+
+		Container union(ArrayContainer other) {
+			char[] merged = new char[values.length + other.values.length];
+			int size = 0;
+			int index = 0;
+			int otherIndex = 0;
+			while (index < values.length && otherIndex < other.values.length) {
+				char value = values[index];
+				char otherValue = other.values[otherIndex];
+				if (value <= otherValue) {
+					merged[size] = value;
+					index++;
+				} else {
+					merged[size] = otherValue;
+				}
+				if (value >= otherValue) {
+					otherIndex++;
+				}
+				size++;
+			}
+			int restOfValues = values.length - index;
+			System.arraycopy(values, index, merged, size, restOfValues);
+			size += restOfValues;
+			int restOfOtherValues = other.values.length - otherIndex;
+			System.arraycopy(other.values, otherIndex, merged, size, restOfOtherValues);
+			size += restOfOtherValues;
+			ArrayContainer union = new ArrayContainer(Arrays.copyOf(merged, size));
+			if (size > MAX_ARRAY_CONTAINER_SIZE) {
+				return new BitmapContainer(union.toWords(), size);
+			}
+			return union;
+		}
+	}
+
+	private static final class BitmapContainer implements Container {
+		private final long[] words;
+		private final int cardinality;
+
+		private BitmapContainer(long[] words, int cardinality) {
+			this.words = words;
+			this.cardinality = cardinality;
+		}
+
+		static Container fromWords(long[] words) {
+			int cardinality = 0;
+			for (long word : words) {
+				cardinality += Long.bitCount(word);
+			}
+			return fromWordsWithCardinality(words, cardinality);
+		}
+
+		private static Container fromWordsWithCardinality(long[] words, int cardinality) {
+			if (cardinality <= MAX_ARRAY_CONTAINER_SIZE) {
+				return ArrayContainer.fromWords(words, cardinality);
+			}
+			return new BitmapContainer(words, cardinality);
+		}
+
+		@Override
+		public int cardinality() {
+			return cardinality;
+		}
+
+		@Override
+		public boolean contains(char value) {
+			return (words[value >>> 6] & (1L << value)) != 0;
+		}
+
+		@Override
+		public Container with(char value) {
+			if (contains(value)) {
+				return this;
+			}
+			long[] newWords = words.clone();
+			newWords[value >>> 6] |= 1L << value;
+			return new BitmapContainer(newWords, cardinality + 1);
+		}
+
+		@Override
+		public Container without(char value) {
+			if (!contains(value)) {
+				return this;
+			}
+			long[] newWords = words.clone();
+			newWords[value >>> 6] &= ~(1L << value);
+			return fromWordsWithCardinality(newWords, cardinality - 1);
+		}
+
+		@Override
+		public long[] toWords() {
+			return words;
+		}
+
+		@Override
+		public void forEach(int highBits, IntConsumer consumer) {
+			for (int i = 0; i < WORDS_IN_BITMAP_CONTAINER; i++) {
+				long word = words[i];
+				while (word != 0) {
+					consumer.accept(highBits | (i * 64 + Long.numberOfTrailingZeros(word)));
+					word &= word - 1;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * RecordIdDictionary gives each recordId of one recordType a dense int number, starting at 0, so
+ * that sets of recordIds can be held in an {@link IdBitmap}.
+ * </p>
+ * The number of a recordId is released with {@link #release(String)} when its record no longer
+ * has any number in an index, and released numbers are reused before new numbers are assigned,
+ * so the numbers stay dense when records are removed and created.
+ * {@link #existingNumberFor(String)} looks up a number without assigning one, and returns
+ * {@link #NO_NUMBER} for recordIds that have none.
+ * </p>
+ * A released number no longer gives its old recordId, so that the dictionary does not keep
+ * recordIds of removed records. A reader that found numbers in an index before a record was
+ * removed can still hold a number that is released, or reused for another recordId. Readers that
+ * turn numbers into recordIds therefore start with {@link #startReading()} and read again if
+ * {@link #noNumberChangedSince(long)} returns false. A reader that has to read again more than
+ * once can instead read while holding {@link #lockForReading()}, during which no number is
+ * released or reused.
+ */
+final class RecordIdDictionary {
+	static final int NO_NUMBER = -1;
+	private static final int INITIAL_CAPACITY = 1024;
+	private final Map<String, Integer> numbersForRecordIds = new ConcurrentHashMap<>();
+	private volatile String[] recordIdsForNumbers = new String[INITIAL_CAPACITY];
+	private final Deque<Integer> releasedNumbers = new ArrayDeque<>();
+	private final StampedLock reuseLock = new StampedLock();
+	private int nextNumber = 0;
+
+	int numberFor(String recordId) {
+		return numbersForRecordIds.computeIfAbsent(recordId, this::assignNumber);
+	}
+
+	int existingNumberFor(String recordId) {
+		return numbersForRecordIds.getOrDefault(recordId, NO_NUMBER);
+	}
+
+	private synchronized Integer assignNumber(String recordId) {
+		if (!releasedNumbers.isEmpty()) {
+			return reuseReleasedNumber(recordId);
+		}
+		int number = nextNumber;
+		ensureCapacityForNumber(number);
+		recordIdsForNumbers[number] = recordId;
+		nextNumber++;
+		return number;
+	}
+
+	private Integer reuseReleasedNumber(String recordId) {
+		Integer number = releasedNumbers.pop();
+		long stamp = reuseLock.writeLock();
+		try {
+			recordIdsForNumbers[number] = recordId;
+		} finally {
+			reuseLock.unlockWrite(stamp);
+		}
+		return number;
+	}
+
+	private void ensureCapacityForNumber(int number) {
+		if (number == recordIdsForNumbers.length) {
+			recordIdsForNumbers = Arrays.copyOf(recordIdsForNumbers, number * 2);
+		}
+	}
+
+	String recordIdFor(int number) {
+		return recordIdsForNumbers[number];
+	}
+
+	/**
+	 * release frees the number of the recordId so that it can be given to another recordId. It
+	 * must only be called when the number is no longer in any index.
+	 * 
+	 * @param recordId
+	 *            A String with the recordId whose number is released
+	 */
+	void release(String recordId) {
+		Integer number = numbersForRecordIds.remove(recordId);
+		if (null != number) {
+			addReleasedNumber(number);
+		}
+	}
+
+	private synchronized void addReleasedNumber(Integer number) {
+		long stamp = reuseLock.writeLock();
+		try {
+			recordIdsForNumbers[number] = null;
+		} finally {
+			reuseLock.unlockWrite(stamp);
+		}
+		releasedNumbers.push(number);
+	}
+
+	/**
+	 * startReading returns a stamp to validate with {@link #noNumberChangedSince(long)} when the
+	 * numbers read from an index have been turned into recordIds.
+	 * 
+	 * @return A long with the stamp
+	 */
+	long startReading() {
+		return reuseLock.tryOptimisticRead();
+	}
+
+	/**
+	 * noNumberChangedSince returns true if no number has been released or reused since the stamp
+	 * was taken, so that all numbers read since then were turned into the recordIds they were read
+	 * for.
+	 * 
+	 * @param stamp
+	 *            A long with the stamp from {@link #startReading()}
+	 * @return A boolean, true if no number has been released or reused since the stamp was taken
+	 */
+	boolean noNumberChangedSince(long stamp) {
+		return reuseLock.validate(stamp);
+	}
+
+	/**
+	 * lockForReading waits until no number is being released or reused and then keeps numbers
+	 * from being released or reused until {@link #unlockForReading(long)} is called with the
+	 * returned stamp.
+	 * 
+	 * @return A long with the stamp to unlock with
+	 */
+	long lockForReading() {
+		return reuseLock.readLock();
+	}
+
+	void unlockForReading(long stamp) {
+		reuseLock.unlockRead(stamp);
+	}
+}
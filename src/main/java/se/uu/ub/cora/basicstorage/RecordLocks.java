@@ -0,0 +1,104 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * RecordLocks hands out read and write locks for records, striped over a fixed number of
+ * {@link ReadWriteLock}s so that memory use does not grow with the number of records.
+ * </p>
+ * Writers hold the write lock for a record while they change the record, its storage terms and its
+ * links, readers that need to see the three as one unit hold the read lock. Two records can share a
+ * stripe, which only means that they are sometimes locked together.
+ * </p>
+ * Writers that change many records as one unit take the write locks of the stripes of all their
+ * records, each stripe once and always in stripe order, so that two such writers can not deadlock
+ * each other, and writers and readers of records in other stripes are not held up.
+ */
+final class RecordLocks {
+	private static final int NUMBER_OF_STRIPES = 1024;
+	private final ReadWriteLock[] stripes = new ReadWriteLock[NUMBER_OF_STRIPES];
+
+	RecordLocks() {
+		for (int i = 0; i < NUMBER_OF_STRIPES; i++) {
+			stripes[i] = new ReentrantReadWriteLock();
+		}
+	}
+
+	Lock writeLockFor(String recordType, String recordId) {
+		return getStripe(recordType, recordId).writeLock();
+	}
+
+	Lock readLockFor(String recordType, String recordId) {
+		return getStripe(recordType, recordId).readLock();
+	}
+
+	/**
+	 * lockForWrite takes the write locks of the stripes of all the given records, in stripe order.
+	 * 
+	 * @param recordIdsPerType
+	 *            A Map with the recordIds to lock for each recordType
+	 * @return An int[] with the locked stripes, to pass to {@link #unlockForWrite(int[])}
+	 */
+	int[] lockForWrite(Map<String, ? extends Collection<String>> recordIdsPerType) {
+		BitSet stripesToLock = new BitSet(NUMBER_OF_STRIPES);
+		recordIdsPerType.forEach((recordType, recordIds) -> recordIds
+				.forEach(recordId -> stripesToLock.set(getStripeIndex(recordType, recordId))));
+		int[] lockedStripes = stripesToLock.stream().toArray();
+		for (int stripeIndex : lockedStripes) {
+			stripes[stripeIndex].writeLock().lock();
+		}
+		return lockedStripes;
+	}
+
+	void unlockForWrite(int[] lockedStripes) {
+		for (int i = lockedStripes.length - 1; i >= 0; i--) {
+			stripes[lockedStripes[i]].writeLock().unlock();
+		}
+	}
+
+	/**
+	 * waitForCurrentWriters returns when all write locks held when it is called have been
+	 * released, by taking and releasing the write lock of each stripe in turn. Writers that take a
+	 * write lock after its stripe has been passed are not waited for, and no lock is held when the
+	 * method returns.
+	 */
+	void waitForCurrentWriters() {
+		for (ReadWriteLock stripe : stripes) {
+			stripe.writeLock().lock();
+			stripe.writeLock().unlock();
+		}
+	}
+
+	private ReadWriteLock getStripe(String recordType, String recordId) {
+		return stripes[getStripeIndex(recordType, recordId)];
+	}
+
+	private int getStripeIndex(String recordType, String recordId) {
+		int hash = 31 * recordType.hashCode() + recordId.hashCode();
+		int spreadHash = hash ^ (hash >>> 16);
+		return spreadHash & (NUMBER_OF_STRIPES - 1);
+	}
+}
@@ -0,0 +1,837 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * RecordLog is an append only write-ahead log of the changes made to the records in
+ * {@link RecordStorageInMemory}, so that the records can be restored when the storage is started
+ * again.
+ * </p>
+ * Each {@link RecordLogEntry} is written as its length, a CRC32 checksum and the serialized entry.
+ * Entries are serialized by the threads appending them and written by one writer thread, that
+ * writes all entries waiting to be written as one batch and forces the log to disk as described by
+ * {@link RecordLogSync}. Appending threads wait, parked, until the writer has handled their
+ * entries, so concurrent appends share one force. When the log is replayed reading stops at the
+ * first entry that is incomplete or has a wrong checksum, which is what a crash during a write
+ * leaves behind, and the log is truncated to the last complete entry before new entries are
+ * appended.
+ * </p>
+ * If writing or forcing a batch fails, the log is truncated back to where the batch started and
+ * forced again, so that a failed batch never leaves entries in the log that can be replayed, and
+ * all appends in the batch fail. If the log can not be truncated, the log is marked as failed and
+ * all later appends fail, as entries appended after a partly written batch would be lost on replay.
+ * </p>
+ * Entries appended together with {@link #appendAll(List)} are framed by a begin and a commit marker
+ * and are only replayed if the commit marker is found, so a crash while they are written does not
+ * replay a part of them. They are encoded and written in chunks of a bounded size, so that the
+ * number of entries appended together is not limited by the size of one buffer.
+ * </p>
+ * The log is kept as numbered segment files, and entries are appended to the segment with the
+ * highest number. A new segment is started with {@link #startNewSegment()}, so that the segments
+ * before it can be deleted once the changes in them are kept elsewhere, such as in a
+ * {@link RecordSnapshot}. The directory is forced to disk when a segment is created, so that a
+ * segment with entries reported as written is not lost from the directory in a crash.
+ */
+final class RecordLog implements Closeable {
+	static final long FIRST_SEGMENT = 1;
+	private static final Pattern SEGMENT_FILE_NAME = Pattern.compile("records\\.(\\d+)\\.log");
+	private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+	private static final long UNKNOWN_POSITION = -1;
+	private static final int BATCH_CHUNK_SIZE = 8 * 1024 * 1024;
+	private static final byte BEGIN_BATCH = -1;
+	private static final byte COMMIT_BATCH = -2;
+	private static final byte ABORT_BATCH = -3;
+	private static final PendingWrite CLOSE = new PendingWrite(Kind.CLOSE, null, null);
+	private final DataGroupSerializer serializer = new DataGroupSerializer();
+	private final Path directory;
+	private final RecordLogSync sync;
+	private final BlockingQueue<PendingWrite> pendingWrites = new LinkedBlockingQueue<>();
+	private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+	private final Lock enqueueLock = new ReentrantLock();
+	private SegmentChannelOpener segmentChannelOpener = segmentFile -> FileChannel
+			.open(segmentFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+	private FileChannel channel;
+	private volatile Exception failure = null;
+	private volatile long currentSegment = FIRST_SEGMENT;
+	private Thread writer;
+	private boolean closed = false;
+	private long lastForceNanos = System.nanoTime();
+
+	static RecordLog usingDirectory(Path directory) {
+		return new RecordLog(directory, RecordLogSync.everyWrite());
+	}
+
+	static RecordLog usingDirectoryAndSync(Path directory, RecordLogSync sync) {
+		return new RecordLog(directory, sync);
+	}
+
+	private RecordLog(Path directory, RecordLogSync sync) {
+		this.directory = directory;
+		this.sync = sync;
+		tryToCreateDirectory(directory);
+	}
+
+	private void tryToCreateDirectory(Path directory) {
+		try {
+			Files.createDirectories(directory);
+		} catch (IOException e) {
+			throw DataStorageException.withMessageAndException(
+					"Could not create record log directory: " + directory, e);
+		}
+	}
+
+	static String segmentFileName(long segment) {
+		return "records." + segment + ".log";
+	}
+
+	/**
+	 * replay replays all segments of the log, in the same way as
+	 * {@link #replayFromSegment(long, Consumer)}.
+	 * 
+	 * @param entryConsumer
+	 *            A Consumer that applies each entry
+	 */
+	void replay(Consumer<RecordLogEntry> entryConsumer) {
+		replayFromSegment(FIRST_SEGMENT, entryConsumer);
+	}
+
+	/**
+	 * replayFromSegment reads all complete entries in the segments numbered firstSegment or
+	 * higher, in the order they were appended, and gives them to the entryConsumer. Older segments
+	 * are ignored. The last segment is opened for appending after its last complete entry, and the
+	 * writer thread is started.
+	 * 
+	 * @param firstSegment
+	 *            A long with the number of the first segment to replay
+	 * @param entryConsumer
+	 *            A Consumer that applies each entry
+	 */
+	void replayFromSegment(long firstSegment, Consumer<RecordLogEntry> entryConsumer) {
+		replayFromSegment(firstSegment, null, entryConsumer);
+	}
+
+	/**
+	 * replayFromSegment replays the log in the same way as
+	 * {@link #replayFromSegment(long, Consumer)}, but decodes the entries in the given pool.
+	 * </p>
+	 * The segments are read one after another, as the commit markers of a batch decide which
+	 * entries are complete, but the complete entries are then decoded in parallel in the pool. The
+	 * entries are still given to the entryConsumer one at a time, in the calling thread and in the
+	 * order they were appended.
+	 * 
+	 * @param firstSegment
+	 *            A long with the number of the first segment to replay
+	 * @param pool
+	 *            A ForkJoinPool to decode the entries in, or null to decode them one after
+	 *            another
+	 * @param entryConsumer
+	 *            A Consumer that applies each entry
+	 */
+	synchronized void replayFromSegment(long firstSegment, ForkJoinPool pool,
+			Consumer<RecordLogEntry> entryConsumer) {
+		try {
+			currentSegment = firstSegment;
+			long endOfCompleteEntries = 0;
+			List<byte[]> completeEntries = new ArrayList<>();
+			for (long segment : findSegmentsFrom(firstSegment)) {
+				currentSegment = segment;
+				endOfCompleteEntries = readCompleteEntries(segmentFile(segment), completeEntries);
+			}
+			decodeEntries(completeEntries, pool).forEach(entryConsumer);
+			openForAppendAfterPosition(endOfCompleteEntries);
+			startWriter();
+		} catch (IOException e) {
+			throw createReplayError(e);
+		}
+	}
+
+	private DataStorageException createReplayError(IOException e) {
+		return DataStorageException
+				.withMessageAndException("Could not replay record log: " + directory, e);
+	}
+
+	private List<Long> findSegmentsFrom(long firstSegment) throws IOException {
+		return findAllSegments().stream().filter(segment -> segment >= firstSegment).toList();
+	}
+
+	private List<Long> findAllSegments() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.map(file -> SEGMENT_FILE_NAME.matcher(file.getFileName().toString()))
+					.filter(Matcher::matches).map(matcher -> Long.parseLong(matcher.group(1)))
+					.sorted().toList();
+		}
+	}
+
+	private Path segmentFile(long segment) {
+		return directory.resolve(segmentFileName(segment));
+	}
+
+	private long readCompleteEntries(Path logFile, List<byte[]> completeEntries)
+			throws IOException {
+		try (FileChannel readChannel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+			return readCompleteEntriesFromChannel(readChannel, completeEntries);
+		}
+	}
+
+	private long readCompleteEntriesFromChannel(FileChannel readChannel,
+			List<byte[]> completeEntries) throws IOException {
+		SegmentReplay segmentReplay = new SegmentReplay(completeEntries);
+		long position = 0;
+		byte[] entryBytes = readEntryBytes(readChannel, position);
+		while (null != entryBytes) {
+			position += HEADER_SIZE + entryBytes.length;
+			segmentReplay.replayEntry(entryBytes, position);
+			entryBytes = readEntryBytes(readChannel, position);
+		}
+		return segmentReplay.endOfReplayedEntries;
+	}
+
+	private List<RecordLogEntry> decodeEntries(List<byte[]> completeEntries, ForkJoinPool pool) {
+		if (null == pool) {
+			return completeEntries.stream().map(this::decodeOrThrow).toList();
+		}
+		return pool.submit(() -> completeEntries.parallelStream().map(this::decodeOrThrow).toList())
+				.join();
+	}
+
+	private RecordLogEntry decodeOrThrow(byte[] entryBytes) {
+		try {
+			return decode(entryBytes);
+		} catch (IOException e) {
+			throw createReplayError(e);
+		}
+	}
+
+	private byte[] readEntryBytes(FileChannel readChannel, long position) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		if (!readFully(readChannel, header, position)) {
+			return null;
+		}
+		header.flip();
+		int length = header.getInt();
+		long checksum = header.getLong();
+		if (length < 0 || position + HEADER_SIZE + length > readChannel.size()) {
+			return null;
+		}
+		ByteBuffer entry = ByteBuffer.allocate(length);
+		readFully(readChannel, entry, position + HEADER_SIZE);
+		byte[] entryBytes = entry.array();
+		return checksumFor(entryBytes) == checksum ? entryBytes : null;
+	}
+
+	private boolean readFully(FileChannel readChannel, ByteBuffer buffer, long position)
+			throws IOException {
+		long readPosition = position;
+		while (buffer.hasRemaining()) {
+			int read = readChannel.read(buffer, readPosition);
+			if (read < 0) {
+				return false;
+			}
+			readPosition += read;
+		}
+		return true;
+	}
+
+	private long checksumFor(byte[] entryBytes) {
+		CRC32 crc = new CRC32();
+		crc.update(entryBytes);
+		return crc.getValue();
+	}
+
+	void setSegmentChannelOpener(SegmentChannelOpener segmentChannelOpener) {
+		this.segmentChannelOpener = segmentChannelOpener;
+	}
+
+	private void openForAppendAfterPosition(long endOfCompleteEntries) throws IOException {
+		channel = segmentChannelOpener.open(segmentFile(currentSegment));
+		channel.truncate(endOfCompleteEntries);
+		channel.position(endOfCompleteEntries);
+		forceDirectory(directory);
+	}
+
+	/**
+	 * forceDirectory forces the directory entries of the directory to disk, so that a file created,
+	 * renamed or deleted in the directory is still there, or gone, after a crash. Forcing the file
+	 * itself does not force its entry in the directory.
+	 * 
+	 * @param directory
+	 *            A Path to the directory to force
+	 * @throws IOException
+	 *             if the directory can not be opened or forced
+	 */
+	static void forceDirectory(Path directory) throws IOException {
+		try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			directoryChannel.force(true);
+		}
+	}
+
+	private void startWriter() {
+		writer = Thread.ofPlatform().name("recordLogWriter").daemon()
+				.start(this::writePendingUntilClosed);
+	}
+
+	/**
+	 * append writes the entry last in the log, and returns when the entry is written and forced to
+	 * disk as described by the {@link RecordLogSync} of the log.
+	 * 
+	 * @param entry
+	 *            A RecordLogEntry to write
+	 */
+	void append(RecordLogEntry entry) {
+		PendingWrite pendingWrite = createPendingEntries(encodeWithHeader(entry));
+		addToPendingWritesKeepingBatchesTogether(pendingWrite);
+		waitUntilWritten(pendingWrite);
+	}
+
+	private PendingWrite createPendingEntries(ByteBuffer bytes) {
+		return new PendingWrite(Kind.ENTRIES, bytes, new CompletableFuture<>());
+	}
+
+	private void addToPendingWritesKeepingBatchesTogether(PendingWrite pendingWrite) {
+		enqueueLock.lock();
+		try {
+			addToPendingWritesIfOpen(pendingWrite);
+		} finally {
+			enqueueLock.unlock();
+		}
+	}
+
+	/**
+	 * appendAll writes the entries last in the log, in the given order, in the same way as
+	 * {@link #append(RecordLogEntry)}, but as one unit. Either all or none of the entries are
+	 * replayed, also if the storage crashes while they are written.
+	 * </p>
+	 * The entries are encoded and written in chunks, and a chunk is only written when the one
+	 * before it is written, so at most two chunks are held in memory. No other entries are written
+	 * between the chunks. If a chunk can not be written the entries already written are marked as
+	 * aborted, and if that is not possible the log is marked as failed.
+	 * 
+	 * @param entries
+	 *            A List of RecordLogEntry to write
+	 */
+	void appendAll(List<RecordLogEntry> entries) {
+		if (entries.size() > 1) {
+			appendAsOneUnit(entries);
+		} else {
+			entries.forEach(this::append);
+		}
+	}
+
+	private void appendAsOneUnit(List<RecordLogEntry> entries) {
+		enqueueLock.lock();
+		try {
+			writeBatchInChunks(entries);
+		} finally {
+			enqueueLock.unlock();
+		}
+	}
+
+	private void writeBatchInChunks(List<RecordLogEntry> entries) {
+		PendingWrite previousChunk = null;
+		try {
+			ByteArrayOutputStream chunk = startChunkWithMarker(BEGIN_BATCH);
+			for (RecordLogEntry entry : entries) {
+				writeWithHeader(chunk, encode(entry));
+				if (chunk.size() >= BATCH_CHUNK_SIZE) {
+					previousChunk = writeChunkAfterPrevious(chunk, previousChunk);
+					chunk = new ByteArrayOutputStream();
+				}
+			}
+			writeWithHeader(chunk, new byte[] { COMMIT_BATCH });
+			waitUntilWritten(writeChunkAfterPrevious(chunk, previousChunk));
+		} catch (IOException e) {
+			abortBatchIfChunksAreWritten(previousChunk);
+			throw DataStorageException
+					.withMessageAndException("Could not write to record log: " + directory, e);
+		} catch (DataStorageException e) {
+			abortBatchIfChunksAreWritten(previousChunk);
+			throw e;
+		}
+	}
+
+	private ByteArrayOutputStream startChunkWithMarker(byte marker) {
+		ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+		writeWithHeader(chunk, new byte[] { marker });
+		return chunk;
+	}
+
+	private PendingWrite writeChunkAfterPrevious(ByteArrayOutputStream chunk,
+			PendingWrite previousChunk) {
+		if (null != previousChunk) {
+			waitUntilWritten(previousChunk);
+		}
+		PendingWrite pendingWrite = createPendingEntries(ByteBuffer.wrap(chunk.toByteArray()));
+		addToPendingWritesIfOpen(pendingWrite);
+		return pendingWrite;
+	}
+
+	private void abortBatchIfChunksAreWritten(PendingWrite previousChunk) {
+		if (null != previousChunk) {
+			tryToWriteAbortMarker();
+		}
+	}
+
+	private void tryToWriteAbortMarker() {
+		try {
+			PendingWrite abortMarker = createPendingEntries(
+					ByteBuffer.wrap(startChunkWithMarker(ABORT_BATCH).toByteArray()));
+			addToPendingWritesIfOpen(abortMarker);
+			waitUntilWritten(abortMarker);
+		} catch (DataStorageException e) {
+			failure = e;
+		}
+	}
+
+	/**
+	 * startNewSegment forces the current segment to disk and starts a new segment that all entries
+	 * appended after this method returns are written to.
+	 * </p>
+	 * Entries appended while a new segment is started can end up in either segment, so callers
+	 * that need to know which changes are in the older segments must make sure that no changes are
+	 * appended until this method returns.
+	 * 
+	 * @return A long with the number of the new segment
+	 */
+	long startNewSegment() {
+		PendingWrite pendingWrite = new PendingWrite(Kind.NEW_SEGMENT, null,
+				new CompletableFuture<>());
+		addToPendingWritesKeepingBatchesTogether(pendingWrite);
+		waitUntilWritten(pendingWrite);
+		return currentSegment;
+	}
+
+	/**
+	 * deleteSegmentsBefore deletes the segments numbered lower than segment.
+	 * 
+	 * @param segment
+	 *            A long with the number of the first segment to keep
+	 */
+	void deleteSegmentsBefore(long segment) {
+		try {
+			for (long olderSegment : findAllSegments()) {
+				deleteIfOlder(olderSegment, segment);
+			}
+		} catch (IOException e) {
+			throw DataStorageException.withMessageAndException(
+					"Could not delete record log segments: " + directory, e);
+		}
+	}
+
+	private void deleteIfOlder(long segmentToCheck, long firstSegmentToKeep) throws IOException {
+		if (segmentToCheck < firstSegmentToKeep) {
+			Files.deleteIfExists(segmentFile(segmentToCheck));
+		}
+	}
+
+	private void addToPendingWritesIfOpen(PendingWrite pendingWrite) {
+		closeLock.readLock().lock();
+		try {
+			throwErrorIfNotOpen();
+			throwErrorIfFailed();
+			pendingWrites.add(pendingWrite);
+		} finally {
+			closeLock.readLock().unlock();
+		}
+	}
+
+	private void throwErrorIfNotOpen() {
+		if (null == writer || closed) {
+			throw DataStorageException.withMessage("Record log is not open: " + directory);
+		}
+	}
+
+	private void throwErrorIfFailed() {
+		if (null != failure) {
+			throw DataStorageException.withMessageAndException(
+					"Record log has failed and can not be written to: " + directory, failure);
+		}
+	}
+
+	private ByteBuffer encodeWithHeader(RecordLogEntry entry) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			writeWithHeader(bytes, encode(entry));
+			return ByteBuffer.wrap(bytes.toByteArray());
+		} catch (IOException e) {
+			throw DataStorageException
+					.withMessageAndException("Could not write to record log: " + directory, e);
+		}
+	}
+
+	private void writeWithHeader(ByteArrayOutputStream bytes, byte[] entryBytes) {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(entryBytes.length);
+		header.putLong(checksumFor(entryBytes));
+		bytes.writeBytes(header.array());
+		bytes.writeBytes(entryBytes);
+	}
+
+	private void waitUntilWritten(PendingWrite pendingWrite) {
+		try {
+			pendingWrite.written().join();
+		} catch (CompletionException e) {
+			throw DataStorageException
+					.withMessageAndException("Could not write to record log: " + directory, e);
+		}
+	}
+
+	/**
+	 * writePendingUntilClosed writes batches of pending writes until the log is closed. However the
+	 * writer stops, also if it is interrupted or a batch fails with an unexpected error, the log is
+	 * marked as closed before the writes still pending are failed, so that no append waits for a
+	 * write that will never be done.
+	 */
+	private void writePendingUntilClosed() {
+		List<PendingWrite> batch = Collections.emptyList();
+		try {
+			boolean open = true;
+			while (open) {
+				batch = takeNextBatch();
+				open = writeBatch(batch);
+			}
+		} catch (RuntimeException e) {
+			failure = e;
+			completeAll(batch, e);
+		} finally {
+			markAsClosedByWriter();
+			failWritesAfterClose();
+		}
+	}
+
+	private void markAsClosedByWriter() {
+		closeLock.writeLock().lock();
+		try {
+			closed = true;
+		} finally {
+			closeLock.writeLock().unlock();
+		}
+	}
+
+	private List<PendingWrite> takeNextBatch() {
+		List<PendingWrite> batch = new ArrayList<>();
+		PendingWrite first = waitForFirstPendingWrite();
+		if (null != first) {
+			batch.add(first);
+			pendingWrites.drainTo(batch, sync.maxBatchSize() - 1);
+		}
+		return batch;
+	}
+
+	private PendingWrite waitForFirstPendingWrite() {
+		try {
+			if (sync.policy() == RecordLogSync.Policy.INTERVAL) {
+				return pendingWrites.poll(sync.intervalInMilliseconds(), TimeUnit.MILLISECONDS);
+			}
+			return pendingWrites.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return CLOSE;
+		}
+	}
+
+	private boolean writeBatch(List<PendingWrite> batch) {
+		boolean closeRequested = batch.contains(CLOSE);
+		List<PendingWrite> writesInSegment = new ArrayList<>();
+		for (PendingWrite pendingWrite : batch) {
+			if (pendingWrite.kind() == Kind.NEW_SEGMENT) {
+				writeAndForceOrTruncate(writesInSegment, true);
+				writesInSegment.clear();
+				switchToNextSegment(pendingWrite);
+			} else {
+				writesInSegment.add(pendingWrite);
+			}
+		}
+		writeAndForceOrTruncate(writesInSegment, closeRequested);
+		return !closeRequested;
+	}
+
+	private void writeAndForceOrTruncate(List<PendingWrite> writes, boolean forceRequired) {
+		if (null != failure) {
+			completeAll(writes, failure);
+			return;
+		}
+		long startOfWrites = UNKNOWN_POSITION;
+		try {
+			startOfWrites = channel.position();
+			writeAll(writes);
+			forceAsDescribedBySync(!writes.isEmpty(), forceRequired);
+			completeAll(writes, null);
+		} catch (IOException e) {
+			truncateToStartOfWritesOrMarkAsFailed(startOfWrites, e);
+			completeAll(writes, e);
+		}
+	}
+
+	private void writeAll(List<PendingWrite> writes) throws IOException {
+		for (PendingWrite pendingWrite : writes) {
+			if (pendingWrite.kind() == Kind.ENTRIES) {
+				writeFully(pendingWrite.bytes());
+			}
+		}
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * truncateToStartOfWritesOrMarkAsFailed removes what was written of a batch that failed, so
+	 * that no entry of it is replayed and entries appended later are not written after a torn
+	 * entry, where replay would stop before them.
+	 */
+	private void truncateToStartOfWritesOrMarkAsFailed(long startOfWrites, IOException error) {
+		try {
+			truncateAndForce(startOfWrites);
+		} catch (IOException e) {
+			error.addSuppressed(e);
+			failure = error;
+		}
+	}
+
+	private void truncateAndForce(long startOfWrites) throws IOException {
+		if (UNKNOWN_POSITION == startOfWrites) {
+			throw new IOException("Position before failed write is not known");
+		}
+		channel.truncate(startOfWrites);
+		channel.position(startOfWrites);
+		channel.force(false);
+	}
+
+	private void switchToNextSegment(PendingWrite pendingWrite) {
+		if (null != failure) {
+			complete(pendingWrite, failure);
+			return;
+		}
+		try {
+			channel.close();
+			currentSegment++;
+			openForAppendAfterPosition(0);
+			complete(pendingWrite, null);
+		} catch (IOException e) {
+			failure = e;
+			complete(pendingWrite, e);
+		}
+	}
+
+	private void forceAsDescribedBySync(boolean somethingWritten, boolean forceRequired)
+			throws IOException {
+		if (forceRequired || forceIsDue(somethingWritten)) {
+			channel.force(false);
+			lastForceNanos = System.nanoTime();
+		}
+	}
+
+	private boolean forceIsDue(boolean somethingWritten) {
+		return switch (sync.policy()) {
+			case EVERY_WRITE -> somethingWritten;
+			case INTERVAL -> System.nanoTime() - lastForceNanos >= TimeUnit.MILLISECONDS
+					.toNanos(sync.intervalInMilliseconds());
+			case OS_MANAGED -> false;
+		};
+	}
+
+	private void completeAll(List<PendingWrite> writes, Exception error) {
+		for (PendingWrite pendingWrite : writes) {
+			complete(pendingWrite, error);
+		}
+	}
+
+	private void complete(PendingWrite pendingWrite, Exception error) {
+		if (pendingWrite == CLOSE) {
+			return;
+		}
+		if (null == error) {
+			pendingWrite.written().complete(null);
+		} else {
+			pendingWrite.written().completeExceptionally(error);
+		}
+	}
+
+	private void failWritesAfterClose() {
+		List<PendingWrite> remaining = new ArrayList<>();
+		pendingWrites.drainTo(remaining);
+		for (PendingWrite pendingWrite : remaining) {
+			complete(pendingWrite, new IOException("Record log closed before write"));
+		}
+	}
+
+	byte[] encode(RecordLogEntry entry) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(entry.operation().ordinal());
+		serializer.writeString(out, entry.recordType());
+		serializer.writeString(out, entry.recordId());
+		out.writeLong(entry.version());
+		if (entry.operation() != RecordLogEntry.Operation.DELETE) {
+			serializer.writeDataGroup(out, entry.record());
+			serializer.writeStorageTerms(out, entry.storageTerms());
+			serializer.writeLinks(out, entry.links());
+			serializer.writeString(out, entry.dataDivider());
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	RecordLogEntry decode(byte[] entryBytes) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(entryBytes));
+		RecordLogEntry.Operation operation = RecordLogEntry.Operation.values()[in.readByte()];
+		String recordType = serializer.readString(in);
+		String recordId = serializer.readString(in);
+		long version = in.readLong();
+		if (operation == RecordLogEntry.Operation.DELETE) {
+			return RecordLogEntry.forDelete(recordType, recordId, version);
+		}
+		return new RecordLogEntry(operation, recordType, recordId, version,
+				serializer.readDataGroup(in),
+				serializer.readStorageTerms(in), serializer.readLinks(in),
+				serializer.readString(in));
+	}
+
+	/**
+	 * close writes and forces all entries appended before close was called, stops the writer
+	 * thread and closes the log file.
+	 */
+	@Override
+	public synchronized void close() {
+		markAsClosed();
+		stopWriterAndCloseChannel();
+	}
+
+	private void markAsClosed() {
+		closeLock.writeLock().lock();
+		try {
+			if (!closed && null != writer) {
+				pendingWrites.add(CLOSE);
+			}
+			closed = true;
+		} finally {
+			closeLock.writeLock().unlock();
+		}
+	}
+
+	private void stopWriterAndCloseChannel() {
+		try {
+			waitForWriterToStop();
+			closeChannel();
+		} catch (IOException e) {
+			throw DataStorageException
+					.withMessageAndException("Could not close record log: " + directory, e);
+		}
+	}
+
+	private void waitForWriterToStop() {
+		if (null != writer) {
+			try {
+				writer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void closeChannel() throws IOException {
+		if (null != channel) {
+			channel.close();
+		}
+	}
+
+	/**
+	 * SegmentReplay replays the entries of one segment, holding back entries appended as one unit
+	 * until their commit marker is read, and adds the complete entries, still encoded, to
+	 * completeEntries. Entries of a unit without a commit marker are dropped, and if the segment
+	 * ends in such a unit the end of the replayed entries is before it, so that the unit is
+	 * truncated before new entries are appended after it.
+	 */
+	private static final class SegmentReplay {
+		private final List<byte[]> completeEntries;
+		private List<byte[]> entriesInOpenBatch = null;
+		private long endOfReplayedEntries = 0;
+
+		SegmentReplay(List<byte[]> completeEntries) {
+			this.completeEntries = completeEntries;
+		}
+
+		void replayEntry(byte[] entryBytes, long endOfEntry) {
+			if (isMarker(entryBytes)) {
+				replayMarker(entryBytes[0]);
+			} else if (null != entriesInOpenBatch) {
+				entriesInOpenBatch.add(entryBytes);
+			} else {
+				completeEntries.add(entryBytes);
+			}
+			if (null == entriesInOpenBatch) {
+				endOfReplayedEntries = endOfEntry;
+			}
+		}
+
+		private boolean isMarker(byte[] entryBytes) {
+			return entryBytes.length == 1 && entryBytes[0] < 0;
+		}
+
+		private void replayMarker(byte marker) {
+			if (COMMIT_BATCH == marker && null != entriesInOpenBatch) {
+				completeEntries.addAll(entriesInOpenBatch);
+			}
+			entriesInOpenBatch = BEGIN_BATCH == marker ? new ArrayList<>() : null;
+		}
+	}
+
+	interface SegmentChannelOpener {
+		FileChannel open(Path segmentFile) throws IOException;
+	}
+
+	private enum Kind {
+		ENTRIES, NEW_SEGMENT, CLOSE
+	}
+
+	private record PendingWrite(Kind kind, ByteBuffer bytes, CompletableFuture<Void> written) {
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import java.util.Set;
+
+import se.uu.ub.cora.data.DataGroup;
+import se.uu.ub.cora.data.collected.Link;
+import se.uu.ub.cora.data.collected.StorageTerm;
+
+/**
+ * RecordLogEntry is one change to the records in {@link RecordStorageInMemory}, as written to and
+ * read from a {@link RecordLog}. Entries for deleted records have no record, storageTerms, links
+ * or dataDivider.
+ * </p>
+ * The version is the version the record got from the change, or for deleted records the version
+ * the record had when it was deleted, so that a change that is already included in a
+ * {@link RecordSnapshot} can be recognized when the log is replayed.
+ */
+record RecordLogEntry(Operation operation, String recordType, String recordId, long version,
+		DataGroup record, Set<StorageTerm> storageTerms, Set<Link> links, String dataDivider) {
+
+	enum Operation {
+		CREATE, UPDATE, DELETE
+	}
+
+	static RecordLogEntry forCreate(String recordType, String recordId, DividerGroup created,
+			Set<StorageTerm> storageTerms, Set<Link> links) {
+		return new RecordLogEntry(Operation.CREATE, recordType, recordId, created.version,
+				created.dataGroup(), storageTerms, links, created.dataDivider);
+	}
+
+	static RecordLogEntry forUpdate(String recordType, String recordId, DividerGroup updated,
+			Set<StorageTerm> storageTerms, Set<Link> links) {
+		return new RecordLogEntry(Operation.UPDATE, recordType, recordId, updated.version,
+				updated.dataGroup(), storageTerms, links, updated.dataDivider);
+	}
+
+	static RecordLogEntry forDelete(String recordType, String recordId, long version) {
+		return new RecordLogEntry(Operation.DELETE, recordType, recordId, version, null, Set.of(),
+				Set.of(), null);
+	}
+
+	DividerGroup dividerGroup() {
+		return DividerGroup.withDataDividerAndDataGroupAndVersion(dataDivider, record, version);
+	}
+}
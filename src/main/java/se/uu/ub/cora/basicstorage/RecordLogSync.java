@@ -0,0 +1,59 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+/**
+ * RecordLogSync describes when the write-ahead log of {@link RecordStorageInMemory} is forced to
+ * disk, see {@link RecordStorageInMemory#usingRecordLogInDirectoryAndSync}.
+ * </p>
+ * Changes are written to the log by one writer thread, which writes all changes waiting to be
+ * written, at most maxBatchSize, as one batch. With the policy:
+ * <ul>
+ * <li>EVERY_WRITE is each batch forced to disk before the changes in it are applied, so a change
+ * is never lost once applied, at the cost of one force per batch.</li>
+ * <li>INTERVAL is the log forced at most once per intervalInMilliseconds, and changes are applied
+ * when written, so changes made during the last interval can be lost in a crash.</li>
+ * <li>OS_MANAGED is the log only forced when it is closed, and the operating system decides when
+ * written changes reach the disk.</li>
+ * </ul>
+ */
+public record RecordLogSync(Policy policy, long intervalInMilliseconds, int maxBatchSize) {
+	private static final int DEFAULT_MAX_BATCH_SIZE = 1024;
+
+	public enum Policy {
+		EVERY_WRITE, INTERVAL, OS_MANAGED
+	}
+
+	public static RecordLogSync everyWrite() {
+		return new RecordLogSync(Policy.EVERY_WRITE, 0, DEFAULT_MAX_BATCH_SIZE);
+	}
+
+	public static RecordLogSync everyMilliseconds(long intervalInMilliseconds) {
+		return new RecordLogSync(Policy.INTERVAL, intervalInMilliseconds,
+				DEFAULT_MAX_BATCH_SIZE);
+	}
+
+	public static RecordLogSync osManaged() {
+		return new RecordLogSync(Policy.OS_MANAGED, 0, DEFAULT_MAX_BATCH_SIZE);
+	}
+
+	public RecordLogSync withMaxBatchSize(int maxBatchSize) {
+		return new RecordLogSync(policy, intervalInMilliseconds, maxBatchSize);
+	}
+}
@@ -0,0 +1,456 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import se.uu.ub.cora.data.DataGroup;
+import se.uu.ub.cora.data.collected.Link;
+import se.uu.ub.cora.data.collected.StorageTerm;
+
+/**
+ * RecordSnapshot writes all records in {@link RecordStorageInMemory}, with their storage terms and
+ * links, to one file and reads them back, so that a restarted storage only has to replay the
+ * {@link RecordLog} segments written after the snapshot.
+ * </p>
+ * The snapshot starts with the position of its index, followed by the encoded records and then the
+ * index. The index holds the number of the first log segment that is not included in the
+ * snapshot, the number of sections and one section for each recordType, each written as its
+ * length followed by the number of records and, for each record, its recordType, recordId,
+ * version, dataDivider, storage terms, links and the position, length and CRC32 checksum of the
+ * encoded record. The sections are followed by the number of recordTypes with deleted records
+ * and, for each of them, the recordType and the highest version of a deleted record. The index
+ * ends with a CRC32 checksum of the index.
+ * </p>
+ * When a snapshot is read, the checksum of the whole index is checked first, and the sections are
+ * then found by their lengths and can be parsed in parallel, one recordType per task, see
+ * {@link #readPerRecordType(ForkJoinPool, Consumer, BiConsumer)}.
+ * </p>
+ * When a snapshot is read only the index is read, and the encoded records are memory-mapped and
+ * handed out as {@link EncodedDataGroup}s that are decoded the first time each record is read, so
+ * that a storage can be started without building the DataGroups of all records. A record that is
+ * still encoded when the next snapshot is written is copied to it without being decoded.
+ * </p>
+ * A snapshot is first written to a temporary file that is forced to disk and then moved in place
+ * of the previous snapshot, so that a crash while writing leaves the previous snapshot untouched.
+ * The directory is forced after the move, so write only returns when the new snapshot is kept
+ * through a crash, and log segments included in it can safely be deleted.
+ */
+final class RecordSnapshot {
+	static final String SNAPSHOT_FILE_NAME = "records.snapshot";
+	private static final String TEMPORARY_FILE_NAME = "records.snapshot.tmp";
+	private static final int HEADER_SIZE = Long.BYTES;
+	private final DataGroupSerializer serializer = new DataGroupSerializer();
+	private final Path snapshotFile;
+	private final Path temporaryFile;
+
+	static RecordSnapshot usingDirectory(Path directory) {
+		return new RecordSnapshot(directory);
+	}
+
+	private RecordSnapshot(Path directory) {
+		snapshotFile = directory.resolve(SNAPSHOT_FILE_NAME);
+		temporaryFile = directory.resolve(TEMPORARY_FILE_NAME);
+	}
+
+	/**
+	 * write writes the entries as the new snapshot, replacing any previous snapshot, and returns
+	 * when the snapshot and its entry in the directory are forced to disk.
+	 * 
+	 * @param firstSegmentNotIncluded
+	 *            A long with the number of the first log segment with changes that are not included
+	 *            in the entries
+	 * @param entries
+	 *            A List of RecordSnapshotEntry to write
+	 * @param highestDeletedVersions
+	 *            A Map with the highest version of a deleted record for each recordType
+	 */
+	void write(long firstSegmentNotIncluded, List<RecordSnapshotEntry> entries,
+			Map<String, Long> highestDeletedVersions) {
+		try {
+			writeToTemporaryFile(firstSegmentNotIncluded, entries, highestDeletedVersions);
+			Files.move(temporaryFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			RecordLog.forceDirectory(snapshotFile.getParent());
+		} catch (IOException e) {
+			throw DataStorageException
+					.withMessageAndException("Could not write snapshot: " + snapshotFile, e);
+		}
+	}
+
+	private void writeToTemporaryFile(long firstSegmentNotIncluded,
+			List<RecordSnapshotEntry> entries, Map<String, Long> highestDeletedVersions)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			channel.position(HEADER_SIZE);
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Channels.newOutputStream(channel)));
+			RecordPositions positions = writeRecords(out, entries);
+			writeIndex(out, firstSegmentNotIncluded, entries, positions, highestDeletedVersions);
+			out.flush();
+			writeHeader(channel, HEADER_SIZE + positions.endOfRecords());
+			channel.force(true);
+		}
+	}
+
+	private RecordPositions writeRecords(DataOutputStream out, List<RecordSnapshotEntry> entries)
+			throws IOException {
+		RecordPositions positions = new RecordPositions(entries.size());
+		for (int i = 0; i < entries.size(); i++) {
+			EncodedRecord encoded = encodeRecord(entries.get(i).dividerGroup());
+			out.write(encoded.bytes());
+			positions.add(i, encoded);
+		}
+		return positions;
+	}
+
+	private EncodedRecord encodeRecord(DividerGroup dividerGroup) throws IOException {
+		EncodedDataGroup encodedDataGroup = dividerGroup.encodedDataGroup();
+		if (null != encodedDataGroup) {
+			return new EncodedRecord(encodedDataGroup.toByteArray(), encodedDataGroup.checksum());
+		}
+		return encodeDataGroup(dividerGroup.dataGroup());
+	}
+
+	private EncodedRecord encodeDataGroup(DataGroup dataGroup) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		serializer.writeDataGroup(out, dataGroup);
+		out.flush();
+		byte[] encoded = bytes.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(encoded);
+		return new EncodedRecord(encoded, crc.getValue());
+	}
+
+	private void writeIndex(DataOutputStream out, long firstSegmentNotIncluded,
+			List<RecordSnapshotEntry> entries, RecordPositions positions,
+			Map<String, Long> highestDeletedVersions) throws IOException {
+		CheckedOutputStream checked = new CheckedOutputStream(out, new CRC32());
+		DataOutputStream indexOut = new DataOutputStream(checked);
+		indexOut.writeLong(firstSegmentNotIncluded);
+		Collection<List<Integer>> entryIndexesPerType = groupEntryIndexesByRecordType(entries);
+		indexOut.writeInt(entryIndexesPerType.size());
+		for (List<Integer> entryIndexesForType : entryIndexesPerType) {
+			byte[] section = encodeSection(entries, positions, entryIndexesForType);
+			indexOut.writeInt(section.length);
+			indexOut.write(section);
+		}
+		writeHighestDeletedVersions(indexOut, highestDeletedVersions);
+		indexOut.flush();
+		out.writeLong(checked.getChecksum().getValue());
+	}
+
+	private Collection<List<Integer>> groupEntryIndexesByRecordType(
+			List<RecordSnapshotEntry> entries) {
+		Map<String, List<Integer>> entryIndexesPerType = new LinkedHashMap<>();
+		for (int i = 0; i < entries.size(); i++) {
+			entryIndexesPerType
+					.computeIfAbsent(entries.get(i).recordType(), _ -> new ArrayList<>()).add(i);
+		}
+		return entryIndexesPerType.values();
+	}
+
+	private byte[] encodeSection(List<RecordSnapshotEntry> entries, RecordPositions positions,
+			List<Integer> entryIndexesForType) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(entryIndexesForType.size());
+		for (int entryIndex : entryIndexesForType) {
+			writeIndexEntry(out, entries.get(entryIndex));
+			positions.writeTo(out, entryIndex);
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private void writeIndexEntry(DataOutputStream out, RecordSnapshotEntry entry)
+			throws IOException {
+		serializer.writeString(out, entry.recordType());
+		serializer.writeString(out, entry.recordId());
+		out.writeLong(entry.dividerGroup().version);
+		serializer.writeString(out, entry.dividerGroup().dataDivider);
+		serializer.writeStorageTerms(out, entry.storageTerms());
+		serializer.writeLinks(out, entry.links());
+	}
+
+	private void writeHighestDeletedVersions(DataOutputStream out,
+			Map<String, Long> highestDeletedVersions) throws IOException {
+		out.writeInt(highestDeletedVersions.size());
+		for (Entry<String, Long> entry : highestDeletedVersions.entrySet()) {
+			serializer.writeString(out, entry.getKey());
+			out.writeLong(entry.getValue());
+		}
+	}
+
+	private void writeHeader(FileChannel channel, long indexPosition) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putLong(indexPosition);
+		header.flip();
+		while (header.hasRemaining()) {
+			channel.write(header, header.position());
+		}
+	}
+
+	/**
+	 * read reads the index of the snapshot and, once the checksum of the index is checked, gives
+	 * each record to the entryConsumer, with the record still encoded in the memory-mapped
+	 * snapshot. The records are given one after another, in the order they were written, grouped
+	 * by recordType.
+	 * 
+	 * @param entryConsumer
+	 *            A Consumer that restores each record
+	 * @param highestDeletedVersionConsumer
+	 *            A BiConsumer that restores the highest version of a deleted record for each
+	 *            recordType
+	 * @return A long with the number of the first log segment with changes that are not included
+	 *         in the snapshot, {@link RecordLog#FIRST_SEGMENT} if there is no snapshot
+	 */
+	long read(Consumer<RecordSnapshotEntry> entryConsumer,
+			BiConsumer<String, Long> highestDeletedVersionConsumer) {
+		return readPerRecordType(null, entriesForType -> entriesForType.forEach(entryConsumer),
+				highestDeletedVersionConsumer);
+	}
+
+	/**
+	 * readPerRecordType reads the snapshot in the same way as
+	 * {@link #read(Consumer, BiConsumer)}, but gives all records of a recordType to the
+	 * entriesConsumer as one list.
+	 * </p>
+	 * If a pool is given, the index sections of the recordTypes are parsed, and given to the
+	 * entriesConsumer, in parallel in the pool, one recordType per task, so the entriesConsumer
+	 * must handle concurrent calls for different recordTypes. Without a pool the sections are
+	 * parsed one after another in the calling thread.
+	 * 
+	 * @param pool
+	 *            A ForkJoinPool to parse the recordTypes in, or null to parse them one after
+	 *            another
+	 * @param entriesConsumer
+	 *            A Consumer that restores the records of one recordType
+	 * @param highestDeletedVersionConsumer
+	 *            A BiConsumer that restores the highest version of a deleted record for each
+	 *            recordType
+	 * @return A long with the number of the first log segment with changes that are not included
+	 *         in the snapshot, {@link RecordLog#FIRST_SEGMENT} if there is no snapshot
+	 */
+	long readPerRecordType(ForkJoinPool pool, Consumer<List<RecordSnapshotEntry>> entriesConsumer,
+			BiConsumer<String, Long> highestDeletedVersionConsumer) {
+		if (!Files.exists(snapshotFile)) {
+			return RecordLog.FIRST_SEGMENT;
+		}
+		try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+			long indexPosition = readIndexPosition(channel);
+			MemorySegment records = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+					indexPosition - HEADER_SIZE, Arena.ofAuto());
+			byte[] index = readIndexCheckingChecksum(channel, indexPosition);
+			return readIndex(index, records, pool, entriesConsumer,
+					highestDeletedVersionConsumer);
+		} catch (IOException e) {
+			throw createReadError(e);
+		}
+	}
+
+	private DataStorageException createReadError(IOException e) {
+		return DataStorageException
+				.withMessageAndException("Could not read snapshot: " + snapshotFile, e);
+	}
+
+	private long readIndexPosition(FileChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		channel.read(header, 0);
+		header.flip();
+		long indexPosition = header.remaining() == HEADER_SIZE ? header.getLong() : -1;
+		if (indexPosition < HEADER_SIZE || indexPosition > channel.size()) {
+			throw DataStorageException.withMessage("Snapshot is not complete: " + snapshotFile);
+		}
+		return indexPosition;
+	}
+
+	private byte[] readIndexCheckingChecksum(FileChannel channel, long indexPosition)
+			throws IOException {
+		long indexSize = channel.size() - indexPosition;
+		if (indexSize < Long.BYTES || indexSize > Integer.MAX_VALUE) {
+			throw DataStorageException.withMessage("Snapshot is not complete: " + snapshotFile);
+		}
+		channel.position(indexPosition);
+		byte[] index = Channels.newInputStream(channel).readNBytes((int) indexSize);
+		int checksumPosition = index.length - Long.BYTES;
+		CRC32 crc = new CRC32();
+		crc.update(index, 0, checksumPosition);
+		throwErrorIfChecksumDoesNotMatch(crc.getValue(),
+				ByteBuffer.wrap(index, checksumPosition, Long.BYTES).getLong());
+		return index;
+	}
+
+	private long readIndex(byte[] index, MemorySegment records, ForkJoinPool pool,
+			Consumer<List<RecordSnapshotEntry>> entriesConsumer,
+			BiConsumer<String, Long> highestDeletedVersionConsumer) throws IOException {
+		ByteArrayInputStream indexBytes = new ByteArrayInputStream(index);
+		DataInputStream in = new DataInputStream(indexBytes);
+		long firstSegmentNotIncluded = in.readLong();
+		int numberOfSections = in.readInt();
+		List<IndexSection> sections = new ArrayList<>(numberOfSections);
+		for (int i = 0; i < numberOfSections; i++) {
+			int length = in.readInt();
+			sections.add(new IndexSection(index.length - indexBytes.available(), length));
+			in.skipNBytes(length);
+		}
+		Map<String, Long> highestDeletedVersions = readHighestDeletedVersions(in);
+		readSections(index, sections, records, pool, entriesConsumer);
+		highestDeletedVersions.forEach(highestDeletedVersionConsumer);
+		return firstSegmentNotIncluded;
+	}
+
+	private void readSections(byte[] index, List<IndexSection> sections, MemorySegment records,
+			ForkJoinPool pool, Consumer<List<RecordSnapshotEntry>> entriesConsumer) {
+		if (null == pool) {
+			sections.forEach(section -> entriesConsumer
+					.accept(readSection(index, section, records)));
+		} else {
+			pool.submit(() -> sections.parallelStream().forEach(section -> entriesConsumer
+					.accept(readSection(index, section, records)))).join();
+		}
+	}
+
+	private List<RecordSnapshotEntry> readSection(byte[] index, IndexSection section,
+			MemorySegment records) {
+		try {
+			DataInputStream in = new DataInputStream(
+					new ByteArrayInputStream(index, section.offset(), section.length()));
+			int numberOfEntries = in.readInt();
+			List<RecordSnapshotEntry> entries = new ArrayList<>(numberOfEntries);
+			for (int i = 0; i < numberOfEntries; i++) {
+				entries.add(readIndexEntry(in, records));
+			}
+			return entries;
+		} catch (IOException e) {
+			throw createReadError(e);
+		}
+	}
+
+	private RecordSnapshotEntry readIndexEntry(DataInputStream in, MemorySegment records)
+			throws IOException {
+		String recordType = serializer.readString(in);
+		String recordId = serializer.readString(in);
+		long version = in.readLong();
+		String dataDivider = serializer.readString(in);
+		Set<StorageTerm> storageTerms = serializer.readStorageTerms(in);
+		Set<Link> links = serializer.readLinks(in);
+		EncodedDataGroup encodedDataGroup = readEncodedDataGroup(in, records);
+		return new RecordSnapshotEntry(recordType, recordId,
+				DividerGroup.withDataDividerAndEncodedDataGroupAndVersion(dataDivider,
+						encodedDataGroup, version),
+				storageTerms, links);
+	}
+
+	private Map<String, Long> readHighestDeletedVersions(DataInputStream in) throws IOException {
+		int numberOfRecordTypes = in.readInt();
+		Map<String, Long> highestDeletedVersions = new HashMap<>(numberOfRecordTypes);
+		for (int i = 0; i < numberOfRecordTypes; i++) {
+			highestDeletedVersions.put(serializer.readString(in), in.readLong());
+		}
+		return highestDeletedVersions;
+	}
+
+	private EncodedDataGroup readEncodedDataGroup(DataInputStream in, MemorySegment records)
+			throws IOException {
+		long position = in.readLong();
+		int length = in.readInt();
+		long checksum = in.readLong();
+		throwErrorIfOutsideRecords(records, position, length);
+		return new EncodedDataGroup(records.asSlice(position, length), checksum);
+	}
+
+	private void throwErrorIfOutsideRecords(MemorySegment records, long position, int length) {
+		if (position < 0 || length < 0 || position + length > records.byteSize()) {
+			throw DataStorageException.withMessage("Snapshot is not complete: " + snapshotFile);
+		}
+	}
+
+	private void throwErrorIfChecksumDoesNotMatch(long calculated, long written) {
+		if (calculated != written) {
+			throw DataStorageException
+					.withMessage("Snapshot checksum does not match: " + snapshotFile);
+		}
+	}
+
+	private record EncodedRecord(byte[] bytes, long checksum) {
+	}
+
+	private record IndexSection(int offset, int length) {
+	}
+
+	private static final class RecordPositions {
+		private final long[] positions;
+		private final int[] lengths;
+		private final long[] checksums;
+		private long endOfRecords = 0;
+
+		RecordPositions(int numberOfRecords) {
+			positions = new long[numberOfRecords];
+			lengths = new int[numberOfRecords];
+			checksums = new long[numberOfRecords];
+		}
+
+		void add(int index, EncodedRecord encoded) {
+			positions[index] = endOfRecords;
+			lengths[index] = encoded.bytes().length;
+			checksums[index] = encoded.checksum();
+			endOfRecords += encoded.bytes().length;
+		}
+
+		void writeTo(DataOutputStream out, int index) throws IOException {
+			out.writeLong(positions[index]);
+			out.writeInt(lengths[index]);
+			out.writeLong(checksums[index]);
+		}
+
+		long endOfRecords() {
+			return endOfRecords;
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2017 Uppsala University Library
+ * Copyright 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -16,19 +16,18 @@
  *     You should have received a copy of the GNU General Public License
  *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
  */
-
 package se.uu.ub.cora.basicstorage;
 
-public final class StorageTermData {
-	public final String value;
-	public final String dataDivider;
+import java.util.Set;
 
-	private StorageTermData(String value, String dataDivider) {
-		this.value = value;
-		this.dataDivider = dataDivider;
-	}
+import se.uu.ub.cora.data.collected.Link;
+import se.uu.ub.cora.data.collected.StorageTerm;
 
-	public static StorageTermData withValueAndDataDivider(String value, String dataDivider) {
-		return new StorageTermData(value, dataDivider);
-	}
+/**
+ * RecordSnapshotEntry is one record in {@link RecordStorageInMemory}, with its storage terms and
+ * links, as written to and read from a {@link RecordSnapshot}. The {@link DividerGroup} holds the
+ * record, its version and its dataDivider.
+ */
+record RecordSnapshotEntry(String recordType, String recordId, DividerGroup dividerGroup,
+		Set<StorageTerm> storageTerms, Set<Link> links) {
 }
@@ -19,15 +19,36 @@
 
 package se.uu.ub.cora.basicstorage;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import se.uu.ub.cora.data.DataGroup;
 import se.uu.ub.cora.data.DataProvider;
@@ -36,6 +57,7 @@ import se.uu.ub.cora.data.collected.Link;
 import se.uu.ub.cora.data.collected.StorageTerm;
 import se.uu.ub.cora.data.copier.DataCopier;
 import se.uu.ub.cora.data.copier.DataCopierProvider;
+import se.uu.ub.cora.logger.LoggerProvider;
 import se.uu.ub.cora.storage.Filter;
 import se.uu.ub.cora.storage.RecordConflictException;
 import se.uu.ub.cora.storage.RecordNotFoundException;
@@ -46,12 +68,27 @@ public class RecordStorageInMemory implements RecordStorage {
 	private static final String RECORD_TYPE = "recordType";
 	private static final String NO_RECORDS_EXISTS_MESSAGE = "No records exists with recordType: ";
 	private static final String NO_RECORD_EXISTS_MESSAGE = "No record exists with recordType: ";
+	private static final long ANY_VERSION = 0;
 
 	protected Map<String, Map<String, DividerGroup>> records = new ConcurrentHashMap<>();
 	protected CollectedTermsHolder collectedTermsHolder = new CollectedTermsInMemoryStorage();
 
 	protected Map<Link, Set<Link>> outgoingLinks = new ConcurrentHashMap<>();
 	protected Map<Link, Set<Link>> incommingLinks = new ConcurrentHashMap<>();
+	private ForkJoinPool poolForMultipleTypes = null;
+	private final RecordLocks recordLocks = new RecordLocks();
+	private FilterResultCache filterResultCache = new FilterResultCache(0);
+	private final DataDividerIndex dataDividerIndex = new DataDividerIndex();
+	/**
+	 * highestDeletedVersions holds the highest version of a deleted record for each recordType. A
+	 * record created after a record of its type is deleted gets a version following it, so that a
+	 * recordId that is deleted and created again never gets a version it has had before.
+	 */
+	private final Map<String, Long> highestDeletedVersions = new ConcurrentHashMap<>();
+	private RecordLog recordLog = null;
+	private RecordSnapshot recordSnapshot = null;
+	private final Object snapshotLock = new Object();
+	private ScheduledExecutorService snapshotScheduler = null;
 
 	public RecordStorageInMemory() {
 		// Make it possible to use default empty record storage
@@ -60,6 +97,328 @@ public class RecordStorageInMemory implements RecordStorage {
 	RecordStorageInMemory(Map<String, Map<String, DividerGroup>> records) {
 		throwErrorIfConstructorArgumentIsNull(records);
 		this.records = records;
+		addRecordsToDataDividerIndex(records);
+	}
+
+	/**
+	 * usingRecordLogInDirectory creates a RecordStorageInMemory that writes all changes to its
+	 * records to a write-ahead log in the given directory, so that the records survive a restart.
+	 * </p>
+	 * The latest snapshot written by {@link #writeSnapshot()}, if any, is read and the changes in
+	 * the log after it are replayed into the new storage before it is returned, so starting a
+	 * storage on the directory of a stopped storage gives the same records, storage terms, links
+	 * and versions as it had. Records from the snapshot are left encoded in the memory-mapped
+	 * snapshot and decoded the first time they are read, while their storage terms and links are
+	 * indexed at once.
+	 * </p>
+	 * Each create, createAll, update and delete is written to the log and forced to disk before it
+	 * is applied in memory, and a change that fails before being applied, such as a create of an
+	 * existing record, is not written.
+	 * 
+	 * @param directory
+	 *            A Path to the directory to keep the log in, created if it does not exist
+	 * @return A RecordStorageInMemory with the records from the log
+	 */
+	public static RecordStorageInMemory usingRecordLogInDirectory(Path directory) {
+		return usingRecordLogInDirectoryAndSync(directory, RecordLogSync.everyWrite());
+	}
+
+	/**
+	 * usingRecordLogInDirectoryAndSync creates a RecordStorageInMemory in the same way as
+	 * {@link #usingRecordLogInDirectory(Path)}, but forces the log to disk as described by the
+	 * given {@link RecordLogSync}.
+	 * </p>
+	 * Changes made concurrently are written to the log as one batch, so that they share one force
+	 * to disk. Threads making changes wait for their batch to be written without holding any lock
+	 * on the log.
+	 * 
+	 * @param directory
+	 *            A Path to the directory to keep the log in, created if it does not exist
+	 * @param sync
+	 *            A RecordLogSync describing when the log is forced to disk
+	 * @return A RecordStorageInMemory with the records from the log
+	 */
+	public static RecordStorageInMemory usingRecordLogInDirectoryAndSync(Path directory,
+			RecordLogSync sync) {
+		return usingRecordLogInDirectoryAndSyncAndRecoveryPool(directory, sync,
+				ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * usingRecordLogInDirectoryAndSyncAndRecoveryPool creates a RecordStorageInMemory in the same
+	 * way as {@link #usingRecordLogInDirectoryAndSync(Path, RecordLogSync)}, but restores the
+	 * records using the given pool.
+	 * </p>
+	 * Records of different recordTypes are independent of each other, so the snapshot and the log
+	 * are restored one recordType per task, with the changes for each recordType applied in the
+	 * order they were made. The storage terms of a recordType are only touched by its own task, and
+	 * the links to records are gathered per task and merged when all tasks are done, so that tasks
+	 * do not compete for links to commonly linked records.
+	 * 
+	 * @param directory
+	 *            A Path to the directory to keep the log in, created if it does not exist
+	 * @param sync
+	 *            A RecordLogSync describing when the log is forced to disk
+	 * @param recoveryPool
+	 *            A ForkJoinPool to restore the recordTypes in
+	 * @return A RecordStorageInMemory with the records from the log
+	 */
+	public static RecordStorageInMemory usingRecordLogInDirectoryAndSyncAndRecoveryPool(
+			Path directory, RecordLogSync sync, ForkJoinPool recoveryPool) {
+		RecordStorageInMemory recordStorage = new RecordStorageInMemory();
+		RecordLog recordLog = RecordLog.usingDirectoryAndSync(directory, sync);
+		RecordSnapshot recordSnapshot = RecordSnapshot.usingDirectory(directory);
+		recordStorage.restoreFromSnapshotAndLog(recordSnapshot, recordLog, recoveryPool);
+		recordStorage.recordLog = recordLog;
+		recordStorage.recordSnapshot = recordSnapshot;
+		return recordStorage;
+	}
+
+	private void restoreFromSnapshotAndLog(RecordSnapshot recordSnapshot, RecordLog recordLog,
+			ForkJoinPool recoveryPool) {
+		long firstSegmentNotInSnapshot = restoreFromSnapshotPerRecordType(recordSnapshot,
+				recoveryPool);
+		List<RecordLogEntry> logEntries = new ArrayList<>();
+		recordLog.replayFromSegment(firstSegmentNotInSnapshot, recoveryPool, logEntries::add);
+		applyLogEntriesPerRecordType(logEntries, recoveryPool);
+	}
+
+	private long restoreFromSnapshotPerRecordType(RecordSnapshot recordSnapshot,
+			ForkJoinPool recoveryPool) {
+		Queue<Map<Link, Set<Link>>> incomingLinksPerType = new ConcurrentLinkedQueue<>();
+		long firstSegmentNotInSnapshot = recordSnapshot.readPerRecordType(recoveryPool,
+				entriesForType -> incomingLinksPerType
+						.add(restoreRecordTypeFromSnapshot(entriesForType)),
+				highestDeletedVersions::put);
+		recoveryPool.submit(() -> incomingLinksPerType.parallelStream()
+				.forEach(this::mergeIntoIncomingLinks)).join();
+		return firstSegmentNotInSnapshot;
+	}
+
+	private static <T> Collection<List<T>> partitionByRecordType(List<T> entries,
+			Function<T, String> recordTypeOfEntry) {
+		Map<String, List<T>> entriesPerType = new LinkedHashMap<>();
+		for (T entry : entries) {
+			entriesPerType.computeIfAbsent(recordTypeOfEntry.apply(entry), _ -> new ArrayList<>())
+					.add(entry);
+		}
+		return entriesPerType.values();
+	}
+
+	private Map<Link, Set<Link>> restoreRecordTypeFromSnapshot(
+			List<RecordSnapshotEntry> entriesForType) {
+		Map<Link, Set<Link>> incomingLinksForType = new HashMap<>();
+		for (RecordSnapshotEntry entry : entriesForType) {
+			restoreFromSnapshot(entry);
+			gatherIncomingLinks(incomingLinksForType, entry);
+		}
+		return incomingLinksForType;
+	}
+
+	private void restoreFromSnapshot(RecordSnapshotEntry entry) {
+		String dataDivider = entry.dividerGroup().dataDivider;
+		ensureHolderForRecordType(entry.recordType()).put(entry.recordId(), entry.dividerGroup());
+		dataDividerIndex.add(dataDivider, entry.recordType(), entry.recordId());
+		collectedTermsHolder.storeCollectedTerms(entry.recordType(), entry.recordId(),
+				entry.storageTerms(), dataDivider);
+		if (!entry.links().isEmpty()) {
+			outgoingLinks.put(new Link(entry.recordType(), entry.recordId()), entry.links());
+		}
+	}
+
+	private void gatherIncomingLinks(Map<Link, Set<Link>> incomingLinksForType,
+			RecordSnapshotEntry entry) {
+		Link from = new Link(entry.recordType(), entry.recordId());
+		for (Link toLink : entry.links()) {
+			incomingLinksForType.compute(toLink,
+					(_, linksToRecord) -> addLinkToLinksToRecord(linksToRecord, from));
+		}
+	}
+
+	private void mergeIntoIncomingLinks(Map<Link, Set<Link>> incomingLinksForType) {
+		incomingLinksForType.forEach((toLink, linksToRecord) -> incommingLinks.merge(toLink,
+				linksToRecord, this::addAllLinksToRecord));
+	}
+
+	private Set<Link> addAllLinksToRecord(Set<Link> linksToRecord, Set<Link> addedLinks) {
+		linksToRecord.addAll(addedLinks);
+		return linksToRecord;
+	}
+
+	private void applyLogEntriesPerRecordType(List<RecordLogEntry> entries,
+			ForkJoinPool recoveryPool) {
+		Collection<List<RecordLogEntry>> entriesPerType = partitionByRecordType(entries,
+				RecordLogEntry::recordType);
+		recoveryPool.submit(() -> entriesPerType.parallelStream()
+				.forEach(entriesForType -> entriesForType.forEach(this::applyLogEntry))).join();
+	}
+
+	/**
+	 * Changes written to the log while a snapshot was gathered can already be included in the
+	 * snapshot, so each entry is only applied if the version of the stored record shows that the
+	 * change is not already applied.
+	 */
+	private void applyLogEntry(RecordLogEntry entry) {
+		DividerGroup stored = readStoredDividerGroupOrNull(entry.recordType(), entry.recordId());
+		switch (entry.operation()) {
+			case CREATE -> createFromLogIfNotStored(entry, stored);
+			case UPDATE -> updateFromLogIfStoredIsOlder(entry, stored);
+			case DELETE -> deleteFromLogIfStoredIsNotNewer(entry, stored);
+		}
+	}
+
+	private DividerGroup readStoredDividerGroupOrNull(String recordType, String recordId) {
+		Map<String, DividerGroup> holderForRecordType = records.get(recordType);
+		if (null == holderForRecordType) {
+			return null;
+		}
+		return holderForRecordType.get(recordId);
+	}
+
+	private void createFromLogIfNotStored(RecordLogEntry entry, DividerGroup stored) {
+		if (null == stored) {
+			storeCreatedRecord(entry.recordType(), entry.recordId(), entry.dividerGroup(),
+					entry.storageTerms(), entry.links());
+		}
+	}
+
+	private void updateFromLogIfStoredIsOlder(RecordLogEntry entry, DividerGroup stored) {
+		if (null != stored && stored.version < entry.version()) {
+			storeUpdatedRecord(entry.recordType(), entry.recordId(), stored, entry.dividerGroup(),
+					entry.storageTerms(), entry.links());
+		}
+	}
+
+	private void deleteFromLogIfStoredIsNotNewer(RecordLogEntry entry, DividerGroup stored) {
+		highestDeletedVersions.merge(entry.recordType(), entry.version(), Math::max);
+		if (null != stored && stored.version <= entry.version()) {
+			removeStoredRecord(entry.recordType(), entry.recordId(),
+					records.get(entry.recordType()));
+		}
+	}
+
+	/**
+	 * writeSnapshot writes all records, with their storage terms and links, to a snapshot in the
+	 * directory of the write-ahead log, and deletes the parts of the log with changes included in
+	 * the snapshot, so that a restart only replays the changes made after the snapshot.
+	 * </p>
+	 * Writers are not held back while the snapshot is gathered. A new log segment is started, and
+	 * once the writers that wrote to the previous segments have applied their changes, each record
+	 * is gathered with its storage terms and links while it is locked for reading, which only
+	 * copies references as stored records, storage terms and links are replaced and never changed.
+	 * The snapshot can therefore include some of the changes written to the new segment, which are
+	 * recognized by their versions and skipped when the log is replayed. The log segments before
+	 * the new one are only deleted when the snapshot and its directory are forced to disk.
+	 * 
+	 * @throws DataStorageException
+	 *             if the storage has no write-ahead log
+	 */
+	public void writeSnapshot() {
+		throwErrorIfNoRecordLog();
+		synchronized (snapshotLock) {
+			writeSnapshotAndDeleteIncludedLogSegments();
+		}
+	}
+
+	private void throwErrorIfNoRecordLog() {
+		if (null == recordLog) {
+			throw DataStorageException.withMessage("Record storage has no record log");
+		}
+	}
+
+	private void writeSnapshotAndDeleteIncludedLogSegments() {
+		long firstSegmentNotIncluded = recordLog.startNewSegment();
+		recordLocks.waitForCurrentWriters();
+		List<RecordSnapshotEntry> entries = gatherSnapshotEntries();
+		Map<String, Long> highestDeletedVersionsInSnapshot = Map.copyOf(highestDeletedVersions);
+		recordSnapshot.write(firstSegmentNotIncluded, entries, highestDeletedVersionsInSnapshot);
+		recordLog.deleteSegmentsBefore(firstSegmentNotIncluded);
+	}
+
+	private List<RecordSnapshotEntry> gatherSnapshotEntries() {
+		List<RecordSnapshotEntry> entries = new ArrayList<>();
+		records.forEach((recordType, recordsForType) -> recordsForType.keySet().forEach(
+				recordId -> addSnapshotEntryIfStored(entries, recordType, recordId)));
+		return entries;
+	}
+
+	private void addSnapshotEntryIfStored(List<RecordSnapshotEntry> entries, String recordType,
+			String recordId) {
+		Lock readLock = recordLocks.readLockFor(recordType, recordId);
+		readLock.lock();
+		try {
+			DividerGroup dividerGroup = readStoredDividerGroupOrNull(recordType, recordId);
+			if (null != dividerGroup) {
+				entries.add(createSnapshotEntry(recordType, recordId, dividerGroup));
+			}
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	private RecordSnapshotEntry createSnapshotEntry(String recordType, String recordId,
+			DividerGroup dividerGroup) {
+		return new RecordSnapshotEntry(recordType, recordId, dividerGroup,
+				getStorageTermsForRecord(recordType, recordId),
+				getLinksFromRecord(recordType, recordId));
+	}
+
+	/**
+	 * startPeriodicSnapshots writes a snapshot, as {@link #writeSnapshot()}, each time the interval
+	 * has passed since the previous snapshot was written, in a background thread, until the record
+	 * log is closed. A snapshot that fails is logged as an error and not retried, the log is kept
+	 * until a later snapshot succeeds, and the following snapshots are still written.
+	 * 
+	 * @param interval
+	 *            A Duration to wait between snapshots
+	 * @throws DataStorageException
+	 *             if the storage has no write-ahead log
+	 */
+	public void startPeriodicSnapshots(Duration interval) {
+		throwErrorIfNoRecordLog();
+		stopPeriodicSnapshots();
+		snapshotScheduler = Executors.newSingleThreadScheduledExecutor(
+				Thread.ofPlatform().name("recordSnapshotWriter").daemon().factory());
+		snapshotScheduler.scheduleWithFixedDelay(this::writeSnapshotKeepingLogOnError,
+				interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	private void writeSnapshotKeepingLogOnError() {
+		try {
+			writeSnapshot();
+		} catch (RuntimeException e) {
+			LoggerProvider.getLoggerForClass(RecordStorageInMemory.class)
+					.logErrorUsingMessageAndException("Could not write periodic snapshot, the "
+							+ "record log is kept until a later snapshot is written", e);
+		}
+	}
+
+	private void stopPeriodicSnapshots() {
+		if (null != snapshotScheduler) {
+			snapshotScheduler.shutdown();
+			waitForSnapshotInProgress();
+			snapshotScheduler = null;
+		}
+	}
+
+	private void waitForSnapshotInProgress() {
+		try {
+			snapshotScheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * closeRecordLog stops periodic snapshots and closes the write-ahead log of a storage created
+	 * with {@link #usingRecordLogInDirectory(Path)}. The storage must not be changed after the log
+	 * is closed. Nothing is done if the storage has no log.
+	 */
+	public void closeRecordLog() {
+		stopPeriodicSnapshots();
+		if (null != recordLog) {
+			recordLog.close();
+		}
 	}
 
 	private final void throwErrorIfConstructorArgumentIsNull(
@@ -69,42 +428,125 @@ public class RecordStorageInMemory implements RecordStorage {
 		}
 	}
 
+	private void addRecordsToDataDividerIndex(Map<String, Map<String, DividerGroup>> records) {
+		records.forEach((recordType, recordsForType) -> recordsForType
+				.forEach((recordId, dividerGroup) -> dataDividerIndex
+						.add(dividerGroup.dataDivider, recordType, recordId)));
+	}
+
+	/**
+	 * setForkJoinPoolForMultipleTypes sets a pool used to read and count records for several
+	 * recordTypes in parallel, in {@link #readList(List, Filter)} and
+	 * {@link #getTotalNumberOfRecordsForTypes(List, Filter)}. This speeds up reads for abstract
+	 * types with many implementing types.
+	 * </p>
+	 * The result is merged in the same order as the types are given, so it is the same as when the
+	 * types are read one after another. Setting the pool to null, which is the default, turns
+	 * parallel reads off.
+	 * 
+	 * @param pool
+	 *            A ForkJoinPool to read types in, or null to read them one after another
+	 */
+	public void setForkJoinPoolForMultipleTypes(ForkJoinPool pool) {
+		poolForMultipleTypes = pool;
+	}
+
+	/**
+	 * setFilterResultCacheSize sets how many results of filtered reads to cache, intended for
+	 * clients that read the same filters many times while the records rarely change.
+	 * </p>
+	 * The recordIds found for a recordType and the parts of a filter are cached, and used for later
+	 * reads with the same parts until a record of the type is created, updated or deleted. fromNo
+	 * and toNo are applied to the cached recordIds, so reading other pages uses the same result.
+	 * The records themselves are read as usual. When the cache is full is the least recently used
+	 * result removed. Setting the size to 0, which is the default, turns the cache off.
+	 * 
+	 * @param maxEntries
+	 *            An int with the maximum number of cached results, or 0 to turn caching off
+	 */
+	public void setFilterResultCacheSize(int maxEntries) {
+		filterResultCache = new FilterResultCache(maxEntries);
+	}
+
 	@Override
 	public void create(String recordType, String recordId, DataGroup record,
 			Set<StorageTerm> storageTerms, Set<Link> links, String dataDivider) {
-		ensureStorageExistsForRecordType(recordType);
-		checkNoConflictOnRecordId(recordType, recordId);
-		storeIndependentRecordByRecordTypeAndRecordId(recordType, recordId, record, dataDivider);
-		collectedTermsHolder.storeCollectedTerms(recordType, recordId, storageTerms, dataDivider);
+		DividerGroup dividerGroup = createIndependentDividerGroup(record, dataDivider);
+		Lock writeLock = recordLocks.writeLockFor(recordType, recordId);
+		writeLock.lock();
+		try {
+			throwConflictIfRecordExists(recordType, recordId);
+			DividerGroup created = withFirstVersionForRecordType(dividerGroup, recordType);
+			appendToRecordLog(() -> RecordLogEntry.forCreate(recordType, recordId, created,
+					storageTerms, links));
+			storeCreatedRecord(recordType, recordId, created, storageTerms, links);
+		} finally {
+			filterResultCache.recordWriteForType(recordType);
+			writeLock.unlock();
+		}
+	}
+
+	private void storeCreatedRecord(String recordType, String recordId, DividerGroup created,
+			Set<StorageTerm> storageTerms, Set<Link> links) {
+		storeNewRecordOrThrowConflict(recordType, recordId, created);
+		dataDividerIndex.add(created.dataDivider, recordType, recordId);
+		collectedTermsHolder.storeCollectedTerms(recordType, recordId, storageTerms,
+				created.dataDivider);
 		storeLinks(recordType, recordId, links);
 	}
 
-	protected final void ensureStorageExistsForRecordType(String recordType) {
-		if (holderForRecordTypeDoesNotExistInStorage(recordType)) {
-			createHolderForRecordTypeInStorage(recordType);
+	private DividerGroup createIndependentDividerGroup(RecordToCreate toCreate) {
+		return createIndependentDividerGroup(toCreate.record(), toCreate.dataDivider());
+	}
+
+	private DividerGroup createIndependentDividerGroup(DataGroup record, String dataDivider) {
+		DataGroup recordIndependentOfEnteredRecord = createIndependentCopy(record);
+		return DividerGroup.withDataDividerAndDataGroup(dataDivider,
+				recordIndependentOfEnteredRecord);
+	}
+
+	private void throwConflictIfRecordExists(String recordType, String recordId) {
+		Map<String, DividerGroup> holderForRecordType = records.get(recordType);
+		if (null != holderForRecordType && holderForRecordType.containsKey(recordId)) {
+			throw createConflictForExistingRecord(recordId);
 		}
 	}
 
-	private final boolean holderForRecordTypeDoesNotExistInStorage(String recordType) {
-		return !records.containsKey(recordType);
+	private DividerGroup withFirstVersionForRecordType(DividerGroup dividerGroup,
+			String recordType) {
+		Long highestDeletedVersion = highestDeletedVersions.get(recordType);
+		if (null == highestDeletedVersion) {
+			return dividerGroup;
+		}
+		return dividerGroup.withVersionFollowing(highestDeletedVersion);
 	}
 
-	private final void createHolderForRecordTypeInStorage(String recordType) {
-		records.put(recordType, new ConcurrentHashMap<>());
+	private void appendToRecordLog(Supplier<RecordLogEntry> entrySupplier) {
+		if (null != recordLog) {
+			recordLog.append(entrySupplier.get());
+		}
 	}
 
-	private void checkNoConflictOnRecordId(String recordType, String recordId) {
-		if (recordIdExistsForRecordType(recordType, recordId)) {
-			throw RecordConflictException
-					.withMessage("Record with recordId: " + recordId + " already exists");
+	private void storeNewRecordOrThrowConflict(String recordType, String recordId,
+			DividerGroup dividerGroup) {
+		Map<String, DividerGroup> holderForRecordType = ensureHolderForRecordType(recordType);
+		DividerGroup existing = holderForRecordType.putIfAbsent(recordId, dividerGroup);
+		if (null != existing) {
+			throw createConflictForExistingRecord(recordId);
 		}
 	}
 
-	private void storeIndependentRecordByRecordTypeAndRecordId(String recordType, String recordId,
-			DataGroup record, String dataDivider) {
-		DataGroup recordIndependentOfEnteredRecord = createIndependentCopy(record);
-		storeRecordByRecordTypeAndRecordId(recordType, recordId, recordIndependentOfEnteredRecord,
-				dataDivider);
+	private RecordConflictException createConflictForExistingRecord(String recordId) {
+		return RecordConflictException
+				.withMessage("Record with recordId: " + recordId + " already exists");
+	}
+
+	protected final void ensureStorageExistsForRecordType(String recordType) {
+		ensureHolderForRecordType(recordType);
+	}
+
+	private Map<String, DividerGroup> ensureHolderForRecordType(String recordType) {
+		return records.computeIfAbsent(recordType, _ -> new RecordTypeHolder());
 	}
 
 	private DataGroup createIndependentCopy(DataGroup record) {
@@ -112,23 +554,184 @@ public class RecordStorageInMemory implements RecordStorage {
 		return (DataGroup) dataCopier.copy();
 	}
 
+	private DataGroup createCopyForReader(DataGroup storedRecord) {
+		return createIndependentCopy(storedRecord);
+	}
+
 	protected void storeRecordByRecordTypeAndRecordId(String recordType, String recordId,
 			DataGroup recordIndependentOfEnteredRecord, String dataDivider) {
-		records.get(recordType).put(recordId, DividerGroup.withDataDividerAndDataGroup(dataDivider,
-				recordIndependentOfEnteredRecord));
+		DividerGroup dividerGroup = DividerGroup.withDataDividerAndDataGroup(dataDivider,
+				recordIndependentOfEnteredRecord);
+		Lock writeLock = recordLocks.writeLockFor(recordType, recordId);
+		writeLock.lock();
+		try {
+			replaceOrStoreRecord(recordType, recordId, dividerGroup);
+		} finally {
+			filterResultCache.recordWriteForType(recordType);
+			writeLock.unlock();
+		}
+	}
+
+	private void replaceOrStoreRecord(String recordType, String recordId,
+			DividerGroup dividerGroup) {
+		Map<String, DividerGroup> holderForRecordType = ensureHolderForRecordType(recordType);
+		DividerGroup previous = holderForRecordType.get(recordId);
+		if (null == previous) {
+			holderForRecordType.put(recordId,
+					withFirstVersionForRecordType(dividerGroup, recordType));
+		} else {
+			holderForRecordType.put(recordId, dividerGroup.withVersionFollowing(previous));
+			dataDividerIndex.remove(previous.dataDivider, recordType, recordId);
+		}
+		dataDividerIndex.add(dividerGroup.dataDivider, recordType, recordId);
 	}
 
 	private void storeLinks(String recordType, String recordId, Set<Link> toLinks) {
 		Link from = new Link(recordType, recordId);
 		if (!toLinks.isEmpty()) {
-			outgoingLinks.put(from, toLinks);
+			outgoingLinks.put(from, Set.copyOf(toLinks));
 			storeLinksInIncomingLinks(from, toLinks);
 		}
 	}
 
 	private void storeLinksInIncomingLinks(Link from, Set<Link> toLinks) {
 		for (Link toLink : toLinks) {
-			incommingLinks.computeIfAbsent(toLink, _ -> new LinkedHashSet<Link>()).add(from);
+			incommingLinks.compute(toLink,
+					(_, linksToRecord) -> addLinkToLinksToRecord(linksToRecord, from));
+		}
+	}
+
+	private Set<Link> addLinkToLinksToRecord(Set<Link> linksToRecord, Link from) {
+		Set<Link> existingOrNewLinks = linksToRecord;
+		if (null == existingOrNewLinks) {
+			existingOrNewLinks = ConcurrentHashMap.newKeySet();
+		}
+		existingOrNewLinks.add(from);
+		return existingOrNewLinks;
+	}
+
+	/**
+	 * createAll creates many records as one unit, intended for loading large numbers of records,
+	 * such as when a node is started.
+	 * </p>
+	 * Each record is stored in the same way as if it had been created with
+	 * {@link #create(String, String, DataGroup, Set, Set, String)}, but the records are copied and
+	 * their links are stored in parallel, and the storage terms of all records with the same value
+	 * are added to the index together. The write locks of the records in the batch are held until
+	 * all of them are stored, so writers and readers that lock any of those records wait, while
+	 * records in other lock stripes can be written and read as usual.
+	 * </p>
+	 * When the storage terms and links are stored, the records are added to the holder of their
+	 * recordType. A recordType without records gets a holder built in one pass over the sorted
+	 * records. As the storage terms and links are stored first, links from records that can not
+	 * yet be read can, for a short time, be found, while filtered reads skip, and do not count,
+	 * records that are not yet stored.
+	 * </p>
+	 * If any of the records already exists, or the same record occurs more than once in the batch,
+	 * is a {@link RecordConflictException} thrown and none of the records are created.
+	 * 
+	 * @param recordsToCreate
+	 *            A List of {@link RecordToCreate} with the records to create
+	 */
+	public void createAll(List<RecordToCreate> recordsToCreate) {
+		Map<String, SortedMap<String, DividerGroup>> copiesPerType = createIndependentCopiesPerType(
+				recordsToCreate);
+		int[] lockedStripes = recordLocks.lockForWrite(getRecordIdsPerType(copiesPerType));
+		try {
+			throwConflictIfAnyRecordExists(copiesPerType);
+			copiesPerType.forEach(this::useFirstVersionForRecordType);
+			appendAllToRecordLog(recordsToCreate, copiesPerType);
+			collectedTermsHolder.storeCollectedTermsForNewRecords(recordsToCreate);
+			recordsToCreate.parallelStream().forEach(this::storeDataDividerAndLinks);
+			copiesPerType.forEach(this::publishRecordsForRecordType);
+		} finally {
+			copiesPerType.keySet().forEach(filterResultCache::recordWriteForType);
+			recordLocks.unlockForWrite(lockedStripes);
+		}
+	}
+
+	private Map<String, Set<String>> getRecordIdsPerType(
+			Map<String, SortedMap<String, DividerGroup>> copiesPerType) {
+		Map<String, Set<String>> recordIdsPerType = new HashMap<>();
+		copiesPerType.forEach((recordType, copiesForType) -> recordIdsPerType.put(recordType,
+				copiesForType.keySet()));
+		return recordIdsPerType;
+	}
+
+	private Map<String, SortedMap<String, DividerGroup>> createIndependentCopiesPerType(
+			List<RecordToCreate> recordsToCreate) {
+		List<DividerGroup> copies = recordsToCreate.parallelStream()
+				.map(this::createIndependentDividerGroup).toList();
+		Map<String, SortedMap<String, DividerGroup>> copiesPerType = new HashMap<>();
+		Iterator<DividerGroup> copiesIterator = copies.iterator();
+		for (RecordToCreate toCreate : recordsToCreate) {
+			SortedMap<String, DividerGroup> copiesForType = copiesPerType
+					.computeIfAbsent(toCreate.recordType(), _ -> new TreeMap<>());
+			DividerGroup previous = copiesForType.put(toCreate.recordId(), copiesIterator.next());
+			throwConflictIfRecordOccursMoreThanOnce(previous, toCreate.recordId());
+		}
+		return copiesPerType;
+	}
+
+	private void useFirstVersionForRecordType(String recordType,
+			SortedMap<String, DividerGroup> copiesForType) {
+		copiesForType.replaceAll((_, copy) -> withFirstVersionForRecordType(copy, recordType));
+	}
+
+	private void appendAllToRecordLog(List<RecordToCreate> recordsToCreate,
+			Map<String, SortedMap<String, DividerGroup>> copiesPerType) {
+		if (null != recordLog) {
+			List<RecordLogEntry> entries = new ArrayList<>(recordsToCreate.size());
+			for (RecordToCreate toCreate : recordsToCreate) {
+				DividerGroup copy = copiesPerType.get(toCreate.recordType())
+						.get(toCreate.recordId());
+				entries.add(RecordLogEntry.forCreate(toCreate.recordType(), toCreate.recordId(),
+						copy, toCreate.storageTerms(), toCreate.links()));
+			}
+			recordLog.appendAll(entries);
+		}
+	}
+
+	private void throwConflictIfRecordOccursMoreThanOnce(DividerGroup previous, String recordId) {
+		if (null != previous) {
+			throw RecordConflictException.withMessage(
+					"Record with recordId: " + recordId + " occurs more than once");
+		}
+	}
+
+	private void throwConflictIfAnyRecordExists(
+			Map<String, SortedMap<String, DividerGroup>> copiesPerType) {
+		for (Entry<String, SortedMap<String, DividerGroup>> entry : copiesPerType.entrySet()) {
+			Map<String, DividerGroup> holderForRecordType = records.get(entry.getKey());
+			if (null != holderForRecordType) {
+				throwConflictIfAnyRecordIdExists(holderForRecordType, entry.getValue().keySet());
+			}
+		}
+	}
+
+	private void throwConflictIfAnyRecordIdExists(Map<String, DividerGroup> holderForRecordType,
+			Set<String> recordIds) {
+		for (String recordId : recordIds) {
+			if (holderForRecordType.containsKey(recordId)) {
+				throw createConflictForExistingRecord(recordId);
+			}
+		}
+	}
+
+	private void storeDataDividerAndLinks(RecordToCreate toCreate) {
+		dataDividerIndex.add(toCreate.dataDivider(), toCreate.recordType(), toCreate.recordId());
+		storeLinks(toCreate.recordType(), toCreate.recordId(), toCreate.links());
+	}
+
+	private void publishRecordsForRecordType(String recordType,
+			SortedMap<String, DividerGroup> copiesForType) {
+		Map<String, DividerGroup> holderForRecordType = records.get(recordType);
+		if (null == holderForRecordType) {
+			holderForRecordType = records.putIfAbsent(recordType,
+					new RecordTypeHolder(copiesForType));
+		}
+		if (null != holderForRecordType) {
+			copiesForType.forEach(holderForRecordType::putIfAbsent);
 		}
 	}
 
@@ -146,6 +749,214 @@ public class RecordStorageInMemory implements RecordStorage {
 		return readResult;
 	}
 
+	/**
+	 * readList returns the records of the given type that matches the filter, sorted by the value
+	 * of one of their storageTerms as described by {@link StorageTermSort}.
+	 * </p>
+	 * The records are sorted using the ordered value index of the storageKey, which stops as soon
+	 * as the records up to toNo of the filter are found, so reading the first page of a large
+	 * result does not sort or copy the records on later pages. Without filter parts the
+	 * recordIds of the type are not gathered at all, only the records on the page are looked up.
+	 * fromNo and toNo are applied to the sorted records.
+	 *
+	 * @param type
+	 *            A String with the recordType to read records for
+	 * @param filter
+	 *            A {@link Filter} to filter the records with
+	 * @param sort
+	 *            A {@link StorageTermSort} with the storageKey and direction to sort by
+	 * @return A StorageReadResult with the sorted records in the window of the filter
+	 */
+	public StorageReadResult readList(String type, Filter filter, StorageTermSort sort) {
+		return readList(type, filter, Collections.emptyList(), sort);
+	}
+
+	/**
+	 * readList returns the records of the given type that matches both the filter and all the
+	 * given {@link StorageTermCondition}s, ordered by recordId.
+	 * </p>
+	 * The conditions are answered from the ordered value index of their storageKeys, so a
+	 * condition matching values starting with a prefix or in a range, such as a large window of
+	 * dates, is a range scan over the matching values and does not touch records with other
+	 * values. fromNo and toNo are applied to the matching records.
+	 * 
+	 * @param type
+	 *            A String with the recordType to read records for
+	 * @param filter
+	 *            A {@link Filter} to filter the records with
+	 * @param conditions
+	 *            A List with the StorageTermConditions that the records must match
+	 * @return A StorageReadResult with the matching records in the window of the filter
+	 */
+	public StorageReadResult readList(String type, Filter filter,
+			List<StorageTermCondition> conditions) {
+		if (conditions.isEmpty()) {
+			return readList(type, filter);
+		}
+		Map<String, DividerGroup> typeDividerRecords = records.get(type);
+		throwErrorIfNoRecordOfType(type, typeDividerRecords);
+		List<String> recordIds = collectedTermsHolder.findRecordIdsForFilterAndConditions(type,
+				filter, conditions);
+		return readRecordGroupsInWindow(type, filter, typeDividerRecords, recordIds,
+				recordIds.size(), stillMatchingFilterAndConditions(type, filter, conditions));
+	}
+
+	/**
+	 * readList returns the records of the given type that matches both the filter and all the
+	 * given {@link StorageTermCondition}s, sorted as described by {@link StorageTermSort}, in the
+	 * same way as {@link #readList(String, Filter, StorageTermSort)}.
+	 * 
+	 * @param type
+	 *            A String with the recordType to read records for
+	 * @param filter
+	 *            A {@link Filter} to filter the records with
+	 * @param conditions
+	 *            A List with the StorageTermConditions that the records must match
+	 * @param sort
+	 *            A {@link StorageTermSort} with the storageKey and direction to sort by
+	 * @return A StorageReadResult with the sorted records in the window of the filter
+	 */
+	public StorageReadResult readList(String type, Filter filter,
+			List<StorageTermCondition> conditions, StorageTermSort sort) {
+		Map<String, DividerGroup> typeDividerRecords = records.get(type);
+		throwErrorIfNoRecordOfType(type, typeDividerRecords);
+		if (!filterHasParts(filter) && conditions.isEmpty()) {
+			return readAllRecordsSortedInWindow(type, filter, sort, typeDividerRecords);
+		}
+		List<String> recordIdsToSort = findRecordIdsToSort(type, filter, conditions,
+				typeDividerRecords);
+		List<String> sortedRecordIds = collectedTermsHolder.sortRecordIdsByStorageTerm(type,
+				recordIdsToSort, sort, calculateToNum(filter, recordIdsToSort.size()));
+		return readRecordGroupsInWindow(type, filter, typeDividerRecords, sortedRecordIds,
+				recordIdsToSort.size(), stillMatchingFilterAndConditions(type, filter, conditions));
+	}
+
+	private List<String> findRecordIdsToSort(String type, Filter filter,
+			List<StorageTermCondition> conditions, Map<String, DividerGroup> typeDividerRecords) {
+		if (conditions.isEmpty()) {
+			return findRecordIdsForFilter(type, filter, typeDividerRecords);
+		}
+		return collectedTermsHolder.findRecordIdsForFilterAndConditions(type, filter, conditions);
+	}
+
+	private StorageReadResult readAllRecordsSortedInWindow(String type, Filter filter,
+			StorageTermSort sort, Map<String, DividerGroup> typeDividerRecords) {
+		SortedSet<String> allRecordIds = getRecordIdsInOrder(typeDividerRecords);
+		int totalNumberOfMatches = typeDividerRecords.size();
+		List<String> sortedRecordIds = collectedTermsHolder.sortAllRecordIdsByStorageTerm(type,
+				allRecordIds, sort, calculateToNum(filter, totalNumberOfMatches));
+		return readRecordGroupsInWindow(type, filter, typeDividerRecords, sortedRecordIds,
+				totalNumberOfMatches, (_, _) -> true);
+	}
+
+	private SortedSet<String> getRecordIdsInOrder(Map<String, DividerGroup> typeDividerRecords) {
+		if (typeDividerRecords instanceof SortedMap<String, DividerGroup> sortedRecords
+				&& sortedRecords.keySet() instanceof SortedSet<String> sortedRecordIds) {
+			return sortedRecordIds;
+		}
+		return new TreeSet<>(typeDividerRecords.keySet());
+	}
+
+	private StorageReadResult readRecordGroupsInWindow(String type, Filter filter,
+			Map<String, DividerGroup> typeDividerRecords, List<String> recordIds,
+			long totalNumberOfMatches, BiPredicate<String, DividerGroup> stillMatches) {
+		List<String> recordIdsInWindow = getRecordIdsInWindow(filter, recordIds);
+		List<DataGroup> recordsInWindow = readRecordsStillMatching(type, typeDividerRecords,
+				recordIdsInWindow, stillMatches);
+		StorageReadResult readResult = createReadResultForWindow(Collections.emptyList(),
+				withoutSkippedRecords(totalNumberOfMatches, recordIdsInWindow, recordsInWindow));
+		readResult.listOfDataRecordGroups = convertToDataRecordGroups(recordsInWindow);
+		return readResult;
+	}
+
+	private List<DataRecordGroup> convertToDataRecordGroups(List<DataGroup> dataGroups) {
+		List<DataRecordGroup> dataRecordGroups = new ArrayList<>(dataGroups.size());
+		for (DataGroup dataGroup : dataGroups) {
+			dataRecordGroups.add(DataProvider.createRecordGroupFromDataGroup(dataGroup));
+		}
+		return dataRecordGroups;
+	}
+
+	/**
+	 * readListForDataDivider returns the records of the given type in the given dataDivider that
+	 * matches the filter, ordered by recordId.
+	 * </p>
+	 * The records are found using an index of the recordIds in each dataDivider, so the time taken
+	 * depends on the number of records in the dataDivider and not on the number of records of the
+	 * type. If the filter has parts are the records matching the filter restricted to those in the
+	 * dataDivider. fromNo and toNo are applied to the records in the dataDivider.
+	 * 
+	 * @param type
+	 *            A String with the recordType to read records for
+	 * @param dataDivider
+	 *            A String with the dataDivider to read records in
+	 * @param filter
+	 *            A {@link Filter} to filter the records with
+	 * @return A StorageReadResult with the records in the window of the filter
+	 */
+	public StorageReadResult readListForDataDivider(String type, String dataDivider,
+			Filter filter) {
+		Map<String, DividerGroup> typeDividerRecords = records.get(type);
+		throwErrorIfNoRecordOfType(type, typeDividerRecords);
+		List<String> recordIds = findRecordIdsInDataDivider(type, dataDivider, filter,
+				typeDividerRecords);
+		BiPredicate<String, DividerGroup> stillMatchingFilter = stillMatchingFilterAndConditions(
+				type, filter, Collections.emptyList());
+		return readRecordGroupsInWindow(type, filter, typeDividerRecords, recordIds,
+				recordIds.size(),
+				(recordId, dividerGroup) -> dataDivider.equals(dividerGroup.dataDivider)
+						&& stillMatchingFilter.test(recordId, dividerGroup));
+	}
+
+	private List<String> findRecordIdsInDataDivider(String type, String dataDivider,
+			Filter filter, Map<String, DividerGroup> typeDividerRecords) {
+		Set<String> recordIdsInDataDivider = dataDividerIndex.recordIdsFor(dataDivider, type);
+		if (!filterHasParts(filter)) {
+			return new ArrayList<>(recordIdsInDataDivider);
+		}
+		List<String> recordIdsForFilter = findRecordIdsForFilter(type, filter, typeDividerRecords);
+		List<String> recordIdsForFilterInDataDivider = new ArrayList<>();
+		for (String recordId : recordIdsForFilter) {
+			if (recordIdsInDataDivider.contains(recordId)) {
+				recordIdsForFilterInDataDivider.add(recordId);
+			}
+		}
+		return recordIdsForFilterInDataDivider;
+	}
+
+	/**
+	 * getTotalNumberOfRecordsForTypeAndDataDivider returns the number of records that
+	 * {@link #readListForDataDivider(String, String, Filter)} would find for the same arguments,
+	 * limited by fromNo and toNo in the same way as in
+	 * {@link #getTotalNumberOfRecordsForTypes(List, Filter)}.
+	 * 
+	 * @param type
+	 *            A String with the recordType to count records for
+	 * @param dataDivider
+	 *            A String with the dataDivider to count records in
+	 * @param filter
+	 *            A {@link Filter} to filter the records with
+	 * @return A long with the number of records
+	 */
+	public long getTotalNumberOfRecordsForTypeAndDataDivider(String type, String dataDivider,
+			Filter filter) {
+		Map<String, DividerGroup> typeDividerRecords = records.get(type);
+		if (null == typeDividerRecords) {
+			return 0;
+		}
+		long numberOfRecords = countRecordsInDataDivider(type, dataDivider, filter,
+				typeDividerRecords);
+		return getTotalNumberUsingLimitInFilter(numberOfRecords, filter);
+	}
+
+	private long countRecordsInDataDivider(String type, String dataDivider, Filter filter,
+			Map<String, DividerGroup> typeDividerRecords) {
+		if (!filterHasParts(filter)) {
+			return dataDividerIndex.recordIdsFor(dataDivider, type).size();
+		}
+		return findRecordIdsInDataDivider(type, dataDivider, filter, typeDividerRecords).size();
+	}
+
 	@Override
 	public StorageReadResult readList(List<String> types, Filter filter) {
 		List<DataGroup> aggregatedRecordList = new ArrayList<>();
@@ -162,21 +973,46 @@ public class RecordStorageInMemory implements RecordStorage {
 
 	private void addRecordsToAggregatedRecordList(List<DataGroup> aggregatedRecordList,
 			List<String> implementingChildRecordTypes, Filter filter) {
+		if (readTypesInParallel(implementingChildRecordTypes)) {
+			addRecordsForTypesReadInParallel(aggregatedRecordList, implementingChildRecordTypes,
+					filter);
+		} else {
+			addRecordsForTypesReadInSequence(aggregatedRecordList, implementingChildRecordTypes,
+					filter);
+		}
+	}
+
+	private boolean readTypesInParallel(List<String> types) {
+		return null != poolForMultipleTypes && types.size() > 1;
+	}
+
+	private void addRecordsForTypesReadInParallel(List<DataGroup> aggregatedRecordList,
+			List<String> implementingChildRecordTypes, Filter filter) {
+		List<List<DataGroup>> recordsPerType = poolForMultipleTypes
+				.submit(() -> implementingChildRecordTypes.parallelStream()
+						.map(type -> readRecordsForImplementingType(type, filter)).toList())
+				.join();
+		for (List<DataGroup> recordsForType : recordsPerType) {
+			aggregatedRecordList.addAll(recordsForType);
+		}
+	}
+
+	private void addRecordsForTypesReadInSequence(List<DataGroup> aggregatedRecordList,
+			List<String> implementingChildRecordTypes, Filter filter) {
 		for (String implementingRecordType : implementingChildRecordTypes) {
-			try {
-				readRecordsForTypeAndFilterAndAddToList(implementingRecordType, filter,
-						aggregatedRecordList);
-			} catch (RecordNotFoundException e) {
-				// Do nothing, another implementing child might have records
-			}
+			aggregatedRecordList
+					.addAll(readRecordsForImplementingType(implementingRecordType, filter));
 		}
 	}
 
-	private void readRecordsForTypeAndFilterAndAddToList(String implementingRecordType,
-			Filter filter, List<DataGroup> aggregatedRecordList) {
-		Collection<DataGroup> readList = readListImplementing(implementingRecordType,
-				filter).listOfDataGroups;
-		aggregatedRecordList.addAll(readList);
+	private List<DataGroup> readRecordsForImplementingType(String implementingRecordType,
+			Filter filter) {
+		try {
+			return readListImplementing(implementingRecordType, filter).listOfDataGroups;
+		} catch (RecordNotFoundException e) {
+			// Do nothing, another implementing child might have records
+			return Collections.emptyList();
+		}
 	}
 
 	public StorageReadResult readListImplementing(String type, Filter filter) {
@@ -188,50 +1024,228 @@ public class RecordStorageInMemory implements RecordStorage {
 
 	private StorageReadResult getStorageReadResult(String type, Filter filter,
 			Map<String, DividerGroup> typeDividerRecords) {
-		StorageReadResult readResult = new StorageReadResult();
-		Collection<DataGroup> readFromList = readFromList(type, filter, typeDividerRecords);
+		if (filterHasParts(filter)) {
+			return readListWithFilter(type, filter, typeDividerRecords);
+		}
+		return readListWithoutFilter(filter, typeDividerRecords);
+	}
 
-		List<DataGroup> subList = getSubList(filter, readFromList);
+	private StorageReadResult readListWithoutFilter(Filter filter,
+			Map<String, DividerGroup> typeDividerRecords) {
+		int totalNumberOfMatches = typeDividerRecords.size();
+		int fromNum = calculateFromNum(filter);
+		int toNum = calculateToNum(filter, totalNumberOfMatches);
+		List<DataGroup> recordsInWindow = copyRecordsInWindow(typeDividerRecords, fromNum, toNum);
+		return createReadResultForWindow(recordsInWindow, totalNumberOfMatches);
+	}
+
+	private List<DataGroup> copyRecordsInWindow(Map<String, DividerGroup> typeDividerRecords,
+			int fromNum, int toNum) {
+		int windowSize = calculateWindowSize(fromNum, toNum);
+		List<DataGroup> recordsInWindow = new ArrayList<>(windowSize);
+		streamRecordsFromPosition(typeDividerRecords, fromNum).limit(windowSize).forEachOrdered(
+				dividerGroup -> recordsInWindow.add(createCopyForReader(dividerGroup.dataGroup())));
+		return recordsInWindow;
+	}
 
-		readResult.listOfDataGroups = subList;
-		readResult.totalNumberOfMatches = readFromList.size();
+	/**
+	 * streamRecordsFromPosition uses the block counts of a {@link RecordTypeHolder} to start close
+	 * to the position instead of walking all records before it.
+	 */
+	private Stream<DividerGroup> streamRecordsFromPosition(
+			Map<String, DividerGroup> typeDividerRecords, int position) {
+		if (typeDividerRecords instanceof RecordTypeHolder recordTypeHolder) {
+			return recordTypeHolder.valuesFromPosition(position);
+		}
+		return typeDividerRecords.values().stream().skip(position);
+	}
+
+	private int calculateWindowSize(int fromNum, int toNum) {
+		return Math.max(0, toNum - fromNum);
+	}
+
+	private StorageReadResult createReadResultForWindow(List<DataGroup> recordsInWindow,
+			long totalNumberOfMatches) {
+		StorageReadResult readResult = new StorageReadResult();
+		readResult.listOfDataGroups = recordsInWindow;
+		readResult.totalNumberOfMatches = totalNumberOfMatches;
 		return readResult;
 	}
 
-	private Collection<DataGroup> readFromList(String type, Filter filter,
+	private boolean filterHasParts(Filter filter) {
+		return !filter.include.isEmpty() || !filter.exclude.isEmpty();
+	}
+
+	private StorageReadResult readListWithFilter(String type, Filter filter,
 			Map<String, DividerGroup> typeDividerRecords) {
-		if (!filter.include.isEmpty()) {
-			return readListWithFilter(type, filter);
+		List<String> foundRecordIdsForFilter = findRecordIdsForFilter(type, filter,
+				typeDividerRecords);
+		List<String> recordIdsInWindow = getRecordIdsInWindow(filter, foundRecordIdsForFilter);
+		List<DataGroup> recordsInWindow = readRecordsStillMatching(type, typeDividerRecords,
+				recordIdsInWindow,
+				stillMatchingFilterAndConditions(type, filter, Collections.emptyList()));
+		return createReadResultForWindow(recordsInWindow, withoutSkippedRecords(
+				foundRecordIdsForFilter.size(), recordIdsInWindow, recordsInWindow));
+	}
+
+	private List<String> findRecordIdsForFilter(String type, Filter filter,
+			Map<String, DividerGroup> typeDividerRecords) {
+		return filterResultCache.findRecordIds(type, filter,
+				() -> findRecordIdsForFilterWithoutCache(type, filter, typeDividerRecords));
+	}
+
+	private List<String> findRecordIdsForFilterWithoutCache(String type, Filter filter,
+			Map<String, DividerGroup> typeDividerRecords) {
+		if (filter.include.isEmpty()) {
+			return findRecordIdsNotExcluded(type, filter, typeDividerRecords);
 		}
-		return readListWithoutFilter(typeDividerRecords);
+		return collectedTermsHolder.findRecordIdsForFilter(type, filter);
 	}
 
-	private Collection<DataGroup> readListWithoutFilter(
+	private List<String> findRecordIdsNotExcluded(String type, Filter filter,
 			Map<String, DividerGroup> typeDividerRecords) {
-		Map<String, DataGroup> typeRecords = addDataGroupToRecordTypeList(typeDividerRecords);
-		return typeRecords.values();
+		Set<String> excludedRecordIds = new HashSet<>(collectedTermsHolder
+				.findRecordIdsForFilter(type, createFilterIncludingExcludedParts(filter)));
+		List<String> recordIdsNotExcluded = new ArrayList<>(typeDividerRecords.size());
+		for (String recordId : typeDividerRecords.keySet()) {
+			if (!excludedRecordIds.contains(recordId)) {
+				recordIdsNotExcluded.add(recordId);
+			}
+		}
+		return recordIdsNotExcluded;
 	}
 
-	private Collection<DataGroup> readListWithFilter(String type, Filter filter) {
-		List<String> foundRecordIdsForFilter = collectedTermsHolder.findRecordIdsForFilter(type,
-				filter);
-		return readRecordsForTypeAndListOfIds(type, foundRecordIdsForFilter);
+	private Filter createFilterIncludingExcludedParts(Filter filter) {
+		Filter filterIncludingExcludedParts = new Filter();
+		filterIncludingExcludedParts.include.addAll(filter.exclude);
+		return filterIncludingExcludedParts;
 	}
 
-	private Collection<DataGroup> readRecordsForTypeAndListOfIds(String type,
-			List<String> foundRecordIdsForFilter) {
-		List<DataGroup> foundRecords = new ArrayList<>(foundRecordIdsForFilter.size());
-		for (String foundRecordId : foundRecordIdsForFilter) {
-			foundRecords.add(read(List.of(type), foundRecordId));
+	private List<String> getRecordIdsInWindow(Filter filter, List<String> recordIds) {
+		int fromNum = calculateFromNum(filter);
+		int toNum = calculateToNum(filter, recordIds.size());
+		if (fromNum >= toNum) {
+			return Collections.emptyList();
+		}
+		return recordIds.subList(fromNum, toNum);
+	}
+
+	/**
+	 * readRecordsStillMatching reads the record for each of the recordIds found from the storage
+	 * terms while the record is locked for reading, so that the record and its storage terms are
+	 * seen as one unit. A record that has been deleted, or updated to no longer match, since its
+	 * recordId was found is skipped, as the found recordIds and the read records can otherwise come
+	 * from different sides of a write.
+	 */
+	private List<DataGroup> readRecordsStillMatching(String type,
+			Map<String, DividerGroup> typeDividerRecords, List<String> recordIds,
+			BiPredicate<String, DividerGroup> stillMatches) {
+		List<DataGroup> foundRecords = new ArrayList<>(recordIds.size());
+		for (String recordId : recordIds) {
+			DividerGroup dividerGroup = readDividerGroupIfStillMatching(type, typeDividerRecords,
+					recordId, stillMatches);
+			if (null != dividerGroup) {
+				foundRecords.add(createCopyForReader(dividerGroup.dataGroup()));
+			}
 		}
 		return foundRecords;
 	}
 
-	private List<DataGroup> getSubList(Filter filter, Collection<DataGroup> readFromList) {
-		ArrayList<DataGroup> arrayList = new ArrayList<>(readFromList);
-		int calculateFromNum = calculateFromNum(filter);
-		int calculateToNum = calculateToNum(filter, arrayList.size());
-		return arrayList.subList(calculateFromNum, calculateToNum);
+	private DividerGroup readDividerGroupIfStillMatching(String type,
+			Map<String, DividerGroup> typeDividerRecords, String recordId,
+			BiPredicate<String, DividerGroup> stillMatches) {
+		Lock readLock = recordLocks.readLockFor(type, recordId);
+		readLock.lock();
+		try {
+			DividerGroup dividerGroup = typeDividerRecords.get(recordId);
+			if (null != dividerGroup && stillMatches.test(recordId, dividerGroup)) {
+				return dividerGroup;
+			}
+			return null;
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	private BiPredicate<String, DividerGroup> stillMatchingFilterAndConditions(String type,
+			Filter filter, List<StorageTermCondition> conditions) {
+		if (!filterHasParts(filter) && conditions.isEmpty()) {
+			return (_, _) -> true;
+		}
+		return (recordId, _) -> collectedTermsHolder.recordMatches(type, recordId, filter,
+				conditions);
+	}
+
+	private long withoutSkippedRecords(long totalNumberOfMatches, List<String> recordIdsInWindow,
+			List<DataGroup> recordsInWindow) {
+		return totalNumberOfMatches - (recordIdsInWindow.size() - recordsInWindow.size());
+	}
+
+	/**
+	 * readListAsStream returns the records of the given type that matches the filter as a lazy
+	 * {@link Stream}, intended for exports of whole record types where materializing all records
+	 * in one list would use too much memory.
+	 * </p>
+	 * The filter is honored in the same way as in {@link #readList(List, Filter)}, including
+	 * fromNo and toNo. Each record is copied first when the stream reaches it. The stream is
+	 * ordered by recordId and splits well, so it can be consumed in parallel.
+	 * </p>
+	 * The stream reflects the stored records as they are when each record is reached, records
+	 * removed after the stream was created are skipped.
+	 * </p>
+	 * If no records exist for the type is an empty stream returned.
+	 * 
+	 * @param type
+	 *            A String with the recordType to read records for
+	 * @param filter
+	 *            A {@link Filter} to filter the records with
+	 * @return A Stream of DataGroups with the records matching the filter
+	 */
+	public Stream<DataGroup> readListAsStream(String type, Filter filter) {
+		Map<String, DividerGroup> typeDividerRecords = records.get(type);
+		if (null == typeDividerRecords) {
+			return Stream.empty();
+		}
+		Stream<DividerGroup> dividerGroups = streamDividerGroups(type, filter, typeDividerRecords);
+		return dividerGroups.map(dividerGroup -> createCopyForReader(dividerGroup.dataGroup()));
+	}
+
+	private Stream<DividerGroup> streamDividerGroups(String type, Filter filter,
+			Map<String, DividerGroup> typeDividerRecords) {
+		if (filterHasParts(filter)) {
+			return streamDividerGroupsWithFilter(type, filter, typeDividerRecords);
+		}
+		return streamDividerGroupsWithoutFilter(filter, typeDividerRecords);
+	}
+
+	private Stream<DividerGroup> streamDividerGroupsWithFilter(String type, Filter filter,
+			Map<String, DividerGroup> typeDividerRecords) {
+		List<String> foundRecordIdsForFilter = findRecordIdsForFilter(type, filter,
+				typeDividerRecords);
+		List<String> recordIdsInWindow = getRecordIdsInWindow(filter, foundRecordIdsForFilter);
+		BiPredicate<String, DividerGroup> stillMatches = stillMatchingFilterAndConditions(type,
+				filter, Collections.emptyList());
+		return recordIdsInWindow.stream()
+				.map(recordId -> readDividerGroupIfStillMatching(type, typeDividerRecords,
+						recordId, stillMatches))
+				.filter(Objects::nonNull);
+	}
+
+	private Stream<DividerGroup> streamDividerGroupsWithoutFilter(Filter filter,
+			Map<String, DividerGroup> typeDividerRecords) {
+		Stream<DividerGroup> dividerGroups = typeDividerRecords.values().stream();
+		if (!filter.fromNoIsDefault()) {
+			dividerGroups = streamRecordsFromPosition(typeDividerRecords,
+					calculateFromNum(filter));
+		}
+		if (!filter.toNoIsDefault()) {
+			dividerGroups = dividerGroups.limit(calculateWindowSizeForToNo(filter));
+		}
+		return dividerGroups;
+	}
+
+	private long calculateWindowSizeForToNo(Filter filter) {
+		return Math.max(0, filter.toNo - calculateFromNum(filter));
 	}
 
 	private int calculateFromNum(Filter filter) {
@@ -255,19 +1269,19 @@ public class RecordStorageInMemory implements RecordStorage {
 
 	private void throwErrorIfNoRecordOfType(String type,
 			Map<String, DividerGroup> typeDividerRecords) {
-		if (null == typeDividerRecords) {
+		if (holderHasNoRecords(typeDividerRecords)) {
 			throw RecordNotFoundException.withMessage(NO_RECORDS_EXISTS_MESSAGE + type);
 		}
 	}
 
-	private Map<String, DataGroup> addDataGroupToRecordTypeList(
-			Map<String, DividerGroup> typeDividerRecords) {
-		Map<String, DataGroup> typeRecords = new ConcurrentHashMap<>(typeDividerRecords.size());
-		for (Entry<String, DividerGroup> entry : typeDividerRecords.entrySet()) {
-			DataGroup copyOfRecord = createIndependentCopy(entry.getValue().dataGroup);
-			typeRecords.put(entry.getKey(), copyOfRecord);
-		}
-		return typeRecords;
+	/**
+	 * holderHasNoRecords returns true if there is no holder for a recordType, or if all records in
+	 * it have been deleted. Holders are kept when their last record is deleted, as removing them
+	 * would race with records being created in them, so an empty holder is treated as if the
+	 * recordType has no holder.
+	 */
+	private boolean holderHasNoRecords(Map<String, DividerGroup> holderForRecordType) {
+		return null == holderForRecordType || holderForRecordType.isEmpty();
 	}
 
 	private List<String> findImplementingChildRecordTypesUsingTypeAndRecordTypeList(String type,
@@ -292,7 +1306,7 @@ public class RecordStorageInMemory implements RecordStorage {
 
 	private DataGroup extractDataGroupFromDataDividerGroup(Entry<String, DividerGroup> entry) {
 		DividerGroup dividerGroup = entry.getValue();
-		return dividerGroup.dataGroup;
+		return dividerGroup.dataGroup();
 	}
 
 	private boolean isImplementingChild(String type, DataGroup dataGroup) {
@@ -323,7 +1337,7 @@ public class RecordStorageInMemory implements RecordStorage {
 	}
 
 	public boolean recordsExistForRecordType(String type) {
-		return records.get(type) != null;
+		return !holderHasNoRecords(records.get(type));
 	}
 
 	private boolean recordIdExistsForRecordType(String recordType, String recordId) {
@@ -333,20 +1347,39 @@ public class RecordStorageInMemory implements RecordStorage {
 	@Override
 	public DataRecordGroup read(String type, String id) {
 		DataGroup dataGroup = returnRecordIfExisting(type, id);
-		DataGroup independentCopy = createIndependentCopy(dataGroup);
-		return DataProvider.createRecordGroupFromDataGroup(independentCopy);
+		DataGroup copyForReader = createCopyForReader(dataGroup);
+		return DataProvider.createRecordGroupFromDataGroup(copyForReader);
+	}
+
+	/**
+	 * getVersion returns the version of a stored record. Created records get version 1 and each
+	 * update increases the version by one. A record created after a record of the same type has
+	 * been deleted gets a version following the highest deleted version of the type, so a recordId
+	 * never gets a version it has had before. The version can be used with
+	 * {@link #updateIfVersionMatches(String, String, long, DataGroup, Set, Set, String)} to only
+	 * update the record if it has not been changed since the version was read.
+	 * 
+	 * @param type
+	 *            A String with the recordType of the record
+	 * @param id
+	 *            A String with the recordId of the record
+	 * @return A long with the version of the stored record
+	 * @throws RecordNotFoundException
+	 *             if no record exists for the type and id
+	 */
+	public long getVersion(String type, String id) {
+		return getExistingDividerGroup(type, id).version;
 	}
 
 	@Override
 	public DataGroup read(List<String> types, String recordId) {
-		return createIndependentCopy(readRecordFromImplementingRecordTypes(types, recordId));
+		return createCopyForReader(readRecordFromImplementingRecordTypes(types, recordId));
 	}
 
 	private DataGroup readRecordFromImplementingRecordTypes(List<String> types, String recordId) {
 		DataGroup readRecord = tryToReadRecordFromImplementingRecordTypes(types, recordId);
 		if (readRecord == null) {
-			throw RecordNotFoundException
-					.withMessage("No record exists with recordId: " + recordId);
+			throw createRecordNotFoundForRecordId(recordId);
 		}
 		return readRecord;
 	}
@@ -365,60 +1398,94 @@ public class RecordStorageInMemory implements RecordStorage {
 	}
 
 	private DataGroup returnRecordIfExisting(String recordType, String recordId) {
-		checkRecordExists(recordType, recordId);
-		return records.get(recordType).get(recordId).dataGroup;
+		return getExistingDividerGroup(recordType, recordId).dataGroup();
+	}
+
+	private DividerGroup getExistingDividerGroup(String recordType, String recordId) {
+		Map<String, DividerGroup> holderForRecordType = getExistingHolderForRecordType(recordType);
+		return getExistingDividerGroupFromHolder(holderForRecordType, recordId);
 	}
 
-	private void checkRecordExists(String recordType, String recordId) {
-		if (holderForRecordTypeDoesNotExistInStorage(recordType)) {
+	private Map<String, DividerGroup> getExistingHolderForRecordType(String recordType) {
+		Map<String, DividerGroup> holderForRecordType = records.get(recordType);
+		if (holderHasNoRecords(holderForRecordType)) {
 			throw RecordNotFoundException.withMessage(NO_RECORD_EXISTS_MESSAGE + recordType);
 		}
-		if (null == records.get(recordType).get(recordId)) {
-			throw RecordNotFoundException
-					.withMessage("No record exists with recordId: " + recordId);
-		}
+		return holderForRecordType;
+	}
+
+	private RecordNotFoundException createRecordNotFoundForRecordId(String recordId) {
+		return RecordNotFoundException.withMessage("No record exists with recordId: " + recordId);
 	}
 
 	@Override
 	public void deleteByTypeAndId(String recordType, String recordId) {
-		checkRecordExists(recordType, recordId);
-		removeLinks(recordType, recordId);
+		Lock writeLock = recordLocks.writeLockFor(recordType, recordId);
+		writeLock.lock();
+		try {
+			Map<String, DividerGroup> holderForRecordType = getExistingHolderForRecordType(
+					recordType);
+			DividerGroup stored = getExistingDividerGroupFromHolder(holderForRecordType, recordId);
+			appendToRecordLog(
+					() -> RecordLogEntry.forDelete(recordType, recordId, stored.version));
+			removeStoredRecord(recordType, recordId, holderForRecordType);
+		} finally {
+			filterResultCache.recordWriteForType(recordType);
+			writeLock.unlock();
+		}
+	}
 
+	private void removeStoredRecord(String recordType, String recordId,
+			Map<String, DividerGroup> holderForRecordType) {
+		DividerGroup removed = removeRecordOrThrowNotFound(holderForRecordType, recordId);
+		highestDeletedVersions.merge(recordType, removed.version, Math::max);
+		dataDividerIndex.remove(removed.dataDivider, recordType, recordId);
+		removeLinks(recordType, recordId);
 		collectedTermsHolder.removePreviousCollectedStorageTerms(recordType, recordId);
-		records.get(recordType).remove(recordId);
-		if (records.get(recordType).isEmpty()) {
-			records.remove(recordType);
+	}
+
+	private DividerGroup removeRecordOrThrowNotFound(
+			Map<String, DividerGroup> holderForRecordType, String recordId) {
+		DividerGroup removed = holderForRecordType.remove(recordId);
+		if (null == removed) {
+			throw createRecordNotFoundForRecordId(recordId);
 		}
+		return removed;
 	}
 
 	private void removeLinks(String recordType, String recordId) {
 		Link from = new Link(recordType, recordId);
-		if (outgoingLinks.containsKey(from)) {
-			removeIncommingLinks(from);
-			removeOutgoingLinks(from);
+		Set<Link> linksFromRecord = outgoingLinks.remove(from);
+		if (null != linksFromRecord) {
+			removeIncommingLinks(from, linksFromRecord);
 		}
 	}
 
-	private void removeOutgoingLinks(Link from) {
-		outgoingLinks.remove(from);
+	private void removeIncommingLinks(Link from, Set<Link> linksFromRecord) {
+		for (Link to : linksFromRecord) {
+			incommingLinks.computeIfPresent(to,
+					(_, linksToRecord) -> removeLinkFromLinksToRecord(linksToRecord, from));
+		}
 	}
 
-	private void removeIncommingLinks(Link from) {
-		for (Link to : outgoingLinks.get(from)) {
-			incommingLinks.get(to).remove(from);
-			if (incommingLinks.get(to).isEmpty()) {
-				incommingLinks.remove(to);
-			}
+	private Set<Link> removeLinkFromLinksToRecord(Set<Link> linksToRecord, Link from) {
+		linksToRecord.remove(from);
+		if (linksToRecord.isEmpty()) {
+			return null;
 		}
+		return linksToRecord;
 	}
 
+	/**
+	 * getLinksToRecord returns a copy of the links to the record, as the stored links to a record
+	 * are changed in place by writers of the records linking to it. A writer that changes the
+	 * links of a record adds its new links before it removes its old ones, so a link that is kept
+	 * by a concurrent write is always included.
+	 */
 	@Override
 	public Set<Link> getLinksToRecord(String type, String id) {
 		Link to = new Link(type, id);
-		if (incommingLinks.containsKey(to)) {
-			return incommingLinks.get(to);
-		}
-		return Collections.emptySet();
+		return Set.copyOf(incommingLinks.getOrDefault(to, Collections.emptySet()));
 	}
 
 	@Override
@@ -430,29 +1497,159 @@ public class RecordStorageInMemory implements RecordStorage {
 	@Override
 	public void update(String recordType, String recordId, DataGroup record,
 			Set<StorageTerm> storageTerms, Set<Link> links, String dataDivider) {
-		checkRecordExists(recordType, recordId);
-		removeLinks(recordType, recordId);
-		storeIndependentRecordByRecordTypeAndRecordId(recordType, recordId, record, dataDivider);
-		ensureStorageExistsForRecordType(recordType);
-		collectedTermsHolder.storeCollectedTerms(recordType, recordId, storageTerms, dataDivider);
-		storeLinks(recordType, recordId, links);
+		updateRecord(recordType, recordId, ANY_VERSION, record, storageTerms, links, dataDivider);
+	}
+
+	/**
+	 * updateIfVersionMatches updates a record in the same way as
+	 * {@link #update(String, String, DataGroup, Set, Set, String)}, but only if the stored record
+	 * still has the expected version.
+	 * </p>
+	 * Every stored record carries a version, created records get version 1 and each update
+	 * increases the version by one. A caller that has read the version with
+	 * {@link #getVersion(String, String)} can use this method to make sure no other update has been
+	 * done since, without reading and comparing the whole record, also if the record has been
+	 * deleted and created again. The version is checked once, while the record is locked for
+	 * writing and before the entered record is copied, so a mismatch fails without copying it.
+	 * 
+	 * @param recordType
+	 *            A String with the recordType of the record to update
+	 * @param recordId
+	 *            A String with the recordId of the record to update
+	 * @param expectedVersion
+	 *            A long with the version the stored record must have for the update to be done
+	 * @param record
+	 *            A DataGroup with the new record
+	 * @param storageTerms
+	 *            A Set of StorageTerms collected from the new record
+	 * @param links
+	 *            A Set of Links collected from the new record
+	 * @param dataDivider
+	 *            A String with the dataDivider of the new record
+	 * @return A long with the version of the updated record
+	 * @throws IllegalArgumentException
+	 *             if expectedVersion is lower than 1, as no stored record has such a version
+	 * @throws RecordConflictException
+	 *             if the stored record does not have the expected version
+	 * @throws RecordNotFoundException
+	 *             if no record exists for the recordType and recordId
+	 */
+	public long updateIfVersionMatches(String recordType, String recordId, long expectedVersion,
+			DataGroup record, Set<StorageTerm> storageTerms, Set<Link> links, String dataDivider) {
+		throwErrorIfNotAStoredVersion(expectedVersion);
+		return updateRecord(recordType, recordId, expectedVersion, record, storageTerms, links,
+				dataDivider);
+	}
+
+	private void throwErrorIfNotAStoredVersion(long expectedVersion) {
+		if (expectedVersion < DividerGroup.FIRST_VERSION) {
+			throw new IllegalArgumentException(
+					"Expected version must be at least 1, was: " + expectedVersion);
+		}
+	}
+
+	private long updateRecord(String recordType, String recordId, long expectedVersion,
+			DataGroup record, Set<StorageTerm> storageTerms, Set<Link> links, String dataDivider) {
+		Lock writeLock = recordLocks.writeLockFor(recordType, recordId);
+		writeLock.lock();
+		try {
+			DividerGroup stored = getExistingDividerGroup(recordType, recordId);
+			throwConflictIfVersionDoesNotMatch(recordId, stored, expectedVersion);
+			DividerGroup updated = createIndependentDividerGroup(record, dataDivider)
+					.withVersionFollowing(stored);
+			appendToRecordLog(() -> RecordLogEntry.forUpdate(recordType, recordId, updated,
+					storageTerms, links));
+			storeUpdatedRecord(recordType, recordId, stored, updated, storageTerms, links);
+			return updated.version;
+		} finally {
+			filterResultCache.recordWriteForType(recordType);
+			writeLock.unlock();
+		}
+	}
+
+	private void storeUpdatedRecord(String recordType, String recordId, DividerGroup stored,
+			DividerGroup updated, Set<StorageTerm> storageTerms, Set<Link> links) {
+		records.get(recordType).put(recordId, updated);
+		dataDividerIndex.move(recordType, recordId, stored.dataDivider, updated.dataDivider);
+		collectedTermsHolder.storeCollectedTerms(recordType, recordId, storageTerms,
+				updated.dataDivider);
+		replaceLinks(recordType, recordId, links);
+	}
+
+	private void throwConflictIfVersionDoesNotMatch(String recordId, DividerGroup stored,
+			long expectedVersion) {
+		if (expectedVersion != ANY_VERSION && stored.version != expectedVersion) {
+			throw createConflictForVersion(recordId);
+		}
+	}
+
+	private RecordConflictException createConflictForVersion(String recordId) {
+		return RecordConflictException.withMessage("Record with recordId: " + recordId
+				+ " has been updated since the expected version was read");
+	}
+
+	private DividerGroup getExistingDividerGroupFromHolder(
+			Map<String, DividerGroup> holderForRecordType, String recordId) {
+		DividerGroup dividerGroup = holderForRecordType.get(recordId);
+		if (null == dividerGroup) {
+			throw createRecordNotFoundForRecordId(recordId);
+		}
+		return dividerGroup;
+	}
+
+	private void replaceLinks(String recordType, String recordId, Set<Link> toLinks) {
+		Link from = new Link(recordType, recordId);
+		Set<Link> previousLinks = replaceOutgoingLinks(from, toLinks);
+		storeLinksInIncomingLinks(from, toLinks);
+		removeIncommingLinks(from, getLinksOnlyInPrevious(previousLinks, toLinks));
+	}
+
+	private Set<Link> replaceOutgoingLinks(Link from, Set<Link> toLinks) {
+		Set<Link> previousLinks = toLinks.isEmpty() ? outgoingLinks.remove(from)
+				: outgoingLinks.put(from, Set.copyOf(toLinks));
+		return null == previousLinks ? Collections.emptySet() : previousLinks;
+	}
+
+	private Set<Link> getLinksOnlyInPrevious(Set<Link> previousLinks, Set<Link> toLinks) {
+		Set<Link> linksOnlyInPrevious = new HashSet<>(previousLinks);
+		linksOnlyInPrevious.removeAll(toLinks);
+		return linksOnlyInPrevious;
 	}
 
 	@Override
 	public long getTotalNumberOfRecordsForTypes(List<String> types, Filter filter) {
+		long size = countRecordsForTypes(types, filter);
+		return getTotalNumberUsingLimitInFilter(size, filter);
+	}
+
+	private long countRecordsForTypes(List<String> types, Filter filter) {
+		if (readTypesInParallel(types)) {
+			return poolForMultipleTypes.submit(() -> types.parallelStream()
+					.mapToLong(type -> getTotalNumberOfRecordsForImplementingType(type, filter))
+					.sum()).join();
+		}
 		long size = 0;
 		for (String type : types) {
 			size += getTotalNumberOfRecordsForImplementingType(type, filter);
 		}
-		return getTotalNumberUsingLimitInFilter(size, filter);
-
+		return size;
 	}
 
 	private long getNumberOfRecords(String type, Filter filter) {
 		if (!filter.include.isEmpty()) {
-			return collectedTermsHolder.findRecordIdsForFilter(type, filter).size();
+			return collectedTermsHolder.countRecordIdsForFilter(type, filter);
+		}
+		int numberOfRecordsForType = records.get(type).size();
+		if (!filter.exclude.isEmpty()) {
+			return countRecordsNotExcluded(type, filter, numberOfRecordsForType);
 		}
-		return records.get(type).size();
+		return numberOfRecordsForType;
+	}
+
+	private long countRecordsNotExcluded(String type, Filter filter, int numberOfRecordsForType) {
+		long numberOfExcludedRecords = collectedTermsHolder.countRecordIdsForFilter(type,
+				createFilterIncludingExcludedParts(filter));
+		return Math.max(0, numberOfRecordsForType - numberOfExcludedRecords);
 	}
 
 	private long getTotalNumberUsingLimitInFilter(long numberOfRecords, Filter filter) {
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Stream;
+
+/**
+ * RecordTypeHolder holds the records for one recordType ordered by recordId, so that records are
+ * always listed in the same order regardless of when and how they were added.
+ * </p>
+ * The number of records is kept in a counter as {@link ConcurrentSkipListMap#size()} has to walk
+ * all entries. The counter is maintained by put, putIfAbsent, remove and clear, the compute and
+ * merge methods must not be used to add or remove records.
+ * </p>
+ * To read from a position without walking all records before it, the records are divided into
+ * blocks of consecutive recordIds, each holding about {@value #POSITIONS_IN_BLOCK} records, see
+ * {@link #valuesFromPosition(int)}. Each block knows its first recordId and its number of records,
+ * and the count of the block holding a recordId is adjusted when the record is added or removed.
+ * A block that grows to twice its size is split and a block that shrinks to a quarter of its size
+ * is merged into the block before it, so a change never has to recount the other blocks.
+ */
+final class RecordTypeHolder extends ConcurrentSkipListMap<String, DividerGroup> {
+	private static final long serialVersionUID = 1L;
+	static final int POSITIONS_IN_BLOCK = 64;
+	static final int MAX_POSITIONS_IN_BLOCK = 2 * POSITIONS_IN_BLOCK;
+	private static final int MIN_POSITIONS_IN_BLOCK = POSITIONS_IN_BLOCK / 4;
+	private static final String FIRST_BLOCK = "";
+	private final AtomicInteger numberOfRecords = new AtomicInteger();
+	private final ConcurrentSkipListMap<String, Block> blocks = new ConcurrentSkipListMap<>();
+	private final StampedLock blocksLock = new StampedLock();
+
+	RecordTypeHolder() {
+		super();
+		blocks.put(FIRST_BLOCK, new Block(0));
+	}
+
+	/**
+	 * Creates a RecordTypeHolder with the records in the sorted map. The holder is built in one
+	 * pass over the map, which is much faster than adding the records one by one.
+	 */
+	RecordTypeHolder(SortedMap<String, DividerGroup> sortedRecords) {
+		super(sortedRecords);
+		numberOfRecords.set(sortedRecords.size());
+		createBlocks();
+	}
+
+	private void createBlocks() {
+		String blockStart = FIRST_BLOCK;
+		int positionInBlock = 0;
+		for (String recordId : keySet()) {
+			if (positionInBlock == POSITIONS_IN_BLOCK) {
+				blocks.put(blockStart, new Block(positionInBlock));
+				blockStart = recordId;
+				positionInBlock = 0;
+			}
+			positionInBlock++;
+		}
+		blocks.put(blockStart, new Block(positionInBlock));
+	}
+
+	@Override
+	public DividerGroup put(String recordId, DividerGroup dividerGroup) {
+		DividerGroup replaced = super.replace(recordId, dividerGroup);
+		if (null != replaced) {
+			return replaced;
+		}
+		long stamp = blocksLock.writeLock();
+		try {
+			DividerGroup previous = super.put(recordId, dividerGroup);
+			countAddedIfNoPrevious(recordId, previous);
+			return previous;
+		} finally {
+			blocksLock.unlockWrite(stamp);
+		}
+	}
+
+	private void countAddedIfNoPrevious(String recordId, DividerGroup previous) {
+		if (null == previous) {
+			numberOfRecords.incrementAndGet();
+			Entry<String, Block> block = blocks.floorEntry(recordId);
+			block.getValue().numberOfRecords++;
+			splitIfTooLarge(block);
+		}
+	}
+
+	private void splitIfTooLarge(Entry<String, Block> block) {
+		int positionsInBlock = block.getValue().numberOfRecords;
+		if (positionsInBlock > MAX_POSITIONS_IN_BLOCK) {
+			int positionsInFirstHalf = positionsInBlock / 2;
+			String secondHalfStart = tailMap(block.getKey(), true).keySet().stream()
+					.skip(positionsInFirstHalf).findFirst().orElseThrow();
+			blocks.put(secondHalfStart, new Block(positionsInBlock - positionsInFirstHalf));
+			block.getValue().numberOfRecords = positionsInFirstHalf;
+		}
+	}
+
+	@Override
+	public DividerGroup putIfAbsent(String recordId, DividerGroup dividerGroup) {
+		long stamp = blocksLock.writeLock();
+		try {
+			DividerGroup previous = super.putIfAbsent(recordId, dividerGroup);
+			countAddedIfNoPrevious(recordId, previous);
+			return previous;
+		} finally {
+			blocksLock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public DividerGroup remove(Object recordId) {
+		long stamp = blocksLock.writeLock();
+		try {
+			DividerGroup removed = super.remove(recordId);
+			if (null != removed) {
+				countRemoved((String) recordId);
+			}
+			return removed;
+		} finally {
+			blocksLock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public boolean remove(Object recordId, Object dividerGroup) {
+		long stamp = blocksLock.writeLock();
+		try {
+			boolean removed = super.remove(recordId, dividerGroup);
+			if (removed) {
+				countRemoved((String) recordId);
+			}
+			return removed;
+		} finally {
+			blocksLock.unlockWrite(stamp);
+		}
+	}
+
+	private void countRemoved(String recordId) {
+		numberOfRecords.decrementAndGet();
+		Entry<String, Block> block = blocks.floorEntry(recordId);
+		block.getValue().numberOfRecords--;
+		mergeIntoBlockBeforeIfTooSmall(block);
+	}
+
+	private void mergeIntoBlockBeforeIfTooSmall(Entry<String, Block> block) {
+		if (block.getValue().numberOfRecords < MIN_POSITIONS_IN_BLOCK
+				&& !FIRST_BLOCK.equals(block.getKey())) {
+			Entry<String, Block> blockBefore = blocks.lowerEntry(block.getKey());
+			blockBefore.getValue().numberOfRecords += block.getValue().numberOfRecords;
+			blocks.remove(block.getKey());
+			splitIfTooLarge(blockBefore);
+		}
+	}
+
+	@Override
+	public void clear() {
+		Iterator<String> recordIds = keySet().iterator();
+		while (recordIds.hasNext()) {
+			remove(recordIds.next());
+		}
+	}
+
+	@Override
+	public int size() {
+		return numberOfRecords.get();
+	}
+
+	/**
+	 * valuesFromPosition returns the records in recordId order starting at position, where the
+	 * first record is at position 0. The stream starts at the first recordId of the block holding
+	 * the position, found by adding up the counts of the blocks before it, so at most
+	 * {@value #MAX_POSITIONS_IN_BLOCK} records are skipped.
+	 * </p>
+	 * As for other reads of the holder, records added or removed while the stream is read can
+	 * shift the position by the number of changed records.
+	 * 
+	 * @param position
+	 *            An int with the position of the first record to return
+	 * @return A Stream with the records from the position
+	 */
+	Stream<DividerGroup> valuesFromPosition(int position) {
+		if (position < POSITIONS_IN_BLOCK) {
+			return values().stream().skip(position);
+		}
+		BlockStart blockStart = findBlockStartForPosition(position);
+		if (null == blockStart) {
+			return Stream.empty();
+		}
+		return tailMap(blockStart.recordId(), true).values().stream()
+				.skip((long) position - blockStart.position());
+	}
+
+	private BlockStart findBlockStartForPosition(int position) {
+		long stamp = blocksLock.tryOptimisticRead();
+		BlockStart blockStart = walkBlocksToPosition(position);
+		if (blocksLock.validate(stamp)) {
+			return blockStart;
+		}
+		stamp = blocksLock.readLock();
+		try {
+			return walkBlocksToPosition(position);
+		} finally {
+			blocksLock.unlockRead(stamp);
+		}
+	}
+
+	private BlockStart walkBlocksToPosition(int position) {
+		int blockPosition = 0;
+		for (Entry<String, Block> block : blocks.entrySet()) {
+			int nextBlockPosition = blockPosition + block.getValue().numberOfRecords;
+			if (position < nextBlockPosition) {
+				return new BlockStart(block.getKey(), blockPosition);
+			}
+			blockPosition = nextBlockPosition;
+		}
+		return null;
+	}
+
+	private static final class Block implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private int numberOfRecords;
+
+		private Block(int numberOfRecords) {
+			this.numberOfRecords = numberOfRecords;
+		}
+	}
+
+	private record BlockStart(String recordId, int position) {
+	}
+}
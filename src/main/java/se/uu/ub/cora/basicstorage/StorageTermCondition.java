@@ -0,0 +1,104 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+package se.uu.ub.cora.basicstorage;
+
+/**
+ * StorageTermCondition describes a condition on the values of the storageTerms with storageKey
+ * that is not an exact value, for use with
+ * {@link RecordStorageInMemory#readList(String, se.uu.ub.cora.storage.Filter, java.util.List)}.
+ * </p>
+ * A {@link se.uu.ub.cora.storage.Condition} in a filter always matches its value exactly, so a
+ * value such as "Upp*" or "1900..2000" only matches storageTerms with that exact value.
+ * Conditions that match many values must instead be given explicitly as a StorageTermCondition.
+ * </p>
+ * The value is the prefix for {@link Operator#STARTING_WITH} and the lowest value for
+ * {@link Operator#BETWEEN}, where toValue is the highest value. A bound that is null leaves the
+ * range open in that direction.
+ */
+public record StorageTermCondition(String storageKey, Operator operator, String value,
+		String toValue) {
+
+	public enum Operator {
+		STARTING_WITH, BETWEEN
+	}
+
+	/**
+	 * startingWith creates a StorageTermCondition that matches all storageTerms with storageKey
+	 * that have a value starting with prefix, so that "Upp" matches "Uppsala" and "Uppland". An
+	 * empty prefix matches all storageTerms with storageKey.
+	 * 
+	 * @param storageKey
+	 *            A String with the storageKey of the storageTerms to match
+	 * @param prefix
+	 *            A String that the values must start with
+	 * @return A StorageTermCondition matching values starting with prefix
+	 */
+	public static StorageTermCondition startingWith(String storageKey, String prefix) {
+		return new StorageTermCondition(storageKey, Operator.STARTING_WITH, prefix, null);
+	}
+
+	/**
+	 * between creates a StorageTermCondition that matches all storageTerms with storageKey that
+	 * have a value between from and to, both included.
+	 * </p>
+	 * If from and to are numbers, only values that are numbers are matched, compared as numbers,
+	 * so that "900" is between "100" and "1000". If they are ISO-8601 dates, timestamps during the
+	 * day of to are included, so that "2020-12-31T23:59:59Z" is between "2020-01-01" and
+	 * "2020-12-31". Other bounds are compared with the values as strings.
+	 * 
+	 * @param storageKey
+	 *            A String with the storageKey of the storageTerms to match
+	 * @param from
+	 *            A String with the lowest value to match, or null for no lowest value
+	 * @param to
+	 *            A String with the highest value to match, or null for no highest value
+	 * @return A StorageTermCondition matching values between from and to
+	 */
+	public static StorageTermCondition between(String storageKey, String from, String to) {
+		return new StorageTermCondition(storageKey, Operator.BETWEEN, from, to);
+	}
+
+	/**
+	 * atLeast creates a StorageTermCondition that matches all storageTerms with storageKey that
+	 * have a value of from or higher, as {@link #between(String, String, String)} without a
+	 * highest value.
+	 * 
+	 * @param storageKey
+	 *            A String with the storageKey of the storageTerms to match
+	 * @param from
+	 *            A String with the lowest value to match
+	 * @return A StorageTermCondition matching values from from
+	 */
+	public static StorageTermCondition atLeast(String storageKey, String from) {
+		return between(storageKey, from, null);
+	}
+
+	/**
+	 * atMost creates a StorageTermCondition that matches all storageTerms with storageKey that have
+	 * a value of to or lower, as {@link #between(String, String, String)} without a lowest value.
+	 * 
+	 * @param storageKey
+	 *            A String with the storageKey of the storageTerms to match
+	 * @param to
+	 *            A String with the highest value to match
+	 * @return A StorageTermCondition matching values up to to
+	 */
+	public static StorageTermCondition atMost(String storageKey, String to) {
+		return between(storageKey, null, to);
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+/**
+ * StorageTermSort describes how to sort records with
+ * {@link RecordStorageInMemory#readList(String, se.uu.ub.cora.storage.Filter, StorageTermSort)},
+ * by the value of their storageTerms with storageKey, ascending or descending.
+ * </p>
+ * Values that are numbers are sorted as numbers and before all other values, which are sorted as
+ * strings. Records without a storageTerm for the storageKey are sorted last, and records with the
+ * same value are sorted by recordId.
+ */
+public record StorageTermSort(String storageKey, boolean descending) {
+
+	public static StorageTermSort ascendingOn(String storageKey) {
+		return new StorageTermSort(storageKey, false);
+	}
+
+	public static StorageTermSort descendingOn(String storageKey) {
+		return new StorageTermSort(storageKey, true);
+	}
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * ValueIndex holds, for one storageKey of one recordType, the numbers of the records that have
+ * each value, see {@link RecordIdDictionary}.
+ * </p>
+ * The values are kept sorted, so that all values starting with a prefix, see
+ * {@link #findRecordNumbersWithValueStartingWith(String)}, and all values in a range, see
+ * {@link #findRecordNumbersInRange(String, String)}, are found with one range scan. Values that
+ * are numbers are also kept in a numeric index, so that "900" is ordered before "1900".
+ * </p>
+ * The record numbers can also be read in value order, see {@link StorageTermSort}.
+ * </p>
+ * The record numbers for a value are held in immutable {@link IdBitmap}s that are replaced when
+ * records are added or removed, so a ValueIndex can be read by many threads while it is changed.
+ * Changes are applied per stripe of values, batching concurrent changes to the same value.
+ */
+final class ValueIndex {
+	private static final String AFTER_ALL_VALUES_STARTING_WITH = String
+			.valueOf(Character.MAX_VALUE);
+	private static final Pattern NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?");
+	private static final int NUMBER_OF_STRIPES = 64;
+	private static final Pattern DATE = Pattern.compile("\\d{4}-\\d{2}-\\d{2}(T.*)?");
+
+	private final NavigableMap<String, IdBitmap> recordNumbersForValues = new ConcurrentSkipListMap<>();
+	private final NavigableMap<BigDecimal, IdBitmap> recordNumbersForNumbers = new ConcurrentSkipListMap<>();
+	private final ChangeStripe[] stripes = createStripes();
+
+	private static ChangeStripe[] createStripes() {
+		ChangeStripe[] stripes = new ChangeStripe[NUMBER_OF_STRIPES];
+		for (int i = 0; i < NUMBER_OF_STRIPES; i++) {
+			stripes[i] = new ChangeStripe();
+		}
+		return stripes;
+	}
+
+	void add(String value, int recordNumber) {
+		applyChange(new PendingChange(value, recordNumber, true));
+	}
+
+	void remove(String value, int recordNumber) {
+		applyChange(new PendingChange(value, recordNumber, false));
+	}
+
+	/**
+	 * applyChange queues the change on the stripe of its value and applies all changes queued on
+	 * the stripe while holding the lock of the stripe. Changes queued by other threads while the
+	 * lock was held are applied together, one {@link IdBitmap#withChanges(int[], int[])} for each
+	 * value, so a value changed by many records at the same time gets its IdBitmap replaced once
+	 * instead of once for each record.
+	 * </p>
+	 * The lock makes the stripe the only writer of its values, so the IdBitmaps are replaced with
+	 * plain get and put instead of a compute that can be retried under contention. When
+	 * applyChange returns, the change has been applied, by this thread or by another one.
+	 */
+	private void applyChange(PendingChange change) {
+		ChangeStripe stripe = stripeFor(change.value());
+		stripe.pendingChanges.add(change);
+		stripe.lock.lock();
+		try {
+			applyPendingChanges(stripe);
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	private ChangeStripe stripeFor(String value) {
+		int hash = isNumber(value) ? new BigDecimal(value).stripTrailingZeros().hashCode()
+				: value.hashCode();
+		return stripes[Math.floorMod(hash, NUMBER_OF_STRIPES)];
+	}
+
+	private static boolean isNumber(String value) {
+		return NUMBER.matcher(value).matches();
+	}
+
+	private void applyPendingChanges(ChangeStripe stripe) {
+		Map<String, Map<Integer, Boolean>> changesForValues = new LinkedHashMap<>();
+		PendingChange change = stripe.pendingChanges.poll();
+		while (null != change) {
+			changesForValues.computeIfAbsent(change.value(), _ -> new LinkedHashMap<>())
+					.put(change.recordNumber(), change.add());
+			change = stripe.pendingChanges.poll();
+		}
+		changesForValues.forEach(this::applyChangesForValue);
+	}
+
+	private void applyChangesForValue(String value, Map<Integer, Boolean> changes) {
+		IntStream.Builder addedRecordNumbers = IntStream.builder();
+		IntStream.Builder removedRecordNumbers = IntStream.builder();
+		changes.forEach((recordNumber, add) -> (add ? addedRecordNumbers : removedRecordNumbers)
+				.add(recordNumber));
+		int[] added = addedRecordNumbers.build().toArray();
+		int[] removed = removedRecordNumbers.build().toArray();
+		replaceRecordNumbers(recordNumbersForValues, value, added, removed);
+		if (isNumber(value)) {
+			replaceRecordNumbers(recordNumbersForNumbers, new BigDecimal(value), added, removed);
+		}
+	}
+
+	private <K> void replaceRecordNumbers(NavigableMap<K, IdBitmap> index, K value, int[] added,
+			int[] removed) {
+		IdBitmap recordNumbers = index.getOrDefault(value, IdBitmap.EMPTY)
+				.withChanges(added, removed);
+		if (recordNumbers.isEmpty()) {
+			index.remove(value);
+		} else {
+			index.put(value, recordNumbers);
+		}
+	}
+
+	/**
+	 * addAll adds all the record numbers to the value with one replacement of the IdBitmap of the
+	 * value, instead of one replacement for each record number as {@link #add(String, int)} does.
+	 * 
+	 * @param value
+	 *            A String with the value
+	 * @param recordNumbers
+	 *            An IdBitmap with the numbers of the records that have the value
+	 */
+	void addAll(String value, IdBitmap recordNumbers) {
+		ChangeStripe stripe = stripeFor(value);
+		stripe.lock.lock();
+		try {
+			applyPendingChanges(stripe);
+			addAllToIndex(recordNumbersForValues, value, recordNumbers);
+			if (isNumber(value)) {
+				addAllToIndex(recordNumbersForNumbers, new BigDecimal(value), recordNumbers);
+			}
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	private <K> void addAllToIndex(NavigableMap<K, IdBitmap> index, K value,
+			IdBitmap recordNumbers) {
+		index.put(value, index.getOrDefault(value, IdBitmap.EMPTY).or(recordNumbers));
+	}
+
+	IdBitmap findRecordNumbersWithValue(String value) {
+		return recordNumbersForValues.getOrDefault(value, IdBitmap.EMPTY);
+	}
+
+	/**
+	 * findRecordNumbersWithValueStartingWith returns the numbers of the records with a value
+	 * starting with prefix, found by scanning the sorted values from prefix until the first value
+	 * not starting with it.
+	 * 
+	 * @param prefix
+	 *            A String that the values must start with
+	 * @return An IdBitmap with the numbers of the records with a value starting with prefix
+	 */
+	IdBitmap findRecordNumbersWithValueStartingWith(String prefix) {
+		IdBitmap foundRecordNumbers = IdBitmap.EMPTY;
+		for (Entry<String, IdBitmap> valueEntry : recordNumbersForValues.tailMap(prefix, true)
+				.entrySet()) {
+			if (!valueEntry.getKey().startsWith(prefix)) {
+				return foundRecordNumbers;
+			}
+			foundRecordNumbers = foundRecordNumbers.or(valueEntry.getValue());
+		}
+		return foundRecordNumbers;
+	}
+
+	/**
+	 * findRecordNumbersInRange returns the numbers of the records with a value between from and
+	 * to, both included, where a null bound leaves the range open in that direction.
+	 * </p>
+	 * If the bounds are numbers, only values that are numbers are matched, compared as numbers, so
+	 * that 900 is between 100 and 1000. If the bounds are ISO-8601 dates, the upper bound includes
+	 * all values starting with it, so that timestamps during the last day are included. Other
+	 * bounds are compared with the values as strings.
+	 * 
+	 * @param from
+	 *            A String with the lowest value to match, or null for no lowest value
+	 * @param to
+	 *            A String with the highest value to match, or null for no highest value
+	 * @return An IdBitmap with the numbers of the records with a value in the range
+	 */
+	IdBitmap findRecordNumbersInRange(String from, String to) {
+		if (boundsMatch(NUMBER, from, to)) {
+			return findRecordNumbersForNumbersInRange(from, to);
+		}
+		if (boundsMatch(DATE, from, to)) {
+			return findRecordNumbersForDatesInRange(from, to);
+		}
+		return combineRecordNumbersInRange(recordNumbersForValues, from, to);
+	}
+
+	/**
+	 * valueIsInRange returns true if the value is between from and to, compared in the same way as
+	 * in {@link #findRecordNumbersInRange(String, String)}, so that a single value can be checked
+	 * without an index.
+	 * 
+	 * @param value
+	 *            A String with the value to check
+	 * @param from
+	 *            A String with the lowest value to match, or null for no lowest value
+	 * @param to
+	 *            A String with the highest value to match, or null for no highest value
+	 * @return A boolean, true if the value is in the range
+	 */
+	static boolean valueIsInRange(String value, String from, String to) {
+		if (boundsMatch(NUMBER, from, to)) {
+			return isNumber(value) && isBetween(new BigDecimal(value), toNumberOrNull(from),
+					toNumberOrNull(to));
+		}
+		if (boundsMatch(DATE, from, to)) {
+			return isBetween(value, from, null == to ? null : to + AFTER_ALL_VALUES_STARTING_WITH);
+		}
+		return isBetween(value, from, to);
+	}
+
+	private static BigDecimal toNumberOrNull(String bound) {
+		return null == bound ? null : new BigDecimal(bound);
+	}
+
+	private static <K extends Comparable<K>> boolean isBetween(K value, K lowest, K highest) {
+		return (null == lowest || lowest.compareTo(value) <= 0)
+				&& (null == highest || value.compareTo(highest) <= 0);
+	}
+
+	private static boolean boundsMatch(Pattern pattern, String from, String to) {
+		if (null == from && null == to) {
+			return false;
+		}
+		return boundIsOpenOrMatches(pattern, from) && boundIsOpenOrMatches(pattern, to);
+	}
+
+	private static boolean boundIsOpenOrMatches(Pattern pattern, String bound) {
+		return null == bound || pattern.matcher(bound).matches();
+	}
+
+	private IdBitmap findRecordNumbersForNumbersInRange(String from, String to) {
+		return combineRecordNumbersInRange(recordNumbersForNumbers, toNumberOrNull(from),
+				toNumberOrNull(to));
+	}
+
+	private IdBitmap findRecordNumbersForDatesInRange(String from, String to) {
+		String highest = null == to ? null : to + AFTER_ALL_VALUES_STARTING_WITH;
+		return combineRecordNumbersInRange(recordNumbersForValues, from, highest);
+	}
+
+	private <K extends Comparable<K>> IdBitmap combineRecordNumbersInRange(
+			NavigableMap<K, IdBitmap> index, K lowest, K highest) {
+		if (null != lowest && null != highest && lowest.compareTo(highest) > 0) {
+			return IdBitmap.EMPTY;
+		}
+		NavigableMap<K, IdBitmap> valuesInRange = index;
+		if (null != lowest) {
+			valuesInRange = valuesInRange.tailMap(lowest, true);
+		}
+		if (null != highest) {
+			valuesInRange = valuesInRange.headMap(highest, true);
+		}
+		return combineRecordNumbers(valuesInRange.values());
+	}
+
+	private IdBitmap combineRecordNumbers(Collection<IdBitmap> recordNumbersForValuesInRange) {
+		IdBitmap foundRecordNumbers = IdBitmap.EMPTY;
+		for (IdBitmap recordNumbers : recordNumbersForValuesInRange) {
+			foundRecordNumbers = foundRecordNumbers.or(recordNumbers);
+		}
+		return foundRecordNumbers;
+	}
+
+	/**
+	 * recordNumbersInValueOrder returns the record numbers for each value, ordered by value.
+	 * Numbers come first, ordered as numbers, followed by all other values ordered as strings. The
+	 * order is reversed if descending is true.
+	 * </p>
+	 * The returned stream is lazy, so a reader that only needs the first values does not visit the
+	 * rest.
+	 * 
+	 * @param descending
+	 *            A boolean, true if the values should be in descending order
+	 * @return A Stream with one IdBitmap for each value
+	 */
+	Stream<IdBitmap> recordNumbersInValueOrder(boolean descending) {
+		if (descending) {
+			return Stream.concat(
+					recordNumbersForValuesThatAreNotNumbers(recordNumbersForValues.descendingMap()),
+					recordNumbersForNumbers.descendingMap().values().stream());
+		}
+		return Stream.concat(recordNumbersForNumbers.values().stream(),
+				recordNumbersForValuesThatAreNotNumbers(recordNumbersForValues));
+	}
+
+	private Stream<IdBitmap> recordNumbersForValuesThatAreNotNumbers(
+			NavigableMap<String, IdBitmap> orderedValues) {
+		return orderedValues.entrySet().stream().filter(entry -> !isNumber(entry.getKey()))
+				.map(Entry::getValue);
+	}
+
+	private static final class ChangeStripe {
+		private final Lock lock = new ReentrantLock();
+		private final Queue<PendingChange> pendingChanges = new ConcurrentLinkedQueue<>();
+	}
+
+	private record PendingChange(String value, int recordNumber, boolean add) {
+	}
+}
@@ -19,7 +19,9 @@
 package se.uu.ub.cora.basicstorage;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -44,7 +46,9 @@ public class CollectedTermsHolderSpy implements CollectedTermsHolder {
 	public Filter filter;
 	public List<String> returnedIds;
 	public boolean findRecordsForFilterWasCalled = false;
+	public boolean countRecordsForFilterWasCalled = false;
 	public Map<String, List<String>> returnIdsForTypes = new HashMap<>();
+	public Set<String> recordIdsNoLongerMatching = new HashSet<>();
 
 	@Override
 	public void storeCollectedTerms(String recordType, String recordId,
@@ -67,6 +71,44 @@ public class CollectedTermsHolderSpy implements CollectedTermsHolder {
 		return returnedIds;
 	}
 
+	@Override
+	public long countRecordIdsForFilter(String type, Filter filter) {
+		MCR.addCall("type", type, "filter", filter);
+		countRecordsForFilterWasCalled = true;
+		this.type = type;
+		this.filter = filter;
+		long numberOfIds = 0;
+		if (returnIdsForTypes.isEmpty() || returnIdsForTypes.containsKey(type)) {
+			numberOfIds = returnIdsForTypes.get(type).size();
+		}
+		MCR.addReturned(numberOfIds);
+		return numberOfIds;
+	}
+
+	@Override
+	public List<String> sortRecordIdsByStorageTerm(String recordType, Collection<String> recordIds,
+			StorageTermSort sort, int maxNumberOfRecordIds) {
+		return (List<String>) MCR.addCallAndReturnFromMRV("recordType", recordType, "recordIds",
+				recordIds, "sort", sort, "maxNumberOfRecordIds", maxNumberOfRecordIds);
+	}
+
+	@Override
+	public List<String> findRecordIdsForFilterAndConditions(String recordType, Filter filter,
+			List<StorageTermCondition> conditions) {
+		return (List<String>) MCR.addCallAndReturnFromMRV("recordType", recordType, "filter",
+				filter, "conditions", conditions);
+	}
+
+	@Override
+	public boolean recordMatches(String recordType, String recordId, Filter filter,
+			List<StorageTermCondition> conditions) {
+		MCR.addCall("recordType", recordType, "recordId", recordId, "filter", filter,
+				"conditions", conditions);
+		boolean matches = !recordIdsNoLongerMatching.contains(recordId);
+		MCR.addReturned(matches);
+		return matches;
+	}
+
 	@Override
 	public void removePreviousCollectedStorageTerms(String recordType, String recordId) {
 		MCR.addCall("recordType", recordType, "recordId", recordId);
@@ -21,14 +21,22 @@ package se.uu.ub.cora.basicstorage;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
+import static se.uu.ub.cora.storage.RelationalOperator.EQUAL_TO;
 
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import se.uu.ub.cora.data.collected.StorageTerm;
+import se.uu.ub.cora.storage.Condition;
+import se.uu.ub.cora.storage.Filter;
+import se.uu.ub.cora.storage.Part;
 
 public class CollectedTermsInMemoryStorageTest {
 
@@ -71,6 +79,76 @@ public class CollectedTermsInMemoryStorageTest {
 		assertFalse(originalStoredStorageTerms.isEmpty());
 	}
 
+	@Test
+	public void testStoreCollectedTerms_laterChangesToEnteredSetAreNotStored() {
+		Set<StorageTerm> collectedData = new HashSet<>(
+				createCollectedDataWithUppsalaAndOckelboStorageTerm());
+		storage.storeCollectedTerms(RECORD_TYPE, RECORD_ID, collectedData, DATA_DIVIDER);
+
+		collectedData.add(new StorageTerm("placeNameStorageTerm", "placeName", "Malmö"));
+
+		Set<StorageTerm> collectTermsReturned = storage.getCollectTerms(RECORD_TYPE, RECORD_ID);
+		assertEquals(collectTermsReturned, createCollectedDataWithUppsalaAndOckelboStorageTerm());
+	}
+
+	@Test
+	public void testStoreCollectedTerms_changedTermsReplaceOnlyChangedValues() {
+		storage.storeCollectedTerms(RECORD_TYPE, RECORD_ID,
+				createCollectedDataWithUppsalaAndOckelboStorageTerm(), DATA_DIVIDER);
+
+		storage.storeCollectedTerms(RECORD_TYPE, RECORD_ID,
+				Set.of(new StorageTerm("placeNameStorageTerm", "placeName", "Uppsala"),
+						new StorageTerm("placeNameStorageTerm", "placeName2", "Malmö")),
+				DATA_DIVIDER);
+
+		assertEquals(storage.findRecordIdsForFilter(RECORD_TYPE,
+				createFilterWithConditions(new Condition("placeName", EQUAL_TO, "Uppsala"))),
+				List.of(RECORD_ID));
+		assertEquals(storage.findRecordIdsForFilter(RECORD_TYPE,
+				createFilterWithConditions(new Condition("placeName2", EQUAL_TO, "Malmö"))),
+				List.of(RECORD_ID));
+		assertTrue(storage.findRecordIdsForFilter(RECORD_TYPE,
+				createFilterWithConditions(new Condition("placeName2", EQUAL_TO, "Ockelbo")))
+				.isEmpty());
+	}
+
+	@Test
+	public void testStoreCollectedTerms_sameValueFromOtherStorageTermIsKept() {
+		storage.storeCollectedTerms(RECORD_TYPE, RECORD_ID,
+				Set.of(new StorageTerm("placeNameStorageTerm", "placeName", "Uppsala")),
+				DATA_DIVIDER);
+
+		storage.storeCollectedTerms(RECORD_TYPE, RECORD_ID,
+				Set.of(new StorageTerm("otherPlaceNameStorageTerm", "placeName", "Uppsala")),
+				DATA_DIVIDER);
+
+		assertEquals(storage.findRecordIdsForFilter(RECORD_TYPE,
+				createFilterWithConditions(new Condition("placeName", EQUAL_TO, "Uppsala"))),
+				List.of(RECORD_ID));
+	}
+
+	@Test
+	public void testStoreCollectedTermsForNewRecords() {
+		storePlaceNameForId("id1", "Uppsala");
+
+		storage.storeCollectedTermsForNewRecords(List.of(
+				createRecordToCreate("id3", createCollectedDataWithUppsalaAndOckelboStorageTerm()),
+				createRecordToCreate("id2", createCollectedDataWithUppsalaAndOckelboStorageTerm()),
+				createRecordToCreate("id4", Collections.emptySet())));
+
+		assertEquals(storage.findRecordIdsForFilter(RECORD_TYPE,
+				createFilterWithConditions(new Condition("placeName", EQUAL_TO, "Uppsala"))),
+				List.of("id1", "id2", "id3"));
+		assertEquals(storage.getCollectTerms(RECORD_TYPE, "id2"),
+				createCollectedDataWithUppsalaAndOckelboStorageTerm());
+		assertTrue(storage.getCollectTerms(RECORD_TYPE, "id4").isEmpty());
+	}
+
+	private RecordToCreate createRecordToCreate(String recordId, Set<StorageTerm> storageTerms) {
+		return new RecordToCreate(RECORD_TYPE, recordId, new DataGroupOldSpy(RECORD_TYPE),
+				storageTerms, Collections.emptySet(), DATA_DIVIDER);
+	}
+
 	@Test
 	public void testStoreCollectedTerms_NotFoundInStorage_differentTypeAndId() {
 		Set<StorageTerm> collectedData = createCollectedDataWithUppsalaAndOckelboStorageTerm();
@@ -161,6 +239,544 @@ public class CollectedTermsInMemoryStorageTest {
 		assertTrue(collectTerms.isEmpty());
 	}
 
+	@Test
+	public void testDeleteStorageTerms_OnlyTermsForRecordAreDeleted() {
+		storeUppsalaAndOckelboForIds("id1", "id2");
+		storage.storeCollectedTerms(RECORD_TYPE, "id3",
+				createCollectedDataWithStockholmAndMalmoStorageTerm(), DATA_DIVIDER);
+
+		storage.removePreviousCollectedStorageTerms(RECORD_TYPE, "id2");
+
+		assertTrue(storage.getCollectTerms(RECORD_TYPE, "id2").isEmpty());
+		assertEquals(storage.getCollectTerms(RECORD_TYPE, "id1"),
+				createCollectedDataWithUppsalaAndOckelboStorageTerm());
+		assertEquals(storage.findRecordIdsForFilter(RECORD_TYPE,
+				createFilterWithConditions(new Condition("placeName2", EQUAL_TO, "Ockelbo"))),
+				List.of("id1"));
+		assertEquals(storage.findRecordIdsForFilter(RECORD_TYPE,
+				createFilterWithConditions(new Condition("placeName2", EQUAL_TO, "Malmö"))),
+				List.of("id3"));
+	}
+
+	@Test
+	public void testDeleteStorageTerms_RecordWithoutTermsInTypeWithTerms() {
+		storeUppsalaAndOckelboForIds("id1");
+
+		storage.removePreviousCollectedStorageTerms(RECORD_TYPE, "idWithoutTerms");
+
+		assertEquals(storage.getCollectTerms(RECORD_TYPE, "id1"),
+				createCollectedDataWithUppsalaAndOckelboStorageTerm());
+	}
+
+	@Test
+	public void testCountRecordIdsForFilter_noTermsForType() {
+		Filter filter = createFilterWithConditions(new Condition("placeName", EQUAL_TO, "Uppsala"));
+
+		long count = storage.countRecordIdsForFilter(RECORD_TYPE, filter);
+
+		assertEquals(count, 0);
+	}
+
+	@Test
+	public void testCountRecordIdsForFilter_oneCondition() {
+		storeUppsalaAndOckelboForIds("id1", "id2");
+		storage.storeCollectedTerms(RECORD_TYPE, "id3",
+				createCollectedDataWithStockholmAndMalmoStorageTerm(), DATA_DIVIDER);
+		Filter filter = createFilterWithConditions(new Condition("placeName", EQUAL_TO, "Uppsala"));
+
+		long count = storage.countRecordIdsForFilter(RECORD_TYPE, filter);
+
+		assertEquals(count, 2);
+		assertEquals(count, storage.findRecordIdsForFilter(RECORD_TYPE, filter).size());
+	}
+
+	@Test
+	public void testCountRecordIdsForFilter_oneConditionUnknownKey() {
+		storeUppsalaAndOckelboForIds("id1");
+		Filter filter = createFilterWithConditions(
+				new Condition("NOT_placeName", EQUAL_TO, "Uppsala"));
+
+		long count = storage.countRecordIdsForFilter(RECORD_TYPE, filter);
+
+		assertEquals(count, 0);
+	}
+
+	@Test
+	public void testCountRecordIdsForFilter_twoConditions() {
+		storeUppsalaAndOckelboForIds("id1", "id2");
+		storage.storeCollectedTerms(RECORD_TYPE, "id3",
+				Set.of(new StorageTerm("placeNameStorageTerm", "placeName", "Uppsala")),
+				DATA_DIVIDER);
+		Filter filter = createFilterWithConditions(new Condition("placeName", EQUAL_TO, "Uppsala"),
+				new Condition("placeName2", EQUAL_TO, "Ockelbo"));
+
+		long count = storage.countRecordIdsForFilter(RECORD_TYPE, filter);
+
+		assertEquals(count, 2);
+		assertEquals(count, storage.findRecordIdsForFilter(RECORD_TYPE, filter).size());
+	}
+
+	@Test
+	public void testFindRecordIdsForFilter_updatedValueIsOnlyFoundByNewValue() {
+		storeUppsalaAndOckelboForIds("id1", "id2");
+		storage.storeCollectedTerms(RECORD_TYPE, "id1",
+				createCollectedDataWithStockholmAndMalmoStorageTerm(), DATA_DIVIDER);
+
+		assertEquals(storage.findRecordIdsForFilter(RECORD_TYPE,
+				createFilterWithConditions(new Condition("placeName", EQUAL_TO, "Uppsala"))),
+				List.of("id2"));
+		assertEquals(storage.findRecordIdsForFilter(RECORD_TYPE,
+				createFilterWithConditions(new Condition("placeName", EQUAL_TO, "Stockholm"))),
+				List.of("id1"));
+	}
+
+	@Test
+	public void testFindRecordIdsForFilter_removedRecordIsNotFound() {
+		storeUppsalaAndOckelboForIds("id1", "id2");
+		Filter filter = createFilterWithConditions(new Condition("placeName", EQUAL_TO, "Uppsala"));
+
+		storage.removePreviousCollectedStorageTerms(RECORD_TYPE, "id1");
+		assertEquals(storage.findRecordIdsForFilter(RECORD_TYPE, filter), List.of("id2"));
+
+		storage.removePreviousCollectedStorageTerms(RECORD_TYPE, "id2");
+		assertEquals(storage.findRecordIdsForFilter(RECORD_TYPE, filter), Collections.emptyList());
+		assertEquals(storage.countRecordIdsForFilter(RECORD_TYPE, filter), 0);
+	}
+
+	@Test
+	public void testFindRecordIdsForFilter_numberOfRemovedRecordIsReused() {
+		storeUppsalaAndOckelboForIds("id1");
+		storePlaceNameForId("id2", "Ockelbo");
+		Filter filter = createFilterWithConditions(new Condition("placeName", EQUAL_TO, "Uppsala"));
+
+		storage.removePreviousCollectedStorageTerms(RECORD_TYPE, "id1");
+		storePlaceNameForId("id3", "Arboga");
+		storage.storeCollectedTerms(RECORD_TYPE, "id2", Collections.emptySet(), DATA_DIVIDER);
+		storeUppsalaAndOckelboForIds("id4");
+
+		assertEquals(storage.findRecordIdsForFilter(RECORD_TYPE, filter), List.of("id4"));
+		assertEquals(storage.findRecordIdsForFilter(RECORD_TYPE,
+				createFilterWithConditions(new Condition("placeName", EQUAL_TO, "Arboga"))),
+				List.of("id3"));
+	}
+
+	@Test
+	public void testFindRecordIdsForFilter_valueOnlyMatchesItsOwnKey() {
+		storage.storeCollectedTerms(RECORD_TYPE, "id1",
+				Set.of(new StorageTerm("placeNameStorageTerm", "placeName2", "Uppsala")),
+				DATA_DIVIDER);
+		storeUppsalaAndOckelboForIds("id2");
+
+		assertEquals(storage.findRecordIdsForFilter(RECORD_TYPE,
+				createFilterWithConditions(new Condition("placeName", EQUAL_TO, "Uppsala"))),
+				List.of("id2"));
+	}
+
+	@Test
+	public void testFindRecordIdsForFilter_anyIncludedPartMatches() {
+		storeUppsalaAndOckelboForIds("id1");
+		storage.storeCollectedTerms(RECORD_TYPE, "id2",
+				createCollectedDataWithStockholmAndMalmoStorageTerm(), DATA_DIVIDER);
+		storeUppsalaAndOckelboForIds("id3");
+		Filter filter = new Filter();
+		filter.include.add(createPart(new Condition("placeName", EQUAL_TO, "Stockholm")));
+		filter.include.add(createPart(new Condition("placeName", EQUAL_TO, "Uppsala"),
+				new Condition("placeName2", EQUAL_TO, "Ockelbo")));
+
+		assertEquals(storage.findRecordIdsForFilter(RECORD_TYPE, filter),
+				List.of("id1", "id2", "id3"));
+		assertEquals(storage.countRecordIdsForFilter(RECORD_TYPE, filter), 3);
+	}
+
+	@Test
+	public void testFindRecordIdsForFilter_excludedPartsAreSubtracted() {
+		storeUppsalaAndOckelboForIds("id1", "id2");
+		storage.storeCollectedTerms(RECORD_TYPE, "id2",
+				Set.of(new StorageTerm("placeNameStorageTerm", "placeName", "Uppsala"),
+						new StorageTerm("placeNameStorageTerm", "placeName2", "Malmö")),
+				DATA_DIVIDER);
+		storeUppsalaAndOckelboForIds("id3");
+		Filter filter = createFilterWithConditions(new Condition("placeName", EQUAL_TO, "Uppsala"));
+		filter.exclude.add(createPart(new Condition("placeName2", EQUAL_TO, "Malmö")));
+		filter.exclude.add(createPart(new Condition("placeName", EQUAL_TO, "Uppsala"),
+				new Condition("placeName2", EQUAL_TO, "NOT_Ockelbo")));
+
+		assertEquals(storage.findRecordIdsForFilter(RECORD_TYPE, filter), List.of("id1", "id3"));
+		assertEquals(storage.countRecordIdsForFilter(RECORD_TYPE, filter), 2);
+	}
+
+	@Test
+	public void testFindRecordIdsForFilter_everythingExcluded() {
+		storeUppsalaAndOckelboForIds("id1", "id2");
+		Filter filter = createFilterWithConditions(new Condition("placeName", EQUAL_TO, "Uppsala"));
+		filter.exclude.add(createPart(new Condition("placeName2", EQUAL_TO, "Ockelbo")));
+		filter.exclude.add(createPart(new Condition("placeName", EQUAL_TO, "Uppsala")));
+
+		assertEquals(storage.findRecordIdsForFilter(RECORD_TYPE, filter), Collections.emptyList());
+		assertEquals(storage.countRecordIdsForFilter(RECORD_TYPE, filter), 0);
+	}
+
+	@Test
+	public void testFindRecordIdsForFilter_valueStartingWith() {
+		storePlaceNameForId("id1", "Uppsala");
+		storePlaceNameForId("id2", "Uppland");
+		storePlaceNameForId("id3", "Up");
+		storePlaceNameForId("id4", "Stockholm");
+		storePlaceNameForId("id5", "Uppsala");
+
+		assertEquals(findRecordIdsForConditions(new Filter(),
+				StorageTermCondition.startingWith("placeName", "Upp")),
+				List.of("id1", "id2", "id5"));
+	}
+
+	private List<String> findRecordIdsForConditions(Filter filter,
+			StorageTermCondition... conditions) {
+		return storage.findRecordIdsForFilterAndConditions(RECORD_TYPE, filter,
+				List.of(conditions));
+	}
+
+	@Test
+	public void testFindRecordIdsForFilter_valueEndingWithWildcardIsMatchedExactly() {
+		storePlaceNameForId("id1", "Uppsala");
+		storePlaceNameForId("id2", "Upp*");
+		Filter filter = createFilterWithConditions(new Condition("placeName", EQUAL_TO, "Upp*"));
+
+		assertEquals(storage.findRecordIdsForFilter(RECORD_TYPE, filter), List.of("id2"));
+		assertEquals(storage.countRecordIdsForFilter(RECORD_TYPE, filter), 1);
+	}
+
+	private void storePlaceNameForId(String recordId, String placeName) {
+		storage.storeCollectedTerms(RECORD_TYPE, recordId,
+				Set.of(new StorageTerm("placeNameStorageTerm", "placeName", placeName)),
+				DATA_DIVIDER);
+	}
+
+	@Test
+	public void testFindRecordIdsForFilter_valueStartingWithNoMatch() {
+		storePlaceNameForId("id1", "Uppsala");
+		storePlaceNameForId("id2", "Stockholm");
+
+		assertEquals(findRecordIdsForConditions(new Filter(),
+				StorageTermCondition.startingWith("placeName", "Ockel")),
+				Collections.emptyList());
+		assertEquals(findRecordIdsForConditions(new Filter(),
+				StorageTermCondition.startingWith("NOT_placeName", "Upp")),
+				Collections.emptyList());
+		assertEquals(storage.findRecordIdsForFilterAndConditions("NOT_" + RECORD_TYPE,
+				new Filter(), List.of(StorageTermCondition.startingWith("placeName", "Upp"))),
+				Collections.emptyList());
+	}
+
+	@Test
+	public void testFindRecordIdsForFilter_emptyPrefixMatchesAllValuesForKey() {
+		storePlaceNameForId("id1", "Uppsala");
+		storePlaceNameForId("id2", "Stockholm");
+		storage.storeCollectedTerms(RECORD_TYPE, "id3",
+				Set.of(new StorageTerm("placeNameStorageTerm", "placeName2", "Ockelbo")),
+				DATA_DIVIDER);
+
+		assertEquals(
+				findRecordIdsForConditions(new Filter(),
+						StorageTermCondition.startingWith("placeName", "")),
+				List.of("id1", "id2"));
+	}
+
+	@Test
+	public void testFindRecordIdsForFilter_valueStartingWithCombinedWithOtherCondition() {
+		storeUppsalaAndOckelboForIds("id1");
+		storePlaceNameForId("id2", "Uppsala");
+
+		assertEquals(findRecordIdsForConditions(new Filter(),
+				StorageTermCondition.startingWith("placeName", "Upps"),
+				StorageTermCondition.startingWith("placeName2", "Ock")), List.of("id1"));
+	}
+
+	@Test
+	public void testFindRecordIdsForFilter_valueStartingWithCombinedWithFilter() {
+		storeUppsalaAndOckelboForIds("id1");
+		storePlaceNameForId("id2", "Uppsala");
+		storePlaceNameForId("id3", "Stockholm");
+		StorageTermCondition startingWithUpp = StorageTermCondition.startingWith("placeName",
+				"Upp");
+		Filter excludingOckelbo = new Filter();
+		excludingOckelbo.exclude.add(createPart(new Condition("placeName2", EQUAL_TO, "Ockelbo")));
+
+		assertEquals(findRecordIdsForConditions(
+				createFilterWithConditions(new Condition("placeName2", EQUAL_TO, "Ockelbo")),
+				startingWithUpp), List.of("id1"));
+		assertEquals(findRecordIdsForConditions(excludingOckelbo, startingWithUpp),
+				List.of("id2"));
+	}
+
+	@Test
+	public void testFindRecordIdsForFilter_valueStartingWithAfterUpdate() {
+		storePlaceNameForId("id1", "Uppsala");
+		storePlaceNameForId("id1", "Stockholm");
+
+		assertEquals(findRecordIdsForConditions(new Filter(),
+				StorageTermCondition.startingWith("placeName", "Upp")), Collections.emptyList());
+	}
+
+	@Test
+	public void testFindRecordIdsForFilter_numberRange() {
+		storeYearForId("id1", "900");
+		storeYearForId("id2", "1900");
+		storeYearForId("id3", "1950");
+		storeYearForId("id4", "2000");
+		storeYearForId("id5", "2001");
+
+		assertEquals(findRecordIdsForConditions(new Filter(),
+				StorageTermCondition.between("year", "900", "2000")),
+				List.of("id1", "id2", "id3", "id4"));
+	}
+
+	@Test
+	public void testFindRecordIdsForFilter_rangeInConditionValueIsMatchedExactly() {
+		storeYearForId("id1", "1950");
+		storeYearForId("id2", "1900..2000");
+		Filter filter = createFilterWithConditions(new Condition("year", EQUAL_TO, "1900..2000"));
+
+		assertEquals(storage.findRecordIdsForFilter(RECORD_TYPE, filter), List.of("id2"));
+		assertEquals(storage.countRecordIdsForFilter(RECORD_TYPE, filter), 1);
+	}
+
+	@Test
+	public void testFindRecordIdsForFilter_openNumberRange() {
+		storeYearForId("id1", "900");
+		storeYearForId("id2", "1900");
+		storeYearForId("id3", "-10");
+
+		assertEquals(findRecordIdsForConditions(new Filter(),
+				StorageTermCondition.atLeast("year", "1000")), List.of("id2"));
+		assertEquals(findRecordIdsForConditions(new Filter(),
+				StorageTermCondition.atMost("year", "1000")), List.of("id1", "id3"));
+	}
+
+	@Test
+	public void testFindRecordIdsForFilter_dateRange() {
+		storeYearForId("id1", "2019-12-31");
+		storeYearForId("id2", "2020-01-01");
+		storeYearForId("id3", "2020-12-31T23:59:59Z");
+		storeYearForId("id4", "2021-01-01");
+
+		assertEquals(findRecordIdsForConditions(new Filter(),
+				StorageTermCondition.between("year", "2020-01-01", "2020-12-31")),
+				List.of("id2", "id3"));
+	}
+
+	@Test
+	public void testFindRecordIdsForFilter_rangeAfterUpdate() {
+		storeYearForId("id1", "1950");
+		storeYearForId("id1", "2050");
+
+		assertEquals(findRecordIdsForConditions(new Filter(),
+				StorageTermCondition.between("year", "1900", "2000")), Collections.emptyList());
+	}
+
+	@Test
+	public void testFindRecordIdsForFilter_conditionsInAnyOrderGiveSameResult() {
+		storeUppsalaAndOckelboForIds("id1", "id2");
+		storePlaceNameForId("id3", "Uppsala");
+		storeYearForId("id4", "1950");
+		Condition year = new Condition("year", EQUAL_TO, "1950");
+		Condition selective = new Condition("placeName2", EQUAL_TO, "Ockelbo");
+		Condition exact = new Condition("placeName", EQUAL_TO, "Uppsala");
+
+		assertEquals(storage.findRecordIdsForFilter(RECORD_TYPE,
+				createFilterWithConditions(exact, selective)), List.of("id1", "id2"));
+		assertEquals(storage.findRecordIdsForFilter(RECORD_TYPE,
+				createFilterWithConditions(selective, exact)), List.of("id1", "id2"));
+		assertEquals(storage.findRecordIdsForFilter(RECORD_TYPE,
+				createFilterWithConditions(year, exact, selective)), Collections.emptyList());
+	}
+
+	@Test
+	public void testFindRecordIdsForFilter_conditionWithoutMatchesGivesEmptyResult() {
+		storeUppsalaAndOckelboForIds("id1", "id2");
+
+		assertEquals(storage.countRecordIdsForFilter(RECORD_TYPE,
+				createFilterWithConditions(new Condition("placeName", EQUAL_TO, "Uppsala"),
+						new Condition("placeName2", EQUAL_TO, "NOT_Ockelbo"))),
+				0);
+		assertEquals(storage.countRecordIdsForFilter(RECORD_TYPE,
+				createFilterWithConditions(new Condition("placeName", EQUAL_TO, "Uppsala"),
+						new Condition("NOT_placeName", EQUAL_TO, "Uppsala"))),
+				0);
+	}
+
+	@Test
+	public void testSortRecordIdsByStorageTermStopsAtMaxNumber() {
+		storeYearForId("id1", "1950");
+		storeYearForId("id2", "900");
+		storeYearForId("id3", "1950");
+		storeYearForId("id4", "2000");
+
+		assertEquals(storage.sortRecordIdsByStorageTerm(RECORD_TYPE,
+				List.of("id1", "id2", "id3", "id4"), StorageTermSort.ascendingOn("year"), 3),
+				List.of("id2", "id1", "id3"));
+		assertEquals(storage.sortRecordIdsByStorageTerm(RECORD_TYPE,
+				List.of("id1", "id2", "id3", "id4"), StorageTermSort.descendingOn("year"), 2),
+				List.of("id4", "id1"));
+	}
+
+	@Test
+	public void testSortRecordIdsByStorageTermOnlySortsGivenRecordIds() {
+		storeYearForId("id1", "1950");
+		storeYearForId("id2", "900");
+		storeYearForId("id3", "2000");
+
+		assertEquals(
+				storage.sortRecordIdsByStorageTerm(RECORD_TYPE, List.of("id3", "idWithoutTerms",
+						"id1"), StorageTermSort.ascendingOn("year"), 10),
+				List.of("id1", "id3", "idWithoutTerms"));
+	}
+
+	@Test
+	public void testSortRecordIdsByStorageTermRecordWithManyValuesIsSortedOnce() {
+		storage.storeCollectedTerms(RECORD_TYPE, "id1",
+				Set.of(new StorageTerm("yearStorageTerm", "year", "1900"),
+						new StorageTerm("yearStorageTerm2", "year", "2100")),
+				DATA_DIVIDER);
+		storeYearForId("id2", "2000");
+
+		assertEquals(storage.sortRecordIdsByStorageTerm(RECORD_TYPE, List.of("id1", "id2"),
+				StorageTermSort.descendingOn("year"), 10), List.of("id1", "id2"));
+	}
+
+	@Test
+	public void testSortAllRecordIdsByStorageTermStopsAtMaxNumber() {
+		storeYearForId("id1", "1950");
+		storeYearForId("id2", "900");
+		storeYearForId("id3", "1950");
+		storeYearForId("id4", "2000");
+		SortedSet<String> allRecordIds = new TreeSet<>(List.of("id1", "id2", "id3", "id4"));
+
+		assertEquals(storage.sortAllRecordIdsByStorageTerm(RECORD_TYPE, allRecordIds,
+				StorageTermSort.ascendingOn("year"), 3), List.of("id2", "id1", "id3"));
+		assertEquals(storage.sortAllRecordIdsByStorageTerm(RECORD_TYPE, allRecordIds,
+				StorageTermSort.descendingOn("year"), 2), List.of("id4", "id1"));
+	}
+
+	@Test
+	public void testSortAllRecordIdsByStorageTermAddsRecordIdsWithoutValueLast() {
+		storeYearForId("id2", "1950");
+		storeYearForId("id4", "900");
+		SortedSet<String> allRecordIds = new TreeSet<>(List.of("id1", "id2", "id3", "id4", "id5"));
+
+		assertEquals(storage.sortAllRecordIdsByStorageTerm(RECORD_TYPE, allRecordIds,
+				StorageTermSort.ascendingOn("year"), 4), List.of("id4", "id2", "id1", "id3"));
+		assertEquals(storage.sortAllRecordIdsByStorageTerm(RECORD_TYPE, allRecordIds,
+				StorageTermSort.ascendingOn("NOT_year"), 2), List.of("id1", "id2"));
+	}
+
+	@Test
+	public void testSortAllRecordIdsByStorageTermSkipsRecordIdsNotInAllRecordIds() {
+		storeYearForId("id1", "1950");
+		storeYearForId("idNotStored", "900");
+
+		assertEquals(
+				storage.sortAllRecordIdsByStorageTerm(RECORD_TYPE, new TreeSet<>(List.of("id1")),
+						StorageTermSort.ascendingOn("year"), 10),
+				List.of("id1"));
+	}
+
+	@Test
+	public void testSortAllRecordIdsByStorageTermRecordWithManyValuesIsSortedOnce() {
+		storage.storeCollectedTerms(RECORD_TYPE, "id1",
+				Set.of(new StorageTerm("yearStorageTerm", "year", "1900"),
+						new StorageTerm("yearStorageTerm2", "year", "2100")),
+				DATA_DIVIDER);
+		storeYearForId("id2", "2000");
+
+		assertEquals(storage.sortAllRecordIdsByStorageTerm(RECORD_TYPE,
+				new TreeSet<>(List.of("id1", "id2")), StorageTermSort.descendingOn("year"), 10),
+				List.of("id1", "id2"));
+	}
+
+	@Test
+	public void testSortRecordIdsByStorageTermKeepsFirstRecordIdsOfLargeGroupWithSameValue() {
+		storeYearForId("id900", "900");
+		SortedSet<String> allRecordIds = new TreeSet<>(List.of("id900"));
+		for (int i = 199; i >= 100; i--) {
+			storeYearForId("id" + i, "1950");
+			allRecordIds.add("id" + i);
+		}
+
+		assertEquals(storage.sortAllRecordIdsByStorageTerm(RECORD_TYPE, allRecordIds,
+				StorageTermSort.ascendingOn("year"), 4),
+				List.of("id900", "id100", "id101", "id102"));
+		assertEquals(storage.sortRecordIdsByStorageTerm(RECORD_TYPE, allRecordIds,
+				StorageTermSort.descendingOn("year"), 3), List.of("id100", "id101", "id102"));
+	}
+
+	@Test
+	public void testRecordMatches_includedPart() {
+		storeUppsalaAndOckelboForIds("id1");
+		Filter filter = createFilterWithConditions(new Condition("placeName", EQUAL_TO, "Uppsala"),
+				new Condition("placeName2", EQUAL_TO, "Ockelbo"));
+
+		assertTrue(storage.recordMatches(RECORD_TYPE, "id1", filter, Collections.emptyList()));
+		assertFalse(storage.recordMatches(RECORD_TYPE, "id2", filter, Collections.emptyList()));
+	}
+
+	@Test
+	public void testRecordMatches_noLongerMatchingAfterUpdate() {
+		storePlaceNameForId("id1", "Uppsala");
+		Filter filter = createFilterWithConditions(new Condition("placeName", EQUAL_TO, "Uppsala"));
+
+		storePlaceNameForId("id1", "Stockholm");
+
+		assertFalse(storage.recordMatches(RECORD_TYPE, "id1", filter, Collections.emptyList()));
+	}
+
+	@Test
+	public void testRecordMatches_excludedPart() {
+		storeUppsalaAndOckelboForIds("id1");
+		Filter filter = new Filter();
+		filter.exclude.add(createPart(new Condition("placeName2", EQUAL_TO, "Ockelbo")));
+
+		assertFalse(storage.recordMatches(RECORD_TYPE, "id1", filter, Collections.emptyList()));
+	}
+
+	@Test
+	public void testRecordMatches_storageTermConditions() {
+		storePlaceNameForId("id1", "Uppsala");
+		storeYearForId("id2", "1900");
+
+		assertTrue(storage.recordMatches(RECORD_TYPE, "id1", new Filter(),
+				List.of(StorageTermCondition.startingWith("placeName", "Upp"))));
+		assertFalse(storage.recordMatches(RECORD_TYPE, "id1", new Filter(),
+				List.of(StorageTermCondition.startingWith("placeName", "Sto"))));
+		assertTrue(storage.recordMatches(RECORD_TYPE, "id2", new Filter(),
+				List.of(StorageTermCondition.between("year", "900", "1950"))));
+		assertFalse(storage.recordMatches(RECORD_TYPE, "id2", new Filter(),
+				List.of(StorageTermCondition.atLeast("year", "1950"))));
+	}
+
+	private void storeYearForId(String recordId, String year) {
+		storage.storeCollectedTerms(RECORD_TYPE, recordId,
+				Set.of(new StorageTerm("yearStorageTerm", "year", year)), DATA_DIVIDER);
+	}
+
+	private void storeUppsalaAndOckelboForIds(String... recordIds) {
+		for (String recordId : recordIds) {
+			storage.storeCollectedTerms(RECORD_TYPE, recordId,
+					createCollectedDataWithUppsalaAndOckelboStorageTerm(), DATA_DIVIDER);
+		}
+	}
+
+	private Filter createFilterWithConditions(Condition... conditions) {
+		Filter filter = new Filter();
+		filter.include.add(createPart(conditions));
+		return filter;
+	}
+
+	private Part createPart(Condition... conditions) {
+		Part part = new Part();
+		part.conditions.addAll(List.of(conditions));
+		return part;
+	}
+
 	private Set<StorageTerm> createCollectedDataWithUppsalaAndOckelboStorageTerm() {
 		StorageTerm storageTerm1 = new StorageTerm("placeNameStorageTerm", "placeName", "Uppsala");
 		StorageTerm storageTerm2 = new StorageTerm("placeNameStorageTerm", "placeName2", "Ockelbo");
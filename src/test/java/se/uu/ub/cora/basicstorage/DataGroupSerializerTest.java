@@ -0,0 +1,106 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.data.DataGroup;
+import se.uu.ub.cora.data.DataProvider;
+import se.uu.ub.cora.data.spies.DataFactorySpy;
+import se.uu.ub.cora.data.spies.DataGroupSpy;
+
+public class DataGroupSerializerTest {
+	private DataGroupSerializer serializer;
+	private DataFactorySpy dataFactory;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		dataFactory = new DataFactorySpy();
+		DataProvider.onlyForTestSetDataFactory(dataFactory);
+		serializer = new DataGroupSerializer();
+	}
+
+	@Test
+	public void testGroupWithChildrenIsReadUsingDataProvider() throws IOException {
+		DataGroupOldSpy dataGroup = new DataGroupOldSpy("book");
+		dataGroup.addChild(new DataAtomicSpy("title", "Nils Holgersson"));
+		DataGroupOldSpy author = new DataGroupOldSpy("author");
+		author.addChild(new DataAtomicSpy("name", "Selma"));
+		dataGroup.addChild(author);
+
+		DataGroup readGroup = writeAndRead(dataGroup);
+
+		dataFactory.MCR.assertParameters("factorGroupUsingNameInData", 0, "book");
+		dataFactory.MCR.assertParameters("factorAtomicUsingNameInDataAndValue", 0, "title",
+				"Nils Holgersson");
+		dataFactory.MCR.assertParameters("factorGroupUsingNameInData", 1, "author");
+		dataFactory.MCR.assertParameters("factorAtomicUsingNameInDataAndValue", 1, "name",
+				"Selma");
+		assertSame(readGroup, dataFactory.MCR.getReturnValue("factorGroupUsingNameInData", 0));
+		DataGroupSpy readAuthor = (DataGroupSpy) dataFactory.MCR
+				.getReturnValue("factorGroupUsingNameInData", 1);
+		((DataGroupSpy) readGroup).MCR.assertParameters("addChild", 1, readAuthor);
+		readAuthor.MCR.assertParameters("addChild", 0,
+				dataFactory.MCR.getReturnValue("factorAtomicUsingNameInDataAndValue", 1));
+	}
+
+	private DataGroup writeAndRead(DataGroup dataGroup) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		serializer.writeDataGroup(new DataOutputStream(bytes), dataGroup);
+		return serializer.readDataGroup(
+				new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+
+	@Test
+	public void testLongAndNullStrings() throws IOException {
+		String longValue = "å".repeat(100_000);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		serializer.writeString(out, longValue);
+		serializer.writeString(out, null);
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+
+		assertEquals(serializer.readString(in), longValue);
+		assertNull(serializer.readString(in));
+	}
+
+	@Test
+	public void testUnknownTagThrowsError() throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(new byte[] { 99 }));
+		try {
+			serializer.readDataGroup(in);
+			fail("It should throw an exception");
+		} catch (DataStorageException e) {
+			assertEquals(e.getMessage(), "Could not deserialize data child with tag: 99");
+		}
+	}
+}
@@ -33,7 +33,21 @@ public class DividerGroupTest {
 		DividerGroup dividerGroup = DividerGroup.withDataDividerAndDataGroup(dataDivider,
 				dataGroup);
 		assertEquals(dividerGroup.dataDivider, "cora");
-		assertEquals(dividerGroup.dataGroup, dataGroup);
+		assertEquals(dividerGroup.dataGroup(), dataGroup);
+		assertEquals(dividerGroup.version, 1);
+	}
+
+	@Test
+	public void testWithVersionFollowing() {
+		DataGroup dataGroup = new DataGroupOldSpy("someGroup");
+		DividerGroup previous = DividerGroup.withDataDividerAndDataGroup("cora",
+				new DataGroupOldSpy("previousGroup"));
+		DividerGroup dividerGroup = DividerGroup.withDataDividerAndDataGroup("uu", dataGroup);
+
+		DividerGroup nextVersion = dividerGroup.withVersionFollowing(previous);
 
+		assertEquals(nextVersion.dataDivider, "uu");
+		assertEquals(nextVersion.dataGroup(), dataGroup);
+		assertEquals(nextVersion.version, 2);
 	}
 }
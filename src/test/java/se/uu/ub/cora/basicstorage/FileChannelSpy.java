@@ -0,0 +1,147 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * FileChannelSpy passes all calls on to a real FileChannel, but can be told to fail writes, after
+ * writing part of the buffer as a crash or a full disk would, to fail truncate and to fail writes
+ * with an unexpected RuntimeException.
+ */
+public class FileChannelSpy extends FileChannel {
+	private final FileChannel channel;
+	public boolean failWrites = false;
+	public boolean failTruncate = false;
+	public boolean failWritesWithRuntimeException = false;
+
+	public FileChannelSpy(FileChannel channel) {
+		this.channel = channel;
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		if (failWritesWithRuntimeException) {
+			throw new IllegalStateException("Unexpected error in FileChannelSpy");
+		}
+		if (failWrites) {
+			writeHalfOfRemaining(src);
+			throw new IOException("Write failed in FileChannelSpy");
+		}
+		return channel.write(src);
+	}
+
+	private void writeHalfOfRemaining(ByteBuffer src) throws IOException {
+		ByteBuffer half = src.slice(src.position(), src.remaining() / 2);
+		channel.write(half);
+	}
+
+	@Override
+	public FileChannel truncate(long size) throws IOException {
+		if (failTruncate) {
+			throw new IOException("Truncate failed in FileChannelSpy");
+		}
+		channel.truncate(size);
+		return this;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		return channel.read(dst);
+	}
+
+	@Override
+	public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+		return channel.read(dsts, offset, length);
+	}
+
+	@Override
+	public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+		return channel.write(srcs, offset, length);
+	}
+
+	@Override
+	public long position() throws IOException {
+		return channel.position();
+	}
+
+	@Override
+	public FileChannel position(long newPosition) throws IOException {
+		channel.position(newPosition);
+		return this;
+	}
+
+	@Override
+	public long size() throws IOException {
+		return channel.size();
+	}
+
+	@Override
+	public void force(boolean metaData) throws IOException {
+		channel.force(metaData);
+	}
+
+	@Override
+	public long transferTo(long position, long count, WritableByteChannel target)
+			throws IOException {
+		return channel.transferTo(position, count, target);
+	}
+
+	@Override
+	public long transferFrom(ReadableByteChannel src, long position, long count)
+			throws IOException {
+		return channel.transferFrom(src, position, count);
+	}
+
+	@Override
+	public int read(ByteBuffer dst, long position) throws IOException {
+		return channel.read(dst, position);
+	}
+
+	@Override
+	public int write(ByteBuffer src, long position) throws IOException {
+		return channel.write(src, position);
+	}
+
+	@Override
+	public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+		return channel.map(mode, position, size);
+	}
+
+	@Override
+	public FileLock lock(long position, long size, boolean shared) throws IOException {
+		return channel.lock(position, size, shared);
+	}
+
+	@Override
+	public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+		return channel.tryLock(position, size, shared);
+	}
+
+	@Override
+	protected void implCloseChannel() throws IOException {
+		channel.close();
+	}
+}
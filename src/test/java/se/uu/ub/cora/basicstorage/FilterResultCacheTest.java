@@ -0,0 +1,138 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.storage.Condition;
+import se.uu.ub.cora.storage.Filter;
+import se.uu.ub.cora.storage.Part;
+import se.uu.ub.cora.storage.RelationalOperator;
+
+public class FilterResultCacheTest {
+	private AtomicInteger numberOfFinds = new AtomicInteger();
+
+	@Test
+	public void testSameFilterIsFoundOnce() {
+		FilterResultCache cache = new FilterResultCache(10);
+
+		List<String> first = cache.findRecordIds("place", createFilter("Uppsala"),
+				this::findRecordIds);
+		List<String> second = cache.findRecordIds("place", createFilter("Uppsala"),
+				this::findRecordIds);
+
+		assertSame(second, first);
+		assertEquals(numberOfFinds.get(), 1);
+	}
+
+	private List<String> findRecordIds() {
+		numberOfFinds.incrementAndGet();
+		return new ArrayList<>(List.of("place:001"));
+	}
+
+	private Filter createFilter(String value) {
+		Part part = new Part();
+		part.conditions.add(new Condition("placeName", RelationalOperator.EQUAL_TO, value));
+		Filter filter = new Filter();
+		filter.include.add(part);
+		return filter;
+	}
+
+	@Test
+	public void testFromNoAndToNoShareCachedResult() {
+		FilterResultCache cache = new FilterResultCache(10);
+		Filter secondPage = createFilter("Uppsala");
+		secondPage.fromNo = 11;
+		secondPage.toNo = 20;
+
+		cache.findRecordIds("place", createFilter("Uppsala"), this::findRecordIds);
+		cache.findRecordIds("place", secondPage, this::findRecordIds);
+
+		assertEquals(numberOfFinds.get(), 1);
+	}
+
+	@Test
+	public void testOtherTypeOrFilterIsFoundAgain() {
+		FilterResultCache cache = new FilterResultCache(10);
+
+		cache.findRecordIds("place", createFilter("Uppsala"), this::findRecordIds);
+		cache.findRecordIds("person", createFilter("Uppsala"), this::findRecordIds);
+		cache.findRecordIds("place", createFilter("Stockholm"), this::findRecordIds);
+
+		assertEquals(numberOfFinds.get(), 3);
+	}
+
+	@Test
+	public void testWriteForTypeInvalidatesOnlyThatType() {
+		FilterResultCache cache = new FilterResultCache(10);
+		cache.findRecordIds("place", createFilter("Uppsala"), this::findRecordIds);
+		cache.findRecordIds("person", createFilter("Uppsala"), this::findRecordIds);
+
+		cache.recordWriteForType("place");
+		cache.findRecordIds("place", createFilter("Uppsala"), this::findRecordIds);
+		cache.findRecordIds("person", createFilter("Uppsala"), this::findRecordIds);
+
+		assertEquals(numberOfFinds.get(), 3);
+	}
+
+	@Test
+	public void testResultFoundDuringWriteIsNotUsedAfterWrite() {
+		FilterResultCache cache = new FilterResultCache(10);
+
+		cache.findRecordIds("place", createFilter("Uppsala"), () -> {
+			cache.recordWriteForType("place");
+			return findRecordIds();
+		});
+		cache.findRecordIds("place", createFilter("Uppsala"), this::findRecordIds);
+
+		assertEquals(numberOfFinds.get(), 2);
+	}
+
+	@Test
+	public void testLeastRecentlyUsedResultIsRemovedWhenFull() {
+		FilterResultCache cache = new FilterResultCache(2);
+		cache.findRecordIds("place", createFilter("Uppsala"), this::findRecordIds);
+		cache.findRecordIds("place", createFilter("Stockholm"), this::findRecordIds);
+		cache.findRecordIds("place", createFilter("Uppsala"), this::findRecordIds);
+
+		cache.findRecordIds("place", createFilter("Malmö"), this::findRecordIds);
+		cache.findRecordIds("place", createFilter("Uppsala"), this::findRecordIds);
+
+		assertEquals(cache.onlyForTestGetNumberOfCachedResults(), 2);
+		assertEquals(numberOfFinds.get(), 3);
+	}
+
+	@Test
+	public void testSizeZeroTurnsCachingOff() {
+		FilterResultCache cache = new FilterResultCache(0);
+
+		cache.findRecordIds("place", createFilter("Uppsala"), this::findRecordIds);
+		cache.findRecordIds("place", createFilter("Uppsala"), this::findRecordIds);
+
+		assertEquals(numberOfFinds.get(), 2);
+		assertEquals(cache.onlyForTestGetNumberOfCachedResults(), 0);
+	}
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class IdBitmapTest {
+	private static final int MAX_ARRAY_CONTAINER_SIZE = 4096;
+
+	@Test
+	public void testEmpty() {
+		assertTrue(IdBitmap.EMPTY.isEmpty());
+		assertEquals(IdBitmap.EMPTY.cardinality(), 0);
+		assertFalse(IdBitmap.EMPTY.contains(0));
+		assertEquals(toList(IdBitmap.EMPTY), List.of());
+	}
+
+	@Test
+	public void testWithAddsIdsInOrder() {
+		IdBitmap bitmap = IdBitmap.EMPTY.with(70000).with(5).with(1).with(65536);
+
+		assertEquals(bitmap.cardinality(), 4);
+		assertTrue(bitmap.contains(65536));
+		assertFalse(bitmap.contains(2));
+		assertEquals(toList(bitmap), List.of(1, 5, 65536, 70000));
+	}
+
+	@Test
+	public void testWithDoesNotChangeOriginal() {
+		IdBitmap original = IdBitmap.EMPTY.with(1);
+
+		IdBitmap changed = original.with(2).without(1);
+
+		assertEquals(toList(original), List.of(1));
+		assertEquals(toList(changed), List.of(2));
+	}
+
+	@Test
+	public void testWithExistingIdReturnsSameBitmap() {
+		IdBitmap bitmap = IdBitmap.EMPTY.with(1);
+
+		assertSame(bitmap.with(1), bitmap);
+	}
+
+	@Test
+	public void testWithoutMissingIdReturnsSameBitmap() {
+		IdBitmap bitmap = IdBitmap.EMPTY.with(1);
+
+		assertSame(bitmap.without(2), bitmap);
+		assertSame(bitmap.without(100000), bitmap);
+	}
+
+	@Test
+	public void testWithoutLastIdInContainer() {
+		IdBitmap bitmap = IdBitmap.EMPTY.with(1).with(65536).with(131072);
+
+		IdBitmap withoutMiddle = bitmap.without(65536);
+
+		assertEquals(toList(withoutMiddle), List.of(1, 131072));
+		assertTrue(withoutMiddle.without(1).without(131072).isEmpty());
+	}
+
+	@Test
+	public void testManyIdsInOneContainerBecomeBitmapAndBack() {
+		IdBitmap bitmap = createBitmapWithRange(0, MAX_ARRAY_CONTAINER_SIZE + 10);
+
+		assertEquals(bitmap.cardinality(), MAX_ARRAY_CONTAINER_SIZE + 10);
+		assertTrue(bitmap.contains(MAX_ARRAY_CONTAINER_SIZE + 9));
+		assertFalse(bitmap.contains(MAX_ARRAY_CONTAINER_SIZE + 10));
+		assertEquals(toList(bitmap), createRange(0, MAX_ARRAY_CONTAINER_SIZE + 10));
+
+		for (int id = 0; id < 20; id++) {
+			bitmap = bitmap.without(id);
+		}
+		assertEquals(bitmap.cardinality(), MAX_ARRAY_CONTAINER_SIZE - 10);
+		assertFalse(bitmap.contains(19));
+		assertEquals(toList(bitmap), createRange(20, MAX_ARRAY_CONTAINER_SIZE + 10));
+	}
+
+	@Test
+	public void testOfIdsSortsAndRemovesDuplicates() {
+		IdBitmap bitmap = IdBitmap.ofIds(new int[] { 70000, 5, 1, 65536, 5 });
+
+		assertEquals(bitmap.cardinality(), 4);
+		assertEquals(toList(bitmap), List.of(1, 5, 65536, 70000));
+	}
+
+	@Test
+	public void testOfIdsWithManyIdsInOneContainer() {
+		int[] ids = new int[MAX_ARRAY_CONTAINER_SIZE + 10];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = ids.length - i;
+		}
+
+		IdBitmap bitmap = IdBitmap.ofIds(ids);
+
+		assertEquals(toList(bitmap), createRange(1, MAX_ARRAY_CONTAINER_SIZE + 11));
+		assertEquals(toList(bitmap.without(1).with(0)),
+				createRange(0, MAX_ARRAY_CONTAINER_SIZE + 11).stream().filter(id -> id != 1)
+						.toList());
+	}
+
+	@Test
+	public void testOfNoIdsIsEmpty() {
+		assertTrue(IdBitmap.ofIds(new int[0]).isEmpty());
+	}
+
+	private IdBitmap createBitmapWithRange(int from, int to) {
+		IdBitmap bitmap = IdBitmap.EMPTY;
+		for (int id = from; id < to; id++) {
+			bitmap = bitmap.with(id);
+		}
+		return bitmap;
+	}
+
+	private List<Integer> createRange(int from, int to) {
+		List<Integer> range = new ArrayList<>();
+		for (int id = from; id < to; id++) {
+			range.add(id);
+		}
+		return range;
+	}
+
+	@Test
+	public void testAndOfArrayContainers() {
+		IdBitmap first = createBitmap(1, 2, 3, 70000, 140000);
+		IdBitmap second = createBitmap(2, 3, 4, 70001, 140000);
+
+		assertEquals(toList(first.and(second)), List.of(2, 3, 140000));
+		assertEquals(toList(second.and(first)), List.of(2, 3, 140000));
+	}
+
+	private IdBitmap createBitmap(int... ids) {
+		IdBitmap bitmap = IdBitmap.EMPTY;
+		for (int id : ids) {
+			bitmap = bitmap.with(id);
+		}
+		return bitmap;
+	}
+
+	@Test
+	public void testAndOfArrayAndBitmapContainers() {
+		IdBitmap large = createBitmapWithRange(0, 2 * MAX_ARRAY_CONTAINER_SIZE);
+		IdBitmap small = createBitmap(5, 6000, 9000, 70000);
+
+		assertEquals(toList(large.and(small)), List.of(5, 6000));
+		assertEquals(toList(small.and(large)), List.of(5, 6000));
+	}
+
+	@Test
+	public void testAndOfBitmapContainers() {
+		IdBitmap first = createBitmapWithRange(0, 2 * MAX_ARRAY_CONTAINER_SIZE);
+		IdBitmap second = createBitmapWithRange(MAX_ARRAY_CONTAINER_SIZE,
+				3 * MAX_ARRAY_CONTAINER_SIZE);
+
+		IdBitmap result = first.and(second);
+
+		assertEquals(toList(result),
+				createRange(MAX_ARRAY_CONTAINER_SIZE, 2 * MAX_ARRAY_CONTAINER_SIZE));
+	}
+
+	@Test
+	public void testAndWithNoCommonIdsIsEmpty() {
+		assertTrue(createBitmap(1, 70000).and(createBitmap(2, 140000)).isEmpty());
+		assertTrue(createBitmap(1).and(IdBitmap.EMPTY).isEmpty());
+	}
+
+	@Test
+	public void testOrOfArrayContainers() {
+		IdBitmap first = createBitmap(1, 3, 140000);
+		IdBitmap second = createBitmap(2, 3, 70000);
+
+		assertEquals(toList(first.or(second)), List.of(1, 2, 3, 70000, 140000));
+		assertEquals(toList(second.or(first)), List.of(1, 2, 3, 70000, 140000));
+		assertEquals(first.or(second).cardinality(), 5);
+	}
+
+	@Test
+	public void testOrOfArrayContainersBecomesBitmap() {
+		IdBitmap even = IdBitmap.EMPTY;
+		IdBitmap odd = IdBitmap.EMPTY;
+		for (int id = 0; id < 2 * MAX_ARRAY_CONTAINER_SIZE; id += 2) {
+			even = even.with(id);
+			odd = odd.with(id + 1);
+		}
+
+		IdBitmap result = even.or(odd);
+
+		assertEquals(result.cardinality(), 2 * MAX_ARRAY_CONTAINER_SIZE);
+		assertEquals(toList(result), createRange(0, 2 * MAX_ARRAY_CONTAINER_SIZE));
+	}
+
+	@Test
+	public void testOrOfArrayAndBitmapContainers() {
+		IdBitmap large = createBitmapWithRange(0, 2 * MAX_ARRAY_CONTAINER_SIZE);
+		IdBitmap small = createBitmap(5, 9000, 70000);
+
+		IdBitmap result = large.or(small);
+
+		assertEquals(result.cardinality(), 2 * MAX_ARRAY_CONTAINER_SIZE + 2);
+		assertTrue(result.contains(9000));
+		assertTrue(result.contains(70000));
+	}
+
+	@Test
+	public void testAndNotOfArrayContainers() {
+		IdBitmap first = createBitmap(1, 2, 3, 70000, 140000);
+		IdBitmap second = createBitmap(2, 70000, 200000);
+
+		assertEquals(toList(first.andNot(second)), List.of(1, 3, 140000));
+		assertEquals(toList(second.andNot(first)), List.of(200000));
+	}
+
+	@Test
+	public void testAndNotOfBitmapContainers() {
+		IdBitmap large = createBitmapWithRange(0, 2 * MAX_ARRAY_CONTAINER_SIZE);
+		IdBitmap almostAsLarge = createBitmapWithRange(10, 2 * MAX_ARRAY_CONTAINER_SIZE);
+
+		assertEquals(toList(large.andNot(almostAsLarge)), createRange(0, 10));
+		assertTrue(almostAsLarge.andNot(large).isEmpty());
+		assertEquals(large.andNot(createBitmap(0, 1)).cardinality(),
+				2 * MAX_ARRAY_CONTAINER_SIZE - 2);
+	}
+
+	@Test
+	public void testWithChangesInArrayContainers() {
+		IdBitmap bitmap = createBitmap(1, 2, 3, 70000);
+
+		IdBitmap changed = bitmap.withChanges(new int[] { 5, 4, 140000 },
+				new int[] { 2, 70000, 200000 });
+
+		assertEquals(toList(changed), List.of(1, 3, 4, 5, 140000));
+		assertEquals(changed.cardinality(), 5);
+		assertEquals(toList(bitmap), List.of(1, 2, 3, 70000));
+	}
+
+	@Test
+	public void testWithChangesInBitmapContainer() {
+		IdBitmap bitmap = createBitmapWithRange(0, 2 * MAX_ARRAY_CONTAINER_SIZE);
+
+		IdBitmap changed = bitmap.withChanges(new int[] { 2 * MAX_ARRAY_CONTAINER_SIZE },
+				new int[] { 0, 1 });
+
+		assertEquals(toList(changed), createRange(2, 2 * MAX_ARRAY_CONTAINER_SIZE + 1));
+		assertEquals(bitmap.cardinality(), 2 * MAX_ARRAY_CONTAINER_SIZE);
+	}
+
+	@Test
+	public void testWithChangesArrayContainerBecomesBitmapAndBack() {
+		int[] manyIds = createRange(0, MAX_ARRAY_CONTAINER_SIZE + 10).stream()
+				.mapToInt(Integer::intValue).toArray();
+
+		IdBitmap bitmap = IdBitmap.EMPTY.withChanges(manyIds, new int[0]);
+		assertEquals(toList(bitmap), createRange(0, MAX_ARRAY_CONTAINER_SIZE + 10));
+
+		IdBitmap fewer = bitmap.withChanges(new int[0], new int[] { 0, 1, 2, 3, 4, 5, 6, 7, 8,
+				9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19 });
+		assertEquals(toList(fewer), createRange(20, MAX_ARRAY_CONTAINER_SIZE + 10));
+		assertTrue(fewer.without(20).contains(21));
+	}
+
+	@Test
+	public void testWithChangesRemovingAllIdsIsEmpty() {
+		IdBitmap bitmap = createBitmap(1, 70000);
+
+		assertTrue(bitmap.withChanges(new int[0], new int[] { 1, 70000 }).isEmpty());
+	}
+
+	@Test
+	public void testLargeIds() {
+		IdBitmap bitmap = createBitmap(Integer.MAX_VALUE, 0);
+
+		assertTrue(bitmap.contains(Integer.MAX_VALUE));
+		assertEquals(toList(bitmap), List.of(0, Integer.MAX_VALUE));
+	}
+
+	private List<Integer> toList(IdBitmap bitmap) {
+		List<Integer> ids = new ArrayList<>();
+		bitmap.forEach(ids::add);
+		return ids;
+	}
+}
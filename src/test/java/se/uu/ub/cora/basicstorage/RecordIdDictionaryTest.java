@@ -0,0 +1,130 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+public class RecordIdDictionaryTest {
+	private RecordIdDictionary dictionary = new RecordIdDictionary();
+
+	@Test
+	public void testNumbersAreDenseAndStable() {
+		assertEquals(dictionary.numberFor("someId"), 0);
+		assertEquals(dictionary.numberFor("someOtherId"), 1);
+		assertEquals(dictionary.numberFor("someId"), 0);
+	}
+
+	@Test
+	public void testRecordIdForNumber() {
+		dictionary.numberFor("someId");
+		dictionary.numberFor("someOtherId");
+
+		assertEquals(dictionary.recordIdFor(1), "someOtherId");
+		assertEquals(dictionary.recordIdFor(0), "someId");
+	}
+
+	@Test
+	public void testExistingNumberForDoesNotAssignNumber() {
+		assertEquals(dictionary.existingNumberFor("someId"), RecordIdDictionary.NO_NUMBER);
+		dictionary.numberFor("someOtherId");
+
+		assertEquals(dictionary.existingNumberFor("someOtherId"), 0);
+		assertEquals(dictionary.numberFor("someId"), 1);
+	}
+
+	@Test
+	public void testManyRecordIds() {
+		for (int i = 0; i < 5000; i++) {
+			assertEquals(dictionary.numberFor("id" + i), i);
+		}
+
+		assertEquals(dictionary.recordIdFor(0), "id0");
+		assertEquals(dictionary.recordIdFor(4999), "id4999");
+	}
+
+	@Test
+	public void testReleasedNumberIsReused() {
+		dictionary.numberFor("someId");
+		dictionary.numberFor("someOtherId");
+
+		dictionary.release("someId");
+
+		assertEquals(dictionary.existingNumberFor("someId"), RecordIdDictionary.NO_NUMBER);
+		assertEquals(dictionary.numberFor("aThirdId"), 0);
+		assertEquals(dictionary.recordIdFor(0), "aThirdId");
+		assertEquals(dictionary.numberFor("someId"), 2);
+	}
+
+	@Test
+	public void testReleaseRecordIdWithoutNumber() {
+		dictionary.release("someId");
+
+		assertEquals(dictionary.numberFor("someOtherId"), 0);
+	}
+
+	@Test
+	public void testReleasedNumberGivesNoRecordId() {
+		dictionary.numberFor("someId");
+
+		dictionary.release("someId");
+
+		assertNull(dictionary.recordIdFor(0));
+	}
+
+	@Test
+	public void testReadIsValidUntilANumberIsReleasedOrReused() {
+		dictionary.numberFor("someId");
+		long stamp = dictionary.startReading();
+
+		dictionary.numberFor("someOtherId");
+		assertTrue(dictionary.noNumberChangedSince(stamp));
+		dictionary.release("someId");
+		assertFalse(dictionary.noNumberChangedSince(stamp));
+
+		stamp = dictionary.startReading();
+		dictionary.numberFor("aThirdId");
+		assertFalse(dictionary.noNumberChangedSince(stamp));
+		assertTrue(dictionary.noNumberChangedSince(dictionary.startReading()));
+	}
+
+	@Test
+	public void testLockForReadingKeepsNumbersFromBeingReleased() throws Exception {
+		dictionary.numberFor("someId");
+		long stamp = dictionary.lockForReading();
+		CompletableFuture<Void> releasing;
+		try {
+			releasing = CompletableFuture.runAsync(() -> dictionary.release("someId"));
+			Thread.sleep(50);
+			assertFalse(releasing.isDone());
+			assertEquals(dictionary.recordIdFor(0), "someId");
+		} finally {
+			dictionary.unlockForReading(stamp);
+		}
+		releasing.get(5, TimeUnit.SECONDS);
+		assertNull(dictionary.recordIdFor(0));
+	}
+}
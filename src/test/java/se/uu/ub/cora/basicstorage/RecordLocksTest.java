@@ -0,0 +1,135 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import org.testng.annotations.Test;
+
+public class RecordLocksTest {
+	private RecordLocks recordLocks = new RecordLocks();
+
+	@Test
+	public void testSameRecordGivesSameLocks() {
+		assertSame(recordLocks.writeLockFor("type", "id"), recordLocks.writeLockFor("type", "id"));
+		assertSame(recordLocks.readLockFor("type", "id"), recordLocks.readLockFor("type", "id"));
+	}
+
+	@Test
+	public void testWriteLockExcludesReadLockForSameRecord() throws Exception {
+		Lock writeLock = recordLocks.writeLockFor("type", "id");
+		writeLock.lock();
+		try {
+			boolean readLockTaken = CompletableFuture
+					.supplyAsync(() -> recordLocks.readLockFor("type", "id").tryLock()).get();
+			assertFalse(readLockTaken);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	@Test
+	public void testReadLocksCanBeHeldTogether() throws Exception {
+		Lock readLock = recordLocks.readLockFor("type", "id");
+		readLock.lock();
+		try {
+			Lock otherReadLock = recordLocks.readLockFor("type", "id");
+			boolean readLockTaken = CompletableFuture.supplyAsync(() -> {
+				boolean taken = otherReadLock.tryLock();
+				if (taken) {
+					otherReadLock.unlock();
+				}
+				return taken;
+			}).get();
+			assertTrue(readLockTaken);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	@Test
+	public void testLockForWriteExcludesReadersOfLockedRecordsOnly() throws Exception {
+		int[] lockedStripes = recordLocks
+				.lockForWrite(Map.of("type", List.of("id1", "id2"), "otherType", List.of("id1")));
+		try {
+			assertFalse(tryReadLockInOtherThread("type", "id1"));
+			assertFalse(tryReadLockInOtherThread("type", "id2"));
+			assertFalse(tryReadLockInOtherThread("otherType", "id1"));
+			assertTrue(lockedStripes.length <= 3);
+		} finally {
+			recordLocks.unlockForWrite(lockedStripes);
+		}
+		assertTrue(tryReadLockInOtherThread("type", "id1"));
+	}
+
+	private boolean tryReadLockInOtherThread(String recordType, String recordId)
+			throws Exception {
+		return CompletableFuture.supplyAsync(() -> {
+			Lock readLock = recordLocks.readLockFor(recordType, recordId);
+			boolean taken = readLock.tryLock();
+			if (taken) {
+				readLock.unlock();
+			}
+			return taken;
+		}).get();
+	}
+
+	@Test
+	public void testLockForWriteLocksEachStripeOnceInStripeOrder() {
+		List<String> recordIds = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			recordIds.add("id" + i);
+		}
+		int[] lockedStripes = recordLocks.lockForWrite(Map.of("type", recordIds));
+		try {
+			assertTrue(lockedStripes.length > 1);
+			for (int i = 1; i < lockedStripes.length; i++) {
+				assertTrue(lockedStripes[i - 1] < lockedStripes[i]);
+			}
+		} finally {
+			recordLocks.unlockForWrite(lockedStripes);
+		}
+		assertTrue(recordLocks.writeLockFor("type", "id1").tryLock());
+	}
+
+	@Test
+	public void testWaitForCurrentWritersWaitsUntilHeldWriteLockIsReleased() throws Exception {
+		Lock writeLock = recordLocks.writeLockFor("type", "id");
+		writeLock.lock();
+		CompletableFuture<Void> waiting;
+		try {
+			waiting = CompletableFuture.runAsync(recordLocks::waitForCurrentWriters);
+			Thread.sleep(50);
+			assertFalse(waiting.isDone());
+		} finally {
+			writeLock.unlock();
+		}
+		waiting.get(5, TimeUnit.SECONDS);
+		assertTrue(recordLocks.readLockFor("anyType", "anyId").tryLock());
+	}
+}
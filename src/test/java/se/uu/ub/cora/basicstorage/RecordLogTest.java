@@ -0,0 +1,388 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.data.DataProvider;
+import se.uu.ub.cora.data.collected.Link;
+import se.uu.ub.cora.data.collected.StorageTerm;
+import se.uu.ub.cora.data.spies.DataFactorySpy;
+
+public class RecordLogTest {
+	private Path directory;
+	private RecordLog recordLog;
+
+	@BeforeMethod
+	public void beforeMethod() throws IOException {
+		DataProvider.onlyForTestSetDataFactory(new DataFactorySpy());
+		directory = Files.createTempDirectory("recordLogTest");
+		recordLog = RecordLog.usingDirectory(directory);
+	}
+
+	@AfterMethod
+	public void afterMethod() throws IOException {
+		recordLog.close();
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+				Files.delete(path);
+			}
+		}
+	}
+
+	@Test
+	public void testReplayEmptyLog() {
+		assertTrue(replay().isEmpty());
+	}
+
+	@Test
+	public void testAppendedEntriesAreReplayedInOrder() {
+		recordLog.replay(_ -> {
+		});
+		recordLog.append(createEntry());
+		recordLog.append(RecordLogEntry.forDelete("place", "place:001", 2));
+		recordLog.close();
+
+		List<RecordLogEntry> entries = replayFromNewLog();
+
+		assertEquals(entries.size(), 2);
+		assertEntryIsCreateOfPlace(entries.get(0));
+		assertEquals(entries.get(1).operation(), RecordLogEntry.Operation.DELETE);
+		assertEquals(entries.get(1).recordId(), "place:001");
+		assertEquals(entries.get(1).version(), 2);
+		assertNull(entries.get(1).record());
+	}
+
+	private RecordLogEntry createEntry() {
+		DividerGroup created = DividerGroup.withDataDividerAndDataGroupAndVersion("cora",
+				new DataGroupOldSpy("place"), 3);
+		return RecordLogEntry.forCreate("place", "place:001", created,
+				Set.of(new StorageTerm("placeNameStorageTerm", "placeName", "Uppsala")),
+				Set.of(new Link("country", "sweden")));
+	}
+
+	private void assertEntryIsCreateOfPlace(RecordLogEntry entry) {
+		assertEquals(entry.operation(), RecordLogEntry.Operation.CREATE);
+		assertEquals(entry.recordType(), "place");
+		assertEquals(entry.recordId(), "place:001");
+		assertEquals(entry.version(), 3);
+		assertEquals(entry.storageTerms(),
+				Set.of(new StorageTerm("placeNameStorageTerm", "placeName", "Uppsala")));
+		assertEquals(entry.links(), Set.of(new Link("country", "sweden")));
+		assertEquals(entry.dataDivider(), "cora");
+	}
+
+	private List<RecordLogEntry> replayFromNewLog() {
+		recordLog = RecordLog.usingDirectory(directory);
+		return replay();
+	}
+
+	private List<RecordLogEntry> replay() {
+		List<RecordLogEntry> entries = new ArrayList<>();
+		recordLog.replay(entries::add);
+		return entries;
+	}
+
+	@Test
+	public void testIncompleteLastEntryIsIgnoredAndOverwritten() throws IOException {
+		recordLog.replay(_ -> {
+		});
+		recordLog.append(createEntry());
+		recordLog.close();
+		Files.write(directory.resolve(RecordLog.segmentFileName(RecordLog.FIRST_SEGMENT)), new byte[] { 0, 0, 1, 0, 7 },
+				StandardOpenOption.APPEND);
+
+		assertEquals(replayFromNewLog().size(), 1);
+		recordLog.append(RecordLogEntry.forDelete("place", "place:001", 2));
+		recordLog.close();
+
+		assertEquals(replayFromNewLog().size(), 2);
+	}
+
+	@Test
+	public void testEntryWithWrongChecksumEndsReplay() throws IOException {
+		recordLog.replay(_ -> {
+		});
+		recordLog.append(createEntry());
+		recordLog.append(createEntry());
+		recordLog.close();
+		Path logFile = directory.resolve(RecordLog.segmentFileName(RecordLog.FIRST_SEGMENT));
+		byte[] bytes = Files.readAllBytes(logFile);
+		bytes[bytes.length - 1]++;
+		Files.write(logFile, bytes);
+
+		assertEquals(replayFromNewLog().size(), 1);
+	}
+
+	@Test
+	public void testAppendAll() {
+		recordLog.replay(_ -> {
+		});
+		recordLog.appendAll(List.of(createEntry(), createEntry()));
+		recordLog.close();
+
+		assertEquals(replayFromNewLog().size(), 2);
+	}
+
+	@Test
+	public void testEntriesAppendedTogetherWithoutCommitAreNotReplayedAndAreOverwritten()
+			throws IOException {
+		recordLog.replay(_ -> {
+		});
+		recordLog.append(createEntry());
+		recordLog.appendAll(List.of(createEntry(), createEntry()));
+		recordLog.close();
+		Path logFile = directory.resolve(RecordLog.segmentFileName(RecordLog.FIRST_SEGMENT));
+		byte[] bytes = Files.readAllBytes(logFile);
+		Files.write(logFile, Arrays.copyOf(bytes, bytes.length - 1));
+
+		assertEquals(replayFromNewLog().size(), 1);
+		recordLog.append(RecordLogEntry.forDelete("place", "place:001", 2));
+		recordLog.close();
+
+		List<RecordLogEntry> entries = replayFromNewLog();
+		assertEquals(entries.size(), 2);
+		assertEntryIsCreateOfPlace(entries.get(0));
+		assertEquals(entries.get(1).operation(), RecordLogEntry.Operation.DELETE);
+	}
+
+	@Test
+	public void testEntriesAppendedTogetherAreReplayedAfterNewSegment() {
+		recordLog.replay(_ -> {
+		});
+		recordLog.appendAll(List.of(createEntry(), createEntry()));
+		long newSegment = recordLog.startNewSegment();
+		recordLog.appendAll(List.of(createEntry(), createEntry(), createEntry()));
+		recordLog.close();
+
+		recordLog = RecordLog.usingDirectory(directory);
+		List<RecordLogEntry> entries = new ArrayList<>();
+		recordLog.replayFromSegment(newSegment, entries::add);
+
+		assertEquals(entries.size(), 3);
+	}
+
+	@Test
+	public void testAppendedEntriesAreReplayedForEachSyncPolicy() {
+		for (RecordLogSync sync : List.of(RecordLogSync.everyWrite(),
+				RecordLogSync.everyMilliseconds(5), RecordLogSync.osManaged())) {
+			recordLog.close();
+			recordLog = RecordLog.usingDirectoryAndSync(directory, sync);
+			int numberOfEntriesBefore = replay().size();
+			recordLog.append(createEntry());
+			recordLog.close();
+
+			assertEquals(replayFromNewLog().size(), numberOfEntriesBefore + 1);
+		}
+	}
+
+	@Test
+	public void testConcurrentAppendsAreAllWritten() throws InterruptedException {
+		recordLog = RecordLog.usingDirectoryAndSync(directory,
+				RecordLogSync.everyWrite().withMaxBatchSize(4));
+		recordLog.replay(_ -> {
+		});
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			threads.add(Thread.ofPlatform().start(() -> recordLog.append(createEntry())));
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		recordLog.close();
+
+		assertEquals(replayFromNewLog().size(), 20);
+	}
+
+	@Test(expectedExceptions = DataStorageException.class, expectedExceptionsMessageRegExp = ""
+			+ "Record log is not open: .*recordLogTest.*")
+	public void testAppendBeforeReplayThrowsError() {
+		recordLog.append(createEntry());
+	}
+
+	@Test(expectedExceptions = DataStorageException.class, expectedExceptionsMessageRegExp = ""
+			+ "Record log is not open: .*recordLogTest.*")
+	public void testAppendAfterCloseThrowsError() {
+		recordLog.replay(_ -> {
+		});
+		recordLog.close();
+
+		recordLog.append(createEntry());
+	}
+
+	@Test
+	public void testEntriesAfterNewSegmentAreWrittenToNewSegment() {
+		recordLog.replay(_ -> {
+		});
+		recordLog.append(createEntry());
+
+		long newSegment = recordLog.startNewSegment();
+		recordLog.append(RecordLogEntry.forDelete("place", "place:001", 2));
+		recordLog.close();
+
+		assertEquals(newSegment, RecordLog.FIRST_SEGMENT + 1);
+		assertTrue(Files.exists(directory.resolve(RecordLog.segmentFileName(newSegment))));
+		assertEquals(replayFromNewLog().size(), 2);
+	}
+
+	@Test
+	public void testReplayFromSegmentSkipsOlderSegmentsAndAppendsToLastSegment() {
+		recordLog.replay(_ -> {
+		});
+		recordLog.append(createEntry());
+		long newSegment = recordLog.startNewSegment();
+		recordLog.append(RecordLogEntry.forDelete("place", "place:001", 2));
+		recordLog.close();
+
+		recordLog = RecordLog.usingDirectory(directory);
+		List<RecordLogEntry> entries = new ArrayList<>();
+		recordLog.replayFromSegment(newSegment, entries::add);
+		recordLog.append(createEntry());
+		recordLog.close();
+
+		assertEquals(entries.size(), 1);
+		assertEquals(entries.get(0).operation(), RecordLogEntry.Operation.DELETE);
+		assertEquals(replayFromNewLog().size(), 3);
+	}
+
+	@Test
+	public void testReplayDecodingInPoolKeepsOrder() {
+		recordLog.replay(_ -> {
+		});
+		for (int i = 0; i < 50; i++) {
+			recordLog.append(RecordLogEntry.forDelete("place", "place:" + i, i));
+		}
+		recordLog.startNewSegment();
+		recordLog.append(createEntry());
+		recordLog.close();
+
+		recordLog = RecordLog.usingDirectory(directory);
+		List<RecordLogEntry> entries = new ArrayList<>();
+		recordLog.replayFromSegment(RecordLog.FIRST_SEGMENT, new ForkJoinPool(4), entries::add);
+
+		assertEquals(entries.size(), 51);
+		for (int i = 0; i < 50; i++) {
+			assertEquals(entries.get(i).recordId(), "place:" + i);
+		}
+		assertEntryIsCreateOfPlace(entries.get(50));
+	}
+
+	@Test
+	public void testDeleteSegmentsBefore() {
+		recordLog.replay(_ -> {
+		});
+		recordLog.append(createEntry());
+		long newSegment = recordLog.startNewSegment();
+		recordLog.append(RecordLogEntry.forDelete("place", "place:001", 2));
+
+		recordLog.deleteSegmentsBefore(newSegment);
+		recordLog.close();
+
+		assertTrue(Files.notExists(
+				directory.resolve(RecordLog.segmentFileName(RecordLog.FIRST_SEGMENT))));
+		assertEquals(replayFromNewLog().size(), 1);
+	}
+
+	@Test
+	public void testFailedWriteIsTruncatedSoLaterEntriesAreReplayed() {
+		FileChannelSpy channelSpy = replayUsingFileChannelSpy();
+		recordLog.append(createEntry());
+
+		channelSpy.failWrites = true;
+		assertAppendFails("Could not write to record log: .*");
+		channelSpy.failWrites = false;
+		recordLog.append(RecordLogEntry.forDelete("place", "place:001", 2));
+		recordLog.close();
+
+		List<RecordLogEntry> entries = replayFromNewLog();
+		assertEquals(entries.size(), 2);
+		assertEntryIsCreateOfPlace(entries.get(0));
+		assertEquals(entries.get(1).operation(), RecordLogEntry.Operation.DELETE);
+	}
+
+	private FileChannelSpy replayUsingFileChannelSpy() {
+		List<FileChannelSpy> channelSpies = new ArrayList<>();
+		recordLog.setSegmentChannelOpener(segmentFile -> {
+			FileChannelSpy channelSpy = new FileChannelSpy(FileChannel.open(segmentFile,
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE));
+			channelSpies.add(channelSpy);
+			return channelSpy;
+		});
+		recordLog.replay(_ -> {
+		});
+		return channelSpies.get(0);
+	}
+
+	private void assertAppendFails(String expectedMessage) {
+		try {
+			recordLog.append(createEntry());
+			fail("Append should have failed");
+		} catch (DataStorageException e) {
+			assertTrue(e.getMessage().matches(expectedMessage), e.getMessage());
+		}
+	}
+
+	@Test
+	public void testFailedWriteThatCanNotBeTruncatedFailsLaterAppends() {
+		FileChannelSpy channelSpy = replayUsingFileChannelSpy();
+		recordLog.append(createEntry());
+
+		channelSpy.failWrites = true;
+		channelSpy.failTruncate = true;
+		assertAppendFails("Could not write to record log: .*");
+		channelSpy.failWrites = false;
+		channelSpy.failTruncate = false;
+
+		assertAppendFails("Record log has failed and can not be written to: .*recordLogTest.*");
+		assertAppendFails("Record log has failed and can not be written to: .*recordLogTest.*");
+	}
+
+	@Test(timeOut = 10000)
+	public void testUnexpectedErrorInWriterFailsPendingAndLaterAppends() {
+		FileChannelSpy channelSpy = replayUsingFileChannelSpy();
+		recordLog.append(createEntry());
+
+		channelSpy.failWritesWithRuntimeException = true;
+		assertAppendFails("Could not write to record log: .*");
+		channelSpy.failWritesWithRuntimeException = false;
+
+		assertAppendFails("Record log is not open: .*recordLogTest.*");
+		recordLog.close();
+	}
+}
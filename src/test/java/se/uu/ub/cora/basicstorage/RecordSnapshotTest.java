@@ -0,0 +1,232 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.data.DataGroup;
+import se.uu.ub.cora.data.DataProvider;
+import se.uu.ub.cora.data.collected.Link;
+import se.uu.ub.cora.data.collected.StorageTerm;
+import se.uu.ub.cora.data.spies.DataFactorySpy;
+
+public class RecordSnapshotTest {
+	private DataFactorySpy dataFactory;
+	private Path directory;
+	private RecordSnapshot recordSnapshot;
+	private Map<String, Long> deletedVersions;
+
+	@BeforeMethod
+	public void beforeMethod() throws IOException {
+		dataFactory = new DataFactorySpy();
+		DataProvider.onlyForTestSetDataFactory(dataFactory);
+		directory = Files.createTempDirectory("recordSnapshotTest");
+		recordSnapshot = RecordSnapshot.usingDirectory(directory);
+		deletedVersions = new HashMap<>();
+	}
+
+	@AfterMethod
+	public void afterMethod() throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+				Files.delete(path);
+			}
+		}
+	}
+
+	@Test
+	public void testHighestDeletedVersionsAreRead() {
+		recordSnapshot.write(2, List.of(createEntry("place:001")),
+				Map.of("place", 4L, "person", 9L));
+
+		RecordSnapshot.usingDirectory(directory).read(_ -> {
+		}, deletedVersions::put);
+
+		assertEquals(deletedVersions, Map.of("place", 4L, "person", 9L));
+	}
+
+	@Test
+	public void testReadWithoutSnapshotStartsAtFirstLogSegment() {
+		List<RecordSnapshotEntry> entries = new ArrayList<>();
+
+		assertEquals(recordSnapshot.read(entries::add, deletedVersions::put),
+				RecordLog.FIRST_SEGMENT);
+		assertTrue(entries.isEmpty());
+		assertTrue(deletedVersions.isEmpty());
+	}
+
+	@Test
+	public void testWrittenEntriesAreRead() {
+		recordSnapshot.write(7, List.of(createEntry("place:001"), createEntry("place:002")),
+				Map.of());
+
+		List<RecordSnapshotEntry> entries = new ArrayList<>();
+		long firstSegmentNotIncluded = RecordSnapshot.usingDirectory(directory)
+				.read(entries::add, deletedVersions::put);
+
+		assertEquals(firstSegmentNotIncluded, 7);
+		assertEquals(entries.size(), 2);
+		RecordSnapshotEntry entry = entries.get(1);
+		assertEquals(entry.recordType(), "place");
+		assertEquals(entry.recordId(), "place:002");
+		entry.dividerGroup().dataGroup();
+		dataFactory.MCR.assertParameters("factorGroupUsingNameInData", 0, "place");
+		assertEquals(entry.dividerGroup().version, 2);
+		assertEquals(entry.dividerGroup().dataDivider, "cora");
+		assertEquals(entry.storageTerms(),
+				Set.of(new StorageTerm("placeNameStorageTerm", "placeName", "Uppsala")));
+		assertEquals(entry.links(), Set.of(new Link("country", "sweden")));
+	}
+
+	@Test
+	public void testEntriesAreReadPerRecordTypeInPool() {
+		recordSnapshot.write(7,
+				List.of(createEntry("place:001"), createEntryForType("person", "person:001"),
+						createEntry("place:002"), createEntryForType("person", "person:002")),
+				Map.of("place", 4L));
+		Map<String, List<String>> recordIdsPerType = new ConcurrentHashMap<>();
+
+		long firstSegmentNotIncluded = RecordSnapshot.usingDirectory(directory).readPerRecordType(
+				new ForkJoinPool(2), entriesForType -> recordIdsPerType.put(
+						entriesForType.get(0).recordType(),
+						entriesForType.stream().map(RecordSnapshotEntry::recordId).toList()),
+				deletedVersions::put);
+
+		assertEquals(firstSegmentNotIncluded, 7);
+		assertEquals(recordIdsPerType, Map.of("place", List.of("place:001", "place:002"),
+				"person", List.of("person:001", "person:002")));
+		assertEquals(deletedVersions, Map.of("place", 4L));
+	}
+
+	@Test
+	public void testEntriesOfAllRecordTypesAreReadInOrderWithoutPool() {
+		recordSnapshot.write(7, List.of(createEntry("place:001"),
+				createEntryForType("person", "person:001"), createEntry("place:002")), Map.of());
+
+		List<RecordSnapshotEntry> entries = new ArrayList<>();
+		recordSnapshot.read(entries::add, deletedVersions::put);
+
+		assertEquals(entries.stream().map(RecordSnapshotEntry::recordId).toList(),
+				List.of("place:001", "place:002", "person:001"));
+	}
+
+	private RecordSnapshotEntry createEntry(String recordId) {
+		return createEntryForType("place", recordId);
+	}
+
+	private RecordSnapshotEntry createEntryForType(String recordType, String recordId) {
+		DividerGroup firstVersion = DividerGroup.withDataDividerAndDataGroup("cora",
+				new DataGroupOldSpy(recordType));
+		return new RecordSnapshotEntry(recordType, recordId,
+				firstVersion.withVersionFollowing(firstVersion),
+				Set.of(new StorageTerm("placeNameStorageTerm", "placeName", "Uppsala")),
+				Set.of(new Link("country", "sweden")));
+	}
+
+	@Test
+	public void testRecordsAreDecodedWhenFirstRead() {
+		recordSnapshot.write(2, List.of(createEntry("place:001")), Map.of());
+		List<RecordSnapshotEntry> entries = new ArrayList<>();
+		recordSnapshot.read(entries::add, deletedVersions::put);
+		DividerGroup dividerGroup = entries.get(0).dividerGroup();
+
+		dataFactory.MCR.assertNumberOfCallsToMethod("factorGroupUsingNameInData", 0);
+		DataGroup dataGroup = dividerGroup.dataGroup();
+
+		dataFactory.MCR.assertNumberOfCallsToMethod("factorGroupUsingNameInData", 1);
+		assertSame(dividerGroup.dataGroup(), dataGroup);
+		dataFactory.MCR.assertNumberOfCallsToMethod("factorGroupUsingNameInData", 1);
+		assertNull(dividerGroup.encodedDataGroup());
+	}
+
+	@Test
+	public void testRecordNotReadIsWrittenToNextSnapshotWithoutDecoding() {
+		recordSnapshot.write(2, List.of(createEntry("place:001")), Map.of());
+		List<RecordSnapshotEntry> entries = new ArrayList<>();
+		recordSnapshot.read(entries::add, deletedVersions::put);
+
+		recordSnapshot.write(3, entries, Map.of());
+		List<RecordSnapshotEntry> entriesFromNextSnapshot = new ArrayList<>();
+		recordSnapshot.read(entriesFromNextSnapshot::add, deletedVersions::put);
+
+		dataFactory.MCR.assertNumberOfCallsToMethod("factorGroupUsingNameInData", 0);
+		entriesFromNextSnapshot.get(0).dividerGroup().dataGroup();
+		dataFactory.MCR.assertParameters("factorGroupUsingNameInData", 0, "place");
+	}
+
+	@Test(expectedExceptions = DataStorageException.class, expectedExceptionsMessageRegExp = ""
+			+ "Could not decode record, checksum does not match")
+	public void testChangedRecordThrowsErrorWhenRead() throws IOException {
+		recordSnapshot.write(2, List.of(createEntry("place:001")), Map.of());
+		Path snapshotFile = directory.resolve(RecordSnapshot.SNAPSHOT_FILE_NAME);
+		byte[] bytes = Files.readAllBytes(snapshotFile);
+		bytes[Long.BYTES + 1]++;
+		Files.write(snapshotFile, bytes);
+		List<RecordSnapshotEntry> entries = new ArrayList<>();
+		recordSnapshot.read(entries::add, deletedVersions::put);
+
+		entries.get(0).dividerGroup().dataGroup();
+	}
+
+	@Test
+	public void testNewSnapshotReplacesPrevious() {
+		recordSnapshot.write(2, List.of(createEntry("place:001"), createEntry("place:002")),
+				Map.of());
+		recordSnapshot.write(3, List.of(createEntry("place:003")), Map.of());
+
+		List<RecordSnapshotEntry> entries = new ArrayList<>();
+
+		assertEquals(recordSnapshot.read(entries::add, deletedVersions::put), 3);
+		assertEquals(entries.size(), 1);
+		assertEquals(entries.get(0).recordId(), "place:003");
+	}
+
+	@Test(expectedExceptions = DataStorageException.class, expectedExceptionsMessageRegExp = ""
+			+ "Snapshot checksum does not match: .*records.snapshot")
+	public void testChangedSnapshotThrowsError() throws IOException {
+		recordSnapshot.write(2, List.of(createEntry("place:001")), Map.of());
+		Path snapshotFile = directory.resolve(RecordSnapshot.SNAPSHOT_FILE_NAME);
+		byte[] bytes = Files.readAllBytes(snapshotFile);
+		bytes[bytes.length - 9]++;
+		Files.write(snapshotFile, bytes);
+
+		recordSnapshot.read(_ -> {
+		}, deletedVersions::put);
+	}
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.data.DataGroup;
+import se.uu.ub.cora.data.collected.Link;
+import se.uu.ub.cora.data.collected.StorageTerm;
+import se.uu.ub.cora.data.copier.DataCopierProvider;
+import se.uu.ub.cora.storage.Condition;
+import se.uu.ub.cora.storage.Filter;
+import se.uu.ub.cora.storage.Part;
+import se.uu.ub.cora.storage.RecordConflictException;
+import se.uu.ub.cora.storage.RelationalOperator;
+
+public class RecordStorageInMemoryConcurrencyTest {
+	private static final int NUMBER_OF_THREADS = 32;
+	private static final int RECORDS_PER_THREAD = 500;
+	private static final String DATA_DIVIDER = "cora";
+	private final Set<StorageTerm> emptyStorageTerms = Collections.emptySet();
+	private final Set<Link> emptyLinks = Collections.emptySet();
+	private final DataGroup dataGroup = new DataGroupOldSpy("someGroup");
+	private RecordStorageInMemory recordStorage;
+	private ExecutorService executor;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		DataCopierProvider.setDataCopierFactory(dataElement -> () -> dataElement);
+		recordStorage = new RecordStorageInMemory();
+		executor = Executors.newFixedThreadPool(NUMBER_OF_THREADS);
+	}
+
+	@AfterMethod
+	public void afterMethod() throws Exception {
+		executor.shutdownNow();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testConcurrentCreatesOfDifferentIdsAreAllStored() throws Exception {
+		runInAllThreads(threadNo -> {
+			String type = "type" + (threadNo % 4);
+			for (int i = 0; i < RECORDS_PER_THREAD; i++) {
+				recordStorage.create(type, threadNo + ":" + i, dataGroup, emptyStorageTerms,
+						emptyLinks, DATA_DIVIDER);
+			}
+		});
+
+		long total = recordStorage.getTotalNumberOfRecordsForTypes(
+				List.of("type0", "type1", "type2", "type3"), new Filter());
+		assertEquals(total, NUMBER_OF_THREADS * RECORDS_PER_THREAD);
+		assertEquals(recordStorage.readListAsStream("type0", new Filter()).count(),
+				NUMBER_OF_THREADS / 4 * RECORDS_PER_THREAD);
+	}
+
+	@Test
+	public void testConcurrentCreatesOfSameIdOnlyOneSucceeds() throws Exception {
+		AtomicInteger created = new AtomicInteger();
+		AtomicInteger conflicts = new AtomicInteger();
+
+		runInAllThreads(threadNo -> {
+			for (int i = 0; i < RECORDS_PER_THREAD; i++) {
+				try {
+					recordStorage.create("type", "id:" + i, dataGroup, emptyStorageTerms,
+							emptyLinks, DATA_DIVIDER);
+					created.incrementAndGet();
+				} catch (RecordConflictException e) {
+					conflicts.incrementAndGet();
+				}
+			}
+		});
+
+		assertEquals(created.get(), RECORDS_PER_THREAD);
+		assertEquals(conflicts.get(), (NUMBER_OF_THREADS - 1) * RECORDS_PER_THREAD);
+	}
+
+	@Test
+	public void testCreatesAreNotLostWhenOtherRecordsOfTypeAreDeleted() throws Exception {
+		runInAllThreads(threadNo -> {
+			for (int i = 0; i < RECORDS_PER_THREAD; i++) {
+				if (threadNo % 2 == 0) {
+					createAndDeleteRecord("temporary:" + threadNo + ":" + i);
+				} else {
+					recordStorage.create("type", "kept:" + threadNo + ":" + i, dataGroup,
+							emptyStorageTerms, emptyLinks, DATA_DIVIDER);
+				}
+			}
+		});
+
+		long total = recordStorage.getTotalNumberOfRecordsForTypes(List.of("type"),
+				new Filter());
+		assertEquals(total, NUMBER_OF_THREADS / 2 * RECORDS_PER_THREAD);
+		for (int threadNo = 1; threadNo < NUMBER_OF_THREADS; threadNo += 2) {
+			assertTrue(recordStorage.recordExists(List.of("type"), "kept:" + threadNo + ":0"));
+		}
+	}
+
+	private void createAndDeleteRecord(String recordId) {
+		recordStorage.create("type", recordId, dataGroup, emptyStorageTerms, emptyLinks,
+				DATA_DIVIDER);
+		recordStorage.deleteByTypeAndId("type", recordId);
+	}
+
+	@Test
+	public void testConcurrentLinksToSameRecordAreAllStoredAndRemoved() throws Exception {
+		Set<Link> linksToTarget = Set.of(new Link("targetType", "targetId"));
+
+		runInAllThreads(threadNo -> {
+			for (int i = 0; i < RECORDS_PER_THREAD; i++) {
+				recordStorage.create("type", threadNo + ":" + i, dataGroup, emptyStorageTerms,
+						linksToTarget, DATA_DIVIDER);
+			}
+		});
+		assertEquals(recordStorage.getLinksToRecord("targetType", "targetId").size(),
+				NUMBER_OF_THREADS * RECORDS_PER_THREAD);
+
+		runInAllThreads(threadNo -> {
+			for (int i = 0; i < RECORDS_PER_THREAD; i++) {
+				recordStorage.deleteByTypeAndId("type", threadNo + ":" + i);
+			}
+		});
+		assertTrue(recordStorage.getLinksToRecord("targetType", "targetId").isEmpty());
+		assertEquals(recordStorage.linksExistForRecord("targetType", "targetId"), false);
+	}
+
+	@Test
+	public void testFilteredReadNeverSeesOldRecordThroughNewTerms() throws Exception {
+		for (int i = 0; i < RECORDS_PER_THREAD; i++) {
+			recordStorage.create("type", "id:" + i, new DataGroupOldSpy("old"),
+					createStorageTerms("old"), emptyLinks, DATA_DIVIDER);
+		}
+		AtomicInteger oldRecordsFoundThroughNewTerms = new AtomicInteger();
+		CountDownLatch updatesDone = new CountDownLatch(NUMBER_OF_THREADS / 2);
+		Filter filterOnNew = createFilterForValue("new");
+
+		runInAllThreads(threadNo -> {
+			if (threadNo % 2 == 0) {
+				updateRecordsHandledByThread(threadNo);
+				updatesDone.countDown();
+			} else {
+				while (updatesDone.getCount() > 0) {
+					countOldRecordsInResult(filterOnNew, oldRecordsFoundThroughNewTerms);
+				}
+			}
+		});
+
+		assertEquals(oldRecordsFoundThroughNewTerms.get(), 0);
+		assertEquals(recordStorage.readList(List.of("type"), filterOnNew).totalNumberOfMatches,
+				RECORDS_PER_THREAD);
+	}
+
+	private void updateRecordsHandledByThread(int threadNo) {
+		for (int i = threadNo / 2; i < RECORDS_PER_THREAD; i += NUMBER_OF_THREADS / 2) {
+			recordStorage.update("type", "id:" + i, new DataGroupOldSpy("new"),
+					createStorageTerms("new"), emptyLinks, DATA_DIVIDER);
+		}
+	}
+
+	private void countOldRecordsInResult(Filter filter, AtomicInteger oldRecordsFound) {
+		for (DataGroup found : recordStorage.readList(List.of("type"), filter).listOfDataGroups) {
+			if ("old".equals(found.getNameInData())) {
+				oldRecordsFound.incrementAndGet();
+			}
+		}
+	}
+
+	private Set<StorageTerm> createStorageTerms(String value) {
+		return Set.of(new StorageTerm("someStorageTerm", "someKey", value));
+	}
+
+	private Filter createFilterForValue(String value) {
+		Part part = new Part();
+		part.conditions.add(new Condition("someKey", RelationalOperator.EQUAL_TO, value));
+		Filter filter = new Filter();
+		filter.include.add(part);
+		return filter;
+	}
+
+	@Test
+	public void testConditionalUpdatesNeverLoseAnUpdate() throws Exception {
+		recordStorage.create("type", "counter", dataGroup, emptyStorageTerms, emptyLinks,
+				DATA_DIVIDER);
+		AtomicInteger successfulUpdates = new AtomicInteger();
+
+		runInAllThreads(_ -> {
+			for (int i = 0; i < RECORDS_PER_THREAD; i++) {
+				tryToUpdateCounter(successfulUpdates);
+			}
+		});
+
+		assertTrue(successfulUpdates.get() > 0);
+		assertEquals(recordStorage.getVersion("type", "counter"), 1 + successfulUpdates.get());
+	}
+
+	private void tryToUpdateCounter(AtomicInteger successfulUpdates) {
+		long version = recordStorage.getVersion("type", "counter");
+		try {
+			recordStorage.updateIfVersionMatches("type", "counter", version, dataGroup,
+					emptyStorageTerms, emptyLinks, DATA_DIVIDER);
+			successfulUpdates.incrementAndGet();
+		} catch (RecordConflictException e) {
+			// Another thread updated the record since the version was read
+		}
+	}
+
+	private void runInAllThreads(ThreadWork work) throws Exception {
+		CountDownLatch startSignal = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int threadNo = 0; threadNo < NUMBER_OF_THREADS; threadNo++) {
+			int currentThreadNo = threadNo;
+			futures.add(executor.submit(() -> {
+				startSignal.await();
+				work.run(currentThreadNo);
+				return null;
+			}));
+		}
+		startSignal.countDown();
+		for (Future<?> future : futures) {
+			future.get(60, TimeUnit.SECONDS);
+		}
+	}
+
+	private interface ThreadWork {
+		void run(int threadNo);
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.data.DataGroup;
+import se.uu.ub.cora.data.collected.Link;
+import se.uu.ub.cora.data.collected.StorageTerm;
+import se.uu.ub.cora.data.copier.DataCopierProvider;
+import se.uu.ub.cora.storage.Condition;
+import se.uu.ub.cora.storage.Filter;
+import se.uu.ub.cora.storage.Part;
+import se.uu.ub.cora.storage.RecordConflictException;
+import se.uu.ub.cora.storage.RelationalOperator;
+
+public class RecordStorageInMemoryCreateAllTest {
+	private static final String DATA_DIVIDER = "cora";
+	private final Set<StorageTerm> emptyStorageTerms = Collections.emptySet();
+	private final Set<Link> emptyLinks = Collections.emptySet();
+	private RecordStorageInMemory recordStorage;
+	private AtomicInteger numberOfCopies;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		numberOfCopies = new AtomicInteger();
+		DataCopierProvider.setDataCopierFactory(dataElement -> () -> {
+			numberOfCopies.incrementAndGet();
+			return new DataGroupOldSpy(dataElement.getNameInData());
+		});
+		recordStorage = new RecordStorageInMemory();
+	}
+
+	@Test
+	public void testCreateAllEmptyList() {
+		recordStorage.createAll(Collections.emptyList());
+
+		assertFalse(recordStorage.recordsExistForRecordType("place"));
+		assertEquals(numberOfCopies.get(), 0);
+	}
+
+	@Test
+	public void testCreateAllStoresIndependentCopies() {
+		DataGroup place1 = new DataGroupOldSpy("place1");
+		DataGroup place2 = new DataGroupOldSpy("place2");
+		DataGroup book1 = new DataGroupOldSpy("book1");
+
+		recordStorage.createAll(List.of(createRecordToCreate("place", "place:1", place1),
+				createRecordToCreate("place", "place:2", place2),
+				createRecordToCreate("book", "book:1", book1)));
+
+		assertEquals(numberOfCopies.get(), 3);
+		assertStoredCopyOf("place", "place:1", place1);
+		assertStoredCopyOf("place", "place:2", place2);
+		assertStoredCopyOf("book", "book:1", book1);
+		assertEquals(recordStorage.getTotalNumberOfRecordsForTypes(List.of("place"), new Filter()),
+				2);
+	}
+
+	private RecordToCreate createRecordToCreate(String type, String id, DataGroup dataGroup) {
+		return new RecordToCreate(type, id, dataGroup, emptyStorageTerms, emptyLinks, DATA_DIVIDER);
+	}
+
+	private void assertStoredCopyOf(String type, String id, DataGroup entered) {
+		DataGroup stored = recordStorage.read(List.of(type), id);
+		assertNotSame(stored, entered);
+		assertEquals(stored.getNameInData(), entered.getNameInData());
+	}
+
+	@Test
+	public void testCreateAllStoresStorageTermsAndLinks() {
+		Set<StorageTerm> storageTerms = Set
+				.of(new StorageTerm("placeNameTerm", "placeName", "Uppsala"));
+		Link link = new Link("book", "book:1");
+
+		recordStorage.createAll(List.of(new RecordToCreate("place", "place:1",
+				new DataGroupOldSpy("place1"), storageTerms, Set.of(link), DATA_DIVIDER)));
+
+		assertEquals(recordStorage.getStorageTermsForRecord("place", "place:1"), storageTerms);
+		assertEquals(recordStorage.getLinksFromRecord("place", "place:1"), Set.of(link));
+		assertEquals(recordStorage.getLinksToRecord("book", "book:1"),
+				Set.of(new Link("place", "place:1")));
+		assertEquals(recordStorage.readList(List.of("place"),
+				createFilterForValue("placeName", "Uppsala")).totalNumberOfMatches, 1);
+	}
+
+	private Filter createFilterForValue(String key, String value) {
+		Part part = new Part();
+		part.conditions.add(new Condition(key, RelationalOperator.EQUAL_TO, value));
+		Filter filter = new Filter();
+		filter.include.add(part);
+		return filter;
+	}
+
+	@Test
+	public void testCreateAllAddsToRecordTypeWithStoredRecords() {
+		recordStorage.create("place", "place:2", new DataGroupOldSpy("place2"), emptyStorageTerms,
+				emptyLinks, DATA_DIVIDER);
+
+		recordStorage.createAll(
+				List.of(createRecordToCreate("place", "place:3", new DataGroupOldSpy("place3")),
+						createRecordToCreate("place", "place:1", new DataGroupOldSpy("place1"))));
+
+		List<String> namesInOrder = new ArrayList<>();
+		for (DataGroup dataGroup : recordStorage.readList(List.of("place"),
+				new Filter()).listOfDataGroups) {
+			namesInOrder.add(dataGroup.getNameInData());
+		}
+		assertEquals(namesInOrder, List.of("place1", "place2", "place3"));
+	}
+
+	@Test
+	public void testReadersSeeRecordsOfBatchAddedToStoredRecordsOfType() throws Exception {
+		recordStorage.create("place", "place:0", new DataGroupOldSpy("place0"), emptyStorageTerms,
+				emptyLinks, DATA_DIVIDER);
+		List<RecordToCreate> recordsToCreate = new ArrayList<>();
+		for (int i = 1; i <= 1000; i++) {
+			recordsToCreate.add(
+					createRecordToCreate("place", "place:" + i, new DataGroupOldSpy("place")));
+		}
+		List<Long> numbersOfRecordsSeen = new ArrayList<>();
+		AtomicBoolean creating = new AtomicBoolean(true);
+		Thread reader = Thread.ofPlatform().start(() -> {
+			while (creating.get()) {
+				numbersOfRecordsSeen.add(recordStorage.getTotalNumberOfRecordsForTypes(
+						List.of("place"), new Filter()));
+			}
+		});
+
+		recordStorage.createAll(recordsToCreate);
+		creating.set(false);
+		reader.join();
+
+		long previous = 1;
+		for (long numberOfRecordsSeen : numbersOfRecordsSeen) {
+			assertTrue(numberOfRecordsSeen >= previous && numberOfRecordsSeen <= 1001);
+			previous = numberOfRecordsSeen;
+		}
+		assertEquals(recordStorage.getTotalNumberOfRecordsForTypes(List.of("place"), new Filter()),
+				1001);
+	}
+
+	@Test
+	public void testCreatedRecordsHaveFirstVersion() {
+		recordStorage.createAll(
+				List.of(createRecordToCreate("place", "place:1", new DataGroupOldSpy("place1"))));
+
+		assertEquals(recordStorage.getVersion("place", "place:1"), 1);
+	}
+
+	@Test
+	public void testCreateAllConflictWithStoredRecordCreatesNothing() {
+		recordStorage.create("place", "place:2", new DataGroupOldSpy("place2"), emptyStorageTerms,
+				emptyLinks, DATA_DIVIDER);
+		Link link = new Link("book", "book:1");
+
+		try {
+			recordStorage.createAll(List.of(
+					new RecordToCreate("place", "place:1", new DataGroupOldSpy("place1"),
+							emptyStorageTerms, Set.of(link), DATA_DIVIDER),
+					createRecordToCreate("place", "place:2", new DataGroupOldSpy("place2"))));
+			fail("A RecordConflictException should have been thrown");
+		} catch (RecordConflictException e) {
+			assertEquals(e.getMessage(), "Record with recordId: place:2 already exists");
+		}
+
+		assertFalse(recordStorage.recordExists(List.of("place"), "place:1"));
+		assertTrue(recordStorage.getLinksToRecord("book", "book:1").isEmpty());
+	}
+
+	@Test
+	public void testCreateAllConflictWithRecordTwiceInBatchCreatesNothing() {
+		try {
+			recordStorage.createAll(List.of(
+					createRecordToCreate("place", "place:1", new DataGroupOldSpy("place1")),
+					createRecordToCreate("place", "place:1", new DataGroupOldSpy("place1"))));
+			fail("A RecordConflictException should have been thrown");
+		} catch (RecordConflictException e) {
+			assertEquals(e.getMessage(), "Record with recordId: place:1 occurs more than once");
+		}
+
+		assertFalse(recordStorage.recordsExistForRecordType("place"));
+	}
+
+	@Test
+	public void testSameIdForDifferentTypesIsNoConflict() {
+		recordStorage.createAll(
+				List.of(createRecordToCreate("place", "1", new DataGroupOldSpy("place1")),
+						createRecordToCreate("book", "1", new DataGroupOldSpy("book1"))));
+
+		assertTrue(recordStorage.recordExists(List.of("place"), "1"));
+		assertTrue(recordStorage.recordExists(List.of("book"), "1"));
+	}
+}
@@ -34,6 +34,8 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -325,6 +327,58 @@ public class RecordStorageInMemoryListTest {
 		dcs5.MCR.assertReturn("copy", 0, listOfDataGroups.get(1));
 	}
 
+	@Test
+	public void testReadListWithTwoIncludedPartsReadsRecordsMatchingEither() {
+		createUppsalaStockholmBothAndNoTermsPlaces();
+		Filter filter = new Filter();
+		filter.include.add(createPart("placeName", "Uppsala"));
+		filter.include.add(createPart("placeName", "Stockholm"));
+
+		assertReadListAndTotalForFilterMatches(filter, 3);
+	}
+
+	private void createUppsalaStockholmBothAndNoTermsPlaces() {
+		createPlaceInStorageWithUppsalaStorageTerm("nameInData");
+		createPlaceInStorageWithStockholmStorageTerm();
+		createPlaceInStorageWithUppsalaStorageAndStockholmTerm();
+		createPlaceInStorageWithIdAndCollectedData("place:0004", Collections.emptySet(),
+				"nameInData");
+	}
+
+	private Part createPart(String key, String value) {
+		Part part = new Part();
+		part.conditions.add(new Condition(key, RelationalOperator.EQUAL_TO, value));
+		return part;
+	}
+
+	private void assertReadListAndTotalForFilterMatches(Filter filter, int expectedMatches) {
+		StorageReadResult readResult = recordStorage.readList(List.of("place"), filter);
+		assertEquals(readResult.totalNumberOfMatches, expectedMatches);
+		assertEquals(readResult.listOfDataGroups.size(), expectedMatches);
+		assertEquals(recordStorage.getTotalNumberOfRecordsForTypes(List.of("place"), filter),
+				expectedMatches);
+	}
+
+	@Test
+	public void testReadListWithExcludedPartSubtractsMatchingRecords() {
+		createUppsalaStockholmBothAndNoTermsPlaces();
+		Filter filter = new Filter();
+		filter.include.add(createPart("placeName", "Stockholm"));
+		filter.exclude.add(createPart("placeName", "Uppsala"));
+
+		assertReadListAndTotalForFilterMatches(filter, 1);
+	}
+
+	@Test
+	public void testReadListWithOnlyExcludedPartReadsAllOtherRecords() {
+		createUppsalaStockholmBothAndNoTermsPlaces();
+		Filter filter = new Filter();
+		filter.exclude.add(createPart("placeName", "Uppsala"));
+
+		assertReadListAndTotalForFilterMatches(filter, 2);
+		assertEquals(recordStorage.readListAsStream("place", filter).count(), 2);
+	}
+
 	@Test
 	public void testUpdateMultipleStorageTermsNoConcurrentException() {
 		createPlaceInStorageWithUppsalaStorageTerm("nameInData");
@@ -409,6 +463,254 @@ public class RecordStorageInMemoryListTest {
 				dataDivider);
 	}
 
+	@Test
+	public void testReadListSortedAscendingByStorageTerm() {
+		createPlacesWithYears();
+		Filter filter = new Filter();
+		filter.toNo = 2;
+
+		StorageReadResult readResult = recordStorage.readList("place", filter,
+				StorageTermSort.ascendingOn("year"));
+
+		assertEquals(readResult.totalNumberOfMatches, 4);
+		assertEquals(readResult.listOfDataRecordGroups.size(), 2);
+		assertCopiedFromStoredRecordCreatedBy(5, 2);
+		assertCopiedFromStoredRecordCreatedBy(6, 1);
+	}
+
+	private void createPlacesWithYears() {
+		createPlaceInStorageWithIdAndCollectedData("place:0001", createYearStorageTerm("1950"),
+				"nameInData");
+		createPlaceInStorageWithIdAndCollectedData("place:0002", createYearStorageTerm("900"),
+				"nameInData");
+		createPlaceInStorageWithIdAndCollectedData("place:0003", createYearStorageTerm("2000"),
+				"nameInData");
+		createPlaceInStorageWithIdAndCollectedData("place:0004", Collections.emptySet(),
+				"nameInData");
+	}
+
+	private Set<StorageTerm> createYearStorageTerm(String year) {
+		return Set.of(new StorageTerm("yearStorageTerm", "year", year));
+	}
+
+	@Test
+	public void testReadListSortedDescendingByStorageTermHasRecordsWithoutTermLast() {
+		createPlacesWithYears();
+
+		StorageReadResult readResult = recordStorage.readList("place", emptyFilter,
+				StorageTermSort.descendingOn("year"));
+
+		assertEquals(readResult.totalNumberOfMatches, 4);
+		assertEquals(readResult.listOfDataRecordGroups.size(), 4);
+		assertCopiedFromStoredRecordCreatedBy(5, 3);
+		assertCopiedFromStoredRecordCreatedBy(6, 1);
+		assertCopiedFromStoredRecordCreatedBy(7, 2);
+		assertCopiedFromStoredRecordCreatedBy(8, 4);
+	}
+
+	@Test
+	public void testReadListSortedByStorageTermWithConditionAndFromNo() {
+		createPlacesWithYears();
+		Filter filter = new Filter();
+		filter.fromNo = 2;
+
+		StorageReadResult readResult = recordStorage.readList("place", filter,
+				List.of(StorageTermCondition.atLeast("year", "900")),
+				StorageTermSort.ascendingOn("year"));
+
+		assertEquals(readResult.totalNumberOfMatches, 3);
+		assertEquals(readResult.listOfDataRecordGroups.size(), 2);
+		assertCopiedFromStoredRecordCreatedBy(5, 1);
+		assertCopiedFromStoredRecordCreatedBy(6, 3);
+	}
+
+	@Test
+	public void testReadListWithStorageTermConditionStartingWith() {
+		createPlacesWithYears();
+
+		StorageReadResult readResult = recordStorage.readList("place", emptyFilter,
+				List.of(StorageTermCondition.startingWith("year", "19")));
+
+		assertEquals(readResult.totalNumberOfMatches, 1);
+		assertEquals(readResult.listOfDataRecordGroups.size(), 1);
+		assertCopiedFromStoredRecordCreatedBy(5, 1);
+	}
+
+	@Test
+	public void testReadListSortedWithStorageTermCondition() {
+		createPlacesWithYears();
+
+		StorageReadResult readResult = recordStorage.readList("place", emptyFilter,
+				List.of(StorageTermCondition.startingWith("year", "")),
+				StorageTermSort.descendingOn("year"));
+
+		assertEquals(readResult.totalNumberOfMatches, 3);
+		assertCopiedFromStoredRecordCreatedBy(5, 3);
+		assertCopiedFromStoredRecordCreatedBy(6, 1);
+		assertCopiedFromStoredRecordCreatedBy(7, 2);
+	}
+
+	@Test
+	public void testReadListSortedByStorageKeyWithoutTermsIsOrderedByRecordId() {
+		createPlacesWithYears();
+
+		StorageReadResult readResult = recordStorage.readList("place", emptyFilter,
+				StorageTermSort.ascendingOn("NOT_year"));
+
+		assertEquals(readResult.listOfDataRecordGroups.size(), 4);
+		assertCopiedFromStoredRecordCreatedBy(5, 1);
+		assertCopiedFromStoredRecordCreatedBy(8, 4);
+	}
+
+	@Test
+	public void testFilterResultIsCachedUntilWrite() {
+		CollectedTermsHolderSpy termsHolder = setUpCollectedTermsHolderSpy();
+		setUpRecordsToReturnFromTermsHolder(termsHolder, "place", 2);
+		recordStorage.setFilterResultCacheSize(10);
+		createPlaceInStorageWithIdAndCollectedData("place:001", storageTerms, "nameInData");
+		Filter filter = createFilterWithAPart("placeName", "Uppsala");
+
+		recordStorage.readList(List.of("place"), filter);
+		recordStorage.readList(List.of("place"), createFilterWithAPart("placeName", "Uppsala"));
+		termsHolder.MCR.assertNumberOfCallsToMethod("findRecordIdsForFilter", 1);
+
+		createPlaceInStorageWithIdAndCollectedData("place:002", storageTerms, "nameInData");
+		recordStorage.readList(List.of("place"), filter);
+		termsHolder.MCR.assertNumberOfCallsToMethod("findRecordIdsForFilter", 2);
+	}
+
+	@Test
+	public void testFilterResultIsNotCachedByDefault() {
+		CollectedTermsHolderSpy termsHolder = setUpCollectedTermsHolderSpy();
+		setUpRecordsToReturnFromTermsHolder(termsHolder, "place", 2);
+		Filter filter = createFilterWithAPart("placeName", "Uppsala");
+
+		recordStorage.readList(List.of("place"), filter);
+		recordStorage.readList(List.of("place"), filter);
+
+		termsHolder.MCR.assertNumberOfCallsToMethod("findRecordIdsForFilter", 2);
+	}
+
+	@Test
+	public void testCachedFilterResultReflectsUpdateAndDelete() {
+		recordStorage.setFilterResultCacheSize(10);
+		createUppsalaStockholmBothAndNoTermsPlaces();
+		Filter filter = createFilterWithAPart("placeName", "Uppsala");
+		assertReadListAndTotalForFilterMatches(filter, 2);
+
+		updateUppsalaPlaceInStorageWithCollectedData(createCollectedDataWithStockholmStorageTerm());
+		assertReadListAndTotalForFilterMatches(filter, 1);
+
+		recordStorage.deleteByTypeAndId("place", "place:0003");
+		assertReadListAndTotalForFilterMatches(filter, 0);
+	}
+
+	@Test
+	public void testReadListForDataDivider() {
+		createPlacesInDataDividers();
+
+		StorageReadResult readResult = recordStorage.readListForDataDivider("place", "cora",
+				emptyFilter);
+
+		assertEquals(readResult.totalNumberOfMatches, 2);
+		assertEquals(readResult.listOfDataRecordGroups.size(), 2);
+		assertCopiedFromStoredRecordCreatedBy(4, 1);
+		assertCopiedFromStoredRecordCreatedBy(5, 3);
+		assertEquals(recordStorage.getTotalNumberOfRecordsForTypeAndDataDivider("place", "cora",
+				emptyFilter), 2);
+	}
+
+	private void createPlacesInDataDividers() {
+		createPlaceInDataDivider("place:0001", "Uppsala", "cora");
+		createPlaceInDataDivider("place:0002", "Uppsala", "other");
+		createPlaceInDataDivider("place:0003", "Stockholm", "cora");
+	}
+
+	private void createPlaceInDataDivider(String recordId, String placeName, String dataDivider) {
+		DataGroup dataGroup = DataCreator
+				.createDataGroupWithNameInDataAndRecordInfoWithRecordTypeAndRecordId("nameInData",
+						"place", recordId);
+		recordStorage.create("place", recordId, dataGroup,
+				Set.of(new StorageTerm("placeNameStorageTerm", "placeName", placeName)),
+				emptyLinkList, dataDivider);
+	}
+
+	@Test
+	public void testReadListForDataDividerWithFilter() {
+		createPlacesInDataDividers();
+		Filter filter = createFilterWithAPart("placeName", "Uppsala");
+
+		StorageReadResult readResult = recordStorage.readListForDataDivider("place", "cora",
+				filter);
+
+		assertEquals(readResult.totalNumberOfMatches, 1);
+		assertCopiedFromStoredRecordCreatedBy(4, 1);
+		assertEquals(recordStorage.getTotalNumberOfRecordsForTypeAndDataDivider("place", "other",
+				filter), 1);
+	}
+
+	@Test
+	public void testReadListForDataDividerWithoutRecords() {
+		createPlacesInDataDividers();
+
+		StorageReadResult readResult = recordStorage.readListForDataDivider("place",
+				"NOT_dataDivider", emptyFilter);
+
+		assertEquals(readResult.totalNumberOfMatches, 0);
+		assertEquals(readResult.listOfDataRecordGroups.size(), 0);
+		assertEquals(recordStorage.getTotalNumberOfRecordsForTypeAndDataDivider("NOT_type",
+				"cora", emptyFilter), 0);
+	}
+
+	@Test
+	public void testDataDividerFollowsUpdateAndDelete() {
+		createPlacesInDataDividers();
+		DataGroup dataGroup = recordStorage.read(List.of("place"), "place:0001");
+
+		recordStorage.update("place", "place:0001", dataGroup, storageTerms, emptyLinkList,
+				"other");
+		recordStorage.deleteByTypeAndId("place", "place:0002");
+
+		assertEquals(recordStorage.getTotalNumberOfRecordsForTypeAndDataDivider("place", "cora",
+				emptyFilter), 1);
+		assertEquals(recordStorage.getTotalNumberOfRecordsForTypeAndDataDivider("place", "other",
+				emptyFilter), 1);
+	}
+
+	@Test
+	public void testDataDividerForRecordsGivenInConstructor() {
+		Map<String, Map<String, DividerGroup>> records = new HashMap<>();
+		addRecords(records, "person", 3, "cora");
+		recordStorage = new RecordStorageInMemory(records);
+
+		assertEquals(recordStorage.getTotalNumberOfRecordsForTypeAndDataDivider("person",
+				"cora", emptyFilter), 3);
+	}
+
+	@Test
+	public void testReadListWithoutPartIsOrderedByRecordId() {
+		createPlaceInStorageWithIdAndCollectedData("place:0003", storageTerms, "nameInData");
+		createPlaceInStorageWithIdAndCollectedData("place:0001", storageTerms, "nameInData");
+		createPlaceInStorageWithIdAndCollectedData("place:0002", storageTerms, "nameInData");
+		Filter filter = new Filter();
+		filter.fromNo = 2;
+		filter.toNo = 3;
+
+		StorageReadResult readResult = recordStorage.readListImplementing("place", filter);
+
+		assertEquals(readResult.totalNumberOfMatches, 3);
+		assertEquals(readResult.listOfDataGroups.size(), 2);
+		assertCopiedFromStoredRecordCreatedBy(4, 3);
+		assertCopiedFromStoredRecordCreatedBy(5, 1);
+	}
+
+	private void assertCopiedFromStoredRecordCreatedBy(int readCopyNo, int createCopyNo) {
+		DataCopierSpy createCopier = (DataCopierSpy) dataCopierFactory.MCR
+				.getReturnValue("factorForDataElement", createCopyNo);
+		dataCopierFactory.MCR.assertParameter("factorForDataElement", readCopyNo, "dataElement",
+				createCopier.MCR.getReturnValue("copy", 0));
+	}
+
 	@Test
 	public void testReadRecordListNotFound() {
 		String recordType = "place_NOT_FOUND";
@@ -437,7 +739,7 @@ public class RecordStorageInMemoryListTest {
 				.getTotalNumberOfRecordsForTypes(List.of("NOExistingRecords"), emptyFilter);
 		assertEquals(totalNumberOfRecords, 0);
 
-		assertFalse(termsHolder.findRecordsForFilterWasCalled);
+		assertFalse(termsHolder.countRecordsForFilterWasCalled);
 	}
 
 	@Test
@@ -449,7 +751,7 @@ public class RecordStorageInMemoryListTest {
 		long totalNumberOfRecords = recordStorage
 				.getTotalNumberOfRecordsForTypes(List.of("NOExistingRecords"), filter);
 		assertEquals(totalNumberOfRecords, 0);
-		assertFalse(termsHolder.findRecordsForFilterWasCalled);
+		assertFalse(termsHolder.countRecordsForFilterWasCalled);
 	}
 
 	@Test
@@ -461,7 +763,7 @@ public class RecordStorageInMemoryListTest {
 				.getTotalNumberOfRecordsForTypes(List.of("organisation"), emptyFilter);
 		assertEquals(totalNumberOfRecords, 2);
 
-		assertFalse(termsHolder.findRecordsForFilterWasCalled);
+		assertFalse(termsHolder.countRecordsForFilterWasCalled);
 	}
 
 	@Test
@@ -478,7 +780,8 @@ public class RecordStorageInMemoryListTest {
 				filter);
 		assertEquals(totalNumberOfRecords, 1);
 
-		assertTrue(termsHolder.findRecordsForFilterWasCalled);
+		assertTrue(termsHolder.countRecordsForFilterWasCalled);
+		assertFalse(termsHolder.findRecordsForFilterWasCalled);
 
 		assertEquals(termsHolder.type, "person");
 		assertSame(termsHolder.filter, filter);
@@ -501,7 +804,8 @@ public class RecordStorageInMemoryListTest {
 
 		int asserterNumberReturned = 10;
 		assertCorrectReturnedNumberOfRecords(termsHolder, filter, asserterNumberReturned);
-		assertTrue(termsHolder.findRecordsForFilterWasCalled);
+		assertTrue(termsHolder.countRecordsForFilterWasCalled);
+		assertFalse(termsHolder.findRecordsForFilterWasCalled);
 	}
 
 	@Test
@@ -516,7 +820,8 @@ public class RecordStorageInMemoryListTest {
 
 		int asserterNumberReturned = 7;
 		assertCorrectReturnedNumberOfRecords(termsHolder, filter, asserterNumberReturned);
-		assertTrue(termsHolder.findRecordsForFilterWasCalled);
+		assertTrue(termsHolder.countRecordsForFilterWasCalled);
+		assertFalse(termsHolder.findRecordsForFilterWasCalled);
 	}
 
 	@Test
@@ -535,7 +840,7 @@ public class RecordStorageInMemoryListTest {
 		long totalNumberOfRecords = recordStorage.getTotalNumberOfRecordsForTypes(List.of("person"),
 				filter);
 		assertEquals(totalNumberOfRecords, 8);
-		assertFalse(termsHolder.findRecordsForFilterWasCalled);
+		assertFalse(termsHolder.countRecordsForFilterWasCalled);
 	}
 
 	@Test
@@ -660,7 +965,7 @@ public class RecordStorageInMemoryListTest {
 		long totalNumberOfAbstractRecords = recordStorage
 				.getTotalNumberOfRecordsForTypes(implementingTypes, filter);
 		assertEquals(totalNumberOfAbstractRecords, 0);
-		assertFalse(termsHolder.findRecordsForFilterWasCalled);
+		assertFalse(termsHolder.countRecordsForFilterWasCalled);
 	}
 
 	@Test
@@ -676,7 +981,8 @@ public class RecordStorageInMemoryListTest {
 
 		long totalNumberOfAbstractRecords = recordStorage
 				.getTotalNumberOfRecordsForTypes(implementingTypes, filter);
-		assertTrue(termsHolder.findRecordsForFilterWasCalled);
+		assertTrue(termsHolder.countRecordsForFilterWasCalled);
+		assertFalse(termsHolder.findRecordsForFilterWasCalled);
 		assertEquals(totalNumberOfAbstractRecords, 1);
 	}
 
@@ -780,6 +1086,37 @@ public class RecordStorageInMemoryListTest {
 		assertEquals(totalNumberOfAbstractRecords, 0);
 	}
 
+	@Test
+	public void testReadListForTypesInParallelKeepsOrderOfTypes() {
+		setUpStorageWithAuthorityRecords(30, 20);
+		DataCopierProvider.setDataCopierFactory(dataElement -> () -> dataElement);
+		List<String> implementingTypes = List.of("organisation", "NOExistingRecords", "person");
+		List<DataGroup> readInSequence = recordStorage.readList(implementingTypes,
+				emptyFilter).listOfDataGroups;
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		recordStorage.setForkJoinPoolForMultipleTypes(pool);
+		StorageReadResult readInParallel = recordStorage.readList(implementingTypes,
+				emptyFilter);
+		pool.shutdown();
+
+		assertEquals(readInParallel.totalNumberOfMatches, 50);
+		assertEquals(readInParallel.listOfDataGroups, readInSequence);
+	}
+
+	@Test
+	public void testGetTotalNumberOfRecordsForTypesInParallel() {
+		setUpStorageWithAuthorityRecords(30, 20);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		recordStorage.setForkJoinPoolForMultipleTypes(pool);
+
+		long totalNumberOfRecords = recordStorage.getTotalNumberOfRecordsForTypes(
+				List.of("organisation", "NOExistingRecords", "person"), emptyFilter);
+		pool.shutdown();
+
+		assertEquals(totalNumberOfRecords, 50);
+	}
+
 	@Test
 	public void testReadListOneTypeNoResult() throws Exception {
 		OnlyForTestRecordStorageInMemory recordStorage = new OnlyForTestRecordStorageInMemory();
@@ -921,6 +1258,154 @@ public class RecordStorageInMemoryListTest {
 		assertEquals(readList.listOfDataGroups.size(), 14);
 	}
 
+	@Test
+	public void testReadListWithoutPartOnlyCopiesRecordsInWindow() {
+		createRecordStorageWithOrganisationRecords();
+		Filter filter = new Filter();
+		filter.fromNo = 3;
+		filter.toNo = 7;
+
+		StorageReadResult readResult = recordStorage.readListImplementing("organisation", filter);
+
+		assertEquals(readResult.listOfDataGroups.size(), 5);
+		assertEquals(readResult.totalNumberOfMatches, 28);
+		dataCopierFactory.MCR.assertNumberOfCallsToMethod("factorForDataElement", 1 + 5);
+	}
+
+	@Test
+	public void testReadListWithPartOnlyCopiesRecordsInWindow() {
+		createRecordStorageWithOrganisationRecords();
+		Filter filter = setUpFilterForOrganisationWithFromTo("3", "7");
+
+		StorageReadResult readResult = recordStorage.readListImplementing("organisation", filter);
+
+		assertEquals(readResult.listOfDataGroups.size(), 5);
+		assertEquals(readResult.totalNumberOfMatches, 14);
+		dataCopierFactory.MCR.assertNumberOfCallsToMethod("factorForDataElement", 1 + 5);
+	}
+
+	@Test
+	public void testReadListFromLargerThanNumberOfRecords() {
+		createRecordStorageWithOrganisationRecords();
+		Filter filter = setUpFilterForOrganisationWithFromTo("20", "");
+
+		StorageReadResult readResult = recordStorage.readListImplementing("organisation", filter);
+
+		assertEquals(readResult.listOfDataGroups.size(), 0);
+		assertEquals(readResult.totalNumberOfMatches, 14);
+	}
+
+	@Test
+	public void testReadListWithPartSkipsIdsWithoutStoredRecord() {
+		createRecordStorageWithOrganisationRecords();
+		CollectedTermsHolderSpy termsHolder = setUpCollectedTermsHolderSpy();
+		termsHolder.returnIdsForTypes.put("organisation",
+				List.of("organisation:1", "organisation:NOT_STORED", "organisation:2"));
+		Filter filter = createFilterWithAPart("organisationDomain", "uu");
+
+		StorageReadResult readResult = recordStorage.readListImplementing("organisation", filter);
+
+		assertEquals(readResult.listOfDataGroups.size(), 2);
+		assertEquals(readResult.totalNumberOfMatches, 2);
+	}
+
+	@Test
+	public void testReadListWithPartSkipsRecordsNoLongerMatchingWhenRead() {
+		createRecordStorageWithOrganisationRecords();
+		CollectedTermsHolderSpy termsHolder = setUpCollectedTermsHolderSpy();
+		termsHolder.returnIdsForTypes.put("organisation",
+				List.of("organisation:1", "organisation:2", "organisation:3"));
+		termsHolder.recordIdsNoLongerMatching.add("organisation:2");
+		Filter filter = createFilterWithAPart("organisationDomain", "uu");
+
+		StorageReadResult readResult = recordStorage.readList("organisation", filter);
+
+		assertEquals(readResult.listOfDataGroups.size(), 2);
+		assertEquals(readResult.totalNumberOfMatches, 2);
+		termsHolder.MCR.assertParameters("recordMatches", 1, "organisation", "organisation:2",
+				filter, Collections.emptyList());
+	}
+
+	@Test
+	public void testReadListWithoutPartDoesNotRecheckRecords() {
+		createRecordStorageWithOrganisationRecords();
+		CollectedTermsHolderSpy termsHolder = setUpCollectedTermsHolderSpy();
+
+		recordStorage.readList("organisation", emptyFilter);
+
+		termsHolder.MCR.assertMethodNotCalled("recordMatches");
+	}
+
+	@Test
+	public void testReadListAsStreamNoRecordsForType() {
+		Stream<DataGroup> stream = recordStorage.readListAsStream("NOExistingRecords",
+				emptyFilter);
+
+		assertEquals(stream.count(), 0);
+	}
+
+	@Test
+	public void testReadListAsStreamCopiesLazily() {
+		createRecordStorageWithOrganisationRecords();
+
+		Stream<DataGroup> stream = recordStorage.readListAsStream("organisation", emptyFilter);
+		dataCopierFactory.MCR.assertNumberOfCallsToMethod("factorForDataElement", 1);
+
+		List<DataGroup> dataGroups = stream.toList();
+		assertEquals(dataGroups.size(), 28);
+		dataCopierFactory.MCR.assertNumberOfCallsToMethod("factorForDataElement", 1 + 28);
+	}
+
+	@Test
+	public void testReadListAsStreamWithoutPartOnlyCopiesRecordsInWindow() {
+		createRecordStorageWithOrganisationRecords();
+		Filter filter = new Filter();
+		filter.fromNo = 3;
+		filter.toNo = 7;
+
+		List<DataGroup> dataGroups = recordStorage.readListAsStream("organisation", filter)
+				.toList();
+
+		assertEquals(dataGroups.size(), 5);
+		dataCopierFactory.MCR.assertNumberOfCallsToMethod("factorForDataElement", 1 + 5);
+	}
+
+	@Test
+	public void testReadListAsStreamWithPart() {
+		createRecordStorageWithOrganisationRecords();
+		Filter filter = setUpFilterForOrganisationWithFromTo("3", "7");
+
+		List<DataGroup> dataGroups = recordStorage.readListAsStream("organisation", filter)
+				.toList();
+
+		assertEquals(dataGroups.size(), 5);
+		dataCopierFactory.MCR.assertNumberOfCallsToMethod("factorForDataElement", 1 + 5);
+	}
+
+	@Test
+	public void testReadListAsStreamWithPartSkipsRemovedRecords() {
+		createRecordStorageWithOrganisationRecords();
+		Filter filter = setUpFilterForOrganisationWithFromTo("", "");
+
+		Stream<DataGroup> stream = recordStorage.readListAsStream("organisation", filter);
+		recordStorage.deleteByTypeAndId("organisation", "organisation:3");
+
+		assertEquals(stream.count(), 13);
+	}
+
+	@Test
+	public void testReadListAsStreamWithPartSkipsRecordsNoLongerMatchingWhenRead() {
+		createRecordStorageWithOrganisationRecords();
+		CollectedTermsHolderSpy termsHolder = setUpCollectedTermsHolderSpy();
+		addIdsToReturnFromTermsHolder(termsHolder, 14, "organisation");
+		termsHolder.recordIdsNoLongerMatching.add("organisation:3");
+		Filter filter = createFilterWithAPart("organisationDomain", "uu");
+
+		Stream<DataGroup> stream = recordStorage.readListAsStream("organisation", filter);
+
+		assertEquals(stream.count(), 13);
+	}
+
 	private Filter setUpFilterForOrganisationWithFromTo(String fromNo, String toNo) {
 		CollectedTermsHolderSpy termsHolder = setUpCollectedTermsHolderSpy();
 		addIdsToReturnFromTermsHolder(termsHolder, 14, "organisation");
@@ -0,0 +1,381 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.data.DataProvider;
+import se.uu.ub.cora.data.collected.Link;
+import se.uu.ub.cora.data.collected.StorageTerm;
+import se.uu.ub.cora.data.copier.DataCopierProvider;
+import se.uu.ub.cora.data.spies.DataFactorySpy;
+import se.uu.ub.cora.logger.LoggerProvider;
+import se.uu.ub.cora.logger.spies.LoggerFactorySpy;
+import se.uu.ub.cora.logger.spies.LoggerSpy;
+import se.uu.ub.cora.storage.Filter;
+import se.uu.ub.cora.storage.RecordConflictException;
+
+public class RecordStorageInMemoryRecordLogTest {
+	private static final String DATA_DIVIDER = "cora";
+	private final Set<StorageTerm> storageTerms = Set
+			.of(new StorageTerm("placeNameStorageTerm", "placeName", "Uppsala"));
+	private final Set<Link> links = Set.of(new Link("country", "sweden"));
+	private Path directory;
+	private RecordStorageInMemory recordStorage;
+
+	@BeforeMethod
+	public void beforeMethod() throws IOException {
+		DataProvider.onlyForTestSetDataFactory(new DataFactorySpy());
+		DataCopierProvider.setDataCopierFactory(dataElement -> () -> dataElement);
+		directory = Files.createTempDirectory("recordStorageInMemoryRecordLogTest");
+		recordStorage = RecordStorageInMemory.usingRecordLogInDirectory(directory);
+	}
+
+	@AfterMethod
+	public void afterMethod() throws IOException {
+		recordStorage.closeRecordLog();
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+				Files.delete(path);
+			}
+		}
+	}
+
+	@Test
+	public void testCreatedRecordsAreRestored() {
+		createPlace("place:001");
+		createPlace("place:002");
+
+		restart();
+
+		assertTrue(recordStorage.recordExists(List.of("place"), "place:001"));
+		assertEquals(recordStorage.getTotalNumberOfRecordsForTypes(List.of("place"), new Filter()),
+				2);
+		assertEquals(recordStorage.getStorageTermsForRecord("place", "place:001"), storageTerms);
+		assertEquals(recordStorage.getLinksToRecord("country", "sweden"),
+				Set.of(new Link("place", "place:001"), new Link("place", "place:002")));
+		assertEquals(recordStorage.getVersion("place", "place:001"), 1);
+	}
+
+	private void createPlace(String recordId) {
+		recordStorage.create("place", recordId, new DataGroupOldSpy("place"), storageTerms, links,
+				DATA_DIVIDER);
+	}
+
+	private void restart() {
+		recordStorage.closeRecordLog();
+		recordStorage = RecordStorageInMemory.usingRecordLogInDirectory(directory);
+	}
+
+	@Test
+	public void testUpdatesAndDeletesAreRestored() {
+		createPlace("place:001");
+		createPlace("place:002");
+		recordStorage.update("place", "place:001", new DataGroupOldSpy("place"),
+				Collections.emptySet(), Collections.emptySet(), "other");
+		recordStorage.deleteByTypeAndId("place", "place:002");
+
+		restart();
+
+		assertEquals(recordStorage.getVersion("place", "place:001"), 2);
+		assertTrue(recordStorage.getStorageTermsForRecord("place", "place:001").isEmpty());
+		assertFalse(recordStorage.recordExists(List.of("place"), "place:002"));
+		assertFalse(recordStorage.linksExistForRecord("country", "sweden"));
+		assertEquals(recordStorage.getTotalNumberOfRecordsForTypeAndDataDivider("place", "other",
+				new Filter()), 1);
+	}
+
+	@Test
+	public void testVersionOfRecordCreatedAfterDeleteIsKeptOverSnapshot() {
+		createPlace("place:001");
+		recordStorage.update("place", "place:001", new DataGroupOldSpy("place"), storageTerms,
+				links, DATA_DIVIDER);
+		recordStorage.deleteByTypeAndId("place", "place:001");
+		recordStorage.writeSnapshot();
+		restart();
+
+		createPlace("place:001");
+
+		assertEquals(recordStorage.getVersion("place", "place:001"), 3);
+	}
+
+	@Test
+	public void testFailedCreateIsNotWrittenToLog() {
+		createPlace("place:001");
+		try {
+			createPlace("place:001");
+			fail("It should throw an exception");
+		} catch (RecordConflictException e) {
+			// expected
+		}
+
+		restart();
+
+		assertEquals(recordStorage.getVersion("place", "place:001"), 1);
+	}
+
+	@Test
+	public void testCreateAllIsRestored() {
+		recordStorage.createAll(List.of(
+				new RecordToCreate("place", "place:001", new DataGroupOldSpy("place"),
+						storageTerms, links, DATA_DIVIDER),
+				new RecordToCreate("person", "person:001", new DataGroupOldSpy("person"),
+						storageTerms, links, DATA_DIVIDER)));
+
+		restart();
+
+		assertTrue(recordStorage.recordExists(List.of("place"), "place:001"));
+		assertTrue(recordStorage.recordExists(List.of("person"), "person:001"));
+	}
+
+	@Test
+	public void testConcurrentCreatesWithIntervalSyncAreRestored() throws InterruptedException {
+		recordStorage.closeRecordLog();
+		recordStorage = RecordStorageInMemory.usingRecordLogInDirectoryAndSync(directory,
+				RecordLogSync.everyMilliseconds(5));
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			String recordId = "place:00" + i;
+			threads.add(Thread.ofPlatform().start(() -> createPlace(recordId)));
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		restart();
+
+		assertEquals(recordStorage.getTotalNumberOfRecordsForTypes(List.of("place"), new Filter()),
+				10);
+	}
+
+	@Test
+	public void testSnapshotAndLogTailAreRestored() {
+		createPlace("place:001");
+		createPlace("place:002");
+		recordStorage.update("place", "place:001", new DataGroupOldSpy("place"), storageTerms,
+				links, "other");
+
+		recordStorage.writeSnapshot();
+		createPlace("place:003");
+		recordStorage.deleteByTypeAndId("place", "place:002");
+		restart();
+
+		assertEquals(recordStorage.getVersion("place", "place:001"), 2);
+		assertEquals(recordStorage.getStorageTermsForRecord("place", "place:001"), storageTerms);
+		assertEquals(recordStorage.getLinksToRecord("country", "sweden"),
+				Set.of(new Link("place", "place:001"), new Link("place", "place:003")));
+		assertFalse(recordStorage.recordExists(List.of("place"), "place:002"));
+		assertEquals(recordStorage.getTotalNumberOfRecordsForTypeAndDataDivider("place", "other",
+				new Filter()), 1);
+		assertEquals(recordStorage.getTotalNumberOfRecordsForTypes(List.of("place"), new Filter()),
+				2);
+	}
+
+	@Test
+	public void testChangesAlreadyInSnapshotAreSkippedWhenLogIsReplayed() throws IOException {
+		createPlace("place:001");
+		recordStorage.update("place", "place:001", new DataGroupOldSpy("place"), storageTerms,
+				links, "other");
+		createPlace("place:002");
+		recordStorage.deleteByTypeAndId("place", "place:002");
+		byte[] changesInSnapshot = Files
+				.readAllBytes(directory.resolve(RecordLog.segmentFileName(RecordLog.FIRST_SEGMENT)));
+		recordStorage.writeSnapshot();
+		recordStorage.closeRecordLog();
+		Files.write(directory.resolve(RecordLog.segmentFileName(RecordLog.FIRST_SEGMENT + 1)),
+				changesInSnapshot);
+
+		recordStorage = RecordStorageInMemory.usingRecordLogInDirectory(directory);
+
+		assertEquals(recordStorage.getVersion("place", "place:001"), 2);
+		assertEquals(recordStorage.getTotalNumberOfRecordsForTypeAndDataDivider("place", "other",
+				new Filter()), 1);
+		assertEquals(recordStorage.getLinksToRecord("country", "sweden"),
+				Set.of(new Link("place", "place:001")));
+		assertFalse(recordStorage.recordExists(List.of("place"), "place:002"));
+		createPlace("place:002");
+		assertEquals(recordStorage.getVersion("place", "place:002"), 2);
+	}
+
+	@Test
+	public void testSnapshotCanBeWrittenWhileRecordsAreChanged() throws Exception {
+		for (int i = 0; i < 100; i++) {
+			createPlace("place:" + i);
+		}
+		Thread updater = Thread.ofPlatform().start(this::updateAllPlacesTwice);
+
+		recordStorage.writeSnapshot();
+		updater.join();
+		restart();
+
+		for (int i = 0; i < 100; i++) {
+			assertEquals(recordStorage.getVersion("place", "place:" + i), 3);
+		}
+		assertEquals(recordStorage.getTotalNumberOfRecordsForTypeAndDataDivider("place", "other",
+				new Filter()), 100);
+	}
+
+	private void updateAllPlacesTwice() {
+		for (int round = 0; round < 2; round++) {
+			for (int i = 0; i < 100; i++) {
+				recordStorage.update("place", "place:" + i, new DataGroupOldSpy("place"),
+						storageTerms, links, "other");
+			}
+		}
+	}
+
+	@Test
+	public void testRecordsFromSnapshotAreDecodedWhenRead() {
+		createPlace("place:001");
+		createPlace("place:002");
+		recordStorage.writeSnapshot();
+		DataFactorySpy dataFactory = new DataFactorySpy();
+		DataProvider.onlyForTestSetDataFactory(dataFactory);
+
+		restart();
+
+		dataFactory.MCR.assertNumberOfCallsToMethod("factorGroupUsingNameInData", 0);
+		recordStorage.read(List.of("place"), "place:002");
+		dataFactory.MCR.assertNumberOfCallsToMethod("factorGroupUsingNameInData", 1);
+		dataFactory.MCR.assertParameters("factorGroupUsingNameInData", 0, "place");
+	}
+
+	@Test
+	public void testSnapshotDeletesIncludedLogSegments() {
+		createPlace("place:001");
+
+		recordStorage.writeSnapshot();
+
+		assertTrue(Files.exists(directory.resolve(RecordSnapshot.SNAPSHOT_FILE_NAME)));
+		assertTrue(Files.notExists(
+				directory.resolve(RecordLog.segmentFileName(RecordLog.FIRST_SEGMENT))));
+	}
+
+	@Test
+	public void testPeriodicSnapshotsAreWritten() throws InterruptedException {
+		createPlace("place:001");
+
+		recordStorage.startPeriodicSnapshots(Duration.ofMillis(5));
+		waitForSnapshotFile();
+		createPlace("place:002");
+		restart();
+
+		assertEquals(recordStorage.getTotalNumberOfRecordsForTypes(List.of("place"), new Filter()),
+				2);
+	}
+
+	private void waitForSnapshotFile() throws InterruptedException {
+		Path snapshotFile = directory.resolve(RecordSnapshot.SNAPSHOT_FILE_NAME);
+		for (int i = 0; i < 200 && Files.notExists(snapshotFile); i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(Files.exists(snapshotFile));
+	}
+
+	@Test
+	public void testFailedPeriodicSnapshotIsLoggedAndLaterSnapshotsAreTried()
+			throws IOException, InterruptedException {
+		LoggerFactorySpy loggerFactorySpy = new LoggerFactorySpy();
+		LoggerProvider.setLoggerFactory(loggerFactorySpy);
+		createPlace("place:001");
+		Files.createDirectory(directory.resolve("records.snapshot.tmp"));
+
+		recordStorage.startPeriodicSnapshots(Duration.ofMillis(5));
+		waitForSegmentFile(RecordLog.FIRST_SEGMENT + 2);
+
+		loggerFactorySpy.MCR.assertParameters("factorForClass", 0, RecordStorageInMemory.class);
+		LoggerSpy loggerSpy = (LoggerSpy) loggerFactorySpy.MCR.getReturnValue("factorForClass", 0);
+		loggerSpy.MCR.assertNumberOfCallsToMethod("logErrorUsingMessageAndException", 1);
+		assertTrue(Files.notExists(directory.resolve(RecordSnapshot.SNAPSHOT_FILE_NAME)));
+	}
+
+	private void waitForSegmentFile(long segment) throws InterruptedException {
+		Path segmentFile = directory.resolve(RecordLog.segmentFileName(segment));
+		for (int i = 0; i < 200 && Files.notExists(segmentFile); i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(Files.exists(segmentFile));
+	}
+
+	@Test
+	public void testRecoveryInPoolMergesLinksAndKeepsOrderPerRecordType() {
+		for (String recordType : List.of("place", "person", "book")) {
+			createRecordLinkingToSweden(recordType, recordType + ":001");
+			createRecordLinkingToSweden(recordType, recordType + ":002");
+		}
+		recordStorage.writeSnapshot();
+		for (String recordType : List.of("place", "person", "book")) {
+			createRecordLinkingToSweden(recordType, recordType + ":003");
+			recordStorage.update(recordType, recordType + ":003", new DataGroupOldSpy(recordType),
+					Collections.emptySet(), Collections.emptySet(), DATA_DIVIDER);
+			recordStorage.deleteByTypeAndId(recordType, recordType + ":001");
+		}
+		recordStorage.closeRecordLog();
+
+		ForkJoinPool recoveryPool = new ForkJoinPool(4);
+		recordStorage = RecordStorageInMemory.usingRecordLogInDirectoryAndSyncAndRecoveryPool(
+				directory, RecordLogSync.everyWrite(), recoveryPool);
+		recoveryPool.shutdown();
+
+		assertEquals(recordStorage.getLinksToRecord("country", "sweden"),
+				Set.of(new Link("place", "place:002"), new Link("person", "person:002"),
+						new Link("book", "book:002")));
+		for (String recordType : List.of("place", "person", "book")) {
+			assertFalse(recordStorage.recordExists(List.of(recordType), recordType + ":001"));
+			assertEquals(recordStorage.getVersion(recordType, recordType + ":003"), 2);
+			assertEquals(recordStorage.getStorageTermsForRecord(recordType, recordType + ":002"),
+					storageTerms);
+		}
+	}
+
+	private void createRecordLinkingToSweden(String recordType, String recordId) {
+		recordStorage.create(recordType, recordId, new DataGroupOldSpy(recordType), storageTerms,
+				links, DATA_DIVIDER);
+	}
+
+	@Test(expectedExceptions = DataStorageException.class, expectedExceptionsMessageRegExp = ""
+			+ "Record storage has no record log")
+	public void testSnapshotWithoutLogThrowsError() {
+		new RecordStorageInMemory().writeSnapshot();
+	}
+
+	@Test
+	public void testStorageWithoutLogCanCloseLog() {
+		new RecordStorageInMemory().closeRecordLog();
+	}
+}
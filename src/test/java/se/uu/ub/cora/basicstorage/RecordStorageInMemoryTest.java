@@ -24,6 +24,7 @@ import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNotSame;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 import java.util.Collection;
 import java.util.Collections;
@@ -45,6 +46,7 @@ import se.uu.ub.cora.data.collected.Link;
 import se.uu.ub.cora.data.collected.StorageTerm;
 import se.uu.ub.cora.data.copier.DataCopierProvider;
 import se.uu.ub.cora.data.spies.DataFactorySpy;
+import se.uu.ub.cora.storage.Filter;
 import se.uu.ub.cora.storage.RecordConflictException;
 import se.uu.ub.cora.storage.RecordNotFoundException;
 import se.uu.ub.cora.storage.RecordStorage;
@@ -502,6 +504,53 @@ public class RecordStorageInMemoryTest {
 		assertFalse(recordStorage.linksExistForRecord(TO_RECORD_TYPE, TO_RECORD_ID));
 	}
 
+	@Test
+	public void testDeleteLastRecordOfTypeRecordsNoLongerExistForType() {
+		recordStorage.create("type", "place:0001", createDataGroupWithRecordInfo(),
+				emptyStorageTerms, emptyLinkList, dataDivider);
+
+		recordStorage.deleteByTypeAndId("type", "place:0001");
+
+		RecordStorageInMemory recordStorageInMemory = (RecordStorageInMemory) recordStorage;
+		assertFalse(recordStorageInMemory.recordsExistForRecordType("type"));
+		assertFalse(recordStorage.recordExists(List.of("type"), "place:0001"));
+	}
+
+	@Test(expectedExceptions = RecordNotFoundException.class, expectedExceptionsMessageRegExp = ""
+			+ "No records exists with recordType: type")
+	public void testDeleteLastRecordOfTypeThenReadList() {
+		recordStorage.create("type", "place:0001", createDataGroupWithRecordInfo(),
+				emptyStorageTerms, emptyLinkList, dataDivider);
+		recordStorage.deleteByTypeAndId("type", "place:0001");
+
+		recordStorage.readList("type", new Filter());
+	}
+
+	@Test(expectedExceptions = RecordNotFoundException.class, expectedExceptionsMessageRegExp = ""
+			+ "No record exists with recordType: type")
+	public void testDeleteLastRecordOfTypeThenRead() {
+		recordStorage.create("type", "place:0001", createDataGroupWithRecordInfo(),
+				emptyStorageTerms, emptyLinkList, dataDivider);
+		recordStorage.deleteByTypeAndId("type", "place:0001");
+
+		recordStorage.read("type", "place:0001");
+	}
+
+	@Test
+	public void testDeleteLastRecordOfTypeThenCreateAgain() {
+		recordStorage.create("type", "place:0001", createDataGroupWithRecordInfo(),
+				emptyStorageTerms, emptyLinkList, dataDivider);
+		recordStorage.deleteByTypeAndId("type", "place:0001");
+
+		recordStorage.create("type", "place:0002", createDataGroupWithRecordInfo(),
+				emptyStorageTerms, emptyLinkList, dataDivider);
+
+		RecordStorageInMemory recordStorageInMemory = (RecordStorageInMemory) recordStorage;
+		assertTrue(recordStorageInMemory.recordsExistForRecordType("type"));
+		assertEquals(recordStorage.readList("type", new Filter()).listOfDataRecordGroups.size(),
+				1);
+	}
+
 	@Test(expectedExceptions = RecordNotFoundException.class)
 	public void testDeleteNotFound() {
 		DataGroup dataGroup = createDataGroupWithRecordInfo();
@@ -651,6 +700,152 @@ public class RecordStorageInMemoryTest {
 		dataCopierFactory.MCR.assertParameters("factorForDataElement", 3, dataGroup);
 	}
 
+	@Test
+	public void testCreatedRecordHasFirstVersion() {
+		RecordStorageInMemory recordStorageInMemory = (RecordStorageInMemory) recordStorage;
+		recordStorage.create("type", "place:0001", createDataGroupWithRecordInfo(),
+				emptyStorageTerms, emptyLinkList, dataDivider);
+
+		assertEquals(recordStorageInMemory.getVersion("type", "place:0001"), 1);
+	}
+
+	@Test
+	public void testUpdateIncreasesVersion() {
+		RecordStorageInMemory recordStorageInMemory = (RecordStorageInMemory) recordStorage;
+		DataGroup dataGroup = createDataGroupWithRecordInfo();
+		recordStorage.create("type", "place:0001", dataGroup, emptyStorageTerms, emptyLinkList,
+				dataDivider);
+
+		recordStorage.update("type", "place:0001", dataGroup, emptyStorageTerms, emptyLinkList,
+				dataDivider);
+		recordStorage.update("type", "place:0001", dataGroup, emptyStorageTerms, emptyLinkList,
+				dataDivider);
+
+		assertEquals(recordStorageInMemory.getVersion("type", "place:0001"), 3);
+	}
+
+	@Test(expectedExceptions = RecordNotFoundException.class, expectedExceptionsMessageRegExp = ""
+			+ "No record exists with recordId: place:0002")
+	public void testGetVersionNotFoundId() {
+		RecordStorageInMemory recordStorageInMemory = (RecordStorageInMemory) recordStorage;
+		recordStorage.create("type", "place:0001", createDataGroupWithRecordInfo(),
+				emptyStorageTerms, emptyLinkList, dataDivider);
+
+		recordStorageInMemory.getVersion("type", "place:0002");
+	}
+
+	@Test
+	public void testUpdateIfVersionMatches() {
+		RecordStorageInMemory recordStorageInMemory = (RecordStorageInMemory) recordStorage;
+		DataGroup dataGroup = createDataGroupWithRecordInfo();
+		recordStorage.create("type", "place:0001", dataGroup, emptyStorageTerms, emptyLinkList,
+				dataDivider);
+		DataGroup dataGroup2 = createDataGroupWithRecordInfo();
+
+		long newVersion = recordStorageInMemory.updateIfVersionMatches("type", "place:0001", 1,
+				dataGroup2, emptyStorageTerms, createLinkListWithTwoLinks(), dataDivider);
+
+		assertEquals(newVersion, 2);
+		assertEquals(recordStorageInMemory.getVersion("type", "place:0001"), 2);
+		dataCopierFactory.MCR.assertParameters("factorForDataElement",
+				NO_OF_DATACOPIER_DONE_BY_BEFORE_METHOD + 1, dataGroup2);
+		assertNoOfLinksPointingToRecord(TO_RECORD_TYPE, TO_RECORD_ID, 1);
+	}
+
+	@Test
+	public void testUpdateIfVersionMatchesFailsFastOnOtherVersion() {
+		RecordStorageInMemory recordStorageInMemory = (RecordStorageInMemory) recordStorage;
+		DataGroup dataGroup = createDataGroupWithRecordInfo();
+		recordStorage.create("type", "place:0001", dataGroup, emptyStorageTerms, emptyLinkList,
+				dataDivider);
+		recordStorage.update("type", "place:0001", dataGroup, emptyStorageTerms, emptyLinkList,
+				dataDivider);
+
+		try {
+			recordStorageInMemory.updateIfVersionMatches("type", "place:0001", 1, dataGroup,
+					emptyStorageTerms, createLinkListWithTwoLinks(), dataDivider);
+			fail("A RecordConflictException should have been thrown");
+		} catch (RecordConflictException e) {
+			assertEquals(e.getMessage(), "Record with recordId: place:0001 has been updated "
+					+ "since the expected version was read");
+		}
+
+		assertEquals(recordStorageInMemory.getVersion("type", "place:0001"), 2);
+		dataCopierFactory.MCR.assertNumberOfCallsToMethod("factorForDataElement",
+				NO_OF_DATACOPIER_DONE_BY_BEFORE_METHOD + 2);
+		assertNoOfLinksPointingToRecord(TO_RECORD_TYPE, TO_RECORD_ID, 0);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "Expected version must be at least 1, was: 0")
+	public void testUpdateIfVersionMatchesRejectsVersionThatIsNeverStored() {
+		RecordStorageInMemory recordStorageInMemory = (RecordStorageInMemory) recordStorage;
+		DataGroup dataGroup = createDataGroupWithRecordInfo();
+		recordStorage.create("type", "place:0001", dataGroup, emptyStorageTerms, emptyLinkList,
+				dataDivider);
+		recordStorage.update("type", "place:0001", dataGroup, emptyStorageTerms, emptyLinkList,
+				dataDivider);
+
+		recordStorageInMemory.updateIfVersionMatches("type", "place:0001", 0, dataGroup,
+				emptyStorageTerms, emptyLinkList, dataDivider);
+	}
+
+	@Test(expectedExceptions = RecordNotFoundException.class, expectedExceptionsMessageRegExp = ""
+			+ "No record exists with recordId: place:0002")
+	public void testUpdateIfVersionMatchesNotFoundId() {
+		RecordStorageInMemory recordStorageInMemory = (RecordStorageInMemory) recordStorage;
+		DataGroup dataGroup = createDataGroupWithRecordInfo();
+		recordStorage.create("type", "place:0001", dataGroup, emptyStorageTerms, emptyLinkList,
+				dataDivider);
+
+		recordStorageInMemory.updateIfVersionMatches("type", "place:0002", 1, dataGroup,
+				emptyStorageTerms, emptyLinkList, dataDivider);
+	}
+
+	@Test
+	public void testRecordCreatedAgainAfterDeleteGetsVersionAfterDeletedVersion() {
+		DataGroup dataGroup = createDataGroupWithRecordInfo();
+		recordStorage.create("type", "place:0001", dataGroup, emptyStorageTerms, emptyLinkList,
+				dataDivider);
+		recordStorage.update("type", "place:0001", dataGroup, emptyStorageTerms, emptyLinkList,
+				dataDivider);
+		recordStorage.deleteByTypeAndId("type", "place:0001");
+
+		recordStorage.create("type", "place:0001", dataGroup, emptyStorageTerms, emptyLinkList,
+				dataDivider);
+
+		RecordStorageInMemory recordStorageInMemory = (RecordStorageInMemory) recordStorage;
+		assertEquals(recordStorageInMemory.getVersion("type", "place:0001"), 3);
+	}
+
+	@Test(expectedExceptions = RecordConflictException.class)
+	public void testUpdateIfVersionMatchesWithVersionReadBeforeDeleteAndCreate() {
+		DataGroup dataGroup = createDataGroupWithRecordInfo();
+		recordStorage.create("type", "place:0001", dataGroup, emptyStorageTerms, emptyLinkList,
+				dataDivider);
+		RecordStorageInMemory recordStorageInMemory = (RecordStorageInMemory) recordStorage;
+		long versionBeforeDelete = recordStorageInMemory.getVersion("type", "place:0001");
+		recordStorage.deleteByTypeAndId("type", "place:0001");
+		recordStorage.create("type", "place:0001", dataGroup, emptyStorageTerms, emptyLinkList,
+				dataDivider);
+
+		recordStorageInMemory.updateIfVersionMatches("type", "place:0001", versionBeforeDelete,
+				dataGroup, emptyStorageTerms, emptyLinkList, dataDivider);
+	}
+
+	@Test
+	public void testStoreRecordByRecordTypeAndRecordIdIncreasesVersion() {
+		DataGroup dataGroup = createDataGroupWithRecordInfo();
+		recordStorage.create("type", "place:0001", dataGroup, emptyStorageTerms, emptyLinkList,
+				dataDivider);
+		RecordStorageInMemory recordStorageInMemory = (RecordStorageInMemory) recordStorage;
+
+		recordStorageInMemory.storeRecordByRecordTypeAndRecordId("type", "place:0001", dataGroup,
+				dataDivider);
+
+		assertEquals(recordStorageInMemory.getVersion("type", "place:0001"), 2);
+	}
+
 	@Test
 	public void testRecordExistForRecordTypeAndRecordId() {
 		DataGroup dataGroup = createDataGroupWithRecordInfo();
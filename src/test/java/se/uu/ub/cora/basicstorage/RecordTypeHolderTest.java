@@ -0,0 +1,215 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class RecordTypeHolderTest {
+	private RecordTypeHolder holder;
+	private DividerGroup dividerGroup = DividerGroup.withDataDividerAndDataGroup("cora",
+			new DataGroupOldSpy("someGroup"));
+
+	@BeforeMethod
+	public void beforeMethod() {
+		holder = new RecordTypeHolder();
+	}
+
+	@Test
+	public void testEmpty() {
+		assertEquals(holder.size(), 0);
+		assertTrue(holder.isEmpty());
+	}
+
+	@Test
+	public void testPutCountsOnlyNewRecordIds() {
+		holder.put("id1", dividerGroup);
+		holder.put("id2", dividerGroup);
+		holder.put("id1", dividerGroup);
+
+		assertEquals(holder.size(), 2);
+	}
+
+	@Test
+	public void testPutIfAbsentCountsOnlyNewRecordIds() {
+		assertNull(holder.putIfAbsent("id1", dividerGroup));
+		holder.putIfAbsent("id1", dividerGroup);
+
+		assertEquals(holder.size(), 1);
+	}
+
+	@Test
+	public void testRemoveCountsOnlyRemovedRecordIds() {
+		holder.put("id1", dividerGroup);
+		holder.put("id2", dividerGroup);
+
+		holder.remove("id1");
+		holder.remove("id1");
+		holder.remove("notStored");
+
+		assertEquals(holder.size(), 1);
+	}
+
+	@Test
+	public void testRemoveWithValueCountsOnlyRemovedRecordIds() {
+		holder.put("id1", dividerGroup);
+
+		assertFalse(holder.remove("id1", DividerGroup.withDataDividerAndDataGroup("cora",
+				new DataGroupOldSpy("someOtherGroup"))));
+		assertEquals(holder.size(), 1);
+		assertTrue(holder.remove("id1", dividerGroup));
+		assertEquals(holder.size(), 0);
+	}
+
+	@Test
+	public void testRemoveUsingIteratorIsCounted() {
+		holder.put("id1", dividerGroup);
+		holder.put("id2", dividerGroup);
+
+		holder.keySet().removeIf(recordId -> recordId.equals("id2"));
+
+		assertEquals(holder.size(), 1);
+	}
+
+	@Test
+	public void testClear() {
+		holder.put("id1", dividerGroup);
+		holder.put("id2", dividerGroup);
+
+		holder.clear();
+
+		assertEquals(holder.size(), 0);
+		assertTrue(holder.isEmpty());
+	}
+
+	@Test
+	public void testRecordsAreOrderedByRecordId() {
+		holder.put("c", dividerGroup);
+		holder.put("a", dividerGroup);
+		holder.put("b", dividerGroup);
+
+		assertEquals(List.copyOf(holder.keySet()), List.of("a", "b", "c"));
+	}
+
+	@Test
+	public void testCreateFromSortedMapCountsRecords() {
+		TreeMap<String, DividerGroup> sortedRecords = new TreeMap<>();
+		sortedRecords.put("b", dividerGroup);
+		sortedRecords.put("a", dividerGroup);
+
+		RecordTypeHolder holderFromSortedMap = new RecordTypeHolder(sortedRecords);
+		holderFromSortedMap.put("c", dividerGroup);
+
+		assertEquals(holderFromSortedMap.size(), 3);
+		assertEquals(List.copyOf(holderFromSortedMap.keySet()), List.of("a", "b", "c"));
+	}
+
+	@Test
+	public void testValuesFromPosition() {
+		List<DividerGroup> dividerGroups = putRecords(200);
+
+		assertEquals(holder.valuesFromPosition(0).toList(), dividerGroups);
+		assertEquals(holder.valuesFromPosition(10).toList(), dividerGroups.subList(10, 200));
+		assertEquals(holder.valuesFromPosition(64).toList(), dividerGroups.subList(64, 200));
+		assertEquals(holder.valuesFromPosition(150).toList(), dividerGroups.subList(150, 200));
+		assertEquals(holder.valuesFromPosition(199).toList(), dividerGroups.subList(199, 200));
+		assertEquals(holder.valuesFromPosition(200).toList(), List.of());
+		assertEquals(holder.valuesFromPosition(500).toList(), List.of());
+	}
+
+	private List<DividerGroup> putRecords(int numberOfRecords) {
+		List<DividerGroup> dividerGroups = new ArrayList<>();
+		for (int i = 0; i < numberOfRecords; i++) {
+			DividerGroup dividerGroupForId = DividerGroup.withDataDividerAndDataGroup("cora",
+					new DataGroupOldSpy("someGroup" + i));
+			holder.put(String.format("id%03d", i), dividerGroupForId);
+			dividerGroups.add(dividerGroupForId);
+		}
+		return dividerGroups;
+	}
+
+	@Test
+	public void testValuesFromPositionAfterRecordsAreAddedAndRemoved() {
+		List<DividerGroup> dividerGroups = putRecords(200);
+		assertEquals(holder.valuesFromPosition(100).findFirst().get(), dividerGroups.get(100));
+
+		holder.remove("id000");
+		holder.keySet().removeIf(recordId -> recordId.equals("id001"));
+		assertEquals(holder.valuesFromPosition(100).findFirst().get(), dividerGroups.get(102));
+
+		holder.put("a", dividerGroup);
+		assertEquals(holder.valuesFromPosition(100).findFirst().get(), dividerGroups.get(101));
+	}
+
+	@Test
+	public void testValuesFromPositionWhenBlocksAreSplitAndMerged() {
+		List<DividerGroup> dividerGroups = putRecordsInReverseOrder(1000);
+		assertValuesFromPositionsMatch(dividerGroups);
+
+		for (int i = 0; i < 1000; i++) {
+			if (i % 10 != 0) {
+				holder.remove(String.format("id%03d", i));
+			}
+		}
+		List<DividerGroup> remaining = new ArrayList<>();
+		for (int i = 0; i < 1000; i += 10) {
+			remaining.add(dividerGroups.get(i));
+		}
+		assertValuesFromPositionsMatch(remaining);
+	}
+
+	private List<DividerGroup> putRecordsInReverseOrder(int numberOfRecords) {
+		List<DividerGroup> dividerGroups = new ArrayList<>();
+		for (int i = 0; i < numberOfRecords; i++) {
+			dividerGroups.add(DividerGroup.withDataDividerAndDataGroup("cora",
+					new DataGroupOldSpy("someGroup" + i)));
+		}
+		for (int i = numberOfRecords - 1; i >= 0; i--) {
+			holder.put(String.format("id%03d", i), dividerGroups.get(i));
+		}
+		return dividerGroups;
+	}
+
+	private void assertValuesFromPositionsMatch(List<DividerGroup> expected) {
+		for (int position = 0; position <= expected.size(); position++) {
+			assertEquals(holder.valuesFromPosition(position).findFirst().orElse(null),
+					position < expected.size() ? expected.get(position) : null);
+		}
+	}
+
+	@Test
+	public void testValuesFromPositionInHolderCreatedFromSortedMap() {
+		TreeMap<String, DividerGroup> sortedRecords = new TreeMap<>();
+		for (int i = 0; i < 100; i++) {
+			sortedRecords.put(String.format("id%03d", i), dividerGroup);
+		}
+		RecordTypeHolder holderFromSortedMap = new RecordTypeHolder(sortedRecords);
+
+		assertEquals(holderFromSortedMap.valuesFromPosition(70).count(), 30);
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.basicstorage;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ValueIndexTest {
+	private ValueIndex valueIndex;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		valueIndex = new ValueIndex();
+	}
+
+	@Test
+	public void testExactValue() {
+		valueIndex.add("Uppsala", 1);
+		valueIndex.add("Uppsala", 3);
+		valueIndex.add("Uppland", 2);
+
+		assertEquals(findMatching("Uppsala"), List.of(1, 3));
+		assertTrue(valueIndex.findRecordNumbersWithValue("Upp").isEmpty());
+	}
+
+	@Test
+	public void testAddAll() {
+		valueIndex.add("1900", 1);
+
+		valueIndex.addAll("1900", IdBitmap.ofIds(new int[] { 3, 2 }));
+		valueIndex.addAll("Uppsala", IdBitmap.ofIds(new int[] { 4 }));
+
+		assertEquals(findMatching("1900"), List.of(1, 2, 3));
+		assertEquals(findInRange("1000", "2000"), List.of(1, 2, 3));
+		assertEquals(findMatching("Uppsala"), List.of(4));
+	}
+
+	@Test
+	public void testValueStartingWith() {
+		valueIndex.add("Uppsala", 1);
+		valueIndex.add("Uppland", 2);
+		valueIndex.add("Stockholm", 3);
+		valueIndex.add("Up", 4);
+
+		assertEquals(toList(valueIndex.findRecordNumbersWithValueStartingWith("Upp")),
+				List.of(1, 2));
+	}
+
+	@Test
+	public void testValueEndingWithWildcardIsExactValue() {
+		valueIndex.add("Uppsala", 1);
+		valueIndex.add("Upp*", 2);
+
+		assertEquals(findMatching("Upp*"), List.of(2));
+	}
+
+	@Test
+	public void testNumbersAreComparedAsNumbers() {
+		valueIndex.add("900", 1);
+		valueIndex.add("1900", 2);
+		valueIndex.add("10000", 3);
+		valueIndex.add("1900.5", 4);
+
+		assertEquals(findInRange("1000", "2000"), List.of(2, 4));
+		assertEquals(findInRange(null, "1900"), List.of(1, 2));
+		assertEquals(findInRange("1900.5", null), List.of(3, 4));
+	}
+
+	@Test
+	public void testNumberRangeWithLowerBoundAboveUpperBoundIsEmpty() {
+		valueIndex.add("1950", 1);
+
+		assertTrue(valueIndex.findRecordNumbersInRange("2000", "1900").isEmpty());
+	}
+
+	@Test
+	public void testDateRangeIncludesTimestampsDuringLastDay() {
+		valueIndex.add("2020-01-01", 1);
+		valueIndex.add("2020-06-15T12:00:00Z", 2);
+		valueIndex.add("2020-12-31T23:59:59Z", 3);
+		valueIndex.add("2021-01-01", 4);
+
+		assertEquals(findInRange("2020-01-01", "2020-12-31"), List.of(1, 2, 3));
+		assertEquals(findInRange("2020-06-15", null), List.of(2, 3, 4));
+	}
+
+	@Test
+	public void testValueWithRangeSeparatorIsExactValue() {
+		valueIndex.add("1900", 1);
+		valueIndex.add("1900..2000", 2);
+		valueIndex.add("..", 3);
+
+		assertEquals(findMatching("1900..2000"), List.of(2));
+		assertEquals(findMatching(".."), List.of(3));
+	}
+
+	@Test
+	public void testRangeWithBoundsThatAreNotNumbersOrDatesComparesStrings() {
+		valueIndex.add("Arboga", 1);
+		valueIndex.add("Gävle", 2);
+		valueIndex.add("Uppsala", 3);
+		valueIndex.add("1900", 4);
+
+		assertEquals(findInRange("B", "Uppsala"), List.of(2, 3));
+		assertEquals(findInRange(null, null), List.of(1, 2, 3, 4));
+	}
+
+	@Test
+	public void testValueIsInRangeComparesAsFindRecordNumbersInRange() {
+		assertTrue(ValueIndex.valueIsInRange("900", "100", "1000"));
+		assertFalse(ValueIndex.valueIsInRange("Uppsala", "100", "1000"));
+		assertTrue(ValueIndex.valueIsInRange("2020-12-31T23:59:59Z", "2020-01-01", "2020-12-31"));
+		assertFalse(ValueIndex.valueIsInRange("2021-01-01", null, "2020-12-31"));
+		assertTrue(ValueIndex.valueIsInRange("Gävle", "B", "Uppsala"));
+		assertFalse(ValueIndex.valueIsInRange("Arboga", "B", null));
+	}
+
+	@Test
+	public void testRemove() {
+		valueIndex.add("1900", 1);
+		valueIndex.add("1900", 2);
+
+		valueIndex.remove("1900", 1);
+
+		assertEquals(findMatching("1900"), List.of(2));
+		assertEquals(findInRange("1000", "2000"), List.of(2));
+	}
+
+	@Test
+	public void testRemoveLastRecordForValue() {
+		valueIndex.add("1900", 1);
+
+		valueIndex.remove("1900", 1);
+
+		assertTrue(valueIndex.findRecordNumbersWithValue("1900").isEmpty());
+		assertTrue(valueIndex.findRecordNumbersInRange("1000", "2000").isEmpty());
+	}
+
+	@Test
+	public void testEqualNumbersWrittenDifferentlyShareNumericIndex() {
+		valueIndex.add("1.0", 1);
+		valueIndex.add("1", 2);
+
+		assertEquals(findMatching("1.0"), List.of(1));
+		assertEquals(findInRange("1", "1"), List.of(1, 2));
+
+		valueIndex.remove("1", 2);
+
+		assertEquals(findInRange("1", "1"), List.of(1));
+	}
+
+	@Test
+	public void testConcurrentChangesToSameValue() throws Exception {
+		int numberOfThreads = 8;
+		int recordsPerThread = 2000;
+		ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int threadNo = 0; threadNo < numberOfThreads; threadNo++) {
+			int firstRecordNumber = threadNo * recordsPerThread;
+			futures.add(executor.submit(
+					() -> addAndRemoveEveryOther(firstRecordNumber, recordsPerThread)));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+
+		List<Integer> expected = new ArrayList<>();
+		for (int recordNumber = 1; recordNumber < numberOfThreads
+				* recordsPerThread; recordNumber += 2) {
+			expected.add(recordNumber);
+		}
+		assertEquals(findMatching("1900"), expected);
+		assertEquals(findInRange("1900", "1900"), expected);
+	}
+
+	private void addAndRemoveEveryOther(int firstRecordNumber, int numberOfRecords) {
+		for (int recordNumber = firstRecordNumber; recordNumber < firstRecordNumber
+				+ numberOfRecords; recordNumber++) {
+			valueIndex.add("1900", recordNumber);
+		}
+		for (int recordNumber = firstRecordNumber; recordNumber < firstRecordNumber
+				+ numberOfRecords; recordNumber += 2) {
+			valueIndex.remove("1900", recordNumber);
+		}
+	}
+
+	@Test
+	public void testRecordNumbersInValueOrder() {
+		valueIndex.add("Uppsala", 1);
+		valueIndex.add("1900", 2);
+		valueIndex.add("900", 3);
+		valueIndex.add("Arboga", 4);
+
+		assertEquals(readInValueOrder(false), List.of(3, 2, 4, 1));
+		assertEquals(readInValueOrder(true), List.of(1, 4, 2, 3));
+	}
+
+	private List<Integer> readInValueOrder(boolean descending) {
+		List<Integer> recordNumbers = new ArrayList<>();
+		valueIndex.recordNumbersInValueOrder(descending).forEach(
+				recordNumbersForValue -> recordNumbersForValue.forEach(recordNumbers::add));
+		return recordNumbers;
+	}
+
+	private List<Integer> findMatching(String value) {
+		return toList(valueIndex.findRecordNumbersWithValue(value));
+	}
+
+	private List<Integer> findInRange(String from, String to) {
+		return toList(valueIndex.findRecordNumbersInRange(from, to));
+	}
+
+	private List<Integer> toList(IdBitmap foundRecordNumbers) {
+		List<Integer> recordNumbers = new ArrayList<>();
+		foundRecordNumbers.forEach(recordNumbers::add);
+		return recordNumbers;
+	}
+}